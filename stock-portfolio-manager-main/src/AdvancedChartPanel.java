@@ -7,6 +7,7 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -18,12 +19,14 @@ import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Position;
 import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.services.analytics.AIAnalytics;
 import com.stockportfolio.services.api.RealTimeStockAPI;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class AdvancedChartPanel extends JPanel {
     // Inner class for candlestick data
@@ -57,8 +60,9 @@ public class AdvancedChartPanel extends JPanel {
     }
 
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private RealTimeStockAPI stockAPI;
+    private AIAnalytics aiAnalytics;
 
     private List<CandlestickData> candlestickData;
     private JButton refreshBtn;
@@ -69,11 +73,14 @@ public class AdvancedChartPanel extends JPanel {
     private List<Portfolio> portfolios;
     private List<String> stockSymbols;
     private List<HistoricalData> historicalData;
+    private String historySymbol;
+    private double historyVolatility;
 
     public AdvancedChartPanel() {
         this.app = null; // Will be set by parent
         this.dbManager = null; // Will be set by parent
-        this.stockAPI = new RealTimeStockAPI();
+        this.stockAPI = null; // Created once the data store is set
+        this.aiAnalytics = new AIAnalytics();
         this.candlestickData = new ArrayList<>();
         this.chartCanvas = new ChartCanvas();
         this.portfolios = new ArrayList<>();
@@ -138,8 +145,11 @@ public class AdvancedChartPanel extends JPanel {
         this.app = app;
     }
 
-    public void setDbManager(DatabaseManager dbManager) {
+    public void setDbManager(DataStore dbManager) {
         this.dbManager = dbManager;
+        if (stockAPI == null) {
+            stockAPI = new RealTimeStockAPI(dbManager);
+        }
         populatePortfolioComboBox();
     }
 
@@ -168,6 +178,7 @@ public class AdvancedChartPanel extends JPanel {
 
                 if (stockComboBox.getSelectedIndex() >= 0 && stockComboBox.getSelectedIndex() < stockSymbols.size()) {
                     String selectedStock = stockSymbols.get(stockComboBox.getSelectedIndex());
+                    loadPriceHistory(selectedStock);
                     for (Position position : positions) {
                         if (position.getSymbol().equals(selectedStock)) {
                             double buyPrice = position.getAverageCost(); // Use getAverageCost instead of getAveragePrice
@@ -206,6 +217,34 @@ public class AdvancedChartPanel extends JPanel {
         }
     }
 
+    /**
+     * Load three months of split and dividend adjusted daily closes for the stock in the
+     * background and draw them behind the bars once they arrive.
+     */
+    private void loadPriceHistory(String symbol) {
+        if (stockAPI == null || symbol.equals(historySymbol)) {
+            return;
+        }
+        historySymbol = symbol;
+        historicalData.clear();
+        stockAPI.getAdjustedHistoricalData(symbol, "3M").thenAccept(bars -> {
+            List<HistoricalData> points = new ArrayList<>();
+            for (RealTimeStockAPI.HistoricalPrice bar : bars) {
+                LocalDate date = LocalDate.parse(bar.getTimestamp().substring(0, 10));
+                points.add(new HistoricalData(date.atStartOfDay(), bar.getClose()));
+            }
+            points.sort((a, b) -> a.timestamp.compareTo(b.timestamp));
+            double volatility = aiAnalytics.annualizedVolatility(bars);
+            SwingUtilities.invokeLater(() -> {
+                if (symbol.equals(historySymbol)) {
+                    historicalData = points;
+                    historyVolatility = volatility;
+                    chartCanvas.repaint();
+                }
+            });
+        });
+    }
+
     private double getSellPrice(String symbol, int portfolioId) {
         try {
             List<Transaction> transactions = dbManager.getTransactionsByPortfolioId(portfolioId);
@@ -315,6 +354,10 @@ public class AdvancedChartPanel extends JPanel {
             double minPrice = candlestickData.stream()
                 .mapToDouble(c -> Math.min(c.low, c.open))
                 .min().orElse(0);
+            for (HistoricalData point : historicalData) {
+                maxPrice = Math.max(maxPrice, point.price);
+                minPrice = Math.min(minPrice, point.price);
+            }
             double priceRange = maxPrice - minPrice;
             if (priceRange == 0) {
                 priceRange = Math.max(maxPrice * 0.01, 1.0); // Ensure minimum range for visibility
@@ -343,6 +386,21 @@ public class AdvancedChartPanel extends JPanel {
                 g2d.drawLine(x - 5, yPos, x, yPos);
             }
 
+            // Adjusted daily closes across the bar area, oldest first
+            if (historicalData.size() > 1) {
+                int historyWidth = candlestickData.size() * stockWidth;
+                int[] xs = new int[historicalData.size()];
+                int[] ys = new int[historicalData.size()];
+                for (int i = 0; i < xs.length; i++) {
+                    xs[i] = x + (int) ((long) i * historyWidth / (xs.length - 1));
+                    ys[i] = y + chartHeight - (int) ((historicalData.get(i).price - minPrice) / priceRange * chartHeight);
+                }
+                g2d.setColor(Color.GRAY);
+                g2d.drawPolyline(xs, ys, xs.length);
+                g2d.drawString(String.format("Adjusted close, 3 months (volatility %.1f%%)", historyVolatility * 100),
+                        x + 100, y - 10);
+            }
+
             for (int i = 0; i < candlestickData.size(); i++) {
                 CandlestickData data = candlestickData.get(i);
                 int stockX = x + (i * stockWidth) + (stockWidth - barWidth) / 2; // Center the bar in the stock section
@@ -10,13 +10,13 @@ import javax.swing.JPanel;
 
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Position;
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.repository.DataStore;
 
 public class AllocationComparisonPanel extends JPanel {
     private List<Portfolio> portfolios;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
 
-    public AllocationComparisonPanel(DatabaseManager dbManager) {
+    public AllocationComparisonPanel(DataStore dbManager) {
         this.dbManager = dbManager;
         this.portfolios = null;
         setBackground(Color.WHITE);
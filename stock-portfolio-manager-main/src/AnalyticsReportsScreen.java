@@ -14,13 +14,13 @@ import javax.swing.SwingUtilities;
 
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Position;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.services.ExportService;
 import com.stockportfolio.services.analytics.AIAnalytics;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class AnalyticsReportsScreen extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private AIAnalytics aiAnalytics;
 
     private JTabbedPane tabbedPane;
@@ -28,7 +28,7 @@ public class AnalyticsReportsScreen extends JPanel {
     private JTextArea optimizationArea;
     private JTextArea rebalanceArea;
 
-    public AnalyticsReportsScreen(App app, DatabaseManager dbManager) {
+    public AnalyticsReportsScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
         this.aiAnalytics = new AIAnalytics();
@@ -2,6 +2,7 @@ import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.sql.SQLException;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -10,11 +11,14 @@ import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
 import com.stockportfolio.model.User;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.repository.DataStores;
+import com.stockportfolio.services.FxRateService;
 import com.stockportfolio.services.api.RealTimeStockAPI;
 import com.stockportfolio.utils.DatabaseManager;
 
 public class App extends JFrame {
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private User currentUser;
     private JPanel mainPanel;
     private CardLayout cardLayout;
@@ -25,10 +29,26 @@ public class App extends JFrame {
 
     public App() {
         try {
-            dbManager = DatabaseManager.getInstance();
+            // The database unless STOCKPORTFOLIO_STORAGE=memory; see DataStores
+            dbManager = DataStores.open();
 
             // Initialize new services
-            realTimeStockAPI = new RealTimeStockAPI();
+            realTimeStockAPI = new RealTimeStockAPI(dbManager);
+            FxRateService fxRateService = FxRateService.getInstance();
+            // Portfolio totals are kept in the base currency, and reconciled when rates move
+            if (dbManager instanceof DatabaseManager) {
+                DatabaseManager database = (DatabaseManager) dbManager;
+                database.setCurrencyConverter(currency ->
+                        fxRateService.convert(1.0, currency, FxRateService.DEFAULT_BASE_CURRENCY));
+                fxRateService.addRateListener(() -> {
+                    try {
+                        database.rebuildPortfolioTotals();
+                    } catch (SQLException e) {
+                        System.err.println("Error reconciling portfolio totals with new FX rates: " + e.getMessage());
+                    }
+                });
+            }
+            fxRateService.start(realTimeStockAPI);
 
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Database connection failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -124,6 +144,10 @@ public class App extends JFrame {
         return currentUser;
     }
 
+    public DataStore getDataStore() {
+        return dbManager;
+    }
+
     public void logout() {
         currentUser = null;
         cardLayout.show(mainPanel, "LOGIN");
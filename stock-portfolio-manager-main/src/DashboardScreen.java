@@ -10,13 +10,14 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import com.stockportfolio.model.User;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.services.FxRateService;
 import com.stockportfolio.services.api.RealTimeStockAPI;
 import com.stockportfolio.utils.NotificationService;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class DashboardScreen extends JPanel implements ThemeChangeListener {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private RealTimeStockAPI realTimeStockAPI;
 
     private JButton refreshButton;
@@ -28,10 +29,10 @@ public class DashboardScreen extends JPanel implements ThemeChangeListener {
     private InfoCard todaysPnLCard;
     private InfoCard totalTradesCard;
 
-    public DashboardScreen(App app, DatabaseManager dbManager) {
+    public DashboardScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
-        this.realTimeStockAPI = new RealTimeStockAPI();
+        this.realTimeStockAPI = new RealTimeStockAPI(dbManager);
         this.notificationService = NotificationService.getInstance();
         initializeUI();
         checkAchievements();
@@ -129,57 +130,60 @@ public class DashboardScreen extends JPanel implements ThemeChangeListener {
 
             // Collect all unique stock symbols from user's positions
             java.util.Set<String> symbols = new java.util.HashSet<>();
+            List<com.stockportfolio.model.Position> allPositions = new java.util.ArrayList<>();
             for (com.stockportfolio.model.Portfolio portfolio : portfolios) {
                 List<com.stockportfolio.model.Position> positions = dbManager.getPositionsByPortfolioId(portfolio.getId());
                 for (com.stockportfolio.model.Position position : positions) {
                     symbols.add(position.getSymbol());
                 }
+                allPositions.addAll(positions);
             }
 
-            // Fetch real-time quotes for all symbols
+            // Fetch real-time quotes for all symbols; the marks are queued for write-behind so the
+            // refresh never waits on the database
             java.util.Map<String, RealTimeStockAPI.StockQuote> quotes = new java.util.HashMap<>();
+            java.util.Map<String, Double> prices = new java.util.HashMap<>();
             for (String symbol : symbols) {
                 try {
                     RealTimeStockAPI.StockQuote quote = realTimeStockAPI.getStockQuote(symbol).get();
                     if (quote != null) {
                         quotes.put(symbol, quote);
+                        prices.put(symbol, quote.getCurrentPrice());
                     }
                 } catch (Exception e) {
                     System.err.println("Error fetching quote for " + symbol + ": " + e.getMessage());
                 }
             }
-
-            for (com.stockportfolio.model.Portfolio portfolio : portfolios) {
-                List<com.stockportfolio.model.Position> positions = dbManager.getPositionsByPortfolioId(portfolio.getId());
-
-                for (com.stockportfolio.model.Position position : positions) {
-                    // Get real-time price or fall back to stored price
-                    double currentPrice = position.getCurrentPrice();
-                    RealTimeStockAPI.StockQuote quote = quotes.get(position.getSymbol());
-                    if (quote != null) {
-                        currentPrice = quote.getCurrentPrice();
-                        // Update position with real-time price
-                        position.setCurrentPrice(currentPrice);
-                        position.setTotalValue(position.getQuantity() * currentPrice);
-                        position.setLastUpdated(java.time.LocalDateTime.now());
-                        // Save updated position to database
-                        dbManager.updatePosition(position);
-                    }
-
-                    double currentValue = position.getQuantity() * currentPrice;
-                    totalValue += currentValue;
-
-                    // Calculate today's P&L as change from previous close
-                    if (quote != null) {
-                        double previousClose = quote.getPreviousClose();
-                        todaysPnL += (currentPrice - previousClose) * position.getQuantity();
-                    } else {
-                        // Fallback: if no quote, use unrealized P&L as approximation
-                        double costBasis = position.getQuantity() * position.getAverageCost();
-                        todaysPnL += (currentValue - costBasis);
-                    }
+            dbManager.queuePriceTicks(prices);
+
+            // Per-currency multipliers into the base currency, resolved once per refresh
+            FxRateService fxRateService = FxRateService.getInstance();
+            java.util.Map<String, String> currencies = dbManager.getStockCurrencies();
+            double[] fxFactors = fxRateService.crossRates(FxRateService.DEFAULT_BASE_CURRENCY);
+
+            for (com.stockportfolio.model.Position position : allPositions) {
+                int currencyId = fxRateService.currencyId(currencies.getOrDefault(position.getSymbol(), FxRateService.DEFAULT_BASE_CURRENCY));
+                double fx = fxRateService.factor(fxFactors, currencyId);
+
+                // Stored totals lag the queued marks, so value positions at the fresh quote
+                RealTimeStockAPI.StockQuote quote = quotes.get(position.getSymbol());
+                double price = quote != null ? quote.getCurrentPrice() : position.getCurrentPrice();
+                totalValue += position.getQuantity() * price * fx;
+
+                // Calculate today's P&L as change from previous close
+                if (quote != null) {
+                    double currentPrice = quote.getCurrentPrice();
+                    double previousClose = quote.getPreviousClose();
+                    todaysPnL += (currentPrice - previousClose) * position.getQuantity() * fx;
+                } else {
+                    // Fallback: if no quote, use unrealized P&L as approximation
+                    double currentValue = position.getQuantity() * position.getCurrentPrice();
+                    double costBasis = position.getQuantity() * position.getAverageCost();
+                    todaysPnL += (currentValue - costBasis) * fx;
                 }
+            }
 
+            for (com.stockportfolio.model.Portfolio portfolio : portfolios) {
                 // Count total trades
                 List<com.stockportfolio.model.Transaction> transactions = dbManager.getTransactionsByPortfolioId(portfolio.getId());
                 totalTrades += transactions.size();
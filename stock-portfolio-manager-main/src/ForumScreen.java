@@ -373,8 +373,8 @@ public class ForumScreen extends JPanel {
 
                 dbManager.saveForumComment(comment);
 
+                dbManager.incrementForumPostCommentCount(selectedPost.getId());
                 selectedPost.setCommentCount(selectedPost.getCommentCount() + 1);
-                dbManager.updateForumPost(selectedPost);
 
                 dialog.dispose();
                 loadCommentsForPost(selectedPost.getId());
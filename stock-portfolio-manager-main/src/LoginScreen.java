@@ -1,6 +1,6 @@
 import javax.swing.*;
 
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.utils.Logger;
 import com.stockportfolio.model.User;
 import java.awt.*;
@@ -10,7 +10,7 @@ import java.time.LocalDateTime;
 
 public class LoginScreen extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private JTextField usernameField;
     private JPasswordField passwordField;
     private JButton loginButton;
@@ -19,7 +19,7 @@ public class LoginScreen extends JPanel {
     private static final int MAX_FAILED_ATTEMPTS = 5;
     private static final int LOCK_DURATION_MINUTES = 15;
 
-    public LoginScreen(App app, DatabaseManager dbManager) {
+    public LoginScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
         initializeUI();
@@ -2,22 +2,46 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JPanel;
 
 import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.PortfolioValueSnapshot;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.services.analytics.AIAnalytics;
 
 public class PerformanceComparisonPanel extends JPanel {
+    private static final int HISTORY_DAYS = 30;
+
     private List<Portfolio> portfolios;
+    private DataStore dbManager;
+    private AIAnalytics aiAnalytics;
+    private Map<Integer, List<PortfolioValueSnapshot>> histories;
 
-    public PerformanceComparisonPanel() {
+    public PerformanceComparisonPanel(DataStore dbManager) {
+        this.dbManager = dbManager;
+        this.aiAnalytics = new AIAnalytics();
         this.portfolios = null;
+        this.histories = new HashMap<>();
         setBackground(Color.WHITE);
     }
 
     public void setPortfolios(List<Portfolio> portfolios) {
         this.portfolios = portfolios;
+        histories.clear();
+        LocalDateTime now = LocalDateTime.now();
+        for (Portfolio portfolio : portfolios) {
+            try {
+                histories.put(portfolio.getId(), dbManager.getPortfolioValueHistory(portfolio.getId(), now.minusDays(HISTORY_DAYS), now));
+            } catch (SQLException e) {
+                System.err.println("Error loading value history for portfolio " + portfolio.getId() + ": " + e.getMessage());
+            }
+        }
         repaint();
     }
 
@@ -36,8 +60,10 @@ public class PerformanceComparisonPanel extends JPanel {
         int width = getWidth();
         int height = getHeight();
 
-        // Draw performance bar chart
-        drawPerformanceChart(g2d, 50, 50, width - 100, height - 100);
+        // Draw performance bar chart above the equity curves
+        int chartHeight = (height - 100) / 2;
+        drawPerformanceChart(g2d, 50, 50, width - 100, chartHeight);
+        drawEquityCurves(g2d, 50, 100 + chartHeight, width - 100, chartHeight - 20);
     }
 
     private void drawPerformanceChart(Graphics2D g2d, int x, int y, int width, int height) {
@@ -83,4 +109,60 @@ public class PerformanceComparisonPanel extends JPanel {
         g2d.drawLine(x, y, x, y + chartHeight);
         g2d.drawLine(x, y + chartHeight, x + width, y + chartHeight);
     }
+
+    private void drawEquityCurves(Graphics2D g2d, int x, int y, int width, int height) {
+        g2d.setColor(Color.BLACK);
+        g2d.drawString("Value over the last " + HISTORY_DAYS + " days", x, y - 10);
+
+        // Shared time axis across all selected portfolios
+        LocalDateTime start = null;
+        LocalDateTime end = null;
+        double maxValue = 0;
+        for (List<PortfolioValueSnapshot> history : histories.values()) {
+            for (PortfolioValueSnapshot snapshot : history) {
+                if (start == null || snapshot.getBucketStart().isBefore(start)) start = snapshot.getBucketStart();
+                if (end == null || snapshot.getBucketStart().isAfter(end)) end = snapshot.getBucketStart();
+                maxValue = Math.max(maxValue, snapshot.getHighValue());
+            }
+        }
+        if (start == null || maxValue <= 0) {
+            g2d.drawString("No value history recorded yet", x, y + 20);
+            return;
+        }
+        double span = Math.max(1, java.time.Duration.between(start, end).getSeconds());
+
+        g2d.drawLine(x, y, x, y + height);
+        g2d.drawLine(x, y + height, x + width, y + height);
+        g2d.drawString(String.format("%.0f", maxValue), x - 45, y + 5);
+
+        Color[] colors = {Color.BLUE, Color.GREEN, Color.ORANGE, Color.RED, Color.MAGENTA};
+        int colorIndex = 0;
+        int legendY = y + 15;
+        for (Portfolio portfolio : portfolios) {
+            List<PortfolioValueSnapshot> history = histories.get(portfolio.getId());
+            Color color = colors[colorIndex++ % colors.length];
+            if (history == null || history.isEmpty()) {
+                continue;
+            }
+
+            g2d.setColor(color);
+            int prevX = -1;
+            int prevY = -1;
+            for (PortfolioValueSnapshot snapshot : history) {
+                int px = x + (int) (java.time.Duration.between(start, snapshot.getBucketStart()).getSeconds() / span * width);
+                int py = y + height - (int) (snapshot.getCloseValue() / maxValue * height);
+                if (prevX >= 0) {
+                    g2d.drawLine(prevX, prevY, px, py);
+                }
+                prevX = px;
+                prevY = py;
+            }
+
+            AIAnalytics.PerformanceMetrics metrics = aiAnalytics.analyzePerformance(history);
+            g2d.drawString(String.format("%s: return %.1f%%, volatility %.1f%%, max drawdown %.1f%%",
+                    portfolio.getName(), metrics.getTotalReturn() * 100, metrics.getVolatility() * 100,
+                    metrics.getMaxDrawdown() * 100), x + 10, legendY);
+            legendY += 15;
+        }
+    }
 }
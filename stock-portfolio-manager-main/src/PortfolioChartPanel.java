@@ -11,12 +11,12 @@ import javax.swing.JPanel;
 
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Position;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.services.analytics.AIAnalytics;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class PortfolioChartPanel extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private AIAnalytics aiAnalytics;
 
     private Map<String, Double> portfolioWeights;
@@ -35,7 +35,7 @@ public class PortfolioChartPanel extends JPanel {
         this.app = app;
     }
 
-    public void setDbManager(DatabaseManager dbManager) {
+    public void setDbManager(DataStore dbManager) {
         this.dbManager = dbManager;
     }
 
@@ -20,12 +20,12 @@ import javax.swing.table.DefaultTableModel;
 
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Position;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.services.analytics.AIAnalytics;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class PortfolioComparisonDialog extends JDialog {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private AIAnalytics aiAnalytics;
 
     private JTabbedPane tabbedPane;
@@ -38,7 +38,7 @@ public class PortfolioComparisonDialog extends JDialog {
     private RiskComparisonPanel riskPanel;
     private AllocationComparisonPanel allocationPanel;
 
-    public PortfolioComparisonDialog(App app, DatabaseManager dbManager) {
+    public PortfolioComparisonDialog(App app, DataStore dbManager) {
         super(app, "Portfolio Comparison", true);
         this.app = app;
         this.dbManager = dbManager;
@@ -67,7 +67,7 @@ public class PortfolioComparisonDialog extends JDialog {
         tabbedPane.addTab("Overview", overviewPanel);
 
         // Performance Comparison Tab
-        performancePanel = new PerformanceComparisonPanel();
+        performancePanel = new PerformanceComparisonPanel(dbManager);
         tabbedPane.addTab("Performance", performancePanel);
 
         // Risk Analysis Tab
@@ -68,7 +68,7 @@ public class PortfolioComparisonDialog_ENHANCED extends JDialog {
         tabbedPane.addTab("Overview", overviewPanel);
 
         // Performance Comparison Tab
-        performancePanel = new PerformanceComparisonPanel();
+        performancePanel = new PerformanceComparisonPanel(dbManager);
         tabbedPane.addTab("Performance", performancePanel);
 
         // Risk Analysis Tab
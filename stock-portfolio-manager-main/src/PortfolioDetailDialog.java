@@ -20,12 +20,13 @@ import javax.swing.table.DefaultTableModel;
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Position;
 import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.services.StatementImporter;
 import com.stockportfolio.services.analytics.AIAnalytics;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class PortfolioDetailDialog extends JDialog {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private AIAnalytics aiAnalytics;
     private int portfolioId;
     private String portfolioName;
@@ -37,7 +38,7 @@ public class PortfolioDetailDialog extends JDialog {
     private JTable positionsTable;
     private JTextArea rebalancingArea;
 
-    public PortfolioDetailDialog(App app, DatabaseManager dbManager, int portfolioId, String portfolioName) {
+    public PortfolioDetailDialog(App app, DataStore dbManager, int portfolioId, String portfolioName) {
         super(app, "Portfolio Details: " + portfolioName, true);
         this.app = app;
         this.dbManager = dbManager;
@@ -88,6 +89,15 @@ public class PortfolioDetailDialog extends JDialog {
         refreshButton.addActionListener(e -> loadPortfolioData());
         buttonPanel.add(refreshButton);
 
+        JButton importButton = new JButton("Import Statement");
+        importButton.addActionListener(e -> {
+            if (app.getCurrentUser() != null) {
+                new StatementImporter(dbManager).importBrokerStatement(this, app.getCurrentUser().getId(),
+                        portfolioId, this::loadPortfolioData);
+            }
+        });
+        buttonPanel.add(importButton);
+
         JButton closeButton = new JButton("Close");
         closeButton.addActionListener(e -> dispose());
         buttonPanel.add(closeButton);
@@ -297,6 +307,8 @@ public class PortfolioDetailDialog extends JDialog {
             }
 
             try {
+                // Positions are written with compare-and-set; each change is re-applied to a
+                // fresh read if a trade or price update got to the position first
                 List<Position> positions = dbManager.getPositionsByPortfolioId(portfolioId);
                 double totalValue = positions.stream()
                         .mapToDouble(p -> p.getQuantity() * getCurrentPrice(p.getSymbol()))
@@ -325,7 +337,7 @@ public class PortfolioDetailDialog extends JDialog {
                         position.setPortfolioId(portfolioId);
                         position.setSymbol(symbol);
                         position.setQuantity(0);
-                        position.setAveragePrice(currentPrice);
+                        position.setAverageCost(currentPrice);
                     }
 
                     if (position == null) {
@@ -352,37 +364,19 @@ public class PortfolioDetailDialog extends JDialog {
 
                     dbManager.saveTransaction(transaction);
 
-                    // Update position quantity and average price
-                    if ("BUY".equals(action)) {
-                        double totalCost = position.getAveragePrice() * position.getQuantity() + quantity * currentPrice;
-                        double newQuantity = position.getQuantity() + quantity;
-                        position.setAveragePrice(totalCost / newQuantity);
-                        position.setQuantity(newQuantity);
-                    } else if ("SELL".equals(action)) {
-                        double newQuantity = position.getQuantity() - quantity;
-                        if (newQuantity <= 0) {
-                            // Remove position if quantity zero or less
-                            dbManager.deletePosition(position.getId());
-                            continue;
-                        } else {
-                            position.setQuantity(newQuantity);
+                    if (position.getId() == 0) {
+                        applyRebalanceTrade(position, action, quantity, currentPrice);
+                        dbManager.savePosition(position);
+                    } else {
+                        Position written = dbManager.updatePositionWithRetry(position.getId(),
+                                current -> applyRebalanceTrade(current, action, quantity, currentPrice));
+                        if (written != null && written.getQuantity() <= 0) {
+                            // Remove position if quantity zero or less, unless a trade has refilled it since
+                            dbManager.deleteEmptyPositionWithRetry(written.getId());
                         }
                     }
-
-                    position.setCurrentPrice(currentPrice);
-                    position.setTotalValue(position.getQuantity() * currentPrice);
-                    position.setLastUpdated(java.time.LocalDateTime.now());
-
-                    dbManager.updatePosition(position);
                 }
-
-                // Update portfolio totals
-                double newTotalValue = dbManager.getPositionsByPortfolioId(portfolioId).stream()
-                        .mapToDouble(p -> p.getQuantity() * getCurrentPrice(p.getSymbol()))
-                        .sum();
-                portfolio.setTotalValue(newTotalValue);
-                portfolio.setUpdatedAt(java.time.LocalDateTime.now());
-                dbManager.updatePortfolio(portfolio);
+                // Portfolio totals follow each position write; no recompute needed
 
                 JOptionPane.showMessageDialog(this,
                         "Rebalancing orders have been generated and saved.\n" +
@@ -399,6 +393,21 @@ public class PortfolioDetailDialog extends JDialog {
         }
     }
 
+    // Update position quantity and average cost for one rebalancing order
+    private static void applyRebalanceTrade(Position position, String action, double quantity, double price) {
+        if ("BUY".equals(action)) {
+            double totalCost = position.getAverageCost() * position.getQuantity() + quantity * price;
+            double newQuantity = position.getQuantity() + quantity;
+            position.setAverageCost(totalCost / newQuantity);
+            position.setQuantity(newQuantity);
+        } else if ("SELL".equals(action)) {
+            position.setQuantity(Math.max(0, position.getQuantity() - quantity));
+        }
+        position.setCurrentPrice(price);
+        position.setTotalValue(position.getQuantity() * price);
+        position.setLastUpdated(java.time.LocalDateTime.now());
+    }
+
     private double getCurrentPrice(String symbol) {
         // Mock current price - in real app, this would call RealTimeStockAPI
         return 100 + Math.random() * 100; // Random price between 100-200
@@ -15,11 +15,13 @@ import javax.swing.SwingConstants;
 import javax.swing.table.DefaultTableModel;
 
 import com.stockportfolio.model.Portfolio;
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.services.ExportService;
+import com.stockportfolio.services.SnapshotImporter;
 
 public class PortfolioScreen extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private JTable portfolioTable;
     private DefaultTableModel tableModel;
     private JButton createButton;
@@ -27,7 +29,7 @@ public class PortfolioScreen extends JPanel {
     private JButton deleteButton;
     private JButton viewButton;
 
-    public PortfolioScreen(App app, DatabaseManager dbManager) {
+    public PortfolioScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
         initializeUI();
@@ -88,6 +90,14 @@ public class PortfolioScreen extends JPanel {
         compareButton.addActionListener(e -> comparePortfolios());
         controlPanel.add(compareButton);
 
+        JButton exportSnapshotButton = new JButton("Export Snapshot");
+        exportSnapshotButton.addActionListener(e -> exportSnapshot());
+        controlPanel.add(exportSnapshotButton);
+
+        JButton importSnapshotButton = new JButton("Import Snapshot");
+        importSnapshotButton.addActionListener(e -> importSnapshot());
+        controlPanel.add(importSnapshotButton);
+
         JButton backButton = new JButton("Back to Dashboard");
         backButton.addActionListener(e -> app.showScreen("DASHBOARD"));
         controlPanel.add(backButton);
@@ -196,10 +206,11 @@ public class PortfolioScreen extends JPanel {
             }
 
             try {
-                Portfolio portfolio = dbManager.getPortfolioById(portfolioId);
-                portfolio.setName(name);
-                portfolio.setDescription(description.isEmpty() ? null : description);
-                dbManager.updatePortfolio(portfolio);
+                // Another edit of the name or description may land first; reapply ours on top of it
+                dbManager.updatePortfolioWithRetry(portfolioId, portfolio -> {
+                    portfolio.setName(name);
+                    portfolio.setDescription(description.isEmpty() ? null : description);
+                });
                 loadPortfolios();
                 JOptionPane.showMessageDialog(this, "Portfolio updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
             } catch (SQLException e) {
@@ -256,4 +267,16 @@ public class PortfolioScreen extends JPanel {
         PortfolioComparisonDialog comparisonDialog = new PortfolioComparisonDialog(app, dbManager);
         comparisonDialog.setVisible(true);
     }
+
+    private void exportSnapshot() {
+        if (app.getCurrentUser() != null) {
+            new ExportService(dbManager).exportSnapshot(app.getCurrentUser().getId());
+        }
+    }
+
+    private void importSnapshot() {
+        if (app.getCurrentUser() != null) {
+            new SnapshotImporter(dbManager).importSnapshot(this, app.getCurrentUser().getId(), this::loadPortfolios);
+        }
+    }
 }
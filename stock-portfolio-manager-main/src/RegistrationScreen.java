@@ -4,13 +4,13 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.regex.Pattern;
 
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.utils.Logger;
 import com.stockportfolio.model.User;
 
 public class RegistrationScreen extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
 
     private JTextField usernameField;
     private JTextField emailField;
@@ -18,7 +18,7 @@ public class RegistrationScreen extends JPanel {
     private JPasswordField confirmPasswordField;
     private JButton registerButton;
 
-    public RegistrationScreen(App app, DatabaseManager dbManager) {
+    public RegistrationScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
         initializeUI();
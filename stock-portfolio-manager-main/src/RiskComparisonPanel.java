@@ -10,15 +10,15 @@ import javax.swing.JPanel;
 
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Position;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.services.analytics.AIAnalytics;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class RiskComparisonPanel extends JPanel {
     private List<Portfolio> portfolios;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private AIAnalytics aiAnalytics;
 
-    public RiskComparisonPanel(DatabaseManager dbManager) {
+    public RiskComparisonPanel(DataStore dbManager) {
         this.dbManager = dbManager;
         this.aiAnalytics = new AIAnalytics();
         this.portfolios = null;
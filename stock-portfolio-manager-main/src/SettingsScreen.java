@@ -13,11 +13,11 @@ import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 
 import com.stockportfolio.model.User;
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.repository.DataStore;
 
 public class SettingsScreen extends JPanel implements ThemeChangeListener {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
 
     private JButton toggleThemeButton;
     private JLabel themeStatusLabel;
@@ -25,7 +25,7 @@ public class SettingsScreen extends JPanel implements ThemeChangeListener {
     private JTextField emailField;
     private JButton saveUserInfoButton;
 
-    public SettingsScreen(App app, DatabaseManager dbManager) {
+    public SettingsScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
         initializeUI();
@@ -15,7 +15,7 @@ import javax.swing.JPanel;
 
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.SharedPortfolio;
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.repository.DataStore;
 
 public class SharePortfolioDialog extends JDialog {
     private App app;
@@ -74,7 +74,7 @@ public class SharePortfolioDialog extends JDialog {
                 dispose();
                 return;
             }
-            DatabaseManager db = DatabaseManager.getInstance();
+            DataStore db = app.getDataStore();
             List<Portfolio> portfolios = db.getPortfoliosByUserId(app.getCurrentUser().getId());
             for (Portfolio portfolio : portfolios) {
                 portfolioComboBox.addItem(portfolio);
@@ -99,7 +99,7 @@ public class SharePortfolioDialog extends JDialog {
         boolean isPublic = publicCheckBox.isSelected();
 
         try {
-            DatabaseManager db = DatabaseManager.getInstance();
+            DataStore db = app.getDataStore();
             // Check if already shared
             if (db.isPortfolioShared(selectedPortfolio.getId())) {
                 JOptionPane.showMessageDialog(this, "This portfolio is already shared.");
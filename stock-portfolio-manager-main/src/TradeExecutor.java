@@ -2,19 +2,19 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.List;
 
-import com.stockportfolio.model.Portfolio;
-import com.stockportfolio.model.Position;
 import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.services.FxRateService;
 import com.stockportfolio.services.api.RealTimeStockAPI;
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.utils.PortfolioLocks;
 
 public class TradeExecutor {
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private RealTimeStockAPI stockAPI;
 
-    public TradeExecutor(DatabaseManager dbManager) {
+    public TradeExecutor(DataStore dbManager) {
         this.dbManager = dbManager;
-        this.stockAPI = new RealTimeStockAPI();
+        this.stockAPI = new RealTimeStockAPI(dbManager);
     }
 
     /**
@@ -38,12 +38,6 @@ public class TradeExecutor {
             double price = quote.getCurrentPrice();
             double totalAmount = Math.abs(quantity) * price;
 
-            // Validate trade
-            if (!validateTrade(userId, portfolioId, symbol, quantity, totalAmount)) {
-                System.err.println("Trade validation failed");
-                return null;
-            }
-
             // Create transaction record
             Transaction transaction = new Transaction();
             transaction.setUserId(userId);
@@ -57,11 +51,12 @@ public class TradeExecutor {
             transaction.setTimestamp(LocalDateTime.now());
             transaction.setStatus("COMPLETED");
 
-            // Save transaction to database
-            dbManager.saveTransaction(transaction);
-
-            // Update portfolio positions
-            updatePortfolioPositions(portfolioId, symbol, quantity, price);
+            // Validate, save the transaction, update the position and portfolio totals
+            // atomically on one connection; nothing is written if any step fails.
+            // Trades on the same portfolio are applied one at a time, in arrival order
+            java.util.function.ToDoubleFunction<String> fxFactors = fxFactorLookup();
+            PortfolioLocks.getInstance().withLock(portfolioId,
+                    () -> dbManager.executeTradeTransaction(transaction, fxFactors));
 
             // Update user statistics
             updateUserStatistics(userId, transaction);
@@ -79,121 +74,15 @@ public class TradeExecutor {
     }
 
     /**
-     * Validate if a trade can be executed
-     */
-    private boolean validateTrade(int userId, int portfolioId, String symbol, double quantity, double totalAmount) throws SQLException {
-        // Check if portfolio exists and belongs to user
-        Portfolio portfolio = dbManager.getPortfolioById(portfolioId);
-        if (portfolio == null || portfolio.getUserId() != userId) {
-            System.err.println("Invalid portfolio or user access");
-            return false;
-        }
-
-        // For sell orders, check if user has sufficient position
-        if (quantity < 0) {
-            List<Position> positions = dbManager.getPositionsByPortfolioId(portfolioId);
-            double currentPosition = 0;
-            for (Position pos : positions) {
-                if (pos.getSymbol().equals(symbol)) {
-                    currentPosition = pos.getQuantity();
-                    break;
-                }
-            }
-
-            if (Math.abs(quantity) > currentPosition) {
-                System.err.println("Insufficient position for sell order. Current: " + currentPosition + ", Requested: " + Math.abs(quantity));
-                return false;
-            }
-        }
-
-        // Additional validation logic can be added here
-        // e.g., account balance checks, trading limits, etc.
-
-        return true;
-    }
-
-    /**
-     * Update portfolio positions after a trade
-     */
-    private void updatePortfolioPositions(int portfolioId, String symbol, double quantity, double price) throws SQLException {
-        List<Position> positions = dbManager.getPositionsByPortfolioId(portfolioId);
-        Position existingPosition = null;
-
-        // Find existing position
-        for (Position pos : positions) {
-            if (pos.getSymbol().equals(symbol)) {
-                existingPosition = pos;
-                break;
-            }
-        }
-
-        if (existingPosition == null) {
-            // Create new position for buy orders
-            if (quantity > 0) {
-                Position newPosition = new Position();
-                newPosition.setPortfolioId(portfolioId);
-                newPosition.setSymbol(symbol);
-                newPosition.setAssetType("stock");
-                newPosition.setQuantity(quantity);
-                newPosition.setAverageCost(price);
-                newPosition.setCurrentPrice(price);
-                newPosition.setTotalValue(quantity * price);
-                newPosition.setCreatedAt(LocalDateTime.now());
-                newPosition.setUpdatedAt(LocalDateTime.now());
-                newPosition.setLastUpdated(LocalDateTime.now());
-
-                dbManager.savePosition(newPosition);
-            }
-        } else {
-            // Update existing position
-            double newQuantity = existingPosition.getQuantity() + quantity;
-
-            if (newQuantity <= 0) {
-                // Close position if quantity becomes zero or negative
-                dbManager.deletePosition(existingPosition.getId());
-            } else {
-                // Update position with new average cost
-                double totalCost = (existingPosition.getQuantity() * existingPosition.getAverageCost()) +
-                                 (quantity * price);
-                double newAverageCost = totalCost / newQuantity;
-
-                existingPosition.setQuantity(newQuantity);
-                existingPosition.setAverageCost(newAverageCost);
-                existingPosition.setCurrentPrice(price);
-                existingPosition.setTotalValue(newQuantity * price);
-                existingPosition.setUpdatedAt(LocalDateTime.now());
-                existingPosition.setLastUpdated(LocalDateTime.now());
-
-                dbManager.updatePosition(existingPosition);
-            }
-        }
-
-        // Update portfolio totals
-        updatePortfolioTotals(portfolioId);
-    }
-
-    /**
-     * Update portfolio total values
+     * Symbol to base-currency multiplier for portfolio totals
      */
-    private void updatePortfolioTotals(int portfolioId) throws SQLException {
-        Portfolio portfolio = dbManager.getPortfolioById(portfolioId);
-        if (portfolio == null) return;
-
-        List<Position> positions = dbManager.getPositionsByPortfolioId(portfolioId);
-        double totalValue = 0.0;
-        double totalCostBasis = 0.0;
-
-        for (Position pos : positions) {
-            totalValue += pos.getTotalValue();
-            totalCostBasis += pos.getQuantity() * pos.getAverageCost();
-        }
-
-        portfolio.setTotalValue(totalValue);
-        portfolio.setTotalCostBasis(totalCostBasis);
-        portfolio.setTotalPnL(totalValue - totalCostBasis);
-        portfolio.setUpdatedAt(LocalDateTime.now());
-
-        dbManager.updatePortfolio(portfolio);
+    private java.util.function.ToDoubleFunction<String> fxFactorLookup() throws SQLException {
+        // Positions are priced in their listing currency; totals are kept in the base currency
+        FxRateService fxRateService = FxRateService.getInstance();
+        java.util.Map<String, String> currencies = dbManager.getStockCurrencies();
+        double[] fxFactors = fxRateService.crossRates(FxRateService.DEFAULT_BASE_CURRENCY);
+        return symbol -> fxRateService.factor(fxFactors,
+                fxRateService.currencyId(currencies.getOrDefault(symbol, FxRateService.DEFAULT_BASE_CURRENCY)));
     }
 
     /**
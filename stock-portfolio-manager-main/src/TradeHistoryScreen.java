@@ -14,18 +14,27 @@ import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableModel;
 
 import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.services.ExportService;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class TradeHistoryScreen extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
+
+    private static final int PAGE_SIZE = 200;
 
     private JTable tradeTable;
     private DefaultTableModel tableModel;
     private JButton refreshButton;
+    private JButton loadMoreButton;
+
+    // Keyset paging state, only touched on the EDT
+    private Transaction lastLoaded;
+    private boolean hasMore;
+    private boolean loading;
+    private int loadGeneration;
 
-    public TradeHistoryScreen(App app, DatabaseManager dbManager) {
+    public TradeHistoryScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
         initializeUI();
@@ -53,6 +62,13 @@ public class TradeHistoryScreen extends JPanel {
         tradeTable = new JTable(tableModel);
         tradeTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         JScrollPane scrollPane = new JScrollPane(tradeTable);
+        // Fetch the next page when the user scrolls near the bottom
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            javax.swing.BoundedRangeModel model = scrollPane.getVerticalScrollBar().getModel();
+            if (!e.getValueIsAdjusting() && model.getValue() + model.getExtent() >= model.getMaximum() - 20) {
+                loadNextPage();
+            }
+        });
         add(scrollPane, BorderLayout.CENTER);
 
         // Control panel
@@ -61,6 +77,11 @@ public class TradeHistoryScreen extends JPanel {
         refreshButton.addActionListener(e -> loadTradeHistory());
         controlPanel.add(refreshButton);
 
+        loadMoreButton = new JButton("Load More");
+        loadMoreButton.setEnabled(false);
+        loadMoreButton.addActionListener(e -> loadNextPage());
+        controlPanel.add(loadMoreButton);
+
         JButton exportCsvButton = new JButton("Export to CSV");
         exportCsvButton.addActionListener(e -> {
             if (app.getCurrentUser() == null) {
@@ -81,27 +102,46 @@ public class TradeHistoryScreen extends JPanel {
     }
 
     private void loadTradeHistory() {
+        // Clear existing data and start again from the newest trade
+        tableModel.setRowCount(0);
+        lastLoaded = null;
+        hasMore = true;
+        loading = false;
+        loadGeneration++;
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (loading || !hasMore) {
+            return;
+        }
+        loading = true;
         refreshButton.setEnabled(false);
         refreshButton.setText("Loading...");
+        loadMoreButton.setEnabled(false);
 
-        // Clear existing data
-        tableModel.setRowCount(0);
+        final Transaction after = lastLoaded;
+        final int generation = loadGeneration;
+        final boolean firstPage = after == null;
 
-        // Load trade history in background thread
+        // Load the page in background thread
         new Thread(() -> {
             try {
                 if (app.getCurrentUser() == null) {
                     SwingUtilities.invokeLater(() -> {
-                        refreshButton.setEnabled(true);
-                        refreshButton.setText("Refresh History");
+                        finishLoading(false);
                         Object[] errorRow = {"No user logged in", "", "", "", "", "", "", ""};
                         tableModel.addRow(errorRow);
                     });
                     return;
                 }
-                List<Transaction> transactions = dbManager.getTransactionsByUserId(app.getCurrentUser().getId());
+                List<Transaction> transactions = dbManager.getTransactionsPageByUserId(
+                        app.getCurrentUser().getId(), after, PAGE_SIZE);
 
                 SwingUtilities.invokeLater(() -> {
+                    if (generation != loadGeneration) {
+                        return; // A refresh started while this page was loading
+                    }
                     for (Transaction transaction : transactions) {
                         Object[] rowData = {
                                 transaction.getTimestamp().toString(),
@@ -115,11 +155,12 @@ public class TradeHistoryScreen extends JPanel {
                         };
                         tableModel.addRow(rowData);
                     }
+                    if (!transactions.isEmpty()) {
+                        lastLoaded = transactions.get(transactions.size() - 1);
+                    }
+                    finishLoading(transactions.size() == PAGE_SIZE);
 
-                    refreshButton.setEnabled(true);
-                    refreshButton.setText("Refresh History");
-
-                    if (transactions.isEmpty()) {
+                    if (firstPage && transactions.isEmpty()) {
                         // Show message if no trades
                         Object[] emptyRow = {"No trades found", "", "", "", "", "", "", ""};
                         tableModel.addRow(emptyRow);
@@ -128,12 +169,22 @@ public class TradeHistoryScreen extends JPanel {
 
             } catch (SQLException e) {
                 SwingUtilities.invokeLater(() -> {
-                    refreshButton.setEnabled(true);
-                    refreshButton.setText("Refresh History");
+                    if (generation != loadGeneration) {
+                        return;
+                    }
+                    finishLoading(false);
                     Object[] errorRow = {"Error loading trade history: " + e.getMessage(), "", "", "", "", "", "", ""};
                     tableModel.addRow(errorRow);
                 });
             }
         }).start();
     }
+
+    private void finishLoading(boolean morePages) {
+        loading = false;
+        hasMore = morePages;
+        refreshButton.setEnabled(true);
+        refreshButton.setText("Refresh History");
+        loadMoreButton.setEnabled(morePages);
+    }
 }
@@ -19,12 +19,12 @@ import javax.swing.table.DefaultTableModel;
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.Stock;
 import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.services.api.RealTimeStockAPI;
-import com.stockportfolio.utils.DatabaseManager;
 
 public class TradingScreen extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private TradeExecutor tradeExecutor;
     private RealTimeStockAPI realTimeStockAPI;
 
@@ -39,7 +39,7 @@ public class TradingScreen extends JPanel {
     private JButton sellButton;
     private JButton refreshButton;
 
-    public TradingScreen(App app, DatabaseManager dbManager, RealTimeStockAPI realTimeStockAPI) {
+    public TradingScreen(App app, DataStore dbManager, RealTimeStockAPI realTimeStockAPI) {
         this.app = app;
         this.dbManager = dbManager;
         this.tradeExecutor = new TradeExecutor(dbManager);
@@ -13,17 +13,17 @@ import javax.swing.table.DefaultTableModel;
 
 import com.stockportfolio.model.Stock;
 import com.stockportfolio.model.WatchlistItem;
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.repository.DataStore;
 
 public class WatchlistScreen extends JPanel {
     private App app;
-    private DatabaseManager dbManager;
+    private DataStore dbManager;
     private JTable watchlistTable;
     private DefaultTableModel tableModel;
     private JButton addButton;
     private JButton removeButton;
 
-    public WatchlistScreen(App app, DatabaseManager dbManager) {
+    public WatchlistScreen(App app, DataStore dbManager) {
         this.app = app;
         this.dbManager = dbManager;
         initializeUI();
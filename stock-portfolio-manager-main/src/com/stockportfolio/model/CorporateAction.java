@@ -0,0 +1,51 @@
+package com.stockportfolio.model;
+
+import java.time.LocalDate;
+
+public class CorporateAction {
+    public static final String TYPE_SPLIT = "SPLIT";
+    public static final String TYPE_DIVIDEND = "DIVIDEND";
+
+    private int id;
+    private String symbol;
+    private String actionType;
+    private LocalDate exDate;
+    private double ratio;
+    private double amount;
+    private double priceFactor;
+
+    public CorporateAction() {}
+
+    public CorporateAction(String symbol, String actionType, LocalDate exDate) {
+        this.symbol = symbol;
+        this.actionType = actionType;
+        this.exDate = exDate;
+    }
+
+    // Getters and setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public String getSymbol() { return symbol; }
+    public void setSymbol(String symbol) { this.symbol = symbol; }
+
+    public String getActionType() { return actionType; }
+    public void setActionType(String actionType) { this.actionType = actionType; }
+
+    public LocalDate getExDate() { return exDate; }
+    public void setExDate(LocalDate exDate) { this.exDate = exDate; }
+
+    // Split ratio as new shares per old share (2.0 for a 2-for-1 split)
+    public double getRatio() { return ratio; }
+    public void setRatio(double ratio) { this.ratio = ratio; }
+
+    // Cash dividend per share
+    public double getAmount() { return amount; }
+    public void setAmount(double amount) { this.amount = amount; }
+
+    // Multiplier applied to prices dated before the ex-date
+    public double getPriceFactor() { return priceFactor; }
+    public void setPriceFactor(double priceFactor) { this.priceFactor = priceFactor; }
+
+    public boolean isSplit() { return TYPE_SPLIT.equals(actionType); }
+}
@@ -15,6 +15,7 @@ public class Portfolio {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private List<Position> positions;
+    private long version;
 
     public Portfolio() {}
 
@@ -48,6 +49,10 @@ public class Portfolio {
     public double getTotalCostBasis() { return totalCostBasis; }
     public void setTotalCostBasis(double totalCostBasis) { this.totalCostBasis = totalCostBasis; }
 
+    /** Row version read with the portfolio; updates succeed only if it is still current. */
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
     public double getTotalCost() { return totalCost; }
     public void setTotalCost(double totalCost) { this.totalCost = totalCost; }
 
@@ -0,0 +1,52 @@
+package com.stockportfolio.model;
+
+import java.time.LocalDateTime;
+
+public class PortfolioValueSnapshot {
+    public static final String RESOLUTION_MINUTE = "MINUTE";
+    public static final String RESOLUTION_HOUR = "HOUR";
+    public static final String RESOLUTION_DAY = "DAY";
+
+    private int portfolioId;
+    private String resolution;
+    private LocalDateTime bucketStart;
+    private double openValue;
+    private double highValue;
+    private double lowValue;
+    private double closeValue;
+    private double costBasis;
+    private int samples;
+
+    public PortfolioValueSnapshot() {}
+
+    // Getters and setters
+    public int getPortfolioId() { return portfolioId; }
+    public void setPortfolioId(int portfolioId) { this.portfolioId = portfolioId; }
+
+    public String getResolution() { return resolution; }
+    public void setResolution(String resolution) { this.resolution = resolution; }
+
+    public LocalDateTime getBucketStart() { return bucketStart; }
+    public void setBucketStart(LocalDateTime bucketStart) { this.bucketStart = bucketStart; }
+
+    // Portfolio value at the first, highest, lowest and last valuation in the bucket
+    public double getOpenValue() { return openValue; }
+    public void setOpenValue(double openValue) { this.openValue = openValue; }
+
+    public double getHighValue() { return highValue; }
+    public void setHighValue(double highValue) { this.highValue = highValue; }
+
+    public double getLowValue() { return lowValue; }
+    public void setLowValue(double lowValue) { this.lowValue = lowValue; }
+
+    public double getCloseValue() { return closeValue; }
+    public void setCloseValue(double closeValue) { this.closeValue = closeValue; }
+
+    // Cost basis at the last valuation in the bucket
+    public double getCostBasis() { return costBasis; }
+    public void setCostBasis(double costBasis) { this.costBasis = costBasis; }
+
+    // Number of valuations folded into the bucket
+    public int getSamples() { return samples; }
+    public void setSamples(int samples) { this.samples = samples; }
+}
@@ -18,6 +18,7 @@ public class Position {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private LocalDateTime lastUpdated;
+    private long version;
 
     public Position() {}
 
@@ -80,4 +81,8 @@ public class Position {
 
     public LocalDateTime getLastUpdated() { return lastUpdated != null ? lastUpdated : updatedAt; }
     public void setLastUpdated(LocalDateTime lastUpdated) { this.lastUpdated = lastUpdated; }
+
+    /** Row version read with the position; updates succeed only if it is still current. */
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
 }
@@ -15,6 +15,7 @@ public class Transaction {
     private LocalDateTime timestamp;
     private String status;
     private String notes;
+    private String importRef;
 
     public Transaction() {}
 
@@ -72,4 +73,8 @@ public class Transaction {
 
     public String getNotes() { return notes; }
     public void setNotes(String notes) { this.notes = notes; }
+
+    // Identifies the statement row a trade was imported from; null for trades entered here
+    public String getImportRef() { return importRef; }
+    public void setImportRef(String importRef) { this.importRef = importRef; }
 }
@@ -0,0 +1,56 @@
+package com.stockportfolio.model;
+
+import java.time.LocalDate;
+
+/**
+ * Completed trades of one symbol in one portfolio over one calendar month, kept for
+ * periods whose transactions have been archived.
+ */
+public class TransactionSummary {
+    private int userId;
+    private int portfolioId;
+    private String symbol;
+    private LocalDate periodStart;
+    private int buyCount;
+    private double buyQuantity;
+    private double buyAmount;
+    private int sellCount;
+    private double sellQuantity;
+    private double sellAmount;
+
+    public TransactionSummary() {}
+
+    // Getters and setters
+    public int getUserId() { return userId; }
+    public void setUserId(int userId) { this.userId = userId; }
+
+    public int getPortfolioId() { return portfolioId; }
+    public void setPortfolioId(int portfolioId) { this.portfolioId = portfolioId; }
+
+    public String getSymbol() { return symbol; }
+    public void setSymbol(String symbol) { this.symbol = symbol; }
+
+    // First day of the month covered
+    public LocalDate getPeriodStart() { return periodStart; }
+    public void setPeriodStart(LocalDate periodStart) { this.periodStart = periodStart; }
+
+    public int getBuyCount() { return buyCount; }
+    public void setBuyCount(int buyCount) { this.buyCount = buyCount; }
+
+    public double getBuyQuantity() { return buyQuantity; }
+    public void setBuyQuantity(double buyQuantity) { this.buyQuantity = buyQuantity; }
+
+    public double getBuyAmount() { return buyAmount; }
+    public void setBuyAmount(double buyAmount) { this.buyAmount = buyAmount; }
+
+    public int getSellCount() { return sellCount; }
+    public void setSellCount(int sellCount) { this.sellCount = sellCount; }
+
+    public double getSellQuantity() { return sellQuantity; }
+    public void setSellQuantity(double sellQuantity) { this.sellQuantity = sellQuantity; }
+
+    public double getSellAmount() { return sellAmount; }
+    public void setSellAmount(double sellAmount) { this.sellAmount = sellAmount; }
+
+    public double getNetQuantity() { return buyQuantity - sellQuantity; }
+}
@@ -0,0 +1,14 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+
+/**
+ * All application data behind one handle. {@link com.stockportfolio.utils.DatabaseManager}
+ * is the JDBC implementation and {@link InMemoryDataStore} keeps everything on the heap;
+ * {@link DataStores#open()} picks one at startup.
+ */
+public interface DataStore extends UserRepository, PortfolioRepository, PositionRepository, TransactionRepository,
+        StockRepository, WatchlistRepository, SocialRepository, ForumRepository {
+
+    void close() throws SQLException;
+}
@@ -0,0 +1,23 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+
+import com.stockportfolio.utils.DatabaseManager;
+
+/**
+ * Startup selection of the {@link DataStore} implementation.
+ */
+public final class DataStores {
+    // STOCKPORTFOLIO_STORAGE=memory keeps everything on the heap; anything else uses the database
+    private static final String STORAGE_ENV = "STOCKPORTFOLIO_STORAGE";
+
+    private DataStores() {}
+
+    public static DataStore open() throws SQLException {
+        String storage = System.getenv(STORAGE_ENV);
+        if (storage != null && "memory".equalsIgnoreCase(storage.trim())) {
+            return new InMemoryDataStore();
+        }
+        return DatabaseManager.getInstance();
+    }
+}
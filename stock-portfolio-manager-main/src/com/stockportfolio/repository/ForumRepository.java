@@ -0,0 +1,53 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import com.stockportfolio.model.ForumCategory;
+import com.stockportfolio.model.ForumComment;
+import com.stockportfolio.model.ForumPost;
+
+/**
+ * Forum categories, posts and comments.
+ */
+public interface ForumRepository {
+    void saveForumCategory(ForumCategory category) throws SQLException;
+
+    ForumCategory getForumCategoryById(int id) throws SQLException;
+
+    /** By name. */
+    List<ForumCategory> getAllForumCategories() throws SQLException;
+
+    void updateForumCategory(ForumCategory category) throws SQLException;
+
+    void deleteForumCategory(int id) throws SQLException;
+
+    void saveForumPost(ForumPost post) throws SQLException;
+
+    ForumPost getForumPostById(int id) throws SQLException;
+
+    /** Pinned first, then newest first. */
+    List<ForumPost> getForumPostsByCategoryId(int categoryId) throws SQLException;
+
+    /** Newest first. */
+    List<ForumPost> getForumPostsByUserId(int userId) throws SQLException;
+
+    void updateForumPost(ForumPost post) throws SQLException;
+
+    void incrementForumPostViewCount(int postId) throws SQLException;
+
+    void incrementForumPostCommentCount(int postId) throws SQLException;
+
+    void deleteForumPost(int id) throws SQLException;
+
+    void saveForumComment(ForumComment comment) throws SQLException;
+
+    ForumComment getForumCommentById(int id) throws SQLException;
+
+    /** Oldest first. */
+    List<ForumComment> getForumCommentsByPostId(int postId) throws SQLException;
+
+    void updateForumComment(ForumComment comment) throws SQLException;
+
+    void deleteForumComment(int id) throws SQLException;
+}
@@ -0,0 +1,1288 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import com.stockportfolio.model.ForumCategory;
+import com.stockportfolio.model.ForumComment;
+import com.stockportfolio.model.ForumPost;
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.PortfolioLike;
+import com.stockportfolio.model.PortfolioValueSnapshot;
+import com.stockportfolio.model.Position;
+import com.stockportfolio.model.SharedPortfolio;
+import com.stockportfolio.model.Stock;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.model.User;
+import com.stockportfolio.model.WatchlistItem;
+import com.stockportfolio.utils.FixedPoint;
+
+/**
+ * Heap-only {@link DataStore} for benchmarks and tests: no file I/O, nothing survives close.
+ *
+ * Rows live in concurrent maps keyed by id, with id sets per owner standing in for the
+ * JDBC indexes. Stored objects are private copies; reads hand out fresh copies with the
+ * same fields the JDBC row mappers fill, so callers cannot tell the two stores apart by
+ * mutating what they get back. Portfolio totals, trade execution and its sell checks
+ * follow DatabaseManager, serialized per portfolio. Like DatabaseManager without a
+ * currency converter, position writes apply no FX factor to the totals.
+ */
+public class InMemoryDataStore implements DataStore {
+    private static final Comparator<Transaction> TRANSACTION_ORDER =
+            Comparator.comparing(Transaction::getTimestamp).thenComparingInt(Transaction::getId);
+    // Full histories come back newest first, as DatabaseManager orders them
+    private static final Comparator<Transaction> NEWEST_FIRST = Comparator.comparing(Transaction::getTimestamp,
+            Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder())).thenComparingInt(Transaction::getId).reversed();
+
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final Map<String, Integer> userIdsByName = new ConcurrentHashMap<>();
+    // follower id in the high 32 bits, followed id in the low
+    private final Set<Long> follows = ConcurrentHashMap.newKeySet();
+
+    private final Map<Integer, Portfolio> portfolios = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> portfolioIdsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, Position> positions = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> positionIdsByPortfolio = new ConcurrentHashMap<>();
+    private final Map<Integer, Transaction> transactions = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> transactionIdsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> transactionIdsByPortfolio = new ConcurrentHashMap<>();
+    // Trades booked under each "portfolio id|import ref", and the import batch that booked them
+    private final Map<String, BookedImport> importsByRef = new ConcurrentHashMap<>();
+    // Trades inserted by each import batch
+    private final Map<String, Set<Integer>> transactionIdsByBatch = new ConcurrentHashMap<>();
+    // Value buckets per portfolio, keyed by resolution and bucket start; nothing records them here
+    private final Map<Integer, Map<String, PortfolioValueSnapshot>> valueSnapshots = new ConcurrentHashMap<>();
+
+    private final Map<String, Stock> stocks = new ConcurrentHashMap<>();
+    private final Map<String, String> currencies = new ConcurrentHashMap<>();
+    private final Map<Integer, WatchlistItem> watchlist = new ConcurrentHashMap<>();
+
+    private final Map<Integer, SharedPortfolio> sharedPortfolios = new ConcurrentHashMap<>();
+    private final Map<Integer, PortfolioLike> likes = new ConcurrentHashMap<>();
+
+    private final Map<Integer, ForumCategory> forumCategories = new ConcurrentHashMap<>();
+    private final Map<Integer, ForumPost> forumPosts = new ConcurrentHashMap<>();
+    private final Map<Integer, ForumComment> forumComments = new ConcurrentHashMap<>();
+
+    // Users
+    @Override
+    public void saveUser(User user) throws SQLException {
+        int id = nextId.getAndIncrement();
+        if (userIdsByName.putIfAbsent(user.getUsername(), id) != null) {
+            throw new SQLException("Username already exists: " + user.getUsername());
+        }
+        user.setId(id);
+        users.put(id, copy(user));
+    }
+
+    @Override
+    public User getUserByUsername(String username) {
+        Integer id = userIdsByName.get(username);
+        return id != null ? read(users.get(id), InMemoryDataStore::copy) : null;
+    }
+
+    @Override
+    public User getUserProfile(int userId) {
+        return read(users.get(userId), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        return readAll(users.values(), u -> true, InMemoryDataStore::copy, null);
+    }
+
+    @Override
+    public void updateUserLoginSecurity(int userId, int failedAttempts, LocalDateTime lockUntil) {
+        User user = users.get(userId);
+        if (user != null) {
+            synchronized (user) {
+                user.setFailedLoginAttempts(failedAttempts);
+                user.setAccountLockedUntil(lockUntil);
+            }
+        }
+    }
+
+    @Override
+    public void updateLastLogin(int userId) {
+        User user = users.get(userId);
+        if (user != null) {
+            synchronized (user) {
+                user.setLastLogin(LocalDateTime.now());
+            }
+        }
+    }
+
+    @Override
+    public void updateUserInfo(int userId, String username, String email) throws SQLException {
+        User user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        synchronized (user) {
+            if (!username.equals(user.getUsername())) {
+                if (userIdsByName.putIfAbsent(username, userId) != null) {
+                    throw new SQLException("Username already exists: " + username);
+                }
+                userIdsByName.remove(user.getUsername(), userId);
+            }
+            user.setUsername(username);
+            user.setEmail(email);
+        }
+    }
+
+    @Override
+    public void followUser(int followerId, int followedId) throws SQLException {
+        if (!follows.add(followKey(followerId, followedId))) {
+            throw new SQLException("Already following user " + followedId);
+        }
+    }
+
+    @Override
+    public void unfollowUser(int followerId, int followedId) {
+        follows.remove(followKey(followerId, followedId));
+    }
+
+    private static long followKey(int followerId, int followedId) {
+        return ((long) followerId << 32) | (followedId & 0xFFFFFFFFL);
+    }
+
+    // Portfolios
+    @Override
+    public void savePortfolio(Portfolio portfolio) {
+        int id = nextId.getAndIncrement();
+        portfolio.setId(id);
+        portfolio.setVersion(0);
+        portfolios.put(id, copy(portfolio));
+        index(portfolioIdsByUser, portfolio.getUserId(), id);
+    }
+
+    @Override
+    public Portfolio getPortfolioById(int id) {
+        return read(portfolios.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<Portfolio> getPortfoliosByUserId(int userId) {
+        return readIndexed(portfolioIdsByUser, userId, portfolios, InMemoryDataStore::copy, null);
+    }
+
+    @Override
+    public void updatePortfolio(Portfolio portfolio) throws SQLException {
+        Portfolio stored = portfolios.get(portfolio.getId());
+        if (stored != null) {
+            synchronized (stored) {
+                if (stored.getVersion() != portfolio.getVersion()) {
+                    throw new StaleUpdateException("portfolio", portfolio.getId(), portfolio.getVersion());
+                }
+                stored.setName(portfolio.getName());
+                stored.setDescription(portfolio.getDescription());
+                stored.setUpdatedAt(portfolio.getUpdatedAt());
+                stored.setVersion(stored.getVersion() + 1);
+            }
+            portfolio.setVersion(portfolio.getVersion() + 1);
+        }
+    }
+
+    @Override
+    public void deletePortfolio(int id) throws SQLException {
+        Portfolio stored = portfolios.get(id);
+        if (stored == null) {
+            return;
+        }
+        synchronized (stored) {
+            // Positions and transactions reference the portfolio, as enforced by the schema
+            if (!ids(positionIdsByPortfolio, id).isEmpty() || !ids(transactionIdsByPortfolio, id).isEmpty()) {
+                throw new SQLException("Portfolio " + id + " still has positions or transactions");
+            }
+            portfolios.remove(id);
+            unindex(portfolioIdsByUser, stored.getUserId(), id);
+            valueSnapshots.remove(id);
+        }
+    }
+
+    @Override
+    public List<PortfolioValueSnapshot> getPortfolioValueHistory(int portfolioId, LocalDateTime from, LocalDateTime to) {
+        // Nothing ages out here, so the walk always starts at daily buckets and fills the tail
+        // from hourly, then minute ones, like PortfolioValueHistory.range
+        List<PortfolioValueSnapshot> buckets = getPortfolioValueSnapshots(portfolioId);
+        buckets.sort(Comparator.comparing(PortfolioValueSnapshot::getBucketStart));
+        String[] resolutions = {"DAY", "HOUR", "MINUTE"};
+        ChronoUnit[] units = {ChronoUnit.DAYS, ChronoUnit.HOURS, ChronoUnit.MINUTES};
+        List<PortfolioValueSnapshot> series = new ArrayList<>();
+        LocalDateTime cursor = from;
+        for (int i = 0; i < resolutions.length; i++) {
+            PortfolioValueSnapshot last = null;
+            for (PortfolioValueSnapshot bucket : buckets) {
+                if (resolutions[i].equals(bucket.getResolution()) && !bucket.getBucketStart().isBefore(cursor)
+                        && !bucket.getBucketStart().isAfter(to)) {
+                    series.add(bucket);
+                    last = bucket;
+                }
+            }
+            if (last != null) {
+                cursor = last.getBucketStart().plus(1, units[i]);
+            }
+        }
+        return series;
+    }
+
+    @Override
+    public List<PortfolioValueSnapshot> getPortfolioValueSnapshots(int portfolioId) {
+        Map<String, PortfolioValueSnapshot> buckets = valueSnapshots.get(portfolioId);
+        List<PortfolioValueSnapshot> result = new ArrayList<>();
+        if (buckets != null) {
+            synchronized (buckets) {
+                for (PortfolioValueSnapshot bucket : buckets.values()) {
+                    result.add(copy(bucket));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void importPortfolioValueSnapshots(List<PortfolioValueSnapshot> snapshots) throws SQLException {
+        for (PortfolioValueSnapshot snapshot : snapshots) {
+            if (!portfolios.containsKey(snapshot.getPortfolioId())) {
+                throw new SQLException("Portfolio not found: " + snapshot.getPortfolioId());
+            }
+            Map<String, PortfolioValueSnapshot> buckets =
+                    valueSnapshots.computeIfAbsent(snapshot.getPortfolioId(), k -> new TreeMap<>());
+            synchronized (buckets) {
+                buckets.put(snapshot.getResolution() + "@" + snapshot.getBucketStart(), copy(snapshot));
+            }
+        }
+    }
+
+    // Positions
+    @Override
+    public void savePosition(Position position) throws SQLException {
+        Portfolio portfolio = lockedPortfolio(position.getPortfolioId());
+        synchronized (portfolio) {
+            int id = nextId.getAndIncrement();
+            position.setId(id);
+            position.setVersion(0);
+            positions.put(id, copy(position));
+            index(positionIdsByPortfolio, position.getPortfolioId(), id);
+            applyPortfolioDelta(portfolio, position.getTotalValue(),
+                    position.getQuantity() * position.getAverageCost(), position.getLastUpdated());
+        }
+    }
+
+    @Override
+    public Position getPositionById(int id) {
+        return read(positions.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<Position> getPositionsByPortfolioId(int portfolioId) {
+        return readIndexed(positionIdsByPortfolio, portfolioId, positions, InMemoryDataStore::copy, null);
+    }
+
+    @Override
+    public void updatePosition(Position position) throws SQLException {
+        Portfolio portfolio = lockedPortfolio(position.getPortfolioId());
+        synchronized (portfolio) {
+            Position stored = positions.get(position.getId());
+            if (stored == null) {
+                return;
+            }
+            double oldValue = stored.getTotalValue();
+            double oldCostBasis = stored.getQuantity() * stored.getAverageCost();
+            double value;
+            synchronized (stored) {
+                if (stored.getVersion() != position.getVersion()) {
+                    throw new StaleUpdateException("position", position.getId(), position.getVersion());
+                }
+                // The price is a market mark; keep the stored one
+                value = FixedPoint.snap(position.getQuantity() * stored.getCurrentPrice());
+                stored.setVersion(stored.getVersion() + 1);
+                stored.setQuantity(position.getQuantity());
+                stored.setAverageCost(position.getAverageCost());
+                stored.setTotalValue(value);
+                stored.setLastUpdated(position.getLastUpdated());
+                position.setCurrentPrice(stored.getCurrentPrice());
+                position.setTotalValue(value);
+            }
+            applyPortfolioDelta(portfolio, value - oldValue,
+                    position.getQuantity() * position.getAverageCost() - oldCostBasis, position.getLastUpdated());
+        }
+        position.setVersion(position.getVersion() + 1);
+    }
+
+    @Override
+    public void queuePriceTicks(Map<String, Double> prices) {
+        // Applied at once; there is nothing to write behind
+        LocalDateTime now = LocalDateTime.now();
+        for (Position stored : positions.values()) {
+            Double price = prices.get(stored.getSymbol());
+            Portfolio portfolio = price != null ? portfolios.get(stored.getPortfolioId()) : null;
+            if (portfolio == null) {
+                continue;
+            }
+            synchronized (portfolio) {
+                if (positions.get(stored.getId()) != stored) {
+                    continue;
+                }
+                double oldValue;
+                double newValue;
+                synchronized (stored) {
+                    oldValue = stored.getTotalValue();
+                    newValue = FixedPoint.snap(stored.getQuantity() * price);
+                    stored.setCurrentPrice(price);
+                    stored.setTotalValue(newValue);
+                    stored.setLastUpdated(now);
+                }
+                applyPortfolioDelta(portfolio, newValue - oldValue, 0, now);
+            }
+        }
+    }
+
+    @Override
+    public void deletePosition(int id) throws SQLException {
+        Position stored = positions.get(id);
+        if (stored == null) {
+            return;
+        }
+        Portfolio portfolio = lockedPortfolio(stored.getPortfolioId());
+        synchronized (portfolio) {
+            if (positions.remove(id) == null) {
+                return;
+            }
+            unindex(positionIdsByPortfolio, stored.getPortfolioId(), id);
+            applyPortfolioDelta(portfolio, -stored.getTotalValue(),
+                    -stored.getQuantity() * stored.getAverageCost(), LocalDateTime.now());
+        }
+    }
+
+    @Override
+    public void deletePosition(int id, long expectedVersion) throws SQLException {
+        Position stored = positions.get(id);
+        if (stored == null) {
+            return;
+        }
+        Portfolio portfolio = lockedPortfolio(stored.getPortfolioId());
+        synchronized (portfolio) {
+            synchronized (stored) {
+                if (stored.getVersion() != expectedVersion) {
+                    throw new StaleUpdateException("position", id, expectedVersion);
+                }
+            }
+            if (positions.remove(id) == null) {
+                return;
+            }
+            unindex(positionIdsByPortfolio, stored.getPortfolioId(), id);
+            applyPortfolioDelta(portfolio, -stored.getTotalValue(),
+                    -stored.getQuantity() * stored.getAverageCost(), LocalDateTime.now());
+        }
+    }
+
+    // Transactions
+    @Override
+    public Transaction executeTradeTransaction(Transaction transaction, ToDoubleFunction<String> fxFactorBySymbol) throws SQLException {
+        Portfolio portfolio = lockedPortfolio(transaction.getPortfolioId());
+        synchronized (portfolio) {
+            if (portfolio.getUserId() != transaction.getUserId()) {
+                throw new SQLException("Invalid portfolio or user access");
+            }
+            int portfolioId = portfolio.getId();
+            String symbol = transaction.getSymbol();
+            LocalDateTime now = transaction.getTimestamp() != null ? transaction.getTimestamp() : LocalDateTime.now();
+            long priceUnits = FixedPoint.toUnits(transaction.getPrice());
+            long quantityUnits = FixedPoint.toUnits(transaction.getQuantity());
+            long signedUnits = "SELL".equals(transaction.getType()) ? -quantityUnits : quantityUnits;
+
+            Position held = null;
+            for (int id : ids(positionIdsByPortfolio, portfolioId)) {
+                Position candidate = positions.get(id);
+                if (candidate != null && symbol.equals(candidate.getSymbol())) {
+                    held = candidate;
+                    break;
+                }
+            }
+            long heldUnits = held != null ? FixedPoint.toUnits(held.getQuantity()) : 0;
+            long heldCostUnits = held != null ? FixedPoint.costBasisUnits(held.getQuantity(), held.getAverageCost()) : 0;
+            long heldValueUnits = held != null ? FixedPoint.toUnits(held.getTotalValue()) : 0;
+            if (signedUnits < 0 && -signedUnits > heldUnits) {
+                throw new SQLException("Insufficient position for sell order. Current: " + FixedPoint.format(heldUnits) +
+                        ", Requested: " + FixedPoint.format(-signedUnits));
+            }
+
+            transaction.setTimestamp(now);
+            saveTransaction(transaction);
+
+            // Same fixed-point arithmetic as DatabaseManager.applyTrade
+            long newUnits = heldUnits + signedUnits;
+            long newValueUnits = 0;
+            long newCostUnits = 0;
+            if (held == null) {
+                if (signedUnits > 0) {
+                    newValueUnits = FixedPoint.multiply(signedUnits, priceUnits);
+                    newCostUnits = newValueUnits;
+                    Position position = new Position();
+                    position.setId(nextId.getAndIncrement());
+                    position.setPortfolioId(portfolioId);
+                    position.setSymbol(symbol);
+                    position.setAssetType("stock");
+                    position.setQuantity(FixedPoint.toDouble(newUnits));
+                    position.setAverageCost(transaction.getPrice());
+                    position.setCurrentPrice(transaction.getPrice());
+                    position.setTotalValue(FixedPoint.toDouble(newValueUnits));
+                    position.setLastUpdated(now);
+                    positions.put(position.getId(), position);
+                    index(positionIdsByPortfolio, portfolioId, position.getId());
+                }
+            } else if (newUnits <= 0) {
+                positions.remove(held.getId());
+                unindex(positionIdsByPortfolio, portfolioId, held.getId());
+            } else {
+                newCostUnits = heldCostUnits + FixedPoint.multiply(signedUnits, priceUnits);
+                newValueUnits = FixedPoint.multiply(newUnits, priceUnits);
+                synchronized (held) {
+                    held.setVersion(held.getVersion() + 1);
+                    held.setQuantity(FixedPoint.toDouble(newUnits));
+                    held.setAverageCost((double) newCostUnits / newUnits);
+                    held.setCurrentPrice(transaction.getPrice());
+                    held.setTotalValue(FixedPoint.toDouble(newValueUnits));
+                    held.setLastUpdated(now);
+                }
+            }
+
+            double fx = fxFactorBySymbol.applyAsDouble(symbol);
+            applyPortfolioDelta(portfolio, FixedPoint.toDouble(newValueUnits - heldValueUnits) * fx,
+                    FixedPoint.toDouble(newCostUnits - heldCostUnits) * fx, now);
+            return transaction;
+        }
+    }
+
+    @Override
+    public void saveTransaction(Transaction transaction) {
+        int id = nextId.getAndIncrement();
+        transaction.setId(id);
+        transactions.put(id, copy(transaction));
+        index(transactionIdsByUser, transaction.getUserId(), id);
+        index(transactionIdsByPortfolio, transaction.getPortfolioId(), id);
+    }
+
+    @Override
+    public int importTransactions(List<Transaction> batch, String importBatch) {
+        int inserted = 0;
+        for (Transaction transaction : batch) {
+            if (transaction.getImportRef() != null) {
+                BookedImport booked = importsByRef.computeIfAbsent(
+                        transaction.getPortfolioId() + "|" + transaction.getImportRef(), k -> new BookedImport(importBatch));
+                synchronized (booked) {
+                    if (booked.trades > 0 && !java.util.Objects.equals(booked.batch, importBatch)) {
+                        continue;
+                    }
+                    booked.batch = importBatch;
+                    booked.trades++;
+                }
+            }
+            saveTransaction(transaction);
+            if (importBatch != null) {
+                transactionIdsByBatch.computeIfAbsent(importBatch, k -> ConcurrentHashMap.newKeySet()).add(transaction.getId());
+            }
+            inserted++;
+        }
+        return inserted;
+    }
+
+    @Override
+    public int deleteImportBatch(String importBatch) {
+        Set<Integer> ids = transactionIdsByBatch.remove(importBatch);
+        int deleted = 0;
+        for (int id : ids != null ? ids : Collections.<Integer>emptySet()) {
+            if (transactions.containsKey(id)) {
+                deleteTransaction(id);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public int rebuildPositionsFromTransactions(int portfolioId) throws SQLException {
+        Portfolio portfolio = lockedPortfolio(portfolioId);
+        synchronized (portfolio) {
+            // Same replay as DatabaseManager.rebuildPositionsFromTransactions
+            Map<String, long[]> replayed = new HashMap<>();
+            Map<String, LocalDateTime> lastTraded = new HashMap<>();
+            for (Transaction transaction : readIndexed(transactionIdsByPortfolio, portfolioId, transactions,
+                    InMemoryDataStore::copy, TRANSACTION_ORDER)) {
+                if (!"COMPLETED".equals(transaction.getStatus())) {
+                    continue;
+                }
+                long quantityUnits = FixedPoint.toUnits(transaction.getQuantity());
+                long signedUnits = "SELL".equals(transaction.getType()) ? -quantityUnits : quantityUnits;
+                long[] state = replayed.computeIfAbsent(transaction.getSymbol(), k -> new long[3]);
+                if (state[0] + signedUnits <= 0) {
+                    state[0] = 0;
+                    state[1] = 0;
+                } else {
+                    state[0] += signedUnits;
+                    state[1] += FixedPoint.multiply(signedUnits, FixedPoint.toUnits(transaction.getPrice()));
+                }
+                state[2] = FixedPoint.toUnits(transaction.getPrice());
+                lastTraded.put(transaction.getSymbol(), transaction.getTimestamp());
+            }
+
+            Map<String, Position> existing = new HashMap<>();
+            for (int id : ids(positionIdsByPortfolio, portfolioId)) {
+                Position position = positions.get(id);
+                if (position != null && existing.putIfAbsent(position.getSymbol(), position) != null) {
+                    positions.remove(id);
+                    unindex(positionIdsByPortfolio, portfolioId, id);
+                }
+            }
+            int held = 0;
+            for (Map.Entry<String, long[]> entry : replayed.entrySet()) {
+                long[] state = entry.getValue();
+                Position position = existing.get(entry.getKey());
+                if (state[0] <= 0) {
+                    if (position != null) {
+                        positions.remove(position.getId());
+                        unindex(positionIdsByPortfolio, portfolioId, position.getId());
+                    }
+                    continue;
+                }
+                if (position == null) {
+                    position = new Position();
+                    position.setId(nextId.getAndIncrement());
+                    position.setPortfolioId(portfolioId);
+                    position.setSymbol(entry.getKey());
+                    position.setAssetType("stock");
+                    position.setCurrentPrice(FixedPoint.toDouble(state[2]));
+                    positions.put(position.getId(), position);
+                    index(positionIdsByPortfolio, portfolioId, position.getId());
+                }
+                synchronized (position) {
+                    double price = position.getCurrentPrice() > 0 ? position.getCurrentPrice() : FixedPoint.toDouble(state[2]);
+                    position.setVersion(position.getVersion() + 1);
+                    position.setQuantity(FixedPoint.toDouble(state[0]));
+                    position.setAverageCost((double) state[1] / state[0]);
+                    position.setCurrentPrice(price);
+                    position.setTotalValue(FixedPoint.toDouble(FixedPoint.multiply(state[0], FixedPoint.toUnits(price))));
+                    position.setLastUpdated(lastTraded.get(entry.getKey()));
+                }
+                held++;
+            }
+
+            long valueUnits = 0;
+            long costUnits = 0;
+            for (int id : ids(positionIdsByPortfolio, portfolioId)) {
+                Position position = positions.get(id);
+                if (position != null) {
+                    valueUnits += FixedPoint.toUnits(position.getTotalValue());
+                    costUnits += FixedPoint.costBasisUnits(position.getQuantity(), position.getAverageCost());
+                }
+            }
+            portfolio.setTotalValue(FixedPoint.toDouble(valueUnits));
+            portfolio.setTotalCostBasis(FixedPoint.toDouble(costUnits));
+            portfolio.setUpdatedAt(LocalDateTime.now());
+            return held;
+        }
+    }
+
+    @Override
+    public Transaction getTransactionById(int id) {
+        return read(transactions.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByUserId(int userId) {
+        return readIndexed(transactionIdsByUser, userId, transactions, InMemoryDataStore::copy, NEWEST_FIRST);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsByPortfolioId(int portfolioId) {
+        return readIndexed(transactionIdsByPortfolio, portfolioId, transactions, InMemoryDataStore::copy, NEWEST_FIRST);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsPageByUserId(int userId, Transaction after, int pageSize) {
+        return page(transactionIdsByUser, userId, after, pageSize);
+    }
+
+    @Override
+    public List<Transaction> getTransactionsPageByPortfolioId(int portfolioId, Transaction after, int pageSize) {
+        return page(transactionIdsByPortfolio, portfolioId, after, pageSize);
+    }
+
+    private List<Transaction> page(Map<Integer, Set<Integer>> index, int ownerId, Transaction after, int pageSize) {
+        List<Transaction> newestFirst = readIndexed(index, ownerId, transactions, InMemoryDataStore::copy,
+                TRANSACTION_ORDER.reversed());
+        List<Transaction> page = new ArrayList<>(pageSize);
+        for (Transaction transaction : newestFirst) {
+            if (after != null && TRANSACTION_ORDER.compare(transaction, after) >= 0) {
+                continue;
+            }
+            page.add(transaction);
+            if (page.size() == pageSize) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public int streamTransactionsByUserId(int userId, int fetchSize, Consumer<Transaction> consumer) {
+        List<Transaction> oldestFirst = readIndexed(transactionIdsByUser, userId, transactions,
+                InMemoryDataStore::copy, TRANSACTION_ORDER);
+        oldestFirst.forEach(consumer);
+        return oldestFirst.size();
+    }
+
+    @Override
+    public void updateTransaction(Transaction transaction) {
+        Transaction stored = transactions.get(transaction.getId());
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setStatus(transaction.getStatus());
+            }
+        }
+    }
+
+    @Override
+    public void deleteTransaction(int id) {
+        Transaction stored = transactions.remove(id);
+        if (stored != null) {
+            unindex(transactionIdsByUser, stored.getUserId(), id);
+            unindex(transactionIdsByPortfolio, stored.getPortfolioId(), id);
+            BookedImport booked = stored.getImportRef() != null
+                    ? importsByRef.get(stored.getPortfolioId() + "|" + stored.getImportRef()) : null;
+            if (booked != null) {
+                synchronized (booked) {
+                    booked.trades--;
+                }
+            }
+        }
+    }
+
+    // Stocks
+    @Override
+    public void saveStock(Stock stock) throws SQLException {
+        stock.setId(nextId.getAndIncrement());
+        if (stocks.putIfAbsent(stock.getSymbol(), copy(stock)) != null) {
+            throw new SQLException("Stock already exists: " + stock.getSymbol());
+        }
+    }
+
+    @Override
+    public Stock getStockBySymbol(String symbol) {
+        return read(stocks.get(symbol), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<Stock> getAllStocks() {
+        return readAll(stocks.values(), s -> true, InMemoryDataStore::copy, null);
+    }
+
+    @Override
+    public void updateStock(Stock stock) {
+        Stock stored = stocks.get(stock.getSymbol());
+        if (stored != null) {
+            synchronized (stored) {
+                int id = stored.getId();
+                copyInto(stock, stored);
+                stored.setId(id);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> getStockCurrencies() {
+        Map<String, String> result = new HashMap<>();
+        for (String symbol : stocks.keySet()) {
+            result.put(symbol, currencies.getOrDefault(symbol, "USD"));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public void updateStockCurrency(String symbol, String currency) {
+        if (stocks.containsKey(symbol)) {
+            currencies.put(symbol, currency);
+        }
+    }
+
+    @Override
+    public void deleteStock(String symbol) {
+        stocks.remove(symbol);
+        currencies.remove(symbol);
+    }
+
+    // Watchlist
+    @Override
+    public void saveWatchlistItem(WatchlistItem item) {
+        item.setId(nextId.getAndIncrement());
+        watchlist.put(item.getId(), copy(item));
+    }
+
+    @Override
+    public WatchlistItem getWatchlistItemById(int id) {
+        return read(watchlist.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<WatchlistItem> getWatchlistByUserId(int userId) {
+        return readAll(watchlist.values(), i -> i.getUserId() == userId, InMemoryDataStore::copy,
+                Comparator.comparing(WatchlistItem::getAddedAt).reversed());
+    }
+
+    @Override
+    public void updateWatchlistItem(WatchlistItem item) {
+        WatchlistItem stored = watchlist.get(item.getId());
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setTargetPrice(item.getTargetPrice());
+                stored.setNotes(item.getNotes());
+            }
+        }
+    }
+
+    @Override
+    public void deleteWatchlistItem(int id) {
+        watchlist.remove(id);
+    }
+
+    @Override
+    public boolean isSymbolInWatchlist(int userId, String symbol) {
+        for (WatchlistItem item : watchlist.values()) {
+            if (item.getUserId() == userId && symbol.equals(item.getSymbol())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Sharing and likes
+    @Override
+    public void sharePortfolio(SharedPortfolio sharedPortfolio) {
+        sharedPortfolio.setId(nextId.getAndIncrement());
+        sharedPortfolios.put(sharedPortfolio.getId(), copy(sharedPortfolio));
+    }
+
+    @Override
+    public SharedPortfolio getSharedPortfolioById(int id) {
+        return read(sharedPortfolios.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<SharedPortfolio> getPublicSharedPortfolios() {
+        return readAll(sharedPortfolios.values(), SharedPortfolio::isPublic, InMemoryDataStore::copy,
+                Comparator.comparing(SharedPortfolio::getSharedAt).reversed());
+    }
+
+    @Override
+    public List<SharedPortfolio> getSharedPortfoliosByUserId(int userId) {
+        return readAll(sharedPortfolios.values(), s -> s.getUserId() == userId, InMemoryDataStore::copy,
+                Comparator.comparing(SharedPortfolio::getSharedAt).reversed());
+    }
+
+    @Override
+    public boolean isPortfolioShared(int portfolioId) {
+        for (SharedPortfolio shared : sharedPortfolios.values()) {
+            if (shared.getPortfolioId() == portfolioId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void updateSharedPortfolio(SharedPortfolio sharedPortfolio) {
+        SharedPortfolio stored = sharedPortfolios.get(sharedPortfolio.getId());
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setPublic(sharedPortfolio.isPublic());
+                stored.setViews(sharedPortfolio.getViews());
+                stored.setLikes(sharedPortfolio.getLikes());
+            }
+        }
+    }
+
+    @Override
+    public void deleteSharedPortfolio(int sharedPortfolioId) {
+        sharedPortfolios.remove(sharedPortfolioId);
+    }
+
+    @Override
+    public void incrementPortfolioViews(int sharedPortfolioId) {
+        SharedPortfolio stored = sharedPortfolios.get(sharedPortfolioId);
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setViews(stored.getViews() + 1);
+            }
+        }
+    }
+
+    @Override
+    public void incrementPortfolioLikes(int sharedPortfolioId) {
+        addLikes(sharedPortfolioId, 1);
+    }
+
+    @Override
+    public void decrementPortfolioLikes(int sharedPortfolioId) {
+        addLikes(sharedPortfolioId, -1);
+    }
+
+    private void addLikes(int sharedPortfolioId, int delta) {
+        SharedPortfolio stored = sharedPortfolios.get(sharedPortfolioId);
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setLikes(Math.max(0, stored.getLikes() + delta));
+            }
+        }
+    }
+
+    @Override
+    public void likePortfolio(PortfolioLike portfolioLike) {
+        portfolioLike.setId(nextId.getAndIncrement());
+        likes.put(portfolioLike.getId(), copy(portfolioLike));
+    }
+
+    @Override
+    public void unlikePortfolio(int sharedPortfolioId, int userId) {
+        likes.values().removeIf(l -> l.getSharedPortfolioId() == sharedPortfolioId && l.getUserId() == userId);
+    }
+
+    @Override
+    public boolean hasUserLikedPortfolio(int sharedPortfolioId, int userId) {
+        for (PortfolioLike like : likes.values()) {
+            if (like.getSharedPortfolioId() == sharedPortfolioId && like.getUserId() == userId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<PortfolioLike> getPortfolioLikes(int sharedPortfolioId) {
+        return readAll(likes.values(), l -> l.getSharedPortfolioId() == sharedPortfolioId, InMemoryDataStore::copy,
+                Comparator.comparing(PortfolioLike::getLikedAt).reversed());
+    }
+
+    @Override
+    public int getPortfolioLikeCount(int sharedPortfolioId) {
+        int count = 0;
+        for (PortfolioLike like : likes.values()) {
+            if (like.getSharedPortfolioId() == sharedPortfolioId) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Forum
+    @Override
+    public void saveForumCategory(ForumCategory category) {
+        category.setId(nextId.getAndIncrement());
+        forumCategories.put(category.getId(), copy(category));
+    }
+
+    @Override
+    public ForumCategory getForumCategoryById(int id) {
+        return read(forumCategories.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<ForumCategory> getAllForumCategories() {
+        return readAll(forumCategories.values(), c -> true, InMemoryDataStore::copy,
+                Comparator.comparing(ForumCategory::getName));
+    }
+
+    @Override
+    public void updateForumCategory(ForumCategory category) {
+        ForumCategory stored = forumCategories.get(category.getId());
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setName(category.getName());
+                stored.setDescription(category.getDescription());
+                stored.setPostCount(category.getPostCount());
+            }
+        }
+    }
+
+    @Override
+    public void deleteForumCategory(int id) {
+        forumCategories.remove(id);
+    }
+
+    @Override
+    public void saveForumPost(ForumPost post) {
+        post.setId(nextId.getAndIncrement());
+        forumPosts.put(post.getId(), copy(post));
+    }
+
+    @Override
+    public ForumPost getForumPostById(int id) {
+        return read(forumPosts.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<ForumPost> getForumPostsByCategoryId(int categoryId) {
+        return readAll(forumPosts.values(), p -> p.getCategoryId() == categoryId, InMemoryDataStore::copy,
+                Comparator.comparing(ForumPost::isPinned).thenComparing(ForumPost::getCreatedAt).reversed());
+    }
+
+    @Override
+    public List<ForumPost> getForumPostsByUserId(int userId) {
+        return readAll(forumPosts.values(), p -> p.getUserId() == userId, InMemoryDataStore::copy,
+                Comparator.comparing(ForumPost::getCreatedAt).reversed());
+    }
+
+    @Override
+    public void updateForumPost(ForumPost post) {
+        ForumPost stored = forumPosts.get(post.getId());
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setTitle(post.getTitle());
+                stored.setContent(post.getContent());
+                stored.setUpdatedAt(post.getUpdatedAt());
+                stored.setCommentCount(post.getCommentCount());
+                stored.setPinned(post.isPinned());
+                stored.setLocked(post.isLocked());
+            }
+        }
+    }
+
+    @Override
+    public void incrementForumPostViewCount(int postId) {
+        ForumPost stored = forumPosts.get(postId);
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setViewCount(stored.getViewCount() + 1);
+            }
+        }
+    }
+
+    @Override
+    public void incrementForumPostCommentCount(int postId) {
+        ForumPost stored = forumPosts.get(postId);
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setCommentCount(stored.getCommentCount() + 1);
+            }
+        }
+    }
+
+    @Override
+    public void deleteForumPost(int id) {
+        forumPosts.remove(id);
+    }
+
+    @Override
+    public void saveForumComment(ForumComment comment) {
+        comment.setId(nextId.getAndIncrement());
+        forumComments.put(comment.getId(), copy(comment));
+    }
+
+    @Override
+    public ForumComment getForumCommentById(int id) {
+        return read(forumComments.get(id), InMemoryDataStore::copy);
+    }
+
+    @Override
+    public List<ForumComment> getForumCommentsByPostId(int postId) {
+        return readAll(forumComments.values(), c -> c.getPostId() == postId, InMemoryDataStore::copy,
+                Comparator.comparing(ForumComment::getCreatedAt));
+    }
+
+    @Override
+    public void updateForumComment(ForumComment comment) {
+        ForumComment stored = forumComments.get(comment.getId());
+        if (stored != null) {
+            synchronized (stored) {
+                stored.setContent(comment.getContent());
+                stored.setUpdatedAt(comment.getUpdatedAt());
+            }
+        }
+    }
+
+    @Override
+    public void deleteForumComment(int id) {
+        forumComments.remove(id);
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    // Portfolio locking and totals; totals are system-maintained and leave the version alone
+    private Portfolio lockedPortfolio(int portfolioId) throws SQLException {
+        Portfolio portfolio = portfolios.get(portfolioId);
+        if (portfolio == null) {
+            throw new SQLException("Portfolio not found: " + portfolioId);
+        }
+        return portfolio;
+    }
+
+    // Caller holds the portfolio's monitor
+    private static void applyPortfolioDelta(Portfolio portfolio, double valueDelta, double costBasisDelta, LocalDateTime now) {
+        portfolio.setTotalValue(FixedPoint.snap(portfolio.getTotalValue() + valueDelta));
+        portfolio.setTotalCostBasis(FixedPoint.snap(portfolio.getTotalCostBasis() + costBasisDelta));
+        portfolio.setUpdatedAt(now);
+    }
+
+    // Owner indexes
+    private static void index(Map<Integer, Set<Integer>> index, int ownerId, int id) {
+        index.computeIfAbsent(ownerId, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    private static void unindex(Map<Integer, Set<Integer>> index, int ownerId, int id) {
+        Set<Integer> ids = index.get(ownerId);
+        if (ids != null) {
+            ids.remove(id);
+        }
+    }
+
+    private static Set<Integer> ids(Map<Integer, Set<Integer>> index, int ownerId) {
+        return index.getOrDefault(ownerId, Collections.emptySet());
+    }
+
+    // Reads copy under the stored object's monitor, which writers also hold
+    private static <T> T read(T stored, Function<T, T> copier) {
+        if (stored == null) {
+            return null;
+        }
+        synchronized (stored) {
+            return copier.apply(stored);
+        }
+    }
+
+    private static <T> List<T> readIndexed(Map<Integer, Set<Integer>> index, int ownerId, Map<Integer, T> rows,
+                                           Function<T, T> copier, Comparator<T> order) {
+        List<T> result = new ArrayList<>();
+        for (int id : ids(index, ownerId)) {
+            T row = read(rows.get(id), copier);
+            if (row != null) {
+                result.add(row);
+            }
+        }
+        if (order != null) {
+            result.sort(order);
+        }
+        return result;
+    }
+
+    private static <T> List<T> readAll(Iterable<T> rows, Predicate<T> filter, Function<T, T> copier, Comparator<T> order) {
+        List<T> result = new ArrayList<>();
+        for (T stored : rows) {
+            T row = read(stored, copier);
+            if (filter.test(row)) {
+                result.add(row);
+            }
+        }
+        if (order != null) {
+            result.sort(order);
+        }
+        return result;
+    }
+
+    // Copies carry the fields the JDBC row mappers fill
+    private static User copy(User source) {
+        User user = new User();
+        user.setId(source.getId());
+        user.setUsername(source.getUsername());
+        user.setEmail(source.getEmail());
+        user.setHashedPassword(source.getHashedPassword());
+        user.setSalt(source.getSalt());
+        user.setCreatedAt(source.getCreatedAt());
+        user.setLastLogin(source.getLastLogin());
+        user.setActive(source.isActive());
+        user.setRole(source.getRole());
+        user.setExperiencePoints(source.getExperiencePoints());
+        user.setLevel(source.getLevel());
+        user.setTradingStreak(source.getTradingStreak());
+        user.setTotalPnL(source.getTotalPnL());
+        user.setTradesCount(source.getTradesCount());
+        user.setFailedLoginAttempts(source.getFailedLoginAttempts());
+        user.setAccountLockedUntil(source.getAccountLockedUntil());
+        user.setAvatarPath(source.getAvatarPath());
+        user.setBio(source.getBio());
+        user.setLocation(source.getLocation());
+        user.setWebsite(source.getWebsite());
+        return user;
+    }
+
+    private static Portfolio copy(Portfolio source) {
+        Portfolio portfolio = new Portfolio();
+        portfolio.setId(source.getId());
+        portfolio.setUserId(source.getUserId());
+        portfolio.setName(source.getName());
+        portfolio.setDescription(source.getDescription());
+        portfolio.setCreatedAt(source.getCreatedAt());
+        portfolio.setUpdatedAt(source.getUpdatedAt());
+        portfolio.setTotalValue(source.getTotalValue());
+        portfolio.setTotalCostBasis(source.getTotalCostBasis());
+        portfolio.setVersion(source.getVersion());
+        return portfolio;
+    }
+
+    private static Position copy(Position source) {
+        Position position = new Position();
+        position.setId(source.getId());
+        position.setPortfolioId(source.getPortfolioId());
+        position.setSymbol(source.getSymbol());
+        position.setAssetType(source.getAssetType());
+        position.setQuantity(source.getQuantity());
+        position.setAverageCost(source.getAverageCost());
+        position.setCurrentPrice(source.getCurrentPrice());
+        position.setTotalValue(source.getTotalValue());
+        position.setLastUpdated(source.getLastUpdated());
+        position.setVersion(source.getVersion());
+        return position;
+    }
+
+    private static PortfolioValueSnapshot copy(PortfolioValueSnapshot source) {
+        PortfolioValueSnapshot snapshot = new PortfolioValueSnapshot();
+        snapshot.setPortfolioId(source.getPortfolioId());
+        snapshot.setResolution(source.getResolution());
+        snapshot.setBucketStart(source.getBucketStart());
+        snapshot.setOpenValue(source.getOpenValue());
+        snapshot.setHighValue(source.getHighValue());
+        snapshot.setLowValue(source.getLowValue());
+        snapshot.setCloseValue(source.getCloseValue());
+        snapshot.setCostBasis(source.getCostBasis());
+        snapshot.setSamples(source.getSamples());
+        return snapshot;
+    }
+
+    private static final class BookedImport {
+        String batch;
+        int trades;
+
+        BookedImport(String batch) {
+            this.batch = batch;
+        }
+    }
+
+    private static Transaction copy(Transaction source) {
+        Transaction transaction = new Transaction();
+        transaction.setId(source.getId());
+        transaction.setUserId(source.getUserId());
+        transaction.setPortfolioId(source.getPortfolioId());
+        transaction.setSymbol(source.getSymbol());
+        transaction.setType(source.getType());
+        transaction.setQuantity(source.getQuantity());
+        transaction.setPrice(source.getPrice());
+        transaction.setTotalAmount(source.getTotalAmount());
+        transaction.setOrderType(source.getOrderType());
+        transaction.setTimestamp(source.getTimestamp());
+        transaction.setStatus(source.getStatus());
+        transaction.setImportRef(source.getImportRef());
+        return transaction;
+    }
+
+    private static Stock copy(Stock source) {
+        Stock stock = new Stock();
+        stock.setId(source.getId());
+        copyInto(source, stock);
+        return stock;
+    }
+
+    private static void copyInto(Stock source, Stock target) {
+        target.setSymbol(source.getSymbol());
+        target.setName(source.getName());
+        target.setExchange(source.getExchange());
+        target.setSector(source.getSector());
+        target.setCurrentPrice(source.getCurrentPrice());
+        target.setPreviousClose(source.getPreviousClose());
+        target.setChange(source.getChange());
+        target.setChangePercent(source.getChangePercent());
+        target.setVolume(source.getVolume());
+        target.setMarketCap(source.getMarketCap());
+        target.setLastUpdated(source.getLastUpdated());
+    }
+
+    private static WatchlistItem copy(WatchlistItem source) {
+        WatchlistItem item = new WatchlistItem();
+        item.setId(source.getId());
+        item.setUserId(source.getUserId());
+        item.setSymbol(source.getSymbol());
+        item.setAddedAt(source.getAddedAt());
+        item.setTargetPrice(source.getTargetPrice());
+        item.setNotes(source.getNotes());
+        return item;
+    }
+
+    private static SharedPortfolio copy(SharedPortfolio source) {
+        SharedPortfolio shared = new SharedPortfolio();
+        shared.setId(source.getId());
+        shared.setPortfolioId(source.getPortfolioId());
+        shared.setUserId(source.getUserId());
+        shared.setPublic(source.isPublic());
+        shared.setSharedAt(source.getSharedAt());
+        shared.setViews(source.getViews());
+        shared.setLikes(source.getLikes());
+        return shared;
+    }
+
+    private static PortfolioLike copy(PortfolioLike source) {
+        PortfolioLike like = new PortfolioLike();
+        like.setId(source.getId());
+        like.setSharedPortfolioId(source.getSharedPortfolioId());
+        like.setUserId(source.getUserId());
+        like.setLikedAt(source.getLikedAt());
+        return like;
+    }
+
+    private static ForumCategory copy(ForumCategory source) {
+        ForumCategory category = new ForumCategory();
+        category.setId(source.getId());
+        category.setName(source.getName());
+        category.setDescription(source.getDescription());
+        category.setCreatedAt(source.getCreatedAt());
+        category.setPostCount(source.getPostCount());
+        return category;
+    }
+
+    private static ForumPost copy(ForumPost source) {
+        ForumPost post = new ForumPost();
+        post.setId(source.getId());
+        post.setUserId(source.getUserId());
+        post.setUsername(source.getUsername());
+        post.setCategoryId(source.getCategoryId());
+        post.setTitle(source.getTitle());
+        post.setContent(source.getContent());
+        post.setCreatedAt(source.getCreatedAt());
+        post.setUpdatedAt(source.getUpdatedAt());
+        post.setViewCount(source.getViewCount());
+        post.setCommentCount(source.getCommentCount());
+        post.setPinned(source.isPinned());
+        post.setLocked(source.isLocked());
+        return post;
+    }
+
+    private static ForumComment copy(ForumComment source) {
+        ForumComment comment = new ForumComment();
+        comment.setId(source.getId());
+        comment.setPostId(source.getPostId());
+        comment.setUserId(source.getUserId());
+        comment.setUsername(source.getUsername());
+        comment.setContent(source.getContent());
+        comment.setCreatedAt(source.getCreatedAt());
+        comment.setUpdatedAt(source.getUpdatedAt());
+        comment.setParentCommentId(source.getParentCommentId());
+        return comment;
+    }
+}
@@ -0,0 +1,64 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Read-modify-write loop for versioned rows: read the current row, apply the change and
+ * write it back with a compare-and-set, starting over from a fresh read when another
+ * writer got there first.
+ */
+public final class OptimisticUpdates {
+    public static final int DEFAULT_ATTEMPTS = 10;
+
+    public interface Reader<T> {
+        T read() throws SQLException;
+    }
+
+    public interface Change<T> {
+        void apply(T row) throws SQLException;
+    }
+
+    public interface Writer<T> {
+        void write(T row) throws SQLException;
+    }
+
+    private OptimisticUpdates() {}
+
+    /**
+     * @return the row as written, or null if it no longer exists
+     * @throws IllegalArgumentException if {@code attempts} is not positive
+     * @throws StaleUpdateException if every attempt lost to a concurrent writer
+     */
+    public static <T> T retry(int attempts, Reader<T> reader, Change<T> change, Writer<T> writer) throws SQLException {
+        if (attempts <= 0) {
+            throw new IllegalArgumentException("attempts must be positive: " + attempts);
+        }
+        StaleUpdateException lastConflict = null;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            T row = reader.read();
+            if (row == null) {
+                return null;
+            }
+            change.apply(row);
+            try {
+                writer.write(row);
+                return row;
+            } catch (StaleUpdateException e) {
+                lastConflict = e;
+                backOff(attempt);
+            }
+        }
+        throw lastConflict;
+    }
+
+    // Short randomized pause so two writers retrying the same row do not collide again
+    private static void backOff(int attempt) throws SQLException {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(1, 2 << Math.min(attempt, 5)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying an update", e);
+        }
+    }
+}
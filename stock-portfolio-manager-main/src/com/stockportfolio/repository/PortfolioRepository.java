@@ -0,0 +1,54 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.PortfolioValueSnapshot;
+
+/**
+ * Portfolios. Their value and cost-basis totals are maintained by position and trade writes.
+ * The version covers name and description only; total updates leave it alone.
+ */
+public interface PortfolioRepository {
+    void savePortfolio(Portfolio portfolio) throws SQLException;
+
+    Portfolio getPortfolioById(int id) throws SQLException;
+
+    List<Portfolio> getPortfoliosByUserId(int userId) throws SQLException;
+
+    /**
+     * Write name and description if the portfolio's version is still the one it was read
+     * with, and advance it.
+     *
+     * @throws StaleUpdateException if the portfolio changed since it was read
+     */
+    void updatePortfolio(Portfolio portfolio) throws SQLException;
+
+    /**
+     * Apply {@code change} to the current portfolio and write it, re-reading and reapplying
+     * on version conflicts.
+     *
+     * @return the portfolio as written, or null if it no longer exists
+     */
+    default Portfolio updatePortfolioWithRetry(int portfolioId, OptimisticUpdates.Change<Portfolio> change) throws SQLException {
+        return OptimisticUpdates.retry(OptimisticUpdates.DEFAULT_ATTEMPTS,
+                () -> getPortfolioById(portfolioId), change, this::updatePortfolio);
+    }
+
+    void deletePortfolio(int id) throws SQLException;
+
+    /**
+     * Equity curve of a portfolio between {@code from} and {@code to}: the coarsest buckets
+     * kept for that span, with the most recent stretch filled in from finer ones.
+     */
+    List<PortfolioValueSnapshot> getPortfolioValueHistory(int portfolioId, LocalDateTime from, LocalDateTime to)
+            throws SQLException;
+
+    /** Every stored value bucket of a portfolio, all resolutions, by resolution and bucket start. */
+    List<PortfolioValueSnapshot> getPortfolioValueSnapshots(int portfolioId) throws SQLException;
+
+    /** Store value buckets as given, replacing any with the same portfolio, resolution and start. */
+    void importPortfolioValueSnapshots(List<PortfolioValueSnapshot> snapshots) throws SQLException;
+}
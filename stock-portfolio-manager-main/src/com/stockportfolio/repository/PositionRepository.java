@@ -0,0 +1,67 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import com.stockportfolio.model.Position;
+
+/**
+ * Positions held in a portfolio. Every write moves the portfolio's totals by its change.
+ * Updates are compare-and-set on the position's version, which covers quantity and average
+ * cost; price marks do not advance it.
+ */
+public interface PositionRepository {
+    void savePosition(Position position) throws SQLException;
+
+    Position getPositionById(int id) throws SQLException;
+
+    List<Position> getPositionsByPortfolioId(int portfolioId) throws SQLException;
+
+    /**
+     * Write quantity and average cost if the position's version is still the one it was read
+     * with, and advance it. The stored current price is kept and the value follows from it.
+     *
+     * @throws StaleUpdateException if the position changed since it was read
+     */
+    void updatePosition(Position position) throws SQLException;
+
+    /**
+     * Apply {@code change} to the current position and write it, re-reading and reapplying
+     * on version conflicts.
+     *
+     * @return the position as written, or null if it no longer exists
+     */
+    default Position updatePositionWithRetry(int positionId, OptimisticUpdates.Change<Position> change) throws SQLException {
+        return OptimisticUpdates.retry(OptimisticUpdates.DEFAULT_ATTEMPTS,
+                () -> getPositionById(positionId), change, this::updatePosition);
+    }
+
+    void deletePosition(int id) throws SQLException;
+
+    /**
+     * Delete the position if it is still at the version it was read with.
+     *
+     * @throws StaleUpdateException if the position changed since it was read
+     */
+    void deletePosition(int id, long expectedVersion) throws SQLException;
+
+    /**
+     * Delete the position if it holds nothing, re-reading on version conflicts. A position
+     * that a concurrent trade has taken back above zero is kept.
+     */
+    default void deleteEmptyPositionWithRetry(int positionId) throws SQLException {
+        OptimisticUpdates.retry(OptimisticUpdates.DEFAULT_ATTEMPTS, () -> getPositionById(positionId), position -> { },
+                position -> {
+                    if (position.getQuantity() <= 0) {
+                        deletePosition(position.getId(), position.getVersion());
+                    }
+                });
+    }
+
+    /**
+     * Mark every position in each symbol at its quote, moving the totals with them. Returns
+     * at once; stores may write the marks a few seconds later.
+     */
+    void queuePriceTicks(Map<String, Double> prices);
+}
@@ -0,0 +1,43 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import com.stockportfolio.model.PortfolioLike;
+import com.stockportfolio.model.SharedPortfolio;
+
+/**
+ * Shared portfolios, with their view and like counts, and likes.
+ */
+public interface SocialRepository {
+    void sharePortfolio(SharedPortfolio sharedPortfolio) throws SQLException;
+
+    SharedPortfolio getSharedPortfolioById(int id) throws SQLException;
+
+    /** Newest first. */
+    List<SharedPortfolio> getPublicSharedPortfolios() throws SQLException;
+
+    List<SharedPortfolio> getSharedPortfoliosByUserId(int userId) throws SQLException;
+
+    boolean isPortfolioShared(int portfolioId) throws SQLException;
+
+    void updateSharedPortfolio(SharedPortfolio sharedPortfolio) throws SQLException;
+
+    void deleteSharedPortfolio(int sharedPortfolioId) throws SQLException;
+
+    void incrementPortfolioViews(int sharedPortfolioId) throws SQLException;
+
+    void incrementPortfolioLikes(int sharedPortfolioId) throws SQLException;
+
+    void decrementPortfolioLikes(int sharedPortfolioId) throws SQLException;
+
+    void likePortfolio(PortfolioLike portfolioLike) throws SQLException;
+
+    void unlikePortfolio(int sharedPortfolioId, int userId) throws SQLException;
+
+    boolean hasUserLikedPortfolio(int sharedPortfolioId, int userId) throws SQLException;
+
+    List<PortfolioLike> getPortfolioLikes(int sharedPortfolioId) throws SQLException;
+
+    int getPortfolioLikeCount(int sharedPortfolioId) throws SQLException;
+}
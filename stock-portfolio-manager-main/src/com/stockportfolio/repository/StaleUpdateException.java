@@ -0,0 +1,16 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+
+/**
+ * A compare-and-set update found the row at a different version than the caller read:
+ * someone else wrote it in between. Nothing was written; re-read and reapply the change,
+ * or use {@link OptimisticUpdates#retry}.
+ */
+public class StaleUpdateException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    public StaleUpdateException(String table, int id, long expectedVersion) {
+        super("Stale update of " + table + " " + id + ": version " + expectedVersion + " is no longer current");
+    }
+}
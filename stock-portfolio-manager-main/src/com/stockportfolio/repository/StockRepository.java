@@ -0,0 +1,27 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import com.stockportfolio.model.Stock;
+
+/**
+ * Reference data for tradable symbols.
+ */
+public interface StockRepository {
+    void saveStock(Stock stock) throws SQLException;
+
+    Stock getStockBySymbol(String symbol) throws SQLException;
+
+    List<Stock> getAllStocks() throws SQLException;
+
+    void updateStock(Stock stock) throws SQLException;
+
+    /** Trading currency per symbol; symbols without one trade in USD. */
+    Map<String, String> getStockCurrencies() throws SQLException;
+
+    void updateStockCurrency(String symbol, String currency) throws SQLException;
+
+    void deleteStock(String symbol) throws SQLException;
+}
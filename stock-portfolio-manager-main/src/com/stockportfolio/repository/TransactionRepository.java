@@ -0,0 +1,70 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+import com.stockportfolio.model.Transaction;
+
+/**
+ * Trade history, and trade execution against positions.
+ */
+public interface TransactionRepository {
+    /**
+     * Record a trade and apply it to its position and portfolio totals atomically.
+     *
+     * @throws SQLException if the portfolio does not belong to the user or a sell exceeds
+     *         the held quantity; nothing is changed
+     */
+    Transaction executeTradeTransaction(Transaction transaction, ToDoubleFunction<String> fxFactorBySymbol) throws SQLException;
+
+    void saveTransaction(Transaction transaction) throws SQLException;
+
+    /**
+     * Insert already validated trades as history, all in one database transaction. Positions
+     * and portfolio totals are left alone; follow a bulk load with
+     * {@link #rebuildPositionsFromTransactions(int)}. A trade whose import ref was already
+     * booked in its portfolio by a different import batch is skipped, so importing the same
+     * statement twice books it once; trades without an import ref are always inserted.
+     *
+     * @param importBatch identifies one import run, or null
+     * @return the number of trades inserted
+     */
+    int importTransactions(List<Transaction> transactions, String importBatch) throws SQLException;
+
+    /**
+     * Delete every trade an import batch inserted, live or archived, in one database
+     * transaction. Positions and portfolio totals are left alone, as on import.
+     *
+     * @return the number of trades deleted
+     */
+    int deleteImportBatch(String importBatch) throws SQLException;
+
+    /**
+     * Replace a portfolio's positions with a replay of its completed trades, oldest first,
+     * then recompute portfolio totals. Manual edits to positions in traded symbols are
+     * replaced; a sell larger than the holding closes the position.
+     *
+     * @return the number of positions held after the replay
+     */
+    int rebuildPositionsFromTransactions(int portfolioId) throws SQLException;
+
+    Transaction getTransactionById(int id) throws SQLException;
+
+    List<Transaction> getTransactionsByUserId(int userId) throws SQLException;
+
+    List<Transaction> getTransactionsByPortfolioId(int portfolioId) throws SQLException;
+
+    /** One page, newest first; {@code after} is the last row of the previous page or null. */
+    List<Transaction> getTransactionsPageByUserId(int userId, Transaction after, int pageSize) throws SQLException;
+
+    List<Transaction> getTransactionsPageByPortfolioId(int portfolioId, Transaction after, int pageSize) throws SQLException;
+
+    /** Hand a user's transactions to {@code consumer} oldest first; returns how many. */
+    int streamTransactionsByUserId(int userId, int fetchSize, Consumer<Transaction> consumer) throws SQLException;
+
+    void updateTransaction(Transaction transaction) throws SQLException;
+
+    void deleteTransaction(int id) throws SQLException;
+}
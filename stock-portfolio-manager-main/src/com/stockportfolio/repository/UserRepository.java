@@ -0,0 +1,30 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.stockportfolio.model.User;
+
+/**
+ * Users, their login state and who follows whom.
+ */
+public interface UserRepository {
+    void saveUser(User user) throws SQLException;
+
+    User getUserByUsername(String username) throws SQLException;
+
+    User getUserProfile(int userId) throws SQLException;
+
+    List<User> getAllUsers() throws SQLException;
+
+    void updateUserLoginSecurity(int userId, int failedAttempts, LocalDateTime lockUntil) throws SQLException;
+
+    void updateLastLogin(int userId) throws SQLException;
+
+    void updateUserInfo(int userId, String username, String email) throws SQLException;
+
+    void followUser(int followerId, int followedId) throws SQLException;
+
+    void unfollowUser(int followerId, int followedId) throws SQLException;
+}
@@ -0,0 +1,24 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import com.stockportfolio.model.WatchlistItem;
+
+/**
+ * Symbols users are watching.
+ */
+public interface WatchlistRepository {
+    void saveWatchlistItem(WatchlistItem item) throws SQLException;
+
+    WatchlistItem getWatchlistItemById(int id) throws SQLException;
+
+    /** Newest first. */
+    List<WatchlistItem> getWatchlistByUserId(int userId) throws SQLException;
+
+    void updateWatchlistItem(WatchlistItem item) throws SQLException;
+
+    void deleteWatchlistItem(int id) throws SQLException;
+
+    boolean isSymbolInWatchlist(int userId, String symbol) throws SQLException;
+}
@@ -0,0 +1,196 @@
+package com.stockportfolio.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Layout of columnar snapshot files, written by {@link ColumnarWriter} and read by
+ * {@link ColumnarReader}.
+ *
+ * A file is the magic, the column chunks, a footer, the footer's length and the magic
+ * again. Tables are cut into row groups of up to {@link #ROW_GROUP_SIZE} rows, and each
+ * column of a row group is one chunk, encoded for its type and deflated on its own when
+ * that makes it smaller. The footer lists every table's typed columns and, per row group,
+ * where each chunk lies, so a reader goes straight to the columns it needs.
+ *
+ * Chunks start with a flags byte: the encoding, plus {@link #HAS_NULLS} when a presence
+ * bitmap follows. Integers are stored as zigzag varint deltas; decimals as deltas of the
+ * values scaled to the fewest decimal places that give them back exactly, with raw IEEE
+ * bits for values that need more; strings through a dictionary when they repeat, as
+ * symbols and trade types do; timestamps as second deltas plus nanoseconds.
+ */
+public final class ColumnarFormat {
+    public static final String FILE_EXTENSION = "spsnap";
+
+    static final byte[] MAGIC = {'S', 'P', 'S', 'N', 'A', 'P', '0', '1'};
+    static final int ROW_GROUP_SIZE = 65_536;
+
+    // Tables of a portfolio snapshot, as written by ExportService.writeSnapshot
+    public static final String PORTFOLIOS = "portfolios";
+    public static final String POSITIONS = "positions";
+    public static final String TRANSACTIONS = "transactions";
+    public static final String VALUE_HISTORY = "value_history";
+
+    public enum Type { INT, LONG, DECIMAL, STRING, TIMESTAMP }
+
+    // Chunk encodings, in the low bits of the flags byte
+    static final int DELTA = 1;
+    static final int SCALED = 2;
+    static final int RAW = 3;
+    static final int PLAIN = 4;
+    static final int DICTIONARY = 5;
+    static final int ENCODING_MASK = 0x0F;
+    static final int HAS_NULLS = 0x80;
+
+    // Chunk codecs, recorded in the footer
+    static final byte STORED = 0;
+    static final byte DEFLATE = 1;
+
+    // Decimals needing more places than this are stored raw
+    static final int MAX_SCALE = 8;
+    static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+    // Beyond 2^53 scaled values are no longer exact longs
+    static final double MAX_SCALED = 9.007199254740992e15;
+
+    private ColumnarFormat() {}
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Fewest decimal places at which {@code value} survives scaling to a long, or -1. */
+    static int scaleOf(double value) {
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            if (scaled(value, scale) != Long.MIN_VALUE) {
+                return scale;
+            }
+        }
+        return -1;
+    }
+
+    /** {@code value} times 10^scale as a long if dividing it back is exact, else Long.MIN_VALUE. */
+    static long scaled(double value, int scale) {
+        double product = value * POWERS_OF_TEN[scale];
+        if (!(Math.abs(product) < MAX_SCALED)) {
+            return Long.MIN_VALUE;
+        }
+        long rounded = Math.round(product);
+        return Double.doubleToRawLongBits(rounded / POWERS_OF_TEN[scale]) == Double.doubleToRawLongBits(value)
+                ? rounded : Long.MIN_VALUE;
+    }
+
+    /** Growable byte array written to sequentially. */
+    static final class Output {
+        byte[] bytes;
+        int length;
+
+        Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void reset() {
+            length = 0;
+        }
+
+        void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void writeBytes(byte[] source, int offset, int count) {
+            ensure(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+    }
+
+    /** Sequential reads over a byte array, failing with IOException past its end. */
+    static final class Input {
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        Input(byte[] bytes, int limit) {
+            this.bytes = bytes;
+            this.limit = limit;
+        }
+
+        int readByte() throws IOException {
+            if (position >= limit) {
+                throw new IOException("Snapshot chunk is truncated");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Snapshot chunk has a malformed varint");
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        String readString(int count) throws IOException {
+            if (count < 0 || count > limit - position) {
+                throw new IOException("Snapshot chunk is truncated");
+            }
+            String value = new String(bytes, position, count, StandardCharsets.UTF_8);
+            position += count;
+            return value;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        int position() {
+            return position;
+        }
+
+        void skip(int count) throws IOException {
+            if (count < 0 || count > limit - position) {
+                throw new IOException("Snapshot chunk is truncated");
+            }
+            position += count;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.stockportfolio.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a columnar snapshot file (see {@link ColumnarFormat}). Opening reads only the
+ * footer; a {@link Cursor} then decodes one row group at a time, and only the columns it
+ * was asked for. Columns missing from the file read as null, so older snapshots open in
+ * newer code.
+ */
+public final class ColumnarReader implements Closeable {
+    private static final int TAIL_LENGTH = 4 + ColumnarFormat.MAGIC.length;
+
+    private final FileChannel channel;
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    private ColumnarReader(FileChannel channel, Path path) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < ColumnarFormat.MAGIC.length + TAIL_LENGTH
+                || !Arrays.equals(read(0, ColumnarFormat.MAGIC.length), ColumnarFormat.MAGIC)) {
+            throw new IOException("Not a portfolio snapshot: " + path);
+        }
+        byte[] tail = read(size - TAIL_LENGTH, TAIL_LENGTH);
+        if (!Arrays.equals(Arrays.copyOfRange(tail, 4, TAIL_LENGTH), ColumnarFormat.MAGIC)) {
+            throw new IOException("Snapshot is incomplete: " + path);
+        }
+        int footerLength = ByteBuffer.wrap(tail, 0, 4).getInt();
+        if (footerLength < 0 || footerLength > size - ColumnarFormat.MAGIC.length - TAIL_LENGTH) {
+            throw new IOException("Snapshot footer is corrupt: " + path);
+        }
+        DataInputStream footer = new DataInputStream(new ByteArrayInputStream(
+                read(size - TAIL_LENGTH - footerLength, footerLength)));
+        int entries = footer.readInt();
+        for (int i = 0; i < entries; i++) {
+            metadata.put(footer.readUTF(), footer.readUTF());
+        }
+        int tableCount = footer.readInt();
+        for (int i = 0; i < tableCount; i++) {
+            Table table = new Table(footer);
+            tables.put(table.name, table);
+        }
+    }
+
+    public static ColumnarReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new ColumnarReader(channel, path);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String getMetadata(String key) {
+        return metadata.get(key);
+    }
+
+    /** The named table, or null if the snapshot has none. */
+    public Table table(String name) {
+        return tables.get(name);
+    }
+
+    public Map<String, Table> getTables() {
+        return Collections.unmodifiableMap(tables);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Snapshot is truncated");
+            }
+        }
+        return bytes;
+    }
+
+    /** A table's columns and row groups as listed in the footer. */
+    public final class Table {
+        private final String name;
+        private final long rows;
+        private final String[] columnNames;
+        private final ColumnarFormat.Type[] columnTypes;
+        private final int[] groupRows;
+        // Per row group and column: offset, length, raw length and codec of the chunk
+        private final long[][] chunks;
+
+        private Table(DataInputStream footer) throws IOException {
+            name = footer.readUTF();
+            rows = footer.readLong();
+            int columnCount = footer.readInt();
+            columnNames = new String[columnCount];
+            columnTypes = new ColumnarFormat.Type[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnNames[i] = footer.readUTF();
+                int type = footer.readByte();
+                if (type < 0 || type >= ColumnarFormat.Type.values().length) {
+                    throw new IOException("Snapshot column " + name + "." + columnNames[i] + " has unknown type " + type);
+                }
+                columnTypes[i] = ColumnarFormat.Type.values()[type];
+            }
+            int groups = footer.readInt();
+            groupRows = new int[groups];
+            chunks = new long[groups][];
+            for (int g = 0; g < groups; g++) {
+                groupRows[g] = footer.readInt();
+                chunks[g] = new long[columnCount * 4];
+                for (int i = 0; i < columnCount; i++) {
+                    chunks[g][i * 4] = footer.readLong();
+                    chunks[g][i * 4 + 1] = footer.readInt();
+                    chunks[g][i * 4 + 2] = footer.readInt();
+                    chunks[g][i * 4 + 3] = footer.readByte();
+                }
+            }
+        }
+
+        public String getName() { return name; }
+        public long getRows() { return rows; }
+
+        /** Index of the named column, or -1 if the table has no such column. */
+        public int column(String columnName) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equals(columnName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public ColumnarFormat.Type columnType(int column) {
+            return columnTypes[column];
+        }
+
+        /** Rows of the named columns, in the order they were written. */
+        public Cursor cursor(String... columns) throws IOException {
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = column(columns[i]);
+            }
+            return new Cursor(this, indexes);
+        }
+    }
+
+    /**
+     * Forward-only reader over a table. Getters take the position of the column in the
+     * list given to {@link Table#cursor}, not its position in the file. Close it when
+     * stopping before the last row, to release its inflater.
+     */
+    public final class Cursor implements Closeable {
+        private final Table table;
+        private final int[] columns;
+        private final Decoded[] decoded;
+        private final Inflater inflater = new Inflater();
+        private byte[] raw = new byte[0];
+        private int group = -1;
+        private int row;
+        private int groupRows;
+
+        private Cursor(Table table, int[] columns) {
+            this.table = table;
+            this.columns = columns;
+            this.decoded = new Decoded[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                decoded[i] = columns[i] < 0 ? null : new Decoded(table.columnTypes[columns[i]]);
+            }
+        }
+
+        public boolean next() throws IOException {
+            row++;
+            while (row >= groupRows) {
+                if (group + 1 >= table.groupRows.length) {
+                    inflater.end();
+                    return false;
+                }
+                group++;
+                row = 0;
+                groupRows = table.groupRows[group];
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i] >= 0) {
+                        decoded[i].decode(chunk(table.chunks[group], columns[i]), groupRows);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+
+        public boolean isNull(int column) {
+            return decoded[column] == null || !decoded[column].present[row];
+        }
+
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        public long getLong(int column) {
+            return isNull(column) ? 0 : decoded[column].longs[row];
+        }
+
+        public double getDecimal(int column) {
+            return isNull(column) ? 0.0 : decoded[column].doubles[row];
+        }
+
+        public String getString(int column) {
+            return isNull(column) ? null : decoded[column].strings[row];
+        }
+
+        public LocalDateTime getTimestamp(int column) {
+            if (isNull(column)) {
+                return null;
+            }
+            return LocalDateTime.ofEpochSecond(decoded[column].longs[row], decoded[column].nanos[row], ZoneOffset.UTC);
+        }
+
+        // Reads one chunk and inflates it if it was stored deflated
+        private ColumnarFormat.Input chunk(long[] index, int column) throws IOException {
+            long offset = index[column * 4];
+            int length = (int) index[column * 4 + 1];
+            int rawLength = (int) index[column * 4 + 2];
+            byte[] stored = read(offset, length);
+            if (index[column * 4 + 3] == ColumnarFormat.STORED) {
+                return new ColumnarFormat.Input(stored, length);
+            }
+            if (raw.length < rawLength) {
+                raw = new byte[rawLength];
+            }
+            inflater.reset();
+            inflater.setInput(stored);
+            try {
+                int inflated = 0;
+                while (inflated < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                if (inflated != rawLength) {
+                    throw new IOException("Snapshot chunk of " + table.name + " is corrupt");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Snapshot chunk of " + table.name + " is corrupt: " + e.getMessage(), e);
+            }
+            return new ColumnarFormat.Input(raw, rawLength);
+        }
+    }
+
+    // One column of the current row group, decoded
+    private static final class Decoded {
+        final ColumnarFormat.Type type;
+        boolean[] present = new boolean[0];
+        long[] longs;
+        double[] doubles;
+        String[] strings;
+        int[] nanos;
+
+        Decoded(ColumnarFormat.Type type) {
+            this.type = type;
+        }
+
+        void decode(ColumnarFormat.Input in, int rows) throws IOException {
+            if (present.length < rows) {
+                present = new boolean[rows];
+                longs = type == ColumnarFormat.Type.STRING ? null : new long[rows];
+                doubles = type == ColumnarFormat.Type.DECIMAL ? new double[rows] : null;
+                strings = type == ColumnarFormat.Type.STRING ? new String[rows] : null;
+                nanos = type == ColumnarFormat.Type.TIMESTAMP ? new int[rows] : null;
+            }
+            int flags = in.readByte();
+            if ((flags & ColumnarFormat.HAS_NULLS) != 0) {
+                for (int row = 0; row < rows; row += 8) {
+                    int bits = in.readByte();
+                    for (int bit = 0; bit < 8 && row + bit < rows; bit++) {
+                        present[row + bit] = (bits & (1 << bit)) != 0;
+                    }
+                }
+            } else {
+                Arrays.fill(present, 0, rows, true);
+            }
+            int encoding = flags & ColumnarFormat.ENCODING_MASK;
+            switch (type) {
+                case DECIMAL:
+                    decodeDecimals(in, rows, encoding);
+                    break;
+                case STRING:
+                    decodeStrings(in, rows, encoding);
+                    break;
+                case TIMESTAMP:
+                    decodeDeltas(in, rows, encoding);
+                    for (int row = 0; row < rows; row++) {
+                        if (present[row]) {
+                            nanos[row] = (int) in.readVarLong();
+                        }
+                    }
+                    break;
+                default:
+                    decodeDeltas(in, rows, encoding);
+            }
+        }
+
+        private void decodeDeltas(ColumnarFormat.Input in, int rows, int encoding) throws IOException {
+            expect(encoding, ColumnarFormat.DELTA);
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    previous += ColumnarFormat.unzigzag(in.readVarLong());
+                    longs[row] = previous;
+                }
+            }
+        }
+
+        private void decodeDecimals(ColumnarFormat.Input in, int rows, int encoding) throws IOException {
+            if (encoding == ColumnarFormat.RAW) {
+                for (int row = 0; row < rows; row++) {
+                    if (present[row]) {
+                        doubles[row] = Double.longBitsToDouble(in.readLong());
+                    }
+                }
+                return;
+            }
+            expect(encoding, ColumnarFormat.SCALED);
+            int scale = in.readByte();
+            if (scale > ColumnarFormat.MAX_SCALE) {
+                throw new IOException("Snapshot decimal scale " + scale + " is out of range");
+            }
+            double divisor = ColumnarFormat.POWERS_OF_TEN[scale];
+            long rawCount = in.readVarLong();
+            byte[] rawBits = null;
+            int rawBitsAt = 0;
+            if (rawCount > 0) {
+                int count = 0;
+                for (int row = 0; row < rows; row++) {
+                    if (present[row]) {
+                        count++;
+                    }
+                }
+                rawBits = in.bytes();
+                rawBitsAt = in.position();
+                in.skip((count + 7) / 8);
+            }
+            long previous = 0;
+            int index = 0;
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    if (rawBits != null && (rawBits[rawBitsAt + index / 8] & (1 << (index % 8))) != 0) {
+                        doubles[row] = Double.longBitsToDouble(in.readLong());
+                    } else {
+                        previous += ColumnarFormat.unzigzag(in.readVarLong());
+                        doubles[row] = previous / divisor;
+                    }
+                    index++;
+                }
+            }
+        }
+
+        private void decodeStrings(ColumnarFormat.Input in, int rows, int encoding) throws IOException {
+            if (encoding == ColumnarFormat.PLAIN) {
+                for (int row = 0; row < rows; row++) {
+                    strings[row] = present[row] ? in.readString((int) in.readVarLong()) : null;
+                }
+                return;
+            }
+            expect(encoding, ColumnarFormat.DICTIONARY);
+            long size = in.readVarLong();
+            if (size > rows) {
+                throw new IOException("Snapshot dictionary of " + size + " entries is out of range");
+            }
+            String[] dictionary = new String[(int) size];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = in.readString((int) in.readVarLong());
+            }
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    long entry = in.readVarLong();
+                    if (entry >= dictionary.length) {
+                        throw new IOException("Snapshot dictionary index " + entry + " is out of range");
+                    }
+                    strings[row] = dictionary[(int) entry];
+                } else {
+                    strings[row] = null;
+                }
+            }
+        }
+
+        private static void expect(int encoding, int expected) throws IOException {
+            if (encoding != expected) {
+                throw new IOException("Snapshot chunk has unknown encoding " + encoding);
+            }
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.stockportfolio.services;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a columnar snapshot file (see {@link ColumnarFormat}) one table at a time. Rows are
+ * set column by column and buffered until a row group is full, so memory stays at one row
+ * group whatever the table size. Columns left unset in a row are null.
+ *
+ * <pre>
+ * ColumnarWriter.Table trades = writer.table("transactions");
+ * int symbol = trades.column("symbol", ColumnarFormat.Type.STRING);
+ * trades.setString(symbol, "AAPL");
+ * trades.endRow();
+ * </pre>
+ */
+public final class ColumnarWriter implements Closeable {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final ColumnarFormat.Output chunk = new ColumnarFormat.Output(64 * 1024);
+    private byte[] compressed = new byte[64 * 1024];
+    private final List<Table> tables = new ArrayList<>();
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+    private Table current;
+    private long offset;
+    private boolean closed;
+
+    private ColumnarWriter(OutputStream out) throws IOException {
+        this.out = out;
+        write(ColumnarFormat.MAGIC, ColumnarFormat.MAGIC.length);
+    }
+
+    public static ColumnarWriter open(Path path) throws IOException {
+        return new ColumnarWriter(new BufferedOutputStream(Files.newOutputStream(path), STREAM_BUFFER_SIZE));
+    }
+
+    /** A key and value stored in the footer, such as who the snapshot belongs to. */
+    public void setMetadata(String key, String value) {
+        metadata.put(key, value);
+    }
+
+    /** Start the next table, finishing the previous one. */
+    public Table table(String name) throws IOException {
+        if (current != null) {
+            current.finish();
+        }
+        current = new Table(name);
+        tables.add(current);
+        return current;
+    }
+
+    /**
+     * Finish the last table and write the footer. The file is only complete, and only
+     * readable, once this returns.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (current != null) {
+                current.finish();
+            }
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeInt(metadata.size());
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                footer.writeUTF(entry.getKey());
+                footer.writeUTF(entry.getValue());
+            }
+            footer.writeInt(tables.size());
+            for (Table table : tables) {
+                table.writeIndex(footer);
+            }
+            footer.flush();
+            write(footerBytes.toByteArray(), footerBytes.size());
+            byte[] tail = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                tail[i] = (byte) (footerBytes.size() >>> (24 - 8 * i));
+            }
+            write(tail, 4);
+            write(ColumnarFormat.MAGIC, ColumnarFormat.MAGIC.length);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        offset += length;
+    }
+
+    /** One table being written; rows go in through the setters and {@link #endRow()}. */
+    public final class Table {
+        private final String name;
+        private final List<Column> columns = new ArrayList<>();
+        // Per row group: row count, then offset, length, raw length and codec of each chunk
+        private final List<long[]> rowGroups = new ArrayList<>();
+        private int rowsInGroup;
+        private long rows;
+        private boolean finished;
+
+        private Table(String name) {
+            this.name = name;
+        }
+
+        /** Add a column; all columns must be added before the first row. Returns its index. */
+        public int column(String columnName, ColumnarFormat.Type type) {
+            if (rows > 0 || rowsInGroup > 0) {
+                throw new IllegalStateException("Columns of " + name + " must be added before its rows");
+            }
+            columns.add(new Column(columnName, type));
+            return columns.size() - 1;
+        }
+
+        public void setInt(int column, int value) {
+            setLong(column, value);
+        }
+
+        public void setLong(int column, long value) {
+            Column target = columns.get(column);
+            target.longs[rowsInGroup] = value;
+            target.present[rowsInGroup] = true;
+        }
+
+        public void setDecimal(int column, double value) {
+            Column target = columns.get(column);
+            target.doubles[rowsInGroup] = value;
+            target.present[rowsInGroup] = true;
+        }
+
+        /** Null strings leave the column null. */
+        public void setString(int column, String value) {
+            Column target = columns.get(column);
+            target.strings[rowsInGroup] = value;
+            target.present[rowsInGroup] = value != null;
+        }
+
+        /** Null timestamps leave the column null. */
+        public void setTimestamp(int column, LocalDateTime value) {
+            Column target = columns.get(column);
+            if (value != null) {
+                target.longs[rowsInGroup] = value.toEpochSecond(ZoneOffset.UTC);
+                target.nanos[rowsInGroup] = value.getNano();
+            }
+            target.present[rowsInGroup] = value != null;
+        }
+
+        public void endRow() throws IOException {
+            if (finished) {
+                throw new IllegalStateException("Table " + name + " is already finished");
+            }
+            rowsInGroup++;
+            rows++;
+            if (rowsInGroup == ColumnarFormat.ROW_GROUP_SIZE) {
+                flushRowGroup();
+            }
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        private void finish() throws IOException {
+            if (!finished) {
+                if (rowsInGroup > 0) {
+                    flushRowGroup();
+                }
+                finished = true;
+            }
+        }
+
+        private void flushRowGroup() throws IOException {
+            long[] index = new long[1 + columns.size() * 4];
+            index[0] = rowsInGroup;
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                chunk.reset();
+                column.encode(chunk, rowsInGroup);
+                index[1 + i * 4] = offset;
+                index[3 + i * 4] = chunk.length;
+                index[4 + i * 4] = writeChunk();
+                index[2 + i * 4] = offset - index[1 + i * 4];
+                column.clear(rowsInGroup);
+            }
+            rowGroups.add(index);
+            rowsInGroup = 0;
+        }
+
+        private void writeIndex(DataOutputStream footer) throws IOException {
+            footer.writeUTF(name);
+            footer.writeLong(rows);
+            footer.writeInt(columns.size());
+            for (Column column : columns) {
+                footer.writeUTF(column.name);
+                footer.writeByte(column.type.ordinal());
+            }
+            footer.writeInt(rowGroups.size());
+            for (long[] index : rowGroups) {
+                footer.writeInt((int) index[0]);
+                for (int i = 0; i < columns.size(); i++) {
+                    footer.writeLong(index[1 + i * 4]);
+                    footer.writeInt((int) index[2 + i * 4]);
+                    footer.writeInt((int) index[3 + i * 4]);
+                    footer.writeByte((int) index[4 + i * 4]);
+                }
+            }
+        }
+    }
+
+    // Deflates the encoded chunk if that makes it smaller and writes it; returns the codec
+    private byte writeChunk() throws IOException {
+        deflater.reset();
+        deflater.setInput(chunk.bytes, 0, chunk.length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished() && size < chunk.length) {
+            if (size == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        if (deflater.finished() && size < chunk.length) {
+            write(compressed, size);
+            return ColumnarFormat.DEFLATE;
+        }
+        write(chunk.bytes, chunk.length);
+        return ColumnarFormat.STORED;
+    }
+
+    // A row group's worth of one column's values
+    private static final class Column {
+        final String name;
+        final ColumnarFormat.Type type;
+        final boolean[] present = new boolean[ColumnarFormat.ROW_GROUP_SIZE];
+        long[] longs;
+        double[] doubles;
+        String[] strings;
+        int[] nanos;
+
+        Column(String name, ColumnarFormat.Type type) {
+            this.name = name;
+            this.type = type;
+            switch (type) {
+                case DECIMAL:
+                    doubles = new double[ColumnarFormat.ROW_GROUP_SIZE];
+                    break;
+                case STRING:
+                    strings = new String[ColumnarFormat.ROW_GROUP_SIZE];
+                    break;
+                case TIMESTAMP:
+                    nanos = new int[ColumnarFormat.ROW_GROUP_SIZE];
+                    longs = new long[ColumnarFormat.ROW_GROUP_SIZE];
+                    break;
+                default:
+                    longs = new long[ColumnarFormat.ROW_GROUP_SIZE];
+            }
+        }
+
+        void clear(int rows) {
+            Arrays.fill(present, 0, rows, false);
+            if (strings != null) {
+                Arrays.fill(strings, 0, rows, null);
+            }
+        }
+
+        void encode(ColumnarFormat.Output out, int rows) {
+            int nulls = 0;
+            for (int row = 0; row < rows; row++) {
+                if (!present[row]) {
+                    nulls++;
+                }
+            }
+            int flagsAt = out.length;
+            out.writeByte(0);
+            if (nulls > 0) {
+                for (int row = 0; row < rows; row += 8) {
+                    int bits = 0;
+                    for (int bit = 0; bit < 8 && row + bit < rows; bit++) {
+                        if (present[row + bit]) {
+                            bits |= 1 << bit;
+                        }
+                    }
+                    out.writeByte(bits);
+                }
+            }
+            int encoding;
+            switch (type) {
+                case DECIMAL:
+                    encoding = encodeDecimals(out, rows, rows - nulls);
+                    break;
+                case STRING:
+                    encoding = encodeStrings(out, rows, rows - nulls);
+                    break;
+                case TIMESTAMP:
+                    encodeDeltas(out, rows);
+                    for (int row = 0; row < rows; row++) {
+                        if (present[row]) {
+                            out.writeVarLong(nanos[row]);
+                        }
+                    }
+                    encoding = ColumnarFormat.DELTA;
+                    break;
+                default:
+                    encodeDeltas(out, rows);
+                    encoding = ColumnarFormat.DELTA;
+            }
+            out.bytes[flagsAt] = (byte) (encoding | (nulls > 0 ? ColumnarFormat.HAS_NULLS : 0));
+        }
+
+        private void encodeDeltas(ColumnarFormat.Output out, int rows) {
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    out.writeVarLong(ColumnarFormat.zigzag(longs[row] - previous));
+                    previous = longs[row];
+                }
+            }
+        }
+
+        // Scaled deltas with a bitmap of the values stored raw, or everything raw if most would be
+        private int encodeDecimals(ColumnarFormat.Output out, int rows, int count) {
+            int scale = 0;
+            int unscalable = 0;
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    int valueScale = ColumnarFormat.scaleOf(doubles[row]);
+                    if (valueScale < 0) {
+                        unscalable++;
+                    } else {
+                        scale = Math.max(scale, valueScale);
+                    }
+                }
+            }
+            if (unscalable * 2 > count) {
+                for (int row = 0; row < rows; row++) {
+                    if (present[row]) {
+                        out.writeLong(Double.doubleToRawLongBits(doubles[row]));
+                    }
+                }
+                return ColumnarFormat.RAW;
+            }
+
+            // Values exact at their own scale are nearly always exact at the chunk's as well;
+            // the few that are not join the raw ones
+            long[] scaled = longs != null ? longs : (longs = new long[ColumnarFormat.ROW_GROUP_SIZE]);
+            boolean[] raw = new boolean[count];
+            int rawCount = 0;
+            int index = 0;
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    scaled[row] = ColumnarFormat.scaled(doubles[row], scale);
+                    if (scaled[row] == Long.MIN_VALUE) {
+                        raw[index] = true;
+                        rawCount++;
+                    }
+                    index++;
+                }
+            }
+            out.writeByte(scale);
+            out.writeVarLong(rawCount);
+            if (rawCount > 0) {
+                for (int i = 0; i < count; i += 8) {
+                    int bits = 0;
+                    for (int bit = 0; bit < 8 && i + bit < count; bit++) {
+                        if (raw[i + bit]) {
+                            bits |= 1 << bit;
+                        }
+                    }
+                    out.writeByte(bits);
+                }
+            }
+            long previous = 0;
+            index = 0;
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    if (raw[index++]) {
+                        out.writeLong(Double.doubleToRawLongBits(doubles[row]));
+                    } else {
+                        out.writeVarLong(ColumnarFormat.zigzag(scaled[row] - previous));
+                        previous = scaled[row];
+                    }
+                }
+            }
+            return ColumnarFormat.SCALED;
+        }
+
+        // Dictionary indexes when at most half the values are distinct, else inline UTF-8
+        private int encodeStrings(ColumnarFormat.Output out, int rows, int count) {
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> entries = new ArrayList<>();
+            for (int row = 0; row < rows && entries.size() * 2 <= count; row++) {
+                if (present[row] && !dictionary.containsKey(strings[row])) {
+                    dictionary.put(strings[row], entries.size());
+                    entries.add(strings[row]);
+                }
+            }
+            if (entries.size() * 2 > count) {
+                for (int row = 0; row < rows; row++) {
+                    if (present[row]) {
+                        writeString(out, strings[row]);
+                    }
+                }
+                return ColumnarFormat.PLAIN;
+            }
+            out.writeVarLong(entries.size());
+            for (String entry : entries) {
+                writeString(out, entry);
+            }
+            for (int row = 0; row < rows; row++) {
+                if (present[row]) {
+                    out.writeVarLong(dictionary.get(strings[row]));
+                }
+            }
+            return ColumnarFormat.DICTIONARY;
+        }
+
+        private static void writeString(ColumnarFormat.Output out, String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeVarLong(utf8.length);
+            out.writeBytes(utf8, 0, utf8.length);
+        }
+    }
+}
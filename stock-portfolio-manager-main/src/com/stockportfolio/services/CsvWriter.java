@@ -0,0 +1,256 @@
+package com.stockportfolio.services;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+import com.stockportfolio.utils.FixedPoint;
+
+/**
+ * Row-at-a-time CSV output through one reused character buffer. Numbers and timestamps are
+ * formatted straight into the buffer rather than through String.format, so writing a row
+ * allocates nothing; text fields are quoted only when they contain a separator, quote or
+ * line break.
+ */
+public final class CsvWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    // Past this, scaled doubles no longer fit a long exactly
+    private static final double MAX_SCALED = 1e17;
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final char[] digits = new char[20];
+    private int position;
+    private boolean rowStarted;
+    private long rows;
+
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    /** UTF-8 CSV at {@code path}, gzip-compressed if the file name ends in .gz. */
+    public static CsvWriter open(Path path) throws IOException {
+        return open(path, isGzip(path));
+    }
+
+    public static CsvWriter open(Path path, boolean gzip) throws IOException {
+        OutputStream stream = new BufferedOutputStream(Files.newOutputStream(path), STREAM_BUFFER_SIZE);
+        if (gzip) {
+            stream = new GZIPOutputStream(stream, STREAM_BUFFER_SIZE);
+        }
+        return new CsvWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    public static boolean isGzip(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+
+    public CsvWriter text(CharSequence value) throws IOException {
+        separator();
+        if (value == null) {
+            return this;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quote) {
+            append('"');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            append(c);
+        }
+        if (quote) {
+            append('"');
+        }
+        return this;
+    }
+
+    public CsvWriter number(long value) throws IOException {
+        separator();
+        appendLong(value);
+        return this;
+    }
+
+    /** The value rounded half up to {@code decimals} places (at most 6), e.g. 1234.50. */
+    public CsvWriter decimal(double value, int decimals) throws IOException {
+        separator();
+        appendDecimal(value, decimals);
+        return this;
+    }
+
+    /** Two decimals followed by a percent sign, e.g. 12.34%. */
+    public CsvWriter percent(double value) throws IOException {
+        separator();
+        appendDecimal(value, 2);
+        append('%');
+        return this;
+    }
+
+    /** A fixed-point unit value in plain form without trailing zeros, as {@link FixedPoint#format}. */
+    public CsvWriter units(long units) throws IOException {
+        separator();
+        if (units < 0) {
+            append('-');
+        }
+        long magnitude = Math.abs(units);
+        appendLong(magnitude / FixedPoint.SCALE);
+        long fraction = magnitude % FixedPoint.SCALE;
+        if (fraction != 0) {
+            int places = 4;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                places--;
+            }
+            append('.');
+            appendPadded(fraction, places);
+        }
+        return this;
+    }
+
+    /** ISO-8601 local date and time to the second, e.g. 2024-03-01T09:30:00. */
+    public CsvWriter timestamp(LocalDateTime value) throws IOException {
+        separator();
+        if (value == null) {
+            return this;
+        }
+        appendPadded(value.getYear(), 4);
+        append('-');
+        appendPadded(value.getMonthValue(), 2);
+        append('-');
+        appendPadded(value.getDayOfMonth(), 2);
+        append('T');
+        appendPadded(value.getHour(), 2);
+        append(':');
+        appendPadded(value.getMinute(), 2);
+        append(':');
+        appendPadded(value.getSecond(), 2);
+        return this;
+    }
+
+    public CsvWriter empty() throws IOException {
+        separator();
+        return this;
+    }
+
+    /** A whole line as given, e.g. a header or section title, without quoting. */
+    public CsvWriter line(String text) throws IOException {
+        if (rowStarted) {
+            endRow();
+        }
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+        append('\n');
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        append('\n');
+        rowStarted = false;
+        rows++;
+    }
+
+    /** Rows ended with {@link #endRow()} so far. */
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(buffer, 0, position);
+            position = 0;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void separator() throws IOException {
+        if (rowStarted) {
+            append(',');
+        }
+        rowStarted = true;
+    }
+
+    private void append(char c) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = c;
+    }
+
+    private void appendDecimal(double value, int decimals) throws IOException {
+        double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+        if (Double.isNaN(value) || Double.isInfinite(value) || scaled >= MAX_SCALED) {
+            String text = String.format("%." + decimals + "f", value);
+            for (int i = 0; i < text.length(); i++) {
+                append(text.charAt(i));
+            }
+            return;
+        }
+        long rounded = Math.round(scaled);
+        if (value < 0 && rounded != 0) {
+            append('-');
+        }
+        appendLong(rounded / POWERS_OF_TEN[decimals]);
+        if (decimals > 0) {
+            append('.');
+            appendPadded(rounded % POWERS_OF_TEN[decimals], decimals);
+        }
+    }
+
+    private void appendLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            String text = Long.toString(value);
+            for (int i = 0; i < text.length(); i++) {
+                append(text.charAt(i));
+            }
+            return;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        appendPadded(value, 1);
+    }
+
+    // Non-negative value with leading zeros up to the given width
+    private void appendPadded(long value, int width) throws IOException {
+        int start = digits.length;
+        do {
+            digits[--start] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = digits.length - start; i < width; i++) {
+            append('0');
+        }
+        for (int i = start; i < digits.length; i++) {
+            append(digits[i]);
+        }
+    }
+}
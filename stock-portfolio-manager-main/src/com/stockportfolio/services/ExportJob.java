@@ -0,0 +1,60 @@
+package com.stockportfolio.services;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An export running on its own thread. The task reports rows written through
+ * {@link #progress(long)}, which turns false once {@link #cancel()} has been called; the
+ * task then stops and fails with a CancellationException. Callers poll
+ * {@link #getRowsWritten()} for progress and wait on {@link #getResult()}.
+ */
+public final class ExportJob {
+    @FunctionalInterface
+    public interface Task {
+        /** Run the export; returns the number of rows written. */
+        long run(ExportJob job) throws Exception;
+    }
+
+    private final String name;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private volatile long rowsWritten;
+
+    private ExportJob(String name) {
+        this.name = name;
+    }
+
+    public static ExportJob start(String name, Task task) {
+        ExportJob job = new ExportJob(name);
+        new Thread(() -> {
+            try {
+                job.result.complete(task.run(job));
+            } catch (Throwable e) {
+                job.result.completeExceptionally(e);
+            }
+        }, "export-" + name).start();
+        return job;
+    }
+
+    /** Record progress; false if the job has been cancelled and the task should stop. */
+    public boolean progress(long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+        return !cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getName() { return name; }
+    public long getRowsWritten() { return rowsWritten; }
+
+    /** Completes with the row count, or exceptionally with the task's failure. */
+    public CompletableFuture<Long> getResult() {
+        return result;
+    }
+}
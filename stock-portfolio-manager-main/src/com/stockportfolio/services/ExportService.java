@@ -1,242 +1,553 @@
 package com.stockportfolio.services;
 
-import java.io.FileWriter;
+import java.awt.BorderLayout;
+import java.awt.Frame;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.PortfolioValueSnapshot;
 import com.stockportfolio.model.Position;
-import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
 import com.stockportfolio.services.analytics.AIAnalytics;
-import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.utils.FixedPoint;
+import com.stockportfolio.utils.LoadingIndicator;
 
 public class ExportService {
-    private DatabaseManager dbManager;
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    // Rows between progress reports, which are also where cancellation is noticed
+    private static final int PROGRESS_INTERVAL = 10_000;
+    // Portfolios analysed at once for the analytics report
+    private static final int ANALYTICS_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private DataStore dbManager;
     private AIAnalytics aiAnalytics;
 
-    public ExportService(DatabaseManager dbManager) {
+    public ExportService(DataStore dbManager) {
         this.dbManager = dbManager;
         this.aiAnalytics = new AIAnalytics();
     }
 
     public void exportTradeHistory(int userId) {
-        try {
-            List<Transaction> transactions = dbManager.getTransactionsByUserId(userId);
-
-            JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setDialogTitle("Export Trade History");
-            fileChooser.setSelectedFile(new java.io.File("trade_history.csv"));
-            FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV Files", "csv");
-            fileChooser.setFileFilter(filter);
-
-            int result = fileChooser.showSaveDialog(null);
-            if (result == JFileChooser.APPROVE_OPTION) {
-                String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-                if (!filePath.toLowerCase().endsWith(".csv")) {
-                    filePath += ".csv";
-                }
-
-                exportTradeHistoryToCSV(transactions, filePath);
-                JOptionPane.showMessageDialog(null,
-                    "Trade history exported successfully to: " + filePath,
-                    "Export Complete", JOptionPane.INFORMATION_MESSAGE);
-            }
-
-        } catch (SQLException | IOException e) {
-            JOptionPane.showMessageDialog(null,
-                "Error exporting trade history: " + e.getMessage(),
-                "Export Error", JOptionPane.ERROR_MESSAGE);
+        Path target = chooseTarget("Export Trade History", "trade_history.csv");
+        if (target != null) {
+            runInBackground("Trade history", target, job -> writeTradeHistory(userId, target, job));
         }
     }
 
     public void exportPortfolioReport(int userId) {
-        try {
-            List<Portfolio> portfolios = dbManager.getPortfoliosByUserId(userId);
-
-            JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setDialogTitle("Export Portfolio Report");
-            fileChooser.setSelectedFile(new java.io.File("portfolio_report.csv"));
-            FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV Files", "csv");
-            fileChooser.setFileFilter(filter);
-
-            int result = fileChooser.showSaveDialog(null);
-            if (result == JFileChooser.APPROVE_OPTION) {
-                String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-                if (!filePath.toLowerCase().endsWith(".csv")) {
-                    filePath += ".csv";
-                }
-
-                exportPortfolioReportToCSV(portfolios, filePath);
-                JOptionPane.showMessageDialog(null,
-                    "Portfolio report exported successfully to: " + filePath,
-                    "Export Complete", JOptionPane.INFORMATION_MESSAGE);
-            }
+        Path target = chooseTarget("Export Portfolio Report", "portfolio_report.csv");
+        if (target != null) {
+            runInBackground("Portfolio report", target, job -> writePortfolioReport(userId, target, job));
+        }
+    }
 
-        } catch (SQLException | IOException e) {
-            JOptionPane.showMessageDialog(null,
-                "Error exporting portfolio report: " + e.getMessage(),
-                "Export Error", JOptionPane.ERROR_MESSAGE);
+    public void exportSnapshot(int userId) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export Portfolio Snapshot");
+        fileChooser.setSelectedFile(new java.io.File("portfolio_snapshot." + ColumnarFormat.FILE_EXTENSION));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Portfolio Snapshots", ColumnarFormat.FILE_EXTENSION));
+        if (fileChooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+        if (!filePath.toLowerCase().endsWith("." + ColumnarFormat.FILE_EXTENSION)) {
+            filePath += "." + ColumnarFormat.FILE_EXTENSION;
         }
+        Path target = Paths.get(filePath);
+        runInBackground("Snapshot", target, job -> writeSnapshot(userId, target, job));
     }
 
     public void exportAnalyticsReport(int userId) {
-        try {
-            List<Portfolio> portfolios = dbManager.getPortfoliosByUserId(userId);
-
-            JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setDialogTitle("Export Analytics Report");
-            fileChooser.setSelectedFile(new java.io.File("analytics_report.csv"));
-            FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV Files", "csv");
-            fileChooser.setFileFilter(filter);
-
-            int result = fileChooser.showSaveDialog(null);
-            if (result == JFileChooser.APPROVE_OPTION) {
-                String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-                if (!filePath.toLowerCase().endsWith(".csv")) {
-                    filePath += ".csv";
-                }
-
-                exportAnalyticsReportToCSV(portfolios, filePath);
-                JOptionPane.showMessageDialog(null,
-                    "Analytics report exported successfully to: " + filePath,
-                    "Export Complete", JOptionPane.INFORMATION_MESSAGE);
-            }
-
-        } catch (SQLException | IOException e) {
-            JOptionPane.showMessageDialog(null,
-                "Error exporting analytics report: " + e.getMessage(),
-                "Export Error", JOptionPane.ERROR_MESSAGE);
+        Path target = chooseTarget("Export Analytics Report", "analytics_report.csv");
+        if (target != null) {
+            runInBackground("Analytics report", target, job -> writeAnalyticsReport(userId, target, job));
         }
     }
 
-    private void exportTradeHistoryToCSV(List<Transaction> transactions, String filePath) throws IOException {
-        try (FileWriter writer = new FileWriter(filePath)) {
-            // Write CSV header
-            writer.write("Date,Symbol,Type,Quantity,Price,Total Value,Portfolio ID,Status\n");
-
-            // Write transaction data
-            for (Transaction transaction : transactions) {
-                writer.write(String.format("%s,%s,%s,%d,%.2f,%.2f,%d,%s\n",
-                    transaction.getTimestamp().toString(),
-                    transaction.getSymbol(),
-                    transaction.getType(),
-                    transaction.getQuantity(),
-                    transaction.getPrice(),
-                    transaction.getTotalAmount(),
-                    transaction.getPortfolioId(),
-                    transaction.getStatus()));
+    /**
+     * Write a user's trade history to {@code target} (gzip if it ends in .gz), streamed from a
+     * database cursor so memory use does not grow with the number of trades. Usable without a
+     * UI; {@code job} may be null.
+     *
+     * @return the number of trades written
+     */
+    public long writeTradeHistory(int userId, Path target, ExportJob job) throws IOException, SQLException {
+        return writeCsv(target, csv -> {
+            csv.line("Date,Symbol,Type,Quantity,Price,Total Value,Portfolio ID,Status");
+            try {
+                dbManager.streamTransactionsByUserId(userId, EXPORT_FETCH_SIZE, transaction -> {
+                    try {
+                        // Quantities can be fractional, so they are written exactly
+                        csv.timestamp(transaction.getTimestamp())
+                           .text(transaction.getSymbol())
+                           .text(transaction.getType())
+                           .units(FixedPoint.toUnits(transaction.getQuantity()))
+                           .decimal(transaction.getPrice(), 2)
+                           .decimal(transaction.getTotalAmount(), 2)
+                           .number(transaction.getPortfolioId())
+                           .text(transaction.getStatus())
+                           .endRow();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    rowWritten(csv, job);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
-        }
+        });
     }
 
-    private void exportPortfolioReportToCSV(List<Portfolio> portfolios, String filePath) throws IOException, SQLException {
-        try (FileWriter writer = new FileWriter(filePath)) {
-            // Write CSV header
-            writer.write("Portfolio Name,Total Value,Total Cost Basis,Total P&L,P&L %,Position Count\n");
-
-            // Write portfolio data
+    /**
+     * Write the portfolio summary and position detail report for a user's portfolios to
+     * {@code target}, reading each portfolio's positions once. {@code job} may be null.
+     *
+     * @return the number of rows written
+     */
+    public long writePortfolioReport(int userId, Path target, ExportJob job) throws IOException, SQLException {
+        List<Portfolio> portfolios = dbManager.getPortfoliosByUserId(userId);
+        return writeCsv(target, csv -> {
+            csv.line("Portfolio Name,Total Value,Total Cost Basis,Total P&L,P&L %,Position Count");
+            Map<Integer, List<Position>> positionsByPortfolio = new HashMap<>();
             for (Portfolio portfolio : portfolios) {
                 double pnlPercentage = portfolio.getTotalCostBasis() > 0 ?
                     (portfolio.getTotalPnL() / portfolio.getTotalCostBasis()) * 100 : 0.0;
 
                 List<Position> positions = dbManager.getPositionsByPortfolioId(portfolio.getId());
-
-                writer.write(String.format("%s,%.2f,%.2f,%.2f,%.2f%%,%d\n",
-                    portfolio.getName(),
-                    portfolio.getTotalValue(),
-                    portfolio.getTotalCostBasis(),
-                    portfolio.getTotalPnL(),
-                    pnlPercentage,
-                    positions.size()));
+                positionsByPortfolio.put(portfolio.getId(), positions);
+
+                csv.text(portfolio.getName())
+                   .decimal(portfolio.getTotalValue(), 2)
+                   .decimal(portfolio.getTotalCostBasis(), 2)
+                   .decimal(portfolio.getTotalPnL(), 2)
+                   .percent(pnlPercentage)
+                   .number(positions.size())
+                   .endRow();
+                rowWritten(csv, job);
             }
 
-            // Add detailed positions section
-            writer.write("\n\nDetailed Positions\n");
-            writer.write("Portfolio,Symbol,Quantity,Current Price,Total Value,Cost Basis,P&L,P&L %\n");
+            // Detailed positions section
+            csv.line("");
+            csv.line("");
+            csv.line("Detailed Positions");
+            csv.line("Portfolio,Symbol,Currency,Quantity,Current Price,Total Value,Cost Basis,P&L,P&L %,Total Value (" + FxRateService.DEFAULT_BASE_CURRENCY + ")");
 
-            for (Portfolio portfolio : portfolios) {
-                List<Position> positions = dbManager.getPositionsByPortfolioId(portfolio.getId());
+            FxRateService fxRateService = FxRateService.getInstance();
+            Map<String, String> currencies = dbManager.getStockCurrencies();
+            double[] fxFactors = fxRateService.crossRates(FxRateService.DEFAULT_BASE_CURRENCY);
 
-                for (Position position : positions) {
+            for (Portfolio portfolio : portfolios) {
+                for (Position position : positionsByPortfolio.get(portfolio.getId())) {
                     double totalValue = position.getQuantity() * position.getCurrentPrice();
-                    double pnl = totalValue - position.getTotalCost();
-                    double pnlPercentage = position.getTotalCost() > 0 ?
-                        (pnl / position.getTotalCost()) * 100 : 0.0;
-
-                    writer.write(String.format("%s,%s,%d,%.2f,%.2f,%.2f,%.2f,%.2f%%\n",
-                        portfolio.getName(),
-                        position.getStockSymbol(),
-                        position.getQuantity(),
-                        position.getCurrentPrice(),
-                        totalValue,
-                        position.getTotalCost(),
-                        pnl,
-                        pnlPercentage));
+                    // Cost basis as the portfolio totals count it; rows from the database carry no totalCost
+                    double costBasis = FixedPoint.toDouble(FixedPoint.costBasisUnits(position.getQuantity(), position.getAverageCost()));
+                    double pnl = totalValue - costBasis;
+                    double pnlPercentage = costBasis > 0 ? (pnl / costBasis) * 100 : 0.0;
+
+                    String currency = currencies.getOrDefault(position.getSymbol(), FxRateService.DEFAULT_BASE_CURRENCY);
+                    double baseValue = totalValue * fxRateService.factor(fxFactors, fxRateService.currencyId(currency));
+
+                    csv.text(portfolio.getName())
+                       .text(position.getSymbol())
+                       .text(currency)
+                       .units(FixedPoint.toUnits(position.getQuantity()))
+                       .decimal(position.getCurrentPrice(), 2)
+                       .decimal(totalValue, 2)
+                       .decimal(costBasis, 2)
+                       .decimal(pnl, 2)
+                       .percent(pnlPercentage)
+                       .decimal(baseValue, 2)
+                       .endRow();
+                    rowWritten(csv, job);
                 }
             }
+        });
+    }
+
+    /**
+     * Write a user's portfolios, positions, trade history and value history to {@code target}
+     * as a columnar snapshot (see {@link ColumnarFormat}), for backups, moves between
+     * machines and analytics extracts; {@link SnapshotImporter} reads it back. Unlike the CSV
+     * exports, every value is kept exactly. {@code job} may be null.
+     *
+     * @return the number of rows written across all tables
+     */
+    public long writeSnapshot(int userId, Path target, ExportJob job) throws IOException, SQLException {
+        List<Portfolio> portfolios = dbManager.getPortfoliosByUserId(userId);
+        return writeReplacing(target, partial -> {
+            long rows;
+            try (ColumnarWriter snapshot = ColumnarWriter.open(partial)) {
+                snapshot.setMetadata("user_id", String.valueOf(userId));
+                snapshot.setMetadata("exported_at", LocalDateTime.now().toString());
+
+                ColumnarWriter.Table table = snapshot.table(ColumnarFormat.PORTFOLIOS);
+                int id = table.column("id", ColumnarFormat.Type.INT);
+                int name = table.column("name", ColumnarFormat.Type.STRING);
+                int description = table.column("description", ColumnarFormat.Type.STRING);
+                int totalValue = table.column("total_value", ColumnarFormat.Type.DECIMAL);
+                int totalCostBasis = table.column("total_cost_basis", ColumnarFormat.Type.DECIMAL);
+                int createdAt = table.column("created_at", ColumnarFormat.Type.TIMESTAMP);
+                int updatedAt = table.column("updated_at", ColumnarFormat.Type.TIMESTAMP);
+                for (Portfolio portfolio : portfolios) {
+                    table.setInt(id, portfolio.getId());
+                    table.setString(name, portfolio.getName());
+                    table.setString(description, portfolio.getDescription());
+                    table.setDecimal(totalValue, portfolio.getTotalValue());
+                    table.setDecimal(totalCostBasis, portfolio.getTotalCostBasis());
+                    table.setTimestamp(createdAt, portfolio.getCreatedAt());
+                    table.setTimestamp(updatedAt, portfolio.getUpdatedAt());
+                    table.endRow();
+                }
+                rows = table.getRows();
+
+                table = snapshot.table(ColumnarFormat.POSITIONS);
+                int portfolioId = table.column("portfolio_id", ColumnarFormat.Type.INT);
+                int symbol = table.column("symbol", ColumnarFormat.Type.STRING);
+                int assetType = table.column("asset_type", ColumnarFormat.Type.STRING);
+                int quantity = table.column("quantity", ColumnarFormat.Type.DECIMAL);
+                int averageCost = table.column("average_cost", ColumnarFormat.Type.DECIMAL);
+                int currentPrice = table.column("current_price", ColumnarFormat.Type.DECIMAL);
+                int positionValue = table.column("total_value", ColumnarFormat.Type.DECIMAL);
+                int lastUpdated = table.column("last_updated", ColumnarFormat.Type.TIMESTAMP);
+                for (Portfolio portfolio : portfolios) {
+                    for (Position position : dbManager.getPositionsByPortfolioId(portfolio.getId())) {
+                        table.setInt(portfolioId, position.getPortfolioId());
+                        table.setString(symbol, position.getSymbol());
+                        table.setString(assetType, position.getAssetType());
+                        table.setDecimal(quantity, position.getQuantity());
+                        table.setDecimal(averageCost, position.getAverageCost());
+                        table.setDecimal(currentPrice, position.getCurrentPrice());
+                        table.setDecimal(positionValue, position.getTotalValue());
+                        table.setTimestamp(lastUpdated, position.getLastUpdated());
+                        table.endRow();
+                    }
+                }
+                rows += table.getRows();
+
+                ColumnarWriter.Table trades = snapshot.table(ColumnarFormat.TRANSACTIONS);
+                int tradeId = trades.column("id", ColumnarFormat.Type.INT);
+                int tradePortfolioId = trades.column("portfolio_id", ColumnarFormat.Type.INT);
+                int timestamp = trades.column("timestamp", ColumnarFormat.Type.TIMESTAMP);
+                int tradeSymbol = trades.column("symbol", ColumnarFormat.Type.STRING);
+                int type = trades.column("type", ColumnarFormat.Type.STRING);
+                int orderType = trades.column("order_type", ColumnarFormat.Type.STRING);
+                int tradeQuantity = trades.column("quantity", ColumnarFormat.Type.DECIMAL);
+                int price = trades.column("price", ColumnarFormat.Type.DECIMAL);
+                int totalAmount = trades.column("total_amount", ColumnarFormat.Type.DECIMAL);
+                int status = trades.column("status", ColumnarFormat.Type.STRING);
+                long tablesBefore = rows;
+                try {
+                    dbManager.streamTransactionsByUserId(userId, EXPORT_FETCH_SIZE, transaction -> {
+                        trades.setInt(tradeId, transaction.getId());
+                        trades.setInt(tradePortfolioId, transaction.getPortfolioId());
+                        trades.setTimestamp(timestamp, transaction.getTimestamp());
+                        trades.setString(tradeSymbol, transaction.getSymbol());
+                        trades.setString(type, transaction.getType());
+                        trades.setString(orderType, transaction.getOrderType());
+                        trades.setDecimal(tradeQuantity, transaction.getQuantity());
+                        trades.setDecimal(price, transaction.getPrice());
+                        trades.setDecimal(totalAmount, transaction.getTotalAmount());
+                        trades.setString(status, transaction.getStatus());
+                        try {
+                            trades.endRow();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        rowWritten(tablesBefore + trades.getRows(), job);
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                rows += trades.getRows();
+
+                table = snapshot.table(ColumnarFormat.VALUE_HISTORY);
+                int historyPortfolioId = table.column("portfolio_id", ColumnarFormat.Type.INT);
+                int resolution = table.column("resolution", ColumnarFormat.Type.STRING);
+                int bucketStart = table.column("bucket_start", ColumnarFormat.Type.TIMESTAMP);
+                int openValue = table.column("open_value", ColumnarFormat.Type.DECIMAL);
+                int highValue = table.column("high_value", ColumnarFormat.Type.DECIMAL);
+                int lowValue = table.column("low_value", ColumnarFormat.Type.DECIMAL);
+                int closeValue = table.column("close_value", ColumnarFormat.Type.DECIMAL);
+                int costBasis = table.column("cost_basis", ColumnarFormat.Type.DECIMAL);
+                int samples = table.column("samples", ColumnarFormat.Type.INT);
+                for (Portfolio portfolio : portfolios) {
+                    for (PortfolioValueSnapshot bucket : dbManager.getPortfolioValueSnapshots(portfolio.getId())) {
+                        table.setInt(historyPortfolioId, bucket.getPortfolioId());
+                        table.setString(resolution, bucket.getResolution());
+                        table.setTimestamp(bucketStart, bucket.getBucketStart());
+                        table.setDecimal(openValue, bucket.getOpenValue());
+                        table.setDecimal(highValue, bucket.getHighValue());
+                        table.setDecimal(lowValue, bucket.getLowValue());
+                        table.setDecimal(closeValue, bucket.getCloseValue());
+                        table.setDecimal(costBasis, bucket.getCostBasis());
+                        table.setInt(samples, bucket.getSamples());
+                        table.endRow();
+                        rowWritten(rows + table.getRows(), job);
+                    }
+                }
+                rows += table.getRows();
+            }
+            return rows;
+        });
+    }
+
+    @FunctionalInterface
+    private interface CsvBody {
+        void write(CsvWriter csv) throws IOException, SQLException;
+    }
+
+    @FunctionalInterface
+    private interface FileBody {
+        /** Write the whole export to {@code partial}; returns the number of rows written. */
+        long write(Path partial) throws IOException, SQLException;
+    }
+
+    private static long writeCsv(Path target, CsvBody body) throws IOException, SQLException {
+        return writeReplacing(target, partial -> {
+            try (CsvWriter csv = CsvWriter.open(partial, CsvWriter.isGzip(target))) {
+                body.write(csv);
+                return csv.getRows();
+            }
+        });
+    }
+
+    // Writes to a .part file next to the target and moves it into place only once complete,
+    // so a failed or cancelled export never leaves a truncated file under the chosen name
+    private static long writeReplacing(Path target, FileBody body) throws IOException, SQLException {
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        boolean complete = false;
+        try {
+            long rows = body.write(partial);
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            complete = true;
+            return rows;
+        } finally {
+            if (!complete) {
+                Files.deleteIfExists(partial);
+            }
         }
     }
 
-    private void exportAnalyticsReportToCSV(List<Portfolio> portfolios, String filePath) throws IOException, SQLException {
-        try (FileWriter writer = new FileWriter(filePath)) {
-            // Write CSV header
-            writer.write("Portfolio Name,Risk Level,Volatility,Sharpe Ratio,Expected Return,Expected Risk\n");
+    // Reports progress every PROGRESS_INTERVAL rows and stops the export once cancelled
+    private static void rowWritten(CsvWriter csv, ExportJob job) {
+        rowWritten(csv.getRows(), job);
+    }
 
-            // Write analytics data
-            for (Portfolio portfolio : portfolios) {
-                List<Position> positions = dbManager.getPositionsByPortfolioId(portfolio.getId());
+    private static void rowWritten(long rows, ExportJob job) {
+        if (job != null && rows % PROGRESS_INTERVAL == 0 && !job.progress(rows)) {
+            throw new CancellationException(job.getName() + " export cancelled");
+        }
+    }
 
-                if (!positions.isEmpty()) {
-                    // Calculate weights for risk assessment
-                    Map<String, Double> weights = calculateWeights(positions);
-                    AIAnalytics.RiskAssessment risk = aiAnalytics.assessRisk(weights);
+    private static Path chooseTarget(String title, String defaultName) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle(title);
+        fileChooser.setSelectedFile(new java.io.File(defaultName));
+        FileNameExtensionFilter csvFilter = new FileNameExtensionFilter("CSV Files", "csv");
+        FileNameExtensionFilter gzipFilter = new FileNameExtensionFilter("Compressed CSV Files (.csv.gz)", "gz");
+        fileChooser.addChoosableFileFilter(gzipFilter);
+        fileChooser.setFileFilter(csvFilter);
+
+        if (fileChooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+            return null;
+        }
+        String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+        String lower = filePath.toLowerCase();
+        if (fileChooser.getFileFilter() == gzipFilter && !lower.endsWith(".gz")) {
+            filePath += lower.endsWith(".csv") ? ".gz" : ".csv.gz";
+        } else if (!lower.endsWith(".csv") && !lower.endsWith(".gz")) {
+            filePath += ".csv";
+        }
+        return Paths.get(filePath);
+    }
 
-                    // Get optimization data
-                    AIAnalytics.PortfolioOptimization optimization =
-                        aiAnalytics.optimizePortfolio(String.valueOf(portfolio.getId())).join();
-
-                    writer.write(String.format("%s,%s,%.2f,%.2f,%.2f,%.2f\n",
-                        portfolio.getName(),
-                        risk.getRiskLevel(),
-                        risk.getVolatility() * 100,
-                        risk.getSharpeRatio(),
-                        optimization.getExpectedReturn() * 100,
-                        optimization.getExpectedRisk() * 100));
+    // Runs the export off the event thread behind a cancellable progress dialog
+    private static void runInBackground(String title, Path target, ExportJob.Task task) {
+        ExportJob job = ExportJob.start(title, task);
+
+        LoadingIndicator indicator = new LoadingIndicator("Exporting " + title.toLowerCase() + "...");
+        JDialog dialog = new JDialog((Frame) null, "Exporting", false);
+        dialog.setLayout(new BorderLayout());
+        dialog.add(indicator, BorderLayout.CENTER);
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            job.cancel();
+            cancelButton.setEnabled(false);
+        });
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(cancelButton);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.pack();
+        dialog.setLocationRelativeTo(null);
+        dialog.setVisible(true);
+
+        Timer timer = new Timer(250, e -> indicator.setMessage(
+                String.format("Exporting %s... %,d rows", title.toLowerCase(), job.getRowsWritten())));
+        timer.start();
+
+        job.getResult().whenComplete((rows, error) -> SwingUtilities.invokeLater(() -> {
+            timer.stop();
+            dialog.dispose();
+            if (error == null) {
+                JOptionPane.showMessageDialog(null,
+                    String.format("%s exported successfully (%,d rows) to: %s", title, rows, target),
+                    "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+            } else if (error instanceof CancellationException) {
+                JOptionPane.showMessageDialog(null, title + " export cancelled.",
+                    "Export Cancelled", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(null,
+                    "Error exporting " + title.toLowerCase() + ": " + error.getMessage(),
+                    "Export Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    /**
+     * Write risk metrics and optimization recommendations for a user's portfolios. Each
+     * portfolio is analysed once, up to {@link #ANALYTICS_CONCURRENCY} at a time, and the results
+     * feed both report sections. {@code job} may be null.
+     *
+     * @return the number of rows written
+     */
+    public long writeAnalyticsReport(int userId, Path target, ExportJob job) throws IOException, SQLException {
+        List<PortfolioAnalytics> analytics = analyze(dbManager.getPortfoliosByUserId(userId), job);
+        return writeCsv(target, csv -> {
+            csv.line("Portfolio Name,Risk Level,Volatility,Sharpe Ratio,Expected Return,Expected Risk");
+            for (PortfolioAnalytics entry : analytics) {
+                csv.text(entry.portfolio.getName());
+                if (entry.optimization != null) {
+                    csv.text(entry.risk.getRiskLevel())
+                       .decimal(entry.risk.getVolatility() * 100, 2)
+                       .decimal(entry.risk.getSharpeRatio(), 2)
+                       .decimal(entry.optimization.getExpectedReturn() * 100, 2)
+                       .decimal(entry.optimization.getExpectedRisk() * 100, 2);
                 } else {
-                    writer.write(String.format("%s,No positions,No data,No data,No data,No data\n",
-                        portfolio.getName()));
+                    csv.text("No positions").text("No data").text("No data").text("No data").text("No data");
                 }
+                csv.endRow();
             }
 
-            // Add recommendations section
-            writer.write("\n\nOptimization Recommendations\n");
-            writer.write("Portfolio,Symbol,Action,Description\n");
+            // Recommendations section
+            csv.line("");
+            csv.line("");
+            csv.line("Optimization Recommendations");
+            csv.line("Portfolio,Symbol,Action,Description");
+            for (PortfolioAnalytics entry : analytics) {
+                if (entry.optimization == null || entry.optimization.getRecommendations() == null) {
+                    continue;
+                }
+                for (AIAnalytics.RebalanceRecommendation rec : entry.optimization.getRecommendations()) {
+                    csv.text(entry.portfolio.getName())
+                       .text(rec.getSymbol())
+                       .text(rec.getAction())
+                       .text(rec.getDescription())
+                       .endRow();
+                }
+            }
+        });
+    }
 
-            for (Portfolio portfolio : portfolios) {
-                List<Position> positions = dbManager.getPositionsByPortfolioId(portfolio.getId());
+    // One portfolio's risk and optimization, computed once per report; both null without positions
+    private static final class PortfolioAnalytics {
+        final Portfolio portfolio;
+        final AIAnalytics.RiskAssessment risk;
+        final AIAnalytics.PortfolioOptimization optimization;
 
-                if (!positions.isEmpty()) {
+        PortfolioAnalytics(Portfolio portfolio, AIAnalytics.RiskAssessment risk, AIAnalytics.PortfolioOptimization optimization) {
+            this.portfolio = portfolio;
+            this.risk = risk;
+            this.optimization = optimization;
+        }
+    }
+
+    // Analyses portfolios in parallel on a bounded pool, returning results in portfolio order
+    private List<PortfolioAnalytics> analyze(List<Portfolio> portfolios, ExportJob job) throws SQLException {
+        if (portfolios.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(portfolios.size(), ANALYTICS_CONCURRENCY));
+        try {
+            List<Future<PortfolioAnalytics>> pending = new ArrayList<>();
+            for (Portfolio portfolio : portfolios) {
+                pending.add(pool.submit(() -> {
+                    List<Position> positions = dbManager.getPositionsByPortfolioId(portfolio.getId());
+                    if (positions.isEmpty()) {
+                        return new PortfolioAnalytics(portfolio, null, null);
+                    }
+                    AIAnalytics.RiskAssessment risk = aiAnalytics.assessRisk(calculateWeights(positions));
+                    // Already on a pool thread, so the optimization runs here rather than hopping again
                     AIAnalytics.PortfolioOptimization optimization =
-                        aiAnalytics.optimizePortfolio(String.valueOf(portfolio.getId())).join();
-
-                    List<AIAnalytics.RebalanceRecommendation> recommendations = optimization.getRecommendations();
-                    if (recommendations != null) {
-                        for (AIAnalytics.RebalanceRecommendation rec : recommendations) {
-                            writer.write(String.format("%s,%s,%s,%s\n",
-                                portfolio.getName(),
-                                rec.getSymbol(),
-                                rec.getAction(),
-                                rec.getDescription().replace(",", ";"))); // Replace commas to avoid CSV issues
-                        }
+                        aiAnalytics.optimizePortfolio(String.valueOf(portfolio.getId()), Runnable::run).join();
+                    return new PortfolioAnalytics(portfolio, risk, optimization);
+                }));
+            }
+            List<PortfolioAnalytics> results = new ArrayList<>();
+            for (Future<PortfolioAnalytics> future : pending) {
+                if (job != null && !job.progress(results.size())) {
+                    throw new CancellationException(job.getName() + " export cancelled");
+                }
+                results.add(awaitAnalytics(future, job));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Waits in short steps so a cancelled job stops promptly
+    private static PortfolioAnalytics awaitAnalytics(Future<PortfolioAnalytics> future, ExportJob job) throws SQLException {
+        try {
+            while (true) {
+                try {
+                    return future.get(250, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (job != null && job.isCancelled()) {
+                        throw new CancellationException(job.getName() + " export cancelled");
                     }
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Analytics export interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Portfolio analysis failed: " + cause.getMessage(), cause);
         }
     }
 
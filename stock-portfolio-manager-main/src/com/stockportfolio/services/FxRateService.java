@@ -0,0 +1,283 @@
+package com.stockportfolio.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import com.stockportfolio.model.Position;
+import com.stockportfolio.services.api.RealTimeStockAPI;
+
+/**
+ * Cached FX rates for valuing positions in a single base currency.
+ *
+ * Currencies are interned to small integer ids. Rates are held as USD per unit in an
+ * immutable snapshot that is swapped on refresh; cross-rate vectors for a base currency
+ * are derived once per snapshot. Converting a book is then one multiply per position
+ * against a primitive array instead of a rate lookup per position.
+ */
+public class FxRateService {
+    public static final String DEFAULT_BASE_CURRENCY = "USD";
+    private static final long REFRESH_INTERVAL_MINUTES = 15;
+
+    private static FxRateService instance;
+
+    private final Map<String, Integer> currencyIds;
+    private final List<String> currencyCodes;
+    private volatile RateSnapshot snapshot;
+    private volatile ScheduledExecutorService scheduler;
+    private volatile RealTimeStockAPI stockAPI;
+    private final List<Runnable> rateListeners = new CopyOnWriteArrayList<>();
+
+    private FxRateService() {
+        this.currencyIds = new ConcurrentHashMap<>();
+        this.currencyCodes = new ArrayList<>();
+        currencyId(DEFAULT_BASE_CURRENCY);
+        this.snapshot = new RateSnapshot(new double[] {1.0});
+    }
+
+    public static synchronized FxRateService getInstance() {
+        if (instance == null) {
+            instance = new FxRateService();
+        }
+        return instance;
+    }
+
+    /**
+     * Start periodic refreshes through the given API so FX lookups share its rate budget.
+     * Later calls are ignored once a source is set.
+     */
+    public synchronized void start(RealTimeStockAPI stockAPI) {
+        if (this.stockAPI != null) {
+            return;
+        }
+        this.stockAPI = stockAPI;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fx-rate-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                refreshRates();
+            } catch (Exception e) {
+                System.err.println("Error refreshing FX rates: " + e.getMessage());
+            }
+        }, 0, REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Run {@code listener} after every refresh or {@link #setRate} that changed a rate, on the
+     * thread that changed it, e.g. to bring stored base-currency totals back in line.
+     */
+    public void addRateListener(Runnable listener) {
+        rateListeners.add(listener);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        stockAPI = null;
+    }
+
+    /**
+     * Intern a currency code. Only interned currencies are refreshed.
+     */
+    public int currencyId(String code) {
+        String key = code == null || code.isEmpty() ? DEFAULT_BASE_CURRENCY : code.toUpperCase();
+        Integer id = currencyIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (currencyCodes) {
+            id = currencyIds.get(key);
+            if (id == null) {
+                id = currencyCodes.size();
+                currencyCodes.add(key);
+                currencyIds.put(key, id);
+                requestRefresh();
+            }
+            return id;
+        }
+    }
+
+    private void requestRefresh() {
+        ScheduledExecutorService current = scheduler;
+        if (current != null) {
+            current.execute(() -> {
+                try {
+                    refreshRates();
+                } catch (Exception e) {
+                    System.err.println("Error refreshing FX rates: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetch USD rates for every interned currency and publish a new snapshot.
+     */
+    public void refreshRates() {
+        RealTimeStockAPI api = stockAPI;
+        if (api == null) {
+            return;
+        }
+
+        List<String> codes;
+        synchronized (currencyCodes) {
+            codes = new ArrayList<>(currencyCodes);
+        }
+
+        double[] usdPerUnit = Arrays.copyOf(snapshot.usdPerUnit, codes.size());
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int id = 0; id < codes.size(); id++) {
+            String code = codes.get(id);
+            if (DEFAULT_BASE_CURRENCY.equals(code)) {
+                usdPerUnit[id] = 1.0;
+                continue;
+            }
+            final int index = id;
+            pending.add(api.getFxRate(code, DEFAULT_BASE_CURRENCY)
+                    .thenAccept(rate -> usdPerUnit[index] = rate)
+                    .exceptionally(e -> {
+                        System.err.println("Keeping previous FX rate for " + code + ": " + e.getMessage());
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+
+        publish(usdPerUnit);
+    }
+
+    /**
+     * Set a rate directly (USD per unit), e.g. for offline use or tests.
+     */
+    public synchronized void setRate(String code, double usdPerUnit) {
+        int id = currencyId(code);
+        double[] rates = Arrays.copyOf(snapshot.usdPerUnit, Math.max(snapshot.usdPerUnit.length, id + 1));
+        rates[id] = usdPerUnit;
+        publish(rates);
+    }
+
+    private void publish(double[] usdPerUnit) {
+        RateSnapshot previous = snapshot;
+        snapshot = new RateSnapshot(usdPerUnit);
+        if (Arrays.equals(previous.usdPerUnit, usdPerUnit)) {
+            return;
+        }
+        for (Runnable listener : rateListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error notifying FX rate listener: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Multipliers indexed by currency id that convert an amount into the base currency.
+     * Currencies without a known rate yet map to 1.0 (left unconverted) and are reported on stderr.
+     */
+    public double[] crossRates(String baseCurrency) {
+        RateSnapshot current = snapshot;
+        double[] cached = current.crossRates.get(baseCurrency);
+        if (cached != null) {
+            return cached;
+        }
+
+        int baseId = currencyId(baseCurrency);
+        double[] usd = current.usdPerUnit;
+        boolean baseKnown = baseId < usd.length && usd[baseId] > 0.0;
+        double basePerUsd = baseKnown ? 1.0 / usd[baseId] : 1.0;
+        List<String> codes;
+        synchronized (currencyCodes) {
+            codes = new ArrayList<>(currencyCodes);
+        }
+        double[] factors = new double[codes.size()];
+        for (int i = 0; i < factors.length; i++) {
+            double rate = i < usd.length ? usd[i] : 0.0;
+            if (rate > 0.0 && baseKnown) {
+                factors[i] = rate * basePerUsd;
+            } else {
+                factors[i] = 1.0;
+                if (i != baseId) {
+                    System.err.println("No FX rate yet for " + codes.get(i) + "/" + baseCurrency + "; leaving amounts unconverted");
+                }
+            }
+        }
+        factors[baseId] = 1.0;
+        current.crossRates.put(baseCurrency, factors);
+        return factors;
+    }
+
+    /**
+     * Convert values[i] denominated in currencyIds[i] into the base currency.
+     */
+    public double[] convert(int[] currencyIds, double[] values, String baseCurrency) {
+        double[] factors = crossRates(baseCurrency);
+        double[] converted = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            converted[i] = values[i] * factor(factors, currencyIds[i]);
+        }
+        return converted;
+    }
+
+    /**
+     * Sum of values converted into the base currency.
+     */
+    public double sumInBase(int[] currencyIds, double[] values, String baseCurrency) {
+        double[] factors = crossRates(baseCurrency);
+        double total = 0.0;
+        for (int i = 0; i < values.length; i++) {
+            total += values[i] * factor(factors, currencyIds[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Sum an amount per position (market value, cost basis, ...) in the base currency.
+     */
+    public double sumInBase(List<Position> positions, ToDoubleFunction<Position> amount,
+                            Map<String, String> currencyBySymbol, String baseCurrency) {
+        int n = positions.size();
+        int[] ids = new int[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            Position position = positions.get(i);
+            ids[i] = currencyId(currencyBySymbol.getOrDefault(position.getSymbol(), DEFAULT_BASE_CURRENCY));
+            values[i] = amount.applyAsDouble(position);
+        }
+        return sumInBase(ids, values, baseCurrency);
+    }
+
+    public double convert(double amount, String fromCurrency, String baseCurrency) {
+        return amount * factor(crossRates(baseCurrency), currencyId(fromCurrency));
+    }
+
+    /**
+     * Multiplier for one currency id taken from a vector returned by crossRates.
+     */
+    public double factor(double[] factors, int id) {
+        // Currencies interned after the cross-rate vector was built have no rate yet
+        return id < factors.length ? factors[id] : 1.0;
+    }
+
+    private static class RateSnapshot {
+        private final double[] usdPerUnit;
+        // Cross-rate vectors per base currency, derived lazily and dropped with the snapshot
+        private final Map<String, double[]> crossRates = new ConcurrentHashMap<>();
+
+        RateSnapshot(double[] usdPerUnit) {
+            this.usdPerUnit = usdPerUnit;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.stockportfolio.services;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.stockportfolio.model.CorporateAction;
+import com.stockportfolio.services.api.RealTimeStockAPI.HistoricalPrice;
+import com.stockportfolio.utils.DatabaseManager;
+
+/**
+ * Applies split and dividend adjustments to raw historical bars at read time.
+ *
+ * For every symbol the corporate actions are turned into a schedule of cumulative
+ * factors (a product over all later actions), so the factor of any bar is a single
+ * lookup and adjusting an N-bar range is one pass over primitive arrays.
+ */
+public class PriceAdjustmentService {
+    private final DatabaseManager dbManager;
+    private final Map<String, AdjustmentSchedule> schedules;
+
+    public PriceAdjustmentService(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.schedules = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Return split/dividend adjusted copies of the given bars. Bars may be in any order.
+     */
+    public List<HistoricalPrice> adjust(String symbol, List<HistoricalPrice> bars) throws SQLException {
+        AdjustmentSchedule schedule = getSchedule(symbol);
+        if (schedule.isEmpty() || bars.isEmpty()) {
+            return bars;
+        }
+
+        int n = bars.size();
+        long[] epochDays = new long[n];
+        double[] open = new double[n];
+        double[] high = new double[n];
+        double[] low = new double[n];
+        double[] close = new double[n];
+        double[] volume = new double[n];
+        for (int i = 0; i < n; i++) {
+            HistoricalPrice bar = bars.get(i);
+            epochDays[i] = parseEpochDay(bar.getTimestamp());
+            open[i] = bar.getOpen();
+            high[i] = bar.getHigh();
+            low[i] = bar.getLow();
+            close[i] = bar.getClose();
+            volume[i] = bar.getVolume();
+        }
+
+        double[] priceFactors = new double[n];
+        double[] volumeFactors = new double[n];
+        schedule.fillFactors(epochDays, priceFactors, volumeFactors);
+
+        for (int i = 0; i < n; i++) {
+            double f = priceFactors[i];
+            open[i] *= f;
+            high[i] *= f;
+            low[i] *= f;
+            close[i] *= f;
+            volume[i] *= volumeFactors[i];
+        }
+
+        List<HistoricalPrice> adjusted = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            adjusted.add(new HistoricalPrice(bars.get(i).getTimestamp(),
+                    open[i], high[i], low[i], close[i], Math.round(volume[i])));
+        }
+        return adjusted;
+    }
+
+    /**
+     * Adjust a primitive price series in place, e.g. closes used for return calculations.
+     */
+    public void adjustInPlace(String symbol, long[] epochDays, double[] prices) throws SQLException {
+        AdjustmentSchedule schedule = getSchedule(symbol);
+        if (schedule.isEmpty()) {
+            return;
+        }
+        double[] factors = new double[prices.length];
+        schedule.fillFactors(epochDays, factors, null);
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] *= factors[i];
+        }
+    }
+
+    /**
+     * Price factor of a cash dividend, (close - dividend) / close, using the close of the last
+     * bar before the ex-date. Bars are in ascending date order and a zero close is a gap.
+     * Returns 0 when no close before the ex-date exceeds the dividend.
+     */
+    public static double dividendFactor(double amount, long exEpochDay, long[] epochDays, double[] closes) {
+        for (int i = epochDays.length - 1; i >= 0; i--) {
+            if (epochDays[i] < exEpochDay && closes[i] > 0.0) {
+                return closes[i] > amount ? (closes[i] - amount) / closes[i] : 0.0;
+            }
+        }
+        return 0.0;
+    }
+
+    private AdjustmentSchedule getSchedule(String symbol) throws SQLException {
+        List<CorporateAction> actions = dbManager.getCorporateActionsBySymbol(symbol);
+        AdjustmentSchedule schedule = schedules.get(symbol);
+        // DatabaseManager hands out the same cached list until the actions change
+        if (schedule == null || schedule.source != actions) {
+            schedule = new AdjustmentSchedule(actions);
+            schedules.put(symbol, schedule);
+        }
+        return schedule;
+    }
+
+    private static long parseEpochDay(String timestamp) {
+        // Providers use "yyyy-MM-dd", "yyyy-MM-dd HH:mm:ss" or ISO date-time; the date prefix is enough
+        return LocalDate.parse(timestamp.substring(0, 10)).toEpochDay();
+    }
+
+    private static class AdjustmentSchedule {
+        private final List<CorporateAction> source;
+        private final long[] exEpochDays;
+        // cumulativePrice[j] is the product of price factors of actions j..k-1; cumulativePrice[k] == 1
+        private final double[] cumulativePrice;
+        private final double[] cumulativeVolume;
+
+        AdjustmentSchedule(List<CorporateAction> actions) {
+            this.source = actions;
+            int k = actions.size();
+            this.exEpochDays = new long[k];
+            this.cumulativePrice = new double[k + 1];
+            this.cumulativeVolume = new double[k + 1];
+            cumulativePrice[k] = 1.0;
+            cumulativeVolume[k] = 1.0;
+            for (int j = 0; j < k; j++) {
+                exEpochDays[j] = actions.get(j).getExDate().toEpochDay();
+            }
+            for (int j = k - 1; j >= 0; j--) {
+                CorporateAction action = actions.get(j);
+                cumulativePrice[j] = cumulativePrice[j + 1] * action.getPriceFactor();
+                cumulativeVolume[j] = cumulativeVolume[j + 1] * (action.isSplit() ? action.getRatio() : 1.0);
+            }
+        }
+
+        boolean isEmpty() {
+            return exEpochDays.length == 0;
+        }
+
+        void fillFactors(long[] epochDays, double[] priceFactors, double[] volumeFactors) {
+            for (int i = 0; i < epochDays.length; i++) {
+                int j = firstActionAfter(epochDays[i]);
+                priceFactors[i] = cumulativePrice[j];
+                if (volumeFactors != null) {
+                    volumeFactors[i] = cumulativeVolume[j];
+                }
+            }
+        }
+
+        // Index of the first action whose ex-date is strictly after the given day
+        private int firstActionAfter(long epochDay) {
+            int lo = 0;
+            int hi = exEpochDays.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (exEpochDays[mid] <= epochDay) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.stockportfolio.services;
+
+import java.awt.Component;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.PortfolioValueSnapshot;
+import com.stockportfolio.model.Position;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
+
+/**
+ * Restores a portfolio snapshot written by {@link ExportService#writeSnapshot} into a user's
+ * account. Each portfolio in the snapshot is created anew for that user, with its positions,
+ * trade history and value history attached to the new portfolio; nothing already there is
+ * replaced. Tables are decoded a row group at a time and trades go in through
+ * {@code importTransactions} in chunks, so memory does not grow with the history.
+ */
+public class SnapshotImporter {
+    /** Called after every committed chunk; return false to stop and undo the import. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        boolean onProgress(long rowsImported, long rowsTotal);
+    }
+
+    private final DataStore dataStore;
+
+    public SnapshotImporter(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Ask for a snapshot file and import it on a background thread, showing progress.
+     * {@code onComplete} runs on the event thread once the import has finished.
+     */
+    public void importSnapshot(Component parent, int userId, Runnable onComplete) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Portfolio Snapshot");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Portfolio Snapshots", ColumnarFormat.FILE_EXTENSION));
+        if (fileChooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        ProgressMonitor monitor = new ProgressMonitor(parent, "Importing " + file.getName(), "", 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+
+        new Thread(() -> {
+            String message;
+            int messageType = JOptionPane.INFORMATION_MESSAGE;
+            try {
+                ImportResult result = importSnapshot(file.toPath(), userId, (imported, total) -> {
+                    int percent = (int) Math.min(99, imported * 100 / Math.max(1, total));
+                    String note = String.format("%,d of %,d rows imported", imported, total);
+                    SwingUtilities.invokeLater(() -> {
+                        monitor.setProgress(percent);
+                        monitor.setNote(note);
+                    });
+                    return !monitor.isCanceled();
+                });
+                message = result.toString();
+                if (result.getRowsSkipped() > 0 || result.isCancelled()) {
+                    messageType = JOptionPane.WARNING_MESSAGE;
+                }
+            } catch (IOException | SQLException e) {
+                message = "Error importing snapshot: " + e.getMessage();
+                messageType = JOptionPane.ERROR_MESSAGE;
+            }
+            String summary = message;
+            int summaryType = messageType;
+            SwingUtilities.invokeLater(() -> {
+                monitor.close();
+                JOptionPane.showMessageDialog(parent, summary, "Import Snapshot", summaryType);
+                if (onComplete != null) {
+                    onComplete.run();
+                }
+            });
+        }, "snapshot-import").start();
+    }
+
+    /**
+     * Import every portfolio of a snapshot for the user, then their positions, trades and
+     * value history. Rows pointing at a portfolio the snapshot does not contain, and trades
+     * without a timestamp, are skipped and counted. If a chunk fails or the listener stops
+     * the import, the portfolios created so far are deleted again with everything attached
+     * to them, so no half-imported portfolio is left behind.
+     *
+     * @param listener told about progress after each chunk, or null
+     * @throws IOException if the file is not a complete snapshot or cannot be read
+     */
+    public ImportResult importSnapshot(Path source, int userId, ProgressListener listener) throws IOException, SQLException {
+        ImportResult result = new ImportResult();
+        Map<Integer, Integer> portfolioIds = new HashMap<>();
+        // Tags every trade of this run, so undoing it is one delete
+        String importBatch = UUID.randomUUID().toString();
+        try (ColumnarReader snapshot = ColumnarReader.open(source)) {
+            importTables(snapshot, source, userId, listener, result, portfolioIds, importBatch);
+        } catch (IOException | SQLException | RuntimeException e) {
+            try {
+                discard(portfolioIds.values(), importBatch);
+            } catch (SQLException | RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        } finally {
+            result.elapsedNanos = System.nanoTime() - result.startNanos;
+        }
+        if (result.cancelled) {
+            discard(portfolioIds.values(), importBatch);
+        }
+        return result;
+    }
+
+    // Returns early, with result.cancelled set, when the listener stops the import
+    private void importTables(ColumnarReader snapshot, Path source, int userId, ProgressListener listener,
+                              ImportResult result, Map<Integer, Integer> portfolioIds, String importBatch)
+            throws IOException, SQLException {
+        ColumnarReader.Table portfolios = snapshot.table(ColumnarFormat.PORTFOLIOS);
+        if (portfolios == null) {
+            throw new IOException("Snapshot has no " + ColumnarFormat.PORTFOLIOS + " table: " + source);
+        }
+        long total = 0;
+        for (ColumnarReader.Table table : snapshot.getTables().values()) {
+            total += table.getRows();
+        }
+
+        try (ColumnarReader.Cursor cursor = portfolios.cursor("id", "name", "description", "created_at", "updated_at")) {
+            while (cursor.next()) {
+                Portfolio portfolio = new Portfolio(0, userId, cursor.getString(1));
+                portfolio.setDescription(cursor.getString(2));
+                if (!cursor.isNull(3)) {
+                    portfolio.setCreatedAt(cursor.getTimestamp(3));
+                }
+                if (!cursor.isNull(4)) {
+                    portfolio.setUpdatedAt(cursor.getTimestamp(4));
+                }
+                dataStore.savePortfolio(portfolio);
+                portfolioIds.put(cursor.getInt(0), portfolio.getId());
+                result.portfolios++;
+            }
+        }
+        if (!report(listener, result, total)) {
+            return;
+        }
+
+        ColumnarReader.Table positions = snapshot.table(ColumnarFormat.POSITIONS);
+        if (positions != null) {
+            try (ColumnarReader.Cursor cursor = positions.cursor("portfolio_id", "symbol", "asset_type", "quantity",
+                    "average_cost", "current_price", "total_value", "last_updated")) {
+                while (cursor.next()) {
+                    Integer portfolioId = portfolioIds.get(cursor.getInt(0));
+                    if (portfolioId == null || cursor.isNull(1)) {
+                        result.rowsSkipped++;
+                        continue;
+                    }
+                    Position position = new Position();
+                    position.setPortfolioId(portfolioId);
+                    position.setSymbol(cursor.getString(1));
+                    position.setAssetType(cursor.getString(2));
+                    position.setQuantity(cursor.getDecimal(3));
+                    position.setAverageCost(cursor.getDecimal(4));
+                    position.setCurrentPrice(cursor.getDecimal(5));
+                    position.setTotalValue(cursor.getDecimal(6));
+                    position.setLastUpdated(cursor.isNull(7) ? LocalDateTime.now() : cursor.getTimestamp(7));
+                    dataStore.savePosition(position);
+                    result.positions++;
+                }
+            }
+            if (!report(listener, result, total)) {
+                return;
+            }
+        }
+
+        ColumnarReader.Table transactions = snapshot.table(ColumnarFormat.TRANSACTIONS);
+        if (transactions != null) {
+            List<Transaction> chunk = new ArrayList<>(StatementImporter.CHUNK_SIZE);
+            try (ColumnarReader.Cursor cursor = transactions.cursor("portfolio_id", "timestamp", "symbol", "type",
+                    "order_type", "quantity", "price", "total_amount", "status")) {
+                while (cursor.next()) {
+                    Integer portfolioId = portfolioIds.get(cursor.getInt(0));
+                    if (portfolioId == null || cursor.isNull(1) || cursor.isNull(2)) {
+                        result.rowsSkipped++;
+                        continue;
+                    }
+                    Transaction transaction = new Transaction();
+                    transaction.setUserId(userId);
+                    transaction.setPortfolioId(portfolioId);
+                    transaction.setTimestamp(cursor.getTimestamp(1));
+                    transaction.setSymbol(cursor.getString(2));
+                    transaction.setType(cursor.getString(3));
+                    transaction.setOrderType(cursor.getString(4));
+                    transaction.setQuantity(cursor.getDecimal(5));
+                    transaction.setPrice(cursor.getDecimal(6));
+                    transaction.setTotalAmount(cursor.getDecimal(7));
+                    transaction.setStatus(cursor.getString(8));
+                    chunk.add(transaction);
+                    if (chunk.size() == StatementImporter.CHUNK_SIZE) {
+                        dataStore.importTransactions(chunk, importBatch);
+                        result.transactions += chunk.size();
+                        chunk.clear();
+                        if (!report(listener, result, total)) {
+                            return;
+                        }
+                    }
+                }
+            }
+            dataStore.importTransactions(chunk, importBatch);
+            result.transactions += chunk.size();
+            // Replaying the trades dates the position history by trade, so it can be asked about
+            for (int portfolioId : portfolioIds.values()) {
+                dataStore.rebuildPositionsFromTransactions(portfolioId);
+            }
+            if (!report(listener, result, total)) {
+                return;
+            }
+        }
+
+        ColumnarReader.Table history = snapshot.table(ColumnarFormat.VALUE_HISTORY);
+        if (history != null) {
+            List<PortfolioValueSnapshot> chunk = new ArrayList<>(StatementImporter.CHUNK_SIZE);
+            try (ColumnarReader.Cursor cursor = history.cursor("portfolio_id", "resolution", "bucket_start", "open_value",
+                    "high_value", "low_value", "close_value", "cost_basis", "samples")) {
+                while (cursor.next()) {
+                    Integer portfolioId = portfolioIds.get(cursor.getInt(0));
+                    if (portfolioId == null || cursor.isNull(1) || cursor.isNull(2)) {
+                        result.rowsSkipped++;
+                        continue;
+                    }
+                    PortfolioValueSnapshot bucket = new PortfolioValueSnapshot();
+                    bucket.setPortfolioId(portfolioId);
+                    bucket.setResolution(cursor.getString(1));
+                    bucket.setBucketStart(cursor.getTimestamp(2));
+                    bucket.setOpenValue(cursor.getDecimal(3));
+                    bucket.setHighValue(cursor.getDecimal(4));
+                    bucket.setLowValue(cursor.getDecimal(5));
+                    bucket.setCloseValue(cursor.getDecimal(6));
+                    bucket.setCostBasis(cursor.getDecimal(7));
+                    bucket.setSamples(cursor.getInt(8));
+                    chunk.add(bucket);
+                    if (chunk.size() == StatementImporter.CHUNK_SIZE) {
+                        dataStore.importPortfolioValueSnapshots(chunk);
+                        result.valueSnapshots += chunk.size();
+                        chunk.clear();
+                        if (!report(listener, result, total)) {
+                            return;
+                        }
+                    }
+                }
+            }
+            dataStore.importPortfolioValueSnapshots(chunk);
+            result.valueSnapshots += chunk.size();
+            report(listener, result, total);
+        }
+    }
+
+    // Deletes portfolios this import created: the batch's trades and then positions first, as the
+    // schema requires; value history goes with the portfolio
+    private void discard(Collection<Integer> createdPortfolioIds, String importBatch) throws SQLException {
+        dataStore.deleteImportBatch(importBatch);
+        for (int portfolioId : createdPortfolioIds) {
+            for (Position position : dataStore.getPositionsByPortfolioId(portfolioId)) {
+                dataStore.deletePosition(position.getId());
+            }
+            dataStore.deletePortfolio(portfolioId);
+        }
+    }
+
+    private static boolean report(ProgressListener listener, ImportResult result, long total) {
+        if (listener != null && !listener.onProgress(result.getRowsImported() + result.rowsSkipped, total)) {
+            result.cancelled = true;
+        }
+        return !result.cancelled;
+    }
+
+    /** What an import did, so far or in the end. */
+    public static final class ImportResult {
+        private final long startNanos = System.nanoTime();
+        private long elapsedNanos;
+        private int portfolios;
+        private int positions;
+        private long transactions;
+        private long valueSnapshots;
+        private long rowsSkipped;
+        private boolean cancelled;
+
+        public int getPortfolios() { return portfolios; }
+        public int getPositions() { return positions; }
+        public long getTransactions() { return transactions; }
+        public long getValueSnapshots() { return valueSnapshots; }
+        public long getRowsSkipped() { return rowsSkipped; }
+        public boolean isCancelled() { return cancelled; }
+
+        public long getRowsImported() {
+            return portfolios + positions + transactions + valueSnapshots;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - startNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return getRowsImported() / Math.max(1e-9, getElapsedNanos() / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            if (cancelled) {
+                return String.format("Cancelled after %,d rows; the partly imported portfolios were removed",
+                        getRowsImported() + rowsSkipped);
+            }
+            return String.format("%,d portfolios, %,d positions, %,d trades and %,d value history rows imported; "
+                    + "%,d rows skipped (%.0f rows/s)", portfolios, positions,
+                    transactions, valueSnapshots, rowsSkipped, getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,633 @@
+package com.stockportfolio.services;
+
+import java.awt.Component;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.utils.FixedPoint;
+
+/**
+ * Loads trade history from broker CSV exports into one portfolio.
+ *
+ * The file is parsed in a single pass through a fixed character buffer, with fields
+ * collected in reused builders and rows in a reused chunk of {@link Transaction}s, so memory
+ * stays flat however long the statement is. Each chunk of {@value #CHUNK_SIZE} valid rows is
+ * inserted in JDBC batches and committed on its own; positions and portfolio totals are
+ * rebuilt once, after the last chunk, or after a failure once any chunk has been committed.
+ *
+ * Each trade records an import ref built from its date, symbol, side, quantity, price and
+ * amount. Rows whose ref an earlier import already booked in the portfolio are counted and
+ * skipped, so importing a statement again, or one that overlaps it, books nothing twice.
+ *
+ * The header row names the columns, in any order and case: a date (yyyy-MM-dd or MM/dd/yyyy,
+ * optionally followed by a time), symbol, type (BUY/SELL, BOUGHT/SOLD or B/S), quantity and
+ * price, plus optional amount and order type. Rows of other types, such as dividends or
+ * fees, are skipped; malformed rows are counted and reported by line number.
+ */
+public class StatementImporter {
+    static final int CHUNK_SIZE = 5_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int MAX_SYMBOL_LENGTH = 10;
+
+    private static final int DATE = 0;
+    private static final int SYMBOL = 1;
+    private static final int TYPE = 2;
+    private static final int QUANTITY = 3;
+    private static final int PRICE = 4;
+    private static final int AMOUNT = 5;
+    private static final int ORDER_TYPE = 6;
+    private static final String[] COLUMN_NAMES = {"date", "symbol", "type", "quantity", "price", "amount", "order type"};
+
+    private static final Map<String, Integer> HEADER_ALIASES = new HashMap<>();
+    static {
+        for (String alias : new String[] {"date", "tradedate", "timestamp", "datetime", "executiondate"}) {
+            HEADER_ALIASES.put(alias, DATE);
+        }
+        for (String alias : new String[] {"symbol", "ticker"}) {
+            HEADER_ALIASES.put(alias, SYMBOL);
+        }
+        for (String alias : new String[] {"type", "action", "side", "transactiontype"}) {
+            HEADER_ALIASES.put(alias, TYPE);
+        }
+        for (String alias : new String[] {"quantity", "qty", "shares"}) {
+            HEADER_ALIASES.put(alias, QUANTITY);
+        }
+        for (String alias : new String[] {"price", "tradeprice", "executionprice"}) {
+            HEADER_ALIASES.put(alias, PRICE);
+        }
+        for (String alias : new String[] {"amount", "total", "totalamount", "totalvalue", "netamount"}) {
+            HEADER_ALIASES.put(alias, AMOUNT);
+        }
+        for (String alias : new String[] {"ordertype"}) {
+            HEADER_ALIASES.put(alias, ORDER_TYPE);
+        }
+    }
+
+    /** Called after every committed chunk; return false to stop after it. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        boolean onProgress(ImportResult progress);
+    }
+
+    private final DataStore dataStore;
+
+    public StatementImporter(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Ask for a statement file and import it into the portfolio on a background thread,
+     * showing progress. {@code onComplete} runs on the event thread once positions are rebuilt.
+     */
+    public void importBrokerStatement(Component parent, int userId, int portfolioId, Runnable onComplete) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Broker Statement");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files", "csv"));
+        if (fileChooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        long fileSize = Math.max(1, file.length());
+        ProgressMonitor monitor = new ProgressMonitor(parent, "Importing " + file.getName(), "", 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+
+        new Thread(() -> {
+            String message;
+            int messageType = JOptionPane.INFORMATION_MESSAGE;
+            try (Reader reader = new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)) {
+                ImportResult result = importCsv(reader, userId, portfolioId, progress -> {
+                    // Characters approximate bytes closely enough for a progress bar
+                    int percent = (int) Math.min(99, progress.getCharsRead() * 100 / fileSize);
+                    String note = String.format("%,d rows imported", progress.getRowsImported());
+                    SwingUtilities.invokeLater(() -> {
+                        monitor.setProgress(percent);
+                        monitor.setNote(note);
+                    });
+                    return !monitor.isCanceled();
+                });
+                message = result.toString();
+                if (!result.getErrors().isEmpty()) {
+                    message += "\n\n" + String.join("\n", result.getErrors().subList(0, Math.min(10, result.getErrors().size())));
+                    messageType = JOptionPane.WARNING_MESSAGE;
+                }
+            } catch (IOException | SQLException e) {
+                message = "Error importing statement: " + e.getMessage();
+                messageType = JOptionPane.ERROR_MESSAGE;
+            }
+            String summary = message;
+            int summaryType = messageType;
+            SwingUtilities.invokeLater(() -> {
+                monitor.close();
+                JOptionPane.showMessageDialog(parent, summary, "Import Statement", summaryType);
+                if (onComplete != null) {
+                    onComplete.run();
+                }
+            });
+        }, "statement-import").start();
+    }
+
+    /**
+     * Import every valid row of a CSV statement as completed trades of the portfolio, then
+     * rebuild its positions and totals. Chunks already committed stay if a later one fails,
+     * and positions are still rebuilt to match them before the failure is thrown.
+     *
+     * @param listener told about progress after each chunk, or null
+     * @throws SQLException if the portfolio does not belong to the user or a chunk fails to insert
+     * @throws IOException if the file cannot be read or lacks a required column
+     */
+    public ImportResult importCsv(Reader in, int userId, int portfolioId, ProgressListener listener) throws IOException, SQLException {
+        Portfolio portfolio = dataStore.getPortfolioById(portfolioId);
+        if (portfolio == null || portfolio.getUserId() != userId) {
+            throw new SQLException("Invalid portfolio or user access");
+        }
+
+        ImportResult result = new ImportResult();
+        CsvReader csv = new CsvReader(in);
+        if (!csv.next()) {
+            throw new IOException("Statement is empty");
+        }
+        int[] columns = mapHeader(csv);
+
+        List<Transaction> chunk = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setUserId(userId);
+            transaction.setPortfolioId(portfolioId);
+            transaction.setStatus("COMPLETED");
+            chunk.add(transaction);
+        }
+        LocalDateTime latest = LocalDateTime.now().plusDays(1);
+        String importBatch = UUID.randomUUID().toString();
+        int filled = 0;
+        boolean stopped = false;
+        boolean completed = false;
+
+        try {
+            while (!stopped && csv.next()) {
+                if (csv.isBlank()) {
+                    continue;
+                }
+                result.rowsRead++;
+                String error = parseRow(csv, columns, chunk.get(filled), latest);
+                if (error == SKIPPED) {
+                    result.rowsSkipped++;
+                } else if (error != null) {
+                    result.addError(csv.lineNumber(), error);
+                } else if (++filled == CHUNK_SIZE) {
+                    result.addChunk(filled, dataStore.importTransactions(chunk, importBatch));
+                    filled = 0;
+                    result.charsRead = csv.charsRead();
+                    stopped = listener != null && !listener.onProgress(result);
+                }
+            }
+            if (filled > 0) {
+                result.addChunk(filled, dataStore.importTransactions(chunk.subList(0, filled), importBatch));
+            }
+            completed = true;
+        } finally {
+            // Committed chunks stay, so positions must follow them even when a later step failed
+            if (result.rowsImported > 0) {
+                try {
+                    result.positions = dataStore.rebuildPositionsFromTransactions(portfolioId);
+                } catch (SQLException e) {
+                    if (completed) {
+                        throw e;
+                    }
+                    System.err.println("Error rebuilding positions of portfolio " + portfolioId + " after a failed import: " + e.getMessage());
+                }
+            }
+        }
+        result.charsRead = csv.charsRead();
+        result.cancelled = stopped;
+        result.elapsedNanos = System.nanoTime() - result.startNanos;
+        if (listener != null) {
+            listener.onProgress(result);
+        }
+        return result;
+    }
+
+    private static int[] mapHeader(CsvReader csv) throws IOException {
+        int[] columns = {-1, -1, -1, -1, -1, -1, -1};
+        for (int i = 0; i < csv.fieldCount(); i++) {
+            StringBuilder name = new StringBuilder();
+            CharSequence field = csv.field(i);
+            for (int c = 0; c < field.length(); c++) {
+                if (Character.isLetter(field.charAt(c))) {
+                    name.append(Character.toLowerCase(field.charAt(c)));
+                }
+            }
+            Integer column = HEADER_ALIASES.get(name.toString());
+            if (column != null && columns[column] < 0) {
+                columns[column] = i;
+            }
+        }
+        for (int column = DATE; column <= PRICE; column++) {
+            if (columns[column] < 0) {
+                throw new IOException("Statement has no " + COLUMN_NAMES[column] + " column");
+            }
+        }
+        return columns;
+    }
+
+    // Marker for rows that are valid but not trades
+    private static final String SKIPPED = "skipped";
+
+    // Fills the reused transaction; returns null if the row is a valid trade
+    private static String parseRow(CsvReader csv, int[] columns, Transaction transaction, LocalDateTime latest) {
+        CharSequence type = csv.field(columns[TYPE]);
+        if (matches(type, "BUY") || matches(type, "BOUGHT") || matches(type, "B")) {
+            transaction.setType("BUY");
+        } else if (matches(type, "SELL") || matches(type, "SOLD") || matches(type, "S")) {
+            transaction.setType("SELL");
+        } else if (type.length() == 0) {
+            return "missing type";
+        } else {
+            return SKIPPED;
+        }
+
+        CharSequence symbol = csv.field(columns[SYMBOL]);
+        if (symbol.length() == 0 || symbol.length() > MAX_SYMBOL_LENGTH) {
+            return "invalid symbol '" + symbol + "'";
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            char c = symbol.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '.' && c != '-') {
+                return "invalid symbol '" + symbol + "'";
+            }
+        }
+        transaction.setSymbol(symbol.toString().toUpperCase());
+
+        long quantityUnits = parseUnits(csv.field(columns[QUANTITY]));
+        if (quantityUnits == Long.MIN_VALUE || quantityUnits == 0) {
+            return "invalid quantity '" + csv.field(columns[QUANTITY]) + "'";
+        }
+        // Some brokers sign quantities by direction
+        quantityUnits = Math.abs(quantityUnits);
+        long priceUnits = parseUnits(csv.field(columns[PRICE]));
+        if (priceUnits == Long.MIN_VALUE || priceUnits <= 0) {
+            return "invalid price '" + csv.field(columns[PRICE]) + "'";
+        }
+        long amountUnits = FixedPoint.multiply(quantityUnits, priceUnits);
+        if (columns[AMOUNT] >= 0 && csv.field(columns[AMOUNT]).length() > 0) {
+            amountUnits = parseUnits(csv.field(columns[AMOUNT]));
+            if (amountUnits == Long.MIN_VALUE) {
+                return "invalid amount '" + csv.field(columns[AMOUNT]) + "'";
+            }
+            amountUnits = Math.abs(amountUnits);
+        }
+
+        LocalDateTime timestamp = parseTimestamp(csv.field(columns[DATE]));
+        if (timestamp == null) {
+            return "invalid date '" + csv.field(columns[DATE]) + "'";
+        }
+        if (timestamp.isAfter(latest)) {
+            return "date in the future '" + csv.field(columns[DATE]) + "'";
+        }
+
+        transaction.setQuantity(FixedPoint.toDouble(quantityUnits));
+        transaction.setPrice(FixedPoint.toDouble(priceUnits));
+        transaction.setTotalAmount(FixedPoint.toDouble(amountUnits));
+        transaction.setTimestamp(timestamp);
+        String orderType = "MARKET";
+        if (columns[ORDER_TYPE] >= 0) {
+            CharSequence field = csv.field(columns[ORDER_TYPE]);
+            orderType = matches(field, "LIMIT") ? "LIMIT" : matches(field, "STOP") ? "STOP" : "MARKET";
+        }
+        transaction.setOrderType(orderType);
+        transaction.setImportRef(timestamp + "|" + transaction.getSymbol() + "|" + transaction.getType().charAt(0)
+                + "|" + quantityUnits + "|" + priceUnits + "|" + amountUnits);
+        return null;
+    }
+
+    private static boolean matches(CharSequence field, String value) {
+        if (field.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toUpperCase(field.charAt(i)) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A decimal such as 1234.5, -3, $1,234.56 or (12.50) as fixed-point units, rounded half
+     * up past four decimals; Long.MIN_VALUE if it is not a number.
+     */
+    static long parseUnits(CharSequence field) {
+        long whole = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean negative = false;
+        boolean digits = false;
+        boolean point = false;
+        boolean roundUp = false;
+        int start = 0;
+        int end = field.length();
+        if (end >= 2 && field.charAt(0) == '(' && field.charAt(end - 1) == ')') {
+            negative = true;
+            start = 1;
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = field.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (!point) {
+                    if (whole > Long.MAX_VALUE / 100 / FixedPoint.SCALE) {
+                        return Long.MIN_VALUE;
+                    }
+                    whole = whole * 10 + (c - '0');
+                } else if (fractionDigits < 4) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits == 4) {
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if (c == '-' && i == start && !negative) {
+                negative = true;
+            } else if (c == '+' && i == start) {
+                continue;
+            } else if (c == '$' && !digits) {
+                continue;
+            } else if (c == ',' && digits && !point) {
+                continue;
+            } else {
+                return Long.MIN_VALUE;
+            }
+        }
+        if (!digits) {
+            return Long.MIN_VALUE;
+        }
+        for (int i = Math.min(fractionDigits, 4); i < 4; i++) {
+            fraction *= 10;
+        }
+        long units = whole * FixedPoint.SCALE + fraction + (roundUp ? 1 : 0);
+        return negative ? -units : units;
+    }
+
+    /**
+     * yyyy-MM-dd or MM/dd/yyyy, optionally followed by HH:mm[:ss[.fraction]] after a space
+     * or T; fractions of a second are dropped. Null if it is not such a date.
+     */
+    static LocalDateTime parseTimestamp(CharSequence field) {
+        int[] parts = new int[6];
+        int[] lengths = new int[6];
+        int count = 0;
+        boolean inNumber = false;
+        for (int i = 0; i < field.length() && count <= 6; i++) {
+            char c = field.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (!inNumber) {
+                    if (count == 6) {
+                        break;
+                    }
+                    count++;
+                    inNumber = true;
+                }
+                if (++lengths[count - 1] > 4) {
+                    return null;
+                }
+                parts[count - 1] = parts[count - 1] * 10 + (c - '0');
+            } else if (c == '.' && count == 6) {
+                break;
+            } else if (c == '-' || c == '/' || c == ':' || c == ' ' || c == 'T' || c == '.') {
+                inNumber = false;
+            } else {
+                return null;
+            }
+        }
+        if (count != 3 && count != 5 && count != 6) {
+            return null;
+        }
+        int year;
+        int month;
+        int day;
+        if (lengths[0] == 4) {
+            year = parts[0];
+            month = parts[1];
+            day = parts[2];
+        } else if (lengths[2] == 4) {
+            month = parts[0];
+            day = parts[1];
+            year = parts[2];
+        } else {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, parts[3], parts[4], parts[5]);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Running totals of an import; the final one is returned by
+     * {@link StatementImporter#importCsv}.
+     */
+    public static final class ImportResult {
+        private final long startNanos = System.nanoTime();
+        private final List<String> errors = new ArrayList<>();
+        private long rowsRead;
+        private long rowsImported;
+        private long rowsSkipped;
+        private long rowsInvalid;
+        private long rowsDuplicate;
+        private long charsRead;
+        private long elapsedNanos;
+        private int positions;
+        private boolean cancelled;
+
+        private void addChunk(int rows, int inserted) {
+            rowsImported += inserted;
+            rowsDuplicate += rows - inserted;
+        }
+
+        private void addError(long line, String error) {
+            rowsInvalid++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Line " + line + ": " + error);
+            }
+        }
+
+        public long getRowsRead() { return rowsRead; }
+        public long getRowsImported() { return rowsImported; }
+        public long getRowsSkipped() { return rowsSkipped; }
+        public long getRowsInvalid() { return rowsInvalid; }
+        /** Valid trades left out because an earlier import already booked them. */
+        public long getRowsDuplicate() { return rowsDuplicate; }
+        public long getCharsRead() { return charsRead; }
+        public int getPositions() { return positions; }
+        public boolean isCancelled() { return cancelled; }
+
+        /** The first {@value StatementImporter#MAX_REPORTED_ERRORS} invalid rows, by line number. */
+        public List<String> getErrors() { return errors; }
+
+        public long getElapsedNanos() {
+            return elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - startNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return rowsRead / (getElapsedNanos() / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%,d trades imported from %,d rows (%,d skipped, %,d invalid, %,d already imported) "
+                    + "into %d positions, %.0f rows/s", cancelled ? "Cancelled: " : "", rowsImported, rowsRead, rowsSkipped,
+                    rowsInvalid, rowsDuplicate, positions, getRowsPerSecond());
+        }
+    }
+
+    // RFC 4180 reader over a fixed buffer; fields stay valid until the next call to next()
+    private static final class CsvReader {
+        private final Reader in;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long consumed;
+        private long line;
+        private long nextLine = 1;
+        private StringBuilder[] fields = new StringBuilder[16];
+        private int fieldCount;
+        private final StringBuilder empty = new StringBuilder();
+
+        CsvReader(Reader in) {
+            this.in = in;
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new StringBuilder(32);
+            }
+        }
+
+        // Reads the next record; false at end of input
+        boolean next() throws IOException {
+            line = nextLine;
+            fieldCount = 0;
+            int c = read();
+            if (c < 0) {
+                return false;
+            }
+            StringBuilder field = startField();
+            boolean quoted = false;
+            while (c >= 0) {
+                if (quoted) {
+                    if (c == '"') {
+                        c = read();
+                        if (c == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            nextLine++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    field = startField();
+                } else if (c == '\n') {
+                    nextLine++;
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            for (int i = 0; i < fieldCount; i++) {
+                trim(fields[i]);
+            }
+            return true;
+        }
+
+        private StringBuilder startField() {
+            if (fieldCount == fields.length) {
+                fields = java.util.Arrays.copyOf(fields, fields.length * 2);
+                for (int i = fieldCount; i < fields.length; i++) {
+                    fields[i] = new StringBuilder(32);
+                }
+            }
+            StringBuilder field = fields[fieldCount++];
+            field.setLength(0);
+            return field;
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                consumed += limit;
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        private static void trim(StringBuilder field) {
+            int end = field.length();
+            while (end > 0 && field.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            field.setLength(end);
+            int start = 0;
+            while (start < end && field.charAt(start) <= ' ') {
+                start++;
+            }
+            if (start > 0) {
+                field.delete(0, start);
+            }
+        }
+
+        int fieldCount() {
+            return fieldCount;
+        }
+
+        // Missing trailing fields read as empty
+        CharSequence field(int index) {
+            return index < fieldCount ? fields[index] : empty;
+        }
+
+        boolean isBlank() {
+            return fieldCount == 1 && fields[0].length() == 0;
+        }
+
+        long lineNumber() {
+            return line;
+        }
+
+        long charsRead() {
+            return consumed + position;
+        }
+    }
+}
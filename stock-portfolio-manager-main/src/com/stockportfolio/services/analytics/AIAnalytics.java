@@ -6,9 +6,13 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.PortfolioValueSnapshot;
 import com.stockportfolio.model.Position;
+import com.stockportfolio.services.api.RealTimeStockAPI.HistoricalPrice;
 
 public class AIAnalytics {
+    private static final int TRADING_DAYS_PER_YEAR = 252;
+
 
     // Make generateRebalanceRecommendations public for testing
     public List<RebalanceRecommendation> generateRebalanceRecommendations(Map<String, Double> currentAllocation, Map<String, Double> targetAllocation) {
@@ -128,37 +132,49 @@ public class AIAnalytics {
     }
 
     public CompletableFuture<PortfolioOptimization> optimizePortfolio(String portfolioId) {
-        // Dummy implementation - simulate async processing
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                Thread.sleep(1000); // Simulate processing time
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+        return CompletableFuture.supplyAsync(() -> computeOptimization(portfolioId));
+    }
+
+    /**
+     * As {@link #optimizePortfolio(String)}, run on the given executor; callers batching many
+     * portfolios use this to bound concurrency and keep the slow model off the common pool.
+     */
+    public CompletableFuture<PortfolioOptimization> optimizePortfolio(String portfolioId, java.util.concurrent.Executor executor) {
+        return CompletableFuture.supplyAsync(() -> computeOptimization(portfolioId), executor);
+    }
+
+    private PortfolioOptimization computeOptimization(String portfolioId) {
+        // Dummy implementation - simulate processing
+        try {
+            Thread.sleep(1000); // Simulate processing time
+        } catch (InterruptedException e) {
+            // Cancelled, e.g. by shutdownNow() on an export pool; stop rather than finish the work
+            Thread.currentThread().interrupt();
+            throw new java.util.concurrent.CancellationException("Portfolio optimization interrupted");
+        }
+
+        // Create dummy optimized allocation
+        Map<String, Double> allocation = new HashMap<>();
+        allocation.put("AAPL", 0.25);
+        allocation.put("GOOGL", 0.20);
+        allocation.put("MSFT", 0.20);
+        allocation.put("AMZN", 0.15);
+        allocation.put("TSLA", 0.20);
 
-            // Create dummy optimized allocation
-            Map<String, Double> allocation = new HashMap<>();
-            allocation.put("AAPL", 0.25);
-            allocation.put("GOOGL", 0.20);
-            allocation.put("MSFT", 0.20);
-            allocation.put("AMZN", 0.15);
-            allocation.put("TSLA", 0.20);
-
-            // Create dummy recommendations
-            List<RebalanceRecommendation> recommendations = new java.util.ArrayList<>();
-            recommendations.add(new RebalanceRecommendation("AAPL", "BUY", "Increase allocation to Apple", 0.05));
-            recommendations.add(new RebalanceRecommendation("GOOGL", "HOLD", "Maintain current allocation", 0.0));
-            recommendations.add(new RebalanceRecommendation("TSLA", "SELL", "Reduce allocation to Tesla", -0.05));
-
-            return new PortfolioOptimization(
-                "Optimized based on modern portfolio theory with risk-adjusted returns",
-                allocation,
-                0.12, // expected return
-                0.18, // expected risk
-                1.45, // sharpe ratio
-                recommendations
-            );
-        });
+        // Create dummy recommendations
+        List<RebalanceRecommendation> recommendations = new java.util.ArrayList<>();
+        recommendations.add(new RebalanceRecommendation("AAPL", "BUY", "Increase allocation to Apple", 0.05));
+        recommendations.add(new RebalanceRecommendation("GOOGL", "HOLD", "Maintain current allocation", 0.0));
+        recommendations.add(new RebalanceRecommendation("TSLA", "SELL", "Reduce allocation to Tesla", -0.05));
+
+        return new PortfolioOptimization(
+            "Optimized based on modern portfolio theory with risk-adjusted returns",
+            allocation,
+            0.12, // expected return
+            0.18, // expected risk
+            1.45, // sharpe ratio
+            recommendations
+        );
     }
 
     public RiskAssessment assessRisk(Map<String, Double> portfolioWeights) {
@@ -192,6 +208,103 @@ public class AIAnalytics {
         return new PerformanceMetrics(totalReturn, annualizedReturn, volatility, maxDrawdown);
     }
 
+    /**
+     * Performance from a portfolio's value history (see DatabaseManager.getPortfolioValueHistory).
+     * Changes in cost basis between buckets are trades, not returns, so they are treated as
+     * money moved in or out and taken out of each period's gain. The history mixes day, hour
+     * and minute buckets, so volatility is taken from one close per day only.
+     */
+    public PerformanceMetrics analyzePerformance(List<PortfolioValueSnapshot> history) {
+        if (history.size() < 2) {
+            return new PerformanceMetrics(0.0, 0.0, 0.0, 0.0);
+        }
+
+        double growth = 1.0;
+        double peak = 1.0;
+        double maxDrawdown = 0.0;
+        int periods = 0;
+        for (int i = 1; i < history.size(); i++) {
+            PortfolioValueSnapshot previous = history.get(i - 1);
+            if (previous.getCloseValue() <= 0) {
+                continue;
+            }
+            growth *= 1 + periodReturn(previous, history.get(i));
+            peak = Math.max(peak, growth);
+            maxDrawdown = Math.min(maxDrawdown, growth / peak - 1);
+            periods++;
+        }
+        if (periods == 0) {
+            return new PerformanceMetrics(0.0, 0.0, 0.0, 0.0);
+        }
+
+        double years = java.time.Duration.between(history.get(0).getBucketStart(),
+                history.get(history.size() - 1).getBucketStart()).getSeconds() / (365.25 * 24 * 3600);
+        double totalReturn = growth - 1;
+        double annualizedReturn = years > 0 && growth > 0 ? Math.pow(growth, 1 / years) - 1 : totalReturn;
+
+        // Last snapshot of each day, whatever the bucket size it came from
+        java.util.TreeMap<java.time.LocalDate, PortfolioValueSnapshot> dailyCloses = new java.util.TreeMap<>();
+        for (PortfolioValueSnapshot snapshot : history) {
+            dailyCloses.merge(snapshot.getBucketStart().toLocalDate(), snapshot,
+                    (kept, next) -> next.getBucketStart().isAfter(kept.getBucketStart()) ? next : kept);
+        }
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        int days = 0;
+        PortfolioValueSnapshot previous = null;
+        for (PortfolioValueSnapshot close : dailyCloses.values()) {
+            if (previous != null && previous.getCloseValue() > 0) {
+                double dailyReturn = periodReturn(previous, close);
+                sum += dailyReturn;
+                sumSquares += dailyReturn * dailyReturn;
+                days++;
+            }
+            previous = close;
+        }
+        double volatility = 0.0;
+        if (days >= 2) {
+            double mean = sum / days;
+            double variance = Math.max(0.0, (sumSquares - days * mean * mean) / (days - 1));
+            volatility = Math.sqrt(variance * TRADING_DAYS_PER_YEAR);
+        }
+
+        return new PerformanceMetrics(totalReturn, annualizedReturn, volatility, maxDrawdown);
+    }
+
+    private static double periodReturn(PortfolioValueSnapshot previous, PortfolioValueSnapshot current) {
+        double flow = current.getCostBasis() - previous.getCostBasis();
+        return (current.getCloseValue() - flow) / previous.getCloseValue() - 1;
+    }
+
+    /**
+     * Annualized volatility of daily close-to-close returns. Pass split and dividend adjusted
+     * bars (RealTimeStockAPI.getAdjustedHistoricalData); in raw bars a split or dividend shows
+     * up as a price jump. Bars may be in any order.
+     */
+    public double annualizedVolatility(List<HistoricalPrice> adjustedDailyBars) {
+        List<HistoricalPrice> bars = new java.util.ArrayList<>(adjustedDailyBars);
+        bars.sort(java.util.Comparator.comparing(HistoricalPrice::getTimestamp));
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        int periods = 0;
+        for (int i = 1; i < bars.size(); i++) {
+            double previous = bars.get(i - 1).getClose();
+            if (previous <= 0) {
+                continue;
+            }
+            double dailyReturn = bars.get(i).getClose() / previous - 1;
+            sum += dailyReturn;
+            sumSquares += dailyReturn * dailyReturn;
+            periods++;
+        }
+        if (periods < 2) {
+            return 0.0;
+        }
+        double mean = sum / periods;
+        double variance = Math.max(0.0, (sumSquares - periods * mean * mean) / (periods - 1));
+        return Math.sqrt(variance * TRADING_DAYS_PER_YEAR);
+    }
+
     public RebalanceRecommendation getRebalanceRecommendation(List<Position> positions) {
         // Dummy implementation
         return new RebalanceRecommendation("AAPL", "BUY", "Rebalance needed", 0.1);
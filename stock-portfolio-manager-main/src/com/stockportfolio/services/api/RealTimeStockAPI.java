@@ -3,31 +3,46 @@
 
 package com.stockportfolio.services.api;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockportfolio.model.CorporateAction;
 import com.stockportfolio.model.Stock;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.services.PriceAdjustmentService;
 import com.stockportfolio.utils.DatabaseManager;
+import com.stockportfolio.utils.Logger;
 
 /**
  * Real-time stock data API integration with multiple providers
@@ -38,6 +53,8 @@ public class RealTimeStockAPI {
     private static final String ALPHA_VANTAGE_BASE_URL = "https://www.alphavantage.co/query";
     private static final String YAHOO_FINANCE_BASE_URL = "https://query1.finance.yahoo.com/v8/finance/chart";
     private static final String IEX_CLOUD_BASE_URL = "https://cloud.iexapis.com/stable";
+    // How far back the feed is asked for splits and dividends
+    private static final String CORPORATE_ACTION_RANGE = "5y";
 
     // API Keys (should be loaded from environment variables)
     private static final String ALPHA_VANTAGE_API_KEY = System.getenv("ALPHA_VANTAGE_API_KEY");
@@ -45,50 +62,87 @@ public class RealTimeStockAPI {
 
     private final CloseableHttpClient httpClient;
     private final ObjectMapper objectMapper;
-    private final DatabaseManager dbManager;
+    private final DataStore dbManager;
+    // Corporate actions are only kept by the database store; both are null on other stores
+    private final DatabaseManager corporateActionStore;
+    private final PriceAdjustmentService priceAdjustmentService;
     private final ScheduledExecutorService scheduler;
     private final Map<String, CompletableFuture<?>> updateTasks;
+    // Day each symbol's corporate actions were last fetched
+    private final Map<String, LocalDate> corporateActionsCheckedOn;
+
+    // Validators (ETag / Last-Modified) and the last parsed quote per request URL
+    private final Map<String, ConditionalEntry> conditionalCache;
+    private final TransferStats transferStats;
 
     // Rate limiting
     private static final int REQUESTS_PER_MINUTE = 60;
     private final Semaphore rateLimiter;
 
     public RealTimeStockAPI() {
+        this(openDatabase());
+    }
+
+    /** Quotes and reference data for the symbols in {@code dataStore}. */
+    public RealTimeStockAPI(DataStore dataStore) {
         // Use Apache HttpClient for Java 8 compatibility
         RequestConfig config = RequestConfig.custom()
                 .setConnectTimeout(10000)
                 .setSocketTimeout(30000)
                 .build();
+        this.transferStats = new TransferStats();
+        // Content compression is on by default (Accept-Encoding: gzip, deflate). The
+        // interceptor is registered first so it sees the entity before it is decompressed
+        // and counts the bytes actually sent over the wire.
         this.httpClient = HttpClients.custom()
                 .setDefaultRequestConfig(config)
+                .addInterceptorFirst((org.apache.http.HttpResponseInterceptor) (response, context) -> {
+                    transferStats.recordRequest();
+                    HttpEntity entity = response.getEntity();
+                    if (entity != null) {
+                        response.setEntity(new CountingEntity(entity, transferStats));
+                    }
+                })
                 .build();
+        this.conditionalCache = new ConcurrentHashMap<>();
         this.objectMapper = new ObjectMapper();
-        try {
-            this.dbManager = DatabaseManager.getInstance();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to initialize DatabaseManager", e);
-        }
+        this.dbManager = dataStore;
+        this.corporateActionStore = dataStore instanceof DatabaseManager ? (DatabaseManager) dataStore : null;
+        this.priceAdjustmentService = corporateActionStore != null ? new PriceAdjustmentService(corporateActionStore) : null;
         this.scheduler = Executors.newScheduledThreadPool(4);
         this.updateTasks = new ConcurrentHashMap<>();
+        this.corporateActionsCheckedOn = new ConcurrentHashMap<>();
         this.rateLimiter = new Semaphore(REQUESTS_PER_MINUTE);
 
+        // Refill the per-minute budget shared by quotes, history, search and FX lookups
+        scheduler.scheduleAtFixedRate(() ->
+                rateLimiter.release(Math.max(0, REQUESTS_PER_MINUTE - rateLimiter.availablePermits())),
+                1, 1, TimeUnit.MINUTES);
+
         // Start periodic price updates
         startRealTimeUpdates();
     }
 
+    private static DataStore openDatabase() {
+        try {
+            return DatabaseManager.getInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to initialize DatabaseManager", e);
+        }
+    }
+
     /**
      * Get real-time stock quote
      */
     public CompletableFuture<StockQuote> getStockQuote(String symbol) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                // Try Alpha Vantage first
-                if (ALPHA_VANTAGE_API_KEY != null) {
-                    return getQuoteFromAlphaVantage(symbol);
-                }
-
-                // Fallback to Yahoo Finance (free)
-                return getQuoteFromYahoo(symbol);
+                // Try Alpha Vantage first, falling back to Yahoo Finance (free)
+                StockQuote quote = ALPHA_VANTAGE_API_KEY != null
+                        ? getQuoteFromAlphaVantage(symbol)
+                        : getQuoteFromYahoo(symbol);
+                recordCurrency(quote);
+                return quote;
 
             } catch (Exception e) {
                 System.err.println("Error fetching quote for " + symbol + ": " + e.getMessage());
@@ -143,21 +197,42 @@ public class RealTimeStockAPI {
     }
 
     private StockQuote getQuoteFromYahoo(String symbol) throws Exception {
-        String url = String.format("%s/%s?interval=1m&range=1d", YAHOO_FINANCE_BASE_URL, symbol);
+        // Only the chart "meta" block is used, so ask for a single daily bar instead of a
+        // full day of minute bars; the payload shrinks by roughly two orders of magnitude.
+        String url = String.format("%s/%s?interval=1d&range=1d", YAHOO_FINANCE_BASE_URL, symbol);
 
         HttpGet request = new HttpGet(url);
+        ConditionalEntry cached = conditionalCache.get(url);
+        if (cached != null) {
+            if (cached.etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+            }
+        }
+
         CloseableHttpResponse response = null;
         try {
             response = httpClient.execute(request);
 
-            if (response.getStatusLine().getStatusCode() == 429) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                transferStats.recordNotModified();
+                StockQuote previous = cached.quote;
+                return new StockQuote(symbol, previous.getCurrentPrice(), previous.getPreviousClose(),
+                        previous.getChange(), previous.getChangePercent(), previous.getVolume(),
+                        LocalDateTime.now(), previous.getCurrency());
+            }
+
+            if (statusCode == 429) {
                 // Rate limit exceeded, wait and retry with exponential backoff
                 Thread.sleep(2000); // Wait 2 seconds
                 return getQuoteFromYahoo(symbol); // Retry once
             }
 
-            if (response.getStatusLine().getStatusCode() != 200) {
-                throw new RuntimeException("Yahoo Finance API request failed: " + response.getStatusLine().getStatusCode());
+            if (statusCode != 200) {
+                throw new RuntimeException("Yahoo Finance API request failed: " + statusCode);
             }
 
             String responseBody = EntityUtils.toString(response.getEntity());
@@ -166,19 +241,34 @@ public class RealTimeStockAPI {
             JsonNode meta = chart.get("meta");
 
             double currentPrice = meta.get("regularMarketPrice").asDouble();
-            double previousClose = meta.get("previousClose").asDouble();
+            JsonNode previousCloseNode = meta.has("previousClose") ? meta.get("previousClose") : meta.get("chartPreviousClose");
+            double previousClose = previousCloseNode.asDouble();
             double change = currentPrice - previousClose;
             double changePercent = (change / previousClose) * 100;
 
-            return new StockQuote(
+            StockQuote quote = new StockQuote(
                     symbol,
                     currentPrice,
                     previousClose,
                     change,
                     String.format("%.2f", changePercent),
-                    meta.get("regularMarketVolume").asLong(),
-                    LocalDateTime.now()
+                    meta.path("regularMarketVolume").asLong(),
+                    LocalDateTime.now(),
+                    meta.path("currency").asText(null)
             );
+
+            Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+            Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            if (etag != null || lastModified != null) {
+                conditionalCache.put(url, new ConditionalEntry(
+                        etag != null ? etag.getValue() : null,
+                        lastModified != null ? lastModified.getValue() : null,
+                        quote));
+            } else {
+                conditionalCache.remove(url);
+            }
+
+            return quote;
         } finally {
             if (response != null) {
                 response.close();
@@ -186,6 +276,53 @@ public class RealTimeStockAPI {
         }
     }
 
+    /**
+     * Keep a stock's trading currency in line with what its quotes report, so its positions
+     * are converted into the base currency. Symbols not in the stocks table are left alone.
+     */
+    private void recordCurrency(StockQuote quote) {
+        String currency = quote.getCurrency();
+        if (currency == null || currency.isEmpty()) {
+            return;
+        }
+        if (!currency.equals(currency.toUpperCase())) {
+            // Minor units such as GBp or ZAc would need a scale as well as a rate
+            System.err.println("Unsupported quote currency " + currency + " for " + quote.getSymbol());
+            return;
+        }
+        try {
+            String known = dbManager.getStockCurrencies().get(quote.getSymbol());
+            if (known != null && !known.equals(currency)) {
+                dbManager.updateStockCurrency(quote.getSymbol(), currency);
+            }
+        } catch (Exception e) {
+            System.err.println("Error recording currency for " + quote.getSymbol() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the price of one unit of {@code from} in {@code to} (e.g. EUR -> USD).
+     * Unlike getStockQuote this never falls back to simulated data; failures complete exceptionally.
+     */
+    public CompletableFuture<Double> getFxRate(String from, String to) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (!rateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
+                    throw new RuntimeException("Rate limit exceeded");
+                }
+                StockQuote quote = getQuoteFromYahoo(from + to + "=X");
+                if (quote.getCurrentPrice() <= 0.0) {
+                    throw new RuntimeException("Invalid FX rate for " + from + "/" + to);
+                }
+                return quote.getCurrentPrice();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Error fetching FX rate " + from + "/" + to + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
     private StockQuote createErrorQuote(String symbol) {
         // Return simulated quote for demo purposes
         Random random = new Random();
@@ -225,6 +362,127 @@ public class RealTimeStockAPI {
         });
     }
 
+    /**
+     * Get historical stock data adjusted for splits and dividends recorded in corporate_actions.
+     * Raw bars are fetched once; the adjustment is applied on read, after the symbol's corporate
+     * actions have been brought up to date from the feed.
+     */
+    public CompletableFuture<List<HistoricalPrice>> getAdjustedHistoricalData(String symbol, String period) {
+        if (priceAdjustmentService == null) {
+            return getHistoricalData(symbol, period);
+        }
+        return refreshCorporateActions(symbol).thenCombine(getHistoricalData(symbol, period), (recorded, prices) -> {
+            try {
+                return priceAdjustmentService.adjust(symbol, prices);
+            } catch (Exception e) {
+                System.err.println("Error adjusting historical data for " + symbol + ": " + e.getMessage());
+                return prices;
+            }
+        });
+    }
+
+    /**
+     * Record the splits and dividends the feed reports for a symbol in corporate_actions, at most
+     * once a day per symbol. Completes with the number of actions added; failures are logged and
+     * leave the stored actions as they were.
+     */
+    public CompletableFuture<Integer> refreshCorporateActions(String symbol) {
+        LocalDate today = LocalDate.now();
+        if (corporateActionStore == null || today.equals(corporateActionsCheckedOn.put(symbol, today))) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                // corporate_actions references stocks, so only listed symbols are tracked
+                if (dbManager.getStockBySymbol(symbol) == null) {
+                    return 0;
+                }
+                if (!rateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
+                    throw new RuntimeException("Rate limit exceeded");
+                }
+                Set<String> known = new HashSet<>();
+                for (CorporateAction action : corporateActionStore.getCorporateActionsBySymbol(symbol)) {
+                    known.add(action.getActionType() + "@" + action.getExDate());
+                }
+                int added = 0;
+                for (CorporateAction action : getCorporateActionsFromYahoo(symbol)) {
+                    if (known.add(action.getActionType() + "@" + action.getExDate())) {
+                        corporateActionStore.saveCorporateAction(action);
+                        added++;
+                    }
+                }
+                return added;
+            } catch (Exception e) {
+                corporateActionsCheckedOn.remove(symbol, today);
+                System.err.println("Error fetching corporate actions for " + symbol + ": " + e.getMessage());
+                return 0;
+            }
+        });
+    }
+
+    private List<CorporateAction> getCorporateActionsFromYahoo(String symbol) throws Exception {
+        String url = String.format("%s/%s?interval=1d&range=%s&events=div%%2Csplits",
+                YAHOO_FINANCE_BASE_URL, symbol, CORPORATE_ACTION_RANGE);
+
+        HttpGet request = new HttpGet(url);
+        CloseableHttpResponse response = null;
+        try {
+            response = httpClient.execute(request);
+
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new RuntimeException("Yahoo Finance API request failed: " + response.getStatusLine().getStatusCode());
+            }
+
+            String responseBody = EntityUtils.toString(response.getEntity());
+            JsonNode chart = objectMapper.readTree(responseBody).path("chart").path("result").path(0);
+            // Event and bar times are exchange-local session opens given as epoch seconds
+            long gmtOffset = chart.path("meta").path("gmtoffset").asLong();
+            JsonNode timestamps = chart.path("timestamp");
+            JsonNode closes = chart.path("indicators").path("quote").path(0).path("close");
+            long[] epochDays = new long[timestamps.size()];
+            double[] closePrices = new double[timestamps.size()];
+            for (int i = 0; i < epochDays.length; i++) {
+                epochDays[i] = exchangeDate(timestamps.get(i).asLong(), gmtOffset).toEpochDay();
+                closePrices[i] = closes.path(i).asDouble(0.0);
+            }
+
+            List<CorporateAction> actions = new ArrayList<>();
+            for (JsonNode split : chart.path("events").path("splits")) {
+                double numerator = split.path("numerator").asDouble();
+                double denominator = split.path("denominator").asDouble();
+                if (numerator > 0 && denominator > 0) {
+                    CorporateAction action = new CorporateAction(symbol, CorporateAction.TYPE_SPLIT,
+                            exchangeDate(split.path("date").asLong(), gmtOffset));
+                    action.setRatio(numerator / denominator);
+                    actions.add(action);
+                }
+            }
+            for (JsonNode dividend : chart.path("events").path("dividends")) {
+                CorporateAction action = new CorporateAction(symbol, CorporateAction.TYPE_DIVIDEND,
+                        exchangeDate(dividend.path("date").asLong(), gmtOffset));
+                action.setAmount(dividend.path("amount").asDouble());
+                // Yahoo gives closes and dividends on the same split-adjusted basis, so their ratio holds
+                double factor = PriceAdjustmentService.dividendFactor(action.getAmount(),
+                        action.getExDate().toEpochDay(), epochDays, closePrices);
+                if (factor > 0.0) {
+                    action.setPriceFactor(factor);
+                    actions.add(action);
+                } else {
+                    System.err.println("No close before the " + action.getExDate() + " dividend of " + symbol + "; skipped");
+                }
+            }
+            return actions;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private static LocalDate exchangeDate(long epochSecond, long gmtOffset) {
+        return Instant.ofEpochSecond(epochSecond + gmtOffset).atOffset(ZoneOffset.UTC).toLocalDate();
+    }
+
     private List<HistoricalPrice> getHistoricalFromAlphaVantage(String symbol, String period) throws Exception {
         if (!rateLimiter.tryAcquire()) {
             throw new RuntimeException("Rate limit exceeded");
@@ -370,6 +628,7 @@ public class RealTimeStockAPI {
     private List<StockSearchResult> searchStocksLocal(String query) {
         try {
             List<Stock> stocks = dbManager.getAllStocks();
+            Map<String, String> currencies = dbManager.getStockCurrencies();
             return stocks.stream()
                     .filter(stock -> {
                         String symbol = stock.getSymbol();
@@ -381,7 +640,7 @@ public class RealTimeStockAPI {
                             stock.getSymbol(),
                             stock.getName(),
                             stock.getExchange(),
-                            "USD" // Default currency
+                            currencies.getOrDefault(stock.getSymbol(), "USD")
                     ))
                     .limit(10)
                     .collect(Collectors.toList());
@@ -405,6 +664,14 @@ public class RealTimeStockAPI {
     }
 
     private void updatePopularStocks() {
+        // Quotes from the previous cycle have completed by now (30 s period), so the
+        // counters describe one full refresh cycle.
+        TransferStats.Snapshot lastCycle = transferStats.snapshotAndReset();
+        if (lastCycle.getRequests() > 0) {
+            Logger.info(String.format("Quote refresh cycle: %d requests, %d not modified, %d bytes transferred",
+                    lastCycle.getRequests(), lastCycle.getNotModified(), lastCycle.getBytes()));
+        }
+
         List<String> popularStocks = getPopularStocks();
 
         for (String symbol : popularStocks) {
@@ -491,6 +758,13 @@ public class RealTimeStockAPI {
         });
     }
 
+    /**
+     * Bytes, requests and 304 responses recorded since the current refresh cycle started
+     */
+    public TransferStats.Snapshot getTransferStats() {
+        return transferStats.snapshot();
+    }
+
     /**
      * Shutdown the API service
      */
@@ -514,9 +788,16 @@ public class RealTimeStockAPI {
         private final String changePercent;
         private final long volume;
         private final LocalDateTime timestamp;
+        private final String currency;
 
         public StockQuote(String symbol, double currentPrice, double previousClose,
                          double change, String changePercent, long volume, LocalDateTime timestamp) {
+            this(symbol, currentPrice, previousClose, change, changePercent, volume, timestamp, null);
+        }
+
+        public StockQuote(String symbol, double currentPrice, double previousClose,
+                         double change, String changePercent, long volume, LocalDateTime timestamp,
+                         String currency) {
             this.symbol = symbol;
             this.currentPrice = currentPrice;
             this.previousClose = previousClose;
@@ -524,6 +805,7 @@ public class RealTimeStockAPI {
             this.changePercent = changePercent;
             this.volume = volume;
             this.timestamp = timestamp;
+            this.currency = currency;
         }
 
         // Getters
@@ -534,6 +816,8 @@ public class RealTimeStockAPI {
         public String getChangePercent() { return changePercent; }
         public long getVolume() { return volume; }
         public LocalDateTime getTimestamp() { return timestamp; }
+        /** Trading currency reported by the source, or null when it does not say. */
+        public String getCurrency() { return currency; }
     }
 
     public static class HistoricalPrice {
@@ -583,6 +867,88 @@ public class RealTimeStockAPI {
         public String getCurrency() { return currency; }
     }
 
+    public static class TransferStats {
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong notModified = new AtomicLong();
+
+        void recordBytes(long count) { bytes.addAndGet(count); }
+        void recordRequest() { requests.incrementAndGet(); }
+        void recordNotModified() { notModified.incrementAndGet(); }
+
+        Snapshot snapshot() {
+            return new Snapshot(bytes.get(), requests.get(), notModified.get());
+        }
+
+        Snapshot snapshotAndReset() {
+            return new Snapshot(bytes.getAndSet(0), requests.getAndSet(0), notModified.getAndSet(0));
+        }
+
+        public static class Snapshot {
+            private final long bytes;
+            private final long requests;
+            private final long notModified;
+
+            public Snapshot(long bytes, long requests, long notModified) {
+                this.bytes = bytes;
+                this.requests = requests;
+                this.notModified = notModified;
+            }
+
+            // Getters
+            public long getBytes() { return bytes; }
+            public long getRequests() { return requests; }
+            public long getNotModified() { return notModified; }
+        }
+    }
+
+    private static class ConditionalEntry {
+        private final String etag;
+        private final String lastModified;
+        private final StockQuote quote;
+
+        ConditionalEntry(String etag, String lastModified, StockQuote quote) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.quote = quote;
+        }
+    }
+
+    /**
+     * Counts the raw (still compressed) bytes read from a response body
+     */
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final TransferStats stats;
+
+        CountingEntity(HttpEntity wrapped, TransferStats stats) {
+            super(wrapped);
+            this.stats = stats;
+        }
+
+        @Override
+        public java.io.InputStream getContent() throws java.io.IOException {
+            return new java.io.FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws java.io.IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        stats.recordBytes(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int off, int len) throws java.io.IOException {
+                    int n = super.read(buffer, off, len);
+                    if (n > 0) {
+                        stats.recordBytes(n);
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+
     public static class MarketMovers {
         private final List<StockQuote> gainers;
         private final List<StockQuote> losers;
@@ -0,0 +1,273 @@
+package com.stockportfolio.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+
+/**
+ * One Hikari pool per workload, so a long export scan or report cannot hold the
+ * connections a trade needs. Each pool has its own size and acquire timeout and
+ * records how long callers waited for a connection.
+ *
+ * Sizes can be overridden with STOCKPORTFOLIO_POOL_&lt;WORKLOAD&gt;_SIZE, e.g.
+ * STOCKPORTFOLIO_POOL_BULK_READ_SIZE=4.
+ *
+ * Connections handed out are wrapped by {@link QueryInstrumentation} unless
+ * STOCKPORTFOLIO_QUERY_STATS=off; STOCKPORTFOLIO_SLOW_QUERY_MS sets the slow-query log
+ * threshold. Pool and statement statistics are published over JMX and in
+ * {@link #dumpDiagnostics()}.
+ */
+public final class ConnectionPools implements DatabaseDiagnosticsMXBean {
+    private static final String MBEAN_NAME = "com.stockportfolio:type=DatabaseDiagnostics";
+    private static final int REPORTED_STATEMENTS = 25;
+
+    public enum Workload {
+        /** Short lookups behind screens and services. */
+        INTERACTIVE_READ(Math.max(4, Runtime.getRuntime().availableProcessors()), 2, 5_000),
+        /** Exports, reports and ledger replays; read-only, may hold a connection for minutes. */
+        BULK_READ(2, 0, 60_000),
+        /** Trades, archiving and other writes. H2 commits one at a time, so more writers only queue. */
+        WRITE(4, 2, 10_000);
+
+        private final int defaultSize;
+        private final int minIdle;
+        private final long connectionTimeoutMs;
+
+        Workload(int defaultSize, int minIdle, long connectionTimeoutMs) {
+            this.defaultSize = defaultSize;
+            this.minIdle = minIdle;
+            this.connectionTimeoutMs = connectionTimeoutMs;
+        }
+
+        int size() {
+            String configured = System.getenv("STOCKPORTFOLIO_POOL_" + name() + "_SIZE");
+            if (configured != null) {
+                try {
+                    int size = Integer.parseInt(configured.trim());
+                    if (size > 0) {
+                        return size;
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring invalid pool size for " + name() + ": " + configured);
+                }
+            }
+            return defaultSize;
+        }
+    }
+
+    private final Map<Workload, HikariDataSource> pools = new EnumMap<>(Workload.class);
+    private final Map<Workload, DataSource> dataSources = new EnumMap<>(Workload.class);
+    private final Map<Workload, AcquireTimes> acquireTimes = new EnumMap<>(Workload.class);
+    private final QueryInstrumentation instrumentation = new QueryInstrumentation();
+    private ObjectName registeredName;
+
+    ConnectionPools(String url, String user, String password) {
+        boolean instrumented = !"off".equalsIgnoreCase(String.valueOf(System.getenv("STOCKPORTFOLIO_QUERY_STATS")).trim());
+        instrumentation.setSlowQueryThresholdMs(slowQueryThresholdMs());
+        for (Workload workload : Workload.values()) {
+            AcquireTimes times = new AcquireTimes();
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("stockportfolio-" + workload.name().toLowerCase().replace('_', '-'));
+            config.setJdbcUrl(url);
+            config.setUsername(user);
+            config.setPassword(password);
+            config.setMaximumPoolSize(workload.size());
+            config.setMinimumIdle(Math.min(workload.minIdle, workload.size()));
+            config.setConnectionTimeout(workload.connectionTimeoutMs);
+            config.setIdleTimeout(600000);
+            config.setMaxLifetime(1800000);
+            config.setMetricsTrackerFactory((poolName, poolStats) -> times);
+            HikariDataSource pool = new HikariDataSource(config);
+            acquireTimes.put(workload, times);
+            pools.put(workload, pool);
+            dataSources.put(workload, instrumented ? instrumentation.wrap(pool, workload.name()) : pool);
+        }
+        registerMBean();
+    }
+
+    private static long slowQueryThresholdMs() {
+        String configured = System.getenv("STOCKPORTFOLIO_SLOW_QUERY_MS");
+        if (configured != null) {
+            try {
+                return Long.parseLong(configured.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid STOCKPORTFOLIO_SLOW_QUERY_MS: " + configured);
+            }
+        }
+        return QueryInstrumentation.DEFAULT_SLOW_QUERY_MS;
+    }
+
+    private void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+                registeredName = name;
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register database diagnostics MBean: " + e.getMessage());
+        }
+    }
+
+    DataSource get(Workload workload) {
+        return dataSources.get(workload);
+    }
+
+    public PoolMetrics metrics(Workload workload) {
+        HikariDataSource pool = pools.get(workload);
+        HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+        AcquireTimes times = acquireTimes.get(workload);
+        return new PoolMetrics(workload, pool.getMaximumPoolSize(),
+                bean != null ? bean.getActiveConnections() : 0,
+                bean != null ? bean.getIdleConnections() : 0,
+                bean != null ? bean.getThreadsAwaitingConnection() : 0,
+                times.timeouts.sum(), times.histogram.snapshot());
+    }
+
+    public List<PoolMetrics> metrics() {
+        List<PoolMetrics> all = new ArrayList<>();
+        for (Workload workload : Workload.values()) {
+            all.add(metrics(workload));
+        }
+        return all;
+    }
+
+    @Override
+    public long getStatementCount() {
+        return instrumentation.getStatementCount();
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return instrumentation.getSlowQueryCount();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return instrumentation.getSlowQueryThresholdMs();
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long thresholdMillis) {
+        instrumentation.setSlowQueryThresholdMs(thresholdMillis);
+    }
+
+    @Override
+    public String[] getTopStatements() {
+        return instrumentation.topStatements(REPORTED_STATEMENTS).toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getConnectionPools() {
+        List<String> lines = new ArrayList<>();
+        for (PoolMetrics pool : metrics()) {
+            lines.add(pool.toString());
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public String dumpDiagnostics() {
+        StringBuilder report = new StringBuilder("Connection pools\n");
+        for (PoolMetrics pool : metrics()) {
+            report.append("  ").append(pool).append('\n');
+        }
+        instrumentation.appendReport(report, REPORTED_STATEMENTS);
+        return report.toString();
+    }
+
+    @Override
+    public void resetStatistics() {
+        instrumentation.reset();
+    }
+
+    void close() {
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                System.err.println("Could not unregister database diagnostics MBean: " + e.getMessage());
+            }
+            registeredName = null;
+        }
+        for (HikariDataSource pool : pools.values()) {
+            pool.close();
+        }
+    }
+
+    // Acquire times and timeouts reported by Hikari for one pool
+    private static final class AcquireTimes implements IMetricsTracker {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder timeouts = new LongAdder();
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedNanos) {
+            histogram.record(elapsedNanos);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+    }
+
+    /**
+     * Point-in-time view of one pool: connection counts, waiting threads and the
+     * acquire time histogram since startup, in {@link LatencyHistogram} buckets.
+     */
+    public static final class PoolMetrics {
+        private final Workload workload;
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final int pending;
+        private final long timeouts;
+        private final long[] acquireBuckets;
+
+        PoolMetrics(Workload workload, int maxSize, int active, int idle, int pending, long timeouts, long[] acquireBuckets) {
+            this.workload = workload;
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.pending = pending;
+            this.timeouts = timeouts;
+            this.acquireBuckets = acquireBuckets;
+        }
+
+        public Workload getWorkload() { return workload; }
+        public int getMaxSize() { return maxSize; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getPending() { return pending; }
+        public long getTimeouts() { return timeouts; }
+        public long[] getAcquireBuckets() { return acquireBuckets.clone(); }
+
+        public long getAcquireCount() {
+            return LatencyHistogram.count(acquireBuckets);
+        }
+
+        /** Upper bound in microseconds of the bucket holding the given percentile (0-100). */
+        public long getAcquirePercentileMicros(double percentile) {
+            return LatencyHistogram.percentileMicros(acquireBuckets, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: active=%d idle=%d max=%d pending=%d acquires=%d p50<=%dus p99<=%dus timeouts=%d",
+                    workload, active, idle, maxSize, pending, getAcquireCount(),
+                    getAcquirePercentileMicros(50), getAcquirePercentileMicros(99), timeouts);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.stockportfolio.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * In-memory aggregation of popularity counters (views, likes, comment counts).
+ *
+ * Increments land in a LongAdder per row and are written as one summed delta per row on
+ * a timer, so a burst of views on a popular post costs a single UPDATE per flush instead
+ * of one row-locking UPDATE each. Readers add {@link #pending} to the persisted value.
+ */
+class CounterAggregator {
+
+    enum Counter {
+        SHARED_PORTFOLIO_VIEWS("shared_portfolios", "views"),
+        SHARED_PORTFOLIO_LIKES("shared_portfolios", "likes"),
+        FORUM_POST_VIEWS("forum_posts", "view_count"),
+        FORUM_POST_COMMENTS("forum_posts", "comment_count");
+
+        private final String updateSql;
+
+        Counter(String table, String column) {
+            this.updateSql = "UPDATE " + table + " SET " + column + " = GREATEST(" + column + " + ?, 0) WHERE id = ?";
+        }
+    }
+
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final DataSource dataSource;
+    private final Map<Counter, Map<Integer, LongAdder>> deltas = new EnumMap<>(Counter.class);
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+
+    CounterAggregator(DataSource dataSource) {
+        this.dataSource = dataSource;
+        for (Counter counter : Counter.values()) {
+            deltas.put(counter, new ConcurrentHashMap<>());
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "counter-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void add(Counter counter, int id, long delta) {
+        // Added inside compute so a flush can never evict the adder between lookup and add
+        deltas.get(counter).compute(id, (k, adder) -> {
+            LongAdder target = adder == null ? new LongAdder() : adder;
+            target.add(delta);
+            return target;
+        });
+    }
+
+    /**
+     * Delta not yet written for this row. A flush takes the deltas it writes out of here
+     * before its commit, so a committed delta is never counted twice; until the commit is
+     * visible a reader sees that delta in neither place, and a failed flush puts it back.
+     */
+    long pending(Counter counter, int id) {
+        LongAdder adder = deltas.get(counter).get(id);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Write every non-zero delta in one transaction.
+     *
+     * @return the number of rows updated
+     */
+    int flush() throws SQLException {
+        synchronized (flushLock) {
+            // Snapshot in id order so concurrent flushers and writers lock rows consistently
+            Map<Counter, Map<Integer, Long>> batch = new EnumMap<>(Counter.class);
+            for (Map.Entry<Counter, Map<Integer, LongAdder>> entry : deltas.entrySet()) {
+                Map<Integer, Long> sums = new TreeMap<>();
+                for (Map.Entry<Integer, LongAdder> row : entry.getValue().entrySet()) {
+                    long sum = row.getValue().sum();
+                    if (sum != 0) {
+                        sums.put(row.getKey(), sum);
+                    } else {
+                        // Increments that cancelled out (a like then an unlike) leave nothing to write
+                        entry.getValue().computeIfPresent(row.getKey(), (k, adder) -> adder.sum() == 0 ? null : adder);
+                    }
+                }
+                if (!sums.isEmpty()) {
+                    batch.put(entry.getKey(), sums);
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+
+            // The batch is in flight from here: subtract rather than reset, so increments made
+            // during the write are kept, and drop rows with nothing left so the maps only hold
+            // recently touched ids
+            for (Map.Entry<Counter, Map<Integer, Long>> entry : batch.entrySet()) {
+                Map<Integer, LongAdder> adders = deltas.get(entry.getKey());
+                for (Map.Entry<Integer, Long> row : entry.getValue().entrySet()) {
+                    long inFlight = row.getValue();
+                    adders.computeIfPresent(row.getKey(), (k, adder) -> {
+                        adder.add(-inFlight);
+                        return adder.sum() == 0 ? null : adder;
+                    });
+                }
+            }
+
+            int rows = 0;
+            boolean committed = false;
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (Map.Entry<Counter, Map<Integer, Long>> entry : batch.entrySet()) {
+                        try (PreparedStatement pstmt = conn.prepareStatement(entry.getKey().updateSql)) {
+                            for (Map.Entry<Integer, Long> row : entry.getValue().entrySet()) {
+                                pstmt.setLong(1, row.getValue());
+                                pstmt.setInt(2, row.getKey());
+                                pstmt.addBatch();
+                                rows++;
+                            }
+                            pstmt.executeBatch();
+                        }
+                    }
+                    conn.commit();
+                    committed = true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } finally {
+                if (!committed) {
+                    // Back into pending, to be retried on the next flush
+                    for (Map.Entry<Counter, Map<Integer, Long>> entry : batch.entrySet()) {
+                        for (Map.Entry<Integer, Long> row : entry.getValue().entrySet()) {
+                            add(entry.getKey(), row.getKey(), row.getValue());
+                        }
+                    }
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Stop the timer and write whatever is still pending.
+     */
+    void drain() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // Deltas are kept and retried on the next flush
+            System.err.println("Error flushing counters: " + e.getMessage());
+        }
+    }
+}
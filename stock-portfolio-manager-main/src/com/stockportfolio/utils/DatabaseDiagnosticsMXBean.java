@@ -0,0 +1,25 @@
+package com.stockportfolio.utils;
+
+/**
+ * JMX view of the connection pools and statement statistics, registered as
+ * {@code com.stockportfolio:type=DatabaseDiagnostics}.
+ */
+public interface DatabaseDiagnosticsMXBean {
+    long getStatementCount();
+
+    long getSlowQueryCount();
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long thresholdMillis);
+
+    /** The most expensive statement shapes by total time, one summary line each. */
+    String[] getTopStatements();
+
+    String[] getConnectionPools();
+
+    /** Pool state, connection hold times and per-statement statistics with call sites. */
+    String dumpDiagnostics();
+
+    void resetStatistics();
+}
@@ -14,6 +14,7 @@ import javax.sql.DataSource;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.stockportfolio.model.Competition;
+import com.stockportfolio.model.CorporateAction;
 import com.stockportfolio.model.LeaderboardEntry;
 import com.stockportfolio.model.Portfolio;
 import com.stockportfolio.model.PortfolioLike;
@@ -23,33 +24,57 @@ import com.stockportfolio.model.Stock;
 import com.stockportfolio.model.Transaction;
 import com.stockportfolio.model.User;
 import com.stockportfolio.model.WatchlistItem;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.stockportfolio.repository.DataStore;
 
-public class DatabaseManager {
+public class DatabaseManager implements DataStore {
     private static final String DB_URL = "jdbc:h2:./data/stockportfolio;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;FILE_LOCK=NO";
     private static final String DB_USER = "sa";
     private static final String DB_PASSWORD = "";
+    // Rows per executeBatch round trip when importing trade history
+    private static final int IMPORT_BATCH_SIZE = 500;
 
     private static DatabaseManager instance;
-    private DataSource dataSource;
+    // Guarded by DatabaseManager.class; close runs once, from the caller or the shutdown hook
+    private boolean closed;
+    private final ConnectionPools pools;
+    // Trades and other writes
+    private final DataSource dataSource;
+    // Short lookups, kept apart from long scans
+    private final DataSource readDataSource;
+    // Exports, reports, rebuild scans and archiving
+    private final DataSource bulkDataSource;
 
     public DataSource getDataSource() {
         return dataSource;
     }
+
+    public java.util.List<ConnectionPools.PoolMetrics> getPoolMetrics() {
+        return pools.metrics();
+    }
+
+    /** Pool state and per-statement timings, as also published over JMX. */
+    public String getDiagnostics() {
+        return pools.dumpDiagnostics();
+    }
     private Cache<String, Object> cache;
+    private volatile java.util.function.ToDoubleFunction<String> baseFactorByCurrency = currency -> 1.0;
+    private final PositionIndex positionIndex = new PositionIndex();
+    private final PositionLedger ledger = new PositionLedger();
+    private final PriceWriteBehind priceWriteBehind = new PriceWriteBehind(this::persistPriceTicks);
+    private final CounterAggregator counters;
+    private final PortfolioValueHistory valueHistory;
+    private final TransactionArchiver transactionArchiver;
+    private final TradeJournal tradeJournal;
 
     private DatabaseManager() throws SQLException {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(DB_URL);
-        config.setUsername(DB_USER);
-        config.setPassword(DB_PASSWORD);
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(5);
-        config.setConnectionTimeout(30000);
-        config.setIdleTimeout(600000);
-        config.setMaxLifetime(1800000);
-        this.dataSource = new HikariDataSource(config);
+        this.pools = new ConnectionPools(databaseUrl(), DB_USER, DB_PASSWORD);
+        this.dataSource = pools.get(ConnectionPools.Workload.WRITE);
+        this.readDataSource = pools.get(ConnectionPools.Workload.INTERACTIVE_READ);
+        this.bulkDataSource = pools.get(ConnectionPools.Workload.BULK_READ);
+        this.counters = new CounterAggregator(dataSource);
+        this.valueHistory = new PortfolioValueHistory(dataSource);
+        this.transactionArchiver = new TransactionArchiver(dataSource, archiveAgeDays());
+        this.tradeJournal = new TradeJournal(java.nio.file.Paths.get("data", "journal"), this::checkpoint);
         this.cache = CacheBuilder.newBuilder().maximumSize(1000).build();
 
         // Add shutdown hook to ensure database is closed on JVM exit
@@ -72,11 +97,148 @@ public class DatabaseManager {
     }
 
     private void initializeDatabase() throws SQLException {
-        createTables();
-        createDemoUser();
+        new SchemaMigrator(dataSource, migrations()).migrate();
+        loadPositionIndex();
+        recoverTradeJournal();
+        transactionArchiver.start();
+    }
+
+    /**
+     * Apply trades that reached the journal but not the database before the last shutdown,
+     * then start journaling. A trade whose journal sequence is already in {@code transactions}
+     * or {@code transactions_archive} committed before the crash; rejected trades are dropped
+     * by the journal itself. Replayed trades move the totals without FX, which is what they
+     * stay at until {@link #setCurrencyConverter} rebuilds them with the real factors.
+     */
+    private void recoverTradeJournal() throws SQLException {
+        List<TradeJournal.JournalRecord> records;
+        try {
+            records = tradeJournal.recover();
+        } catch (java.io.IOException e) {
+            throw new SQLException("Cannot read trade journal: " + e.getMessage(), e);
+        }
+        if (!records.isEmpty()) {
+            java.util.Set<Long> committed = new java.util.HashSet<>(queryList(
+                    "SELECT journal_seq FROM transactions WHERE journal_seq >= ? " +
+                    "UNION ALL SELECT journal_seq FROM transactions_archive WHERE journal_seq >= ?",
+                    rs -> rs.getLong(1), records.get(0).getSequence(), records.get(0).getSequence()));
+            int replayed = 0;
+            for (TradeJournal.JournalRecord record : records) {
+                if (committed.contains(record.getSequence())) {
+                    continue;
+                }
+                try {
+                    // No converter is set yet; totals are rebuilt when one is
+                    inTransaction(conn -> applyTrade(conn, record.getTransaction(), record.getSequence(), symbol -> 1.0)).run();
+                    replayed++;
+                } catch (SQLException e) {
+                    System.err.println("Skipping journaled trade " + record.getSequence() + ": " + e.getMessage());
+                }
+            }
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " trades from the trade journal");
+            }
+            checkpoint();
+        }
+        Long lastSequence = queryOne("SELECT GREATEST(COALESCE((SELECT MAX(journal_seq) FROM transactions), 0), " +
+                "COALESCE((SELECT MAX(journal_seq) FROM transactions_archive), 0))", rs -> rs.getLong(1));
+        try {
+            tradeJournal.start(lastSequence + 1);
+        } catch (java.io.IOException e) {
+            throw new SQLException("Cannot start trade journal: " + e.getMessage(), e);
+        }
+    }
+
+    // Forces committed database state to disk; journal segments behind it can then be dropped
+    private void checkpoint() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CHECKPOINT SYNC");
+        }
+    }
+
+    // BIGINT counts of 1/SCALE units derived from the DOUBLE columns, for exact sums in SQL
+    private static void addUnitColumns(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String column : new String[] {"quantity", "price", "total_amount"}) {
+                stmt.execute("ALTER TABLE transactions ADD COLUMN IF NOT EXISTS " + column + "_units BIGINT " +
+                        "GENERATED ALWAYS AS (CAST(ROUND(" + column + " * " + FixedPoint.SCALE + ") AS BIGINT))");
+            }
+            stmt.execute("ALTER TABLE positions ADD COLUMN IF NOT EXISTS quantity_units BIGINT " +
+                    "GENERATED ALWAYS AS (CAST(ROUND(quantity * " + FixedPoint.SCALE + ") AS BIGINT))");
+            stmt.execute("ALTER TABLE positions ADD COLUMN IF NOT EXISTS cost_basis_units BIGINT " +
+                    "GENERATED ALWAYS AS (CAST(ROUND(quantity * average_cost * " + FixedPoint.SCALE + ") AS BIGINT))");
+        }
     }
 
-    private void createTables() throws SQLException {
+    // Runs once during construction, before any other thread can write positions
+    private void loadPositionIndex() throws SQLException {
+        try (Connection conn = bulkDataSource.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, portfolio_id, symbol, quantity, current_price FROM positions")) {
+            while (rs.next()) {
+                positionIndex.put(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getDouble(4), rs.getDouble(5));
+            }
+        }
+    }
+
+    /**
+     * Schema history, applied once each in version order. Append new steps with the next
+     * version number; never change a step that has already shipped.
+     */
+    List<SchemaMigrator.Migration> migrations() {
+        List<SchemaMigrator.Migration> migrations = new ArrayList<>();
+        // Every statement in the baseline is IF NOT EXISTS, so databases created before
+        // versioning was introduced converge on it without losing data
+        migrations.add(new SchemaMigrator.Migration(1, "Baseline tables and indexes", this::createTables));
+        migrations.add(new SchemaMigrator.Migration(2, "Fortune 500 reference stocks", this::populateFortune500Stocks));
+        migrations.add(new SchemaMigrator.Migration(3, "Demo user, sample competition and leaderboard", this::createDemoUser));
+        migrations.add(new SchemaMigrator.Migration(4, "Portfolio value snapshots", PortfolioValueHistory::createSchema));
+        migrations.add(new SchemaMigrator.Migration(5, "Transaction archive and monthly summaries", TransactionArchiver::createSchema));
+        migrations.add(new SchemaMigrator.Migration(6, "Position event ledger and snapshots", PositionLedger::createSchema));
+        migrations.add(new SchemaMigrator.Migration(7, "Trade journal sequence on transactions", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE transactions ADD COLUMN IF NOT EXISTS journal_seq BIGINT");
+                stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_transactions_journal_seq ON transactions(journal_seq)");
+            }
+        }));
+        migrations.add(new SchemaMigrator.Migration(8, "Fixed-point unit columns", conn -> {
+            addUnitColumns(conn);
+            TransactionArchiver.addUnitColumns(conn);
+        }));
+        migrations.add(new SchemaMigrator.Migration(9, "Row versions on portfolios and positions", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE portfolios ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL");
+                stmt.execute("ALTER TABLE positions ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL");
+            }
+        }));
+        migrations.add(new SchemaMigrator.Migration(10, "Statement import references on transactions", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String table : new String[] {"transactions", "transactions_archive"}) {
+                    stmt.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS import_ref VARCHAR(100)");
+                    stmt.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS import_batch VARCHAR(36)");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_import_ref ON " + table + "(portfolio_id, import_ref)");
+                }
+            }
+        }));
+        migrations.add(new SchemaMigrator.Migration(11, "Trade journal sequence on archived transactions", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE transactions_archive ADD COLUMN IF NOT EXISTS journal_seq BIGINT");
+            }
+        }));
+        // Totals are delta-maintained from here on, so any drift stored before must go first
+        migrations.add(new SchemaMigrator.Migration(12, "Rebuild portfolio totals from positions",
+                conn -> rebuildTotals(conn, null)));
+        migrations.add(new SchemaMigrator.Migration(13, "Position ledger heads and event id indexes", PositionLedger::createHeads));
+        migrations.add(new SchemaMigrator.Migration(14, "Import batch indexes on transactions", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String table : new String[] {"transactions", "transactions_archive"}) {
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_import_batch ON " + table + "(import_batch)");
+                }
+            }
+        }));
+        return migrations;
+    }
+
+    private void createTables(Connection conn) throws SQLException {
         String createUsersTable = "CREATE TABLE IF NOT EXISTS users (" +
                 "id INT AUTO_INCREMENT PRIMARY KEY," +
                 "username VARCHAR(50) UNIQUE NOT NULL," +
@@ -289,7 +451,19 @@ public class DatabaseManager {
                 "FOREIGN KEY (parent_comment_id) REFERENCES forum_comments(id)" +
                 ")";
 
-        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+        String createCorporateActionsTable = "CREATE TABLE IF NOT EXISTS corporate_actions (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY," +
+                "symbol VARCHAR(10) NOT NULL," +
+                "action_type VARCHAR(20) NOT NULL," +
+                "ex_date DATE NOT NULL," +
+                "ratio DOUBLE," +
+                "amount DOUBLE," +
+                "price_factor DOUBLE NOT NULL," +
+                "FOREIGN KEY (symbol) REFERENCES stocks(symbol)," +
+                "UNIQUE(symbol, action_type, ex_date)" +
+                ")";
+
+        try (Statement stmt = conn.createStatement()) {
             stmt.execute(createUsersTable);
             stmt.execute(createPortfoliosTable);
             stmt.execute(createStocksTable);
@@ -306,6 +480,8 @@ public class DatabaseManager {
             stmt.execute(createForumCategoriesTable);
             stmt.execute(createForumPostsTable);
             stmt.execute(createForumCommentsTable);
+            stmt.execute(createCorporateActionsTable);
+            stmt.execute("ALTER TABLE stocks ADD COLUMN IF NOT EXISTS currency VARCHAR(3) DEFAULT 'USD'");
 
             // Create database indexes for performance optimization
             createIndexes(stmt);
@@ -385,12 +561,21 @@ public class DatabaseManager {
         stmt.execute("CREATE INDEX IF NOT EXISTS idx_forum_comments_user_id ON forum_comments(user_id)");
         stmt.execute("CREATE INDEX IF NOT EXISTS idx_forum_comments_parent_id ON forum_comments(parent_comment_id)");
         stmt.execute("CREATE INDEX IF NOT EXISTS idx_forum_comments_created_at ON forum_comments(created_at)");
+
+        // Corporate action indexes
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_corporate_actions_symbol_ex_date ON corporate_actions(symbol, ex_date)");
     }
 
     // User CRUD
     public void saveUser(User user) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            saveUser(conn, user);
+        }
+    }
+
+    private void saveUser(Connection conn, User user) throws SQLException {
         String sql = "INSERT INTO users (username, email, hashed_password, salt, created_at, is_active, role, experience_points, level, trading_streak, total_pnl, trades_count, failed_login_attempts, account_locked_until) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setString(1, user.getUsername());
             pstmt.setString(2, user.getEmail());
             pstmt.setString(3, user.getHashedPassword());
@@ -418,36 +603,14 @@ public class DatabaseManager {
     }
 
     public User getUserByUsername(String username) throws SQLException {
-        String sql = "SELECT * FROM users WHERE username = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                user.setHashedPassword(rs.getString("hashed_password"));
-                user.setSalt(rs.getString("salt"));
-                user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                if (rs.getTimestamp("last_login") != null) {
-                    user.setLastLogin(rs.getTimestamp("last_login").toLocalDateTime());
-                }
-                user.setActive(rs.getBoolean("is_active"));
-                user.setRole(rs.getString("role"));
-                user.setExperiencePoints(rs.getInt("experience_points"));
-                user.setLevel(rs.getInt("level"));
-                user.setTradingStreak(rs.getInt("trading_streak"));
-                user.setTotalPnL(rs.getDouble("total_pnl"));
-                user.setTradesCount(rs.getInt("trades_count"));
-                user.setFailedLoginAttempts(rs.getInt("failed_login_attempts"));
-                if (rs.getTimestamp("account_locked_until") != null) {
-                    user.setAccountLockedUntil(rs.getTimestamp("account_locked_until").toLocalDateTime());
-                }
-                return user;
-            }
-        }
-        return null;
+        return queryOne(RowMappers.USER.selectFrom("users") + " WHERE username = ?", RowMappers.USER.mapper(), username);
+    }
+
+    /**
+     * User including profile text (avatar, bio, location, website), for profile views.
+     */
+    public User getUserProfile(int userId) throws SQLException {
+        return queryOne(RowMappers.USER_PROFILE.selectFrom("users") + " WHERE id = ?", RowMappers.USER_PROFILE.mapper(), userId);
     }
 
     public void updateUserLoginSecurity(int userId, int failedAttempts, java.time.LocalDateTime lockUntil) throws SQLException {
@@ -483,10 +646,43 @@ public class DatabaseManager {
         }
     }
 
+    // Row-mapped queries
+    private <T> List<T> queryList(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.mapRow(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private <T> T queryOne(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapper.mapRow(rs) : null;
+            }
+        }
+    }
+
     // Portfolio CRUD
     public void savePortfolio(Portfolio portfolio) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            savePortfolio(conn, portfolio);
+        }
+    }
+
+    private void savePortfolio(Connection conn, Portfolio portfolio) throws SQLException {
         String sql = "INSERT INTO portfolios (user_id, name, description, created_at, updated_at, total_value, total_cost_basis) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setInt(1, portfolio.getUserId());
             pstmt.setString(2, portfolio.getName());
             pstmt.setString(3, portfolio.getDescription());
@@ -499,63 +695,43 @@ public class DatabaseManager {
             if (rs.next()) {
                 portfolio.setId(rs.getInt(1));
             }
+            portfolio.setVersion(0);
         }
     }
 
     public Portfolio getPortfolioById(int id) throws SQLException {
-        String sql = "SELECT * FROM portfolios WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                Portfolio portfolio = new Portfolio();
-                portfolio.setId(rs.getInt("id"));
-                portfolio.setUserId(rs.getInt("user_id"));
-                portfolio.setName(rs.getString("name"));
-                portfolio.setDescription(rs.getString("description"));
-                portfolio.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                portfolio.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
-                portfolio.setTotalValue(rs.getDouble("total_value"));
-                portfolio.setTotalCostBasis(rs.getDouble("total_cost_basis"));
-                return portfolio;
-            }
-        }
-        return null;
+        return queryOne(RowMappers.PORTFOLIO.selectFrom("portfolios") + " WHERE id = ?", RowMappers.PORTFOLIO.mapper(), id);
     }
 
     public List<Portfolio> getPortfoliosByUserId(int userId) throws SQLException {
-        List<Portfolio> portfolios = new ArrayList<>();
-        String sql = "SELECT * FROM portfolios WHERE user_id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                Portfolio portfolio = new Portfolio();
-                portfolio.setId(rs.getInt("id"));
-                portfolio.setUserId(rs.getInt("user_id"));
-                portfolio.setName(rs.getString("name"));
-                portfolio.setDescription(rs.getString("description"));
-                portfolio.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                portfolio.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
-                portfolio.setTotalValue(rs.getDouble("total_value"));
-                portfolio.setTotalCostBasis(rs.getDouble("total_cost_basis"));
-                portfolios.add(portfolio);
-            }
-        }
-        return portfolios;
+        return queryList(RowMappers.PORTFOLIO.selectFrom("portfolios") + " WHERE user_id = ?", RowMappers.PORTFOLIO.mapper(), userId);
     }
 
+    /**
+     * Update a portfolio's name and description if it is still at the version it was read
+     * with. Totals are maintained by the position writes below and are not overwritten
+     * from the object.
+     *
+     * @throws com.stockportfolio.repository.StaleUpdateException if the portfolio changed since it was read
+     */
     public void updatePortfolio(Portfolio portfolio) throws SQLException {
-        String sql = "UPDATE portfolios SET name = ?, description = ?, updated_at = ?, total_value = ?, total_cost_basis = ? WHERE id = ?";
+        String sql = "UPDATE portfolios SET name = ?, description = ?, updated_at = ?, version = version + 1 WHERE id = ? AND version = ?";
+        int updated;
         try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, portfolio.getName());
             pstmt.setString(2, portfolio.getDescription());
             pstmt.setTimestamp(3, Timestamp.valueOf(portfolio.getUpdatedAt()));
-            pstmt.setDouble(4, portfolio.getTotalValue());
-            pstmt.setDouble(5, portfolio.getTotalCostBasis());
-            pstmt.setInt(6, portfolio.getId());
-            pstmt.executeUpdate();
+            pstmt.setInt(4, portfolio.getId());
+            pstmt.setLong(5, portfolio.getVersion());
+            updated = pstmt.executeUpdate();
         }
+        if (updated == 0) {
+            if (getPortfolioById(portfolio.getId()) != null) {
+                throw new com.stockportfolio.repository.StaleUpdateException("portfolio", portfolio.getId(), portfolio.getVersion());
+            }
+            return;
+        }
+        portfolio.setVersion(portfolio.getVersion() + 1);
     }
 
     public void deletePortfolio(int id) throws SQLException {
@@ -567,89 +743,921 @@ public class DatabaseManager {
     }
 
     // Position CRUD
+    // Every position write applies its change in value and cost basis to the portfolio
+    // totals in the same transaction, so totals never need a full recompute.
     public void savePosition(Position position) throws SQLException {
-        String sql = "INSERT INTO positions (portfolio_id, symbol, asset_type, quantity, average_cost, current_price, total_value, last_updated) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setInt(1, position.getPortfolioId());
-            pstmt.setString(2, position.getSymbol());
-            pstmt.setString(3, position.getAssetType());
-            pstmt.setDouble(4, position.getQuantity());
-            pstmt.setDouble(5, position.getAverageCost());
-            pstmt.setDouble(6, position.getCurrentPrice());
-            pstmt.setDouble(7, position.getTotalValue());
-            pstmt.setTimestamp(8, Timestamp.valueOf(position.getLastUpdated()));
-            pstmt.executeUpdate();
-            ResultSet rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
-                position.setId(rs.getInt(1));
+        inTransaction(conn -> {
+            String sql = "INSERT INTO positions (portfolio_id, symbol, asset_type, quantity, average_cost, current_price, total_value, last_updated) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, position.getPortfolioId());
+                pstmt.setString(2, position.getSymbol());
+                pstmt.setString(3, position.getAssetType());
+                pstmt.setDouble(4, position.getQuantity());
+                pstmt.setDouble(5, position.getAverageCost());
+                pstmt.setDouble(6, position.getCurrentPrice());
+                pstmt.setDouble(7, position.getTotalValue());
+                pstmt.setTimestamp(8, Timestamp.valueOf(position.getLastUpdated()));
+                pstmt.executeUpdate();
+                ResultSet rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    position.setId(rs.getInt(1));
+                }
             }
-        }
+            ledger.appendSet(conn, position, position.getLastUpdated());
+            double fx = fxFactor(position.getSymbol());
+            applyPortfolioDelta(conn, position.getPortfolioId(),
+                    position.getTotalValue() * fx,
+                    position.getQuantity() * position.getAverageCost() * fx,
+                    position.getLastUpdated());
+            return null;
+        });
+        position.setVersion(0);
+        positionIndex.put(position.getId(), position.getPortfolioId(), position.getSymbol(),
+                position.getQuantity(), position.getCurrentPrice());
     }
 
     public Position getPositionById(int id) throws SQLException {
-        String sql = "SELECT * FROM positions WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
+        return queryOne(RowMappers.POSITION.selectFrom("positions") + " WHERE id = ?", RowMappers.POSITION.mapper(), id);
+    }
+
+    public List<Position> getPositionsByPortfolioId(int portfolioId) throws SQLException {
+        return queryList(RowMappers.POSITION.selectFrom("positions") + " WHERE portfolio_id = ?", RowMappers.POSITION.mapper(), portfolioId);
+    }
+
+    /**
+     * Write a position's quantity and average cost if it is still at the version it was read
+     * with. The current price is a market mark, so the stored one is kept and the value is
+     * recomputed from it. The portfolio is locked first, as trades and price ticks do, so the
+     * mark cannot move between reading it and writing; the totals move by the difference.
+     *
+     * @throws com.stockportfolio.repository.StaleUpdateException if the position changed since it was read
+     */
+    public void updatePosition(Position position) throws SQLException {
+        boolean updated = inTransaction(conn -> {
+            // Portfolio row first, then the position, the same order trades lock them in
+            lockPortfolio(conn, position.getPortfolioId());
+            double[] old = positionAmounts(conn, position.getId(), position.getVersion());
+            if (old == null) {
+                return false;
+            }
+            double value = position.getQuantity() * old[2];
+            double fx = fxFactor(position.getSymbol());
+            applyPortfolioDelta(conn, position.getPortfolioId(),
+                    (value - old[0]) * fx,
+                    (position.getQuantity() * position.getAverageCost() - old[1]) * fx,
+                    position.getLastUpdated());
+            String sql = "UPDATE positions SET quantity = ?, average_cost = ?, total_value = ?, last_updated = ?, " +
+                    "version = version + 1 WHERE id = ? AND version = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setDouble(1, position.getQuantity());
+                pstmt.setDouble(2, position.getAverageCost());
+                pstmt.setDouble(3, value);
+                pstmt.setTimestamp(4, Timestamp.valueOf(position.getLastUpdated()));
+                pstmt.setInt(5, position.getId());
+                pstmt.setLong(6, position.getVersion());
+                if (pstmt.executeUpdate() == 0) {
+                    throw new com.stockportfolio.repository.StaleUpdateException("position", position.getId(), position.getVersion());
+                }
+            }
+            position.setCurrentPrice(old[2]);
+            position.setTotalValue(value);
+            ledger.appendSet(conn, position, position.getLastUpdated());
+            return true;
+        });
+        if (updated) {
+            position.setVersion(position.getVersion() + 1);
+            positionIndex.put(position.getId(), position.getPortfolioId(), position.getSymbol(),
+                    position.getQuantity(), position.getCurrentPrice());
+        }
+    }
+
+    public void deletePosition(int id) throws SQLException {
+        Position position = getPositionById(id);
+        if (position == null) {
+            return;
+        }
+        inTransaction(conn -> {
+            lockPortfolio(conn, position.getPortfolioId());
+            double[] old = lockPositionAmounts(conn, id);
+            if (old == null) {
+                return null;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM positions WHERE id = ?")) {
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+            }
+            java.time.LocalDateTime now = java.time.LocalDateTime.now();
+            ledger.appendRemove(conn, position.getPortfolioId(), id, position.getSymbol(), now);
+            double fx = fxFactor(position.getSymbol());
+            applyPortfolioDelta(conn, position.getPortfolioId(), -old[0] * fx, -old[1] * fx, now);
+            return null;
+        });
+        positionIndex.remove(id);
+    }
+
+    /**
+     * Delete a position if it is still at the version it was read with, so a trade that
+     * committed since the read is not deleted with it. Locks as {@link #updatePosition} does.
+     *
+     * @throws com.stockportfolio.repository.StaleUpdateException if the position changed since it was read
+     */
+    public void deletePosition(int id, long expectedVersion) throws SQLException {
+        Position position = getPositionById(id);
+        if (position == null) {
+            return;
+        }
+        boolean deleted = inTransaction(conn -> {
+            lockPortfolio(conn, position.getPortfolioId());
+            double[] old = positionAmounts(conn, id, expectedVersion);
+            if (old == null) {
+                return false;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM positions WHERE id = ? AND version = ?")) {
+                pstmt.setInt(1, id);
+                pstmt.setLong(2, expectedVersion);
+                if (pstmt.executeUpdate() == 0) {
+                    throw new com.stockportfolio.repository.StaleUpdateException("position", id, expectedVersion);
+                }
+            }
+            java.time.LocalDateTime now = java.time.LocalDateTime.now();
+            ledger.appendRemove(conn, position.getPortfolioId(), id, position.getSymbol(), now);
+            double fx = fxFactor(position.getSymbol());
+            applyPortfolioDelta(conn, position.getPortfolioId(), -old[0] * fx, -old[1] * fx, now);
+            return true;
+        });
+        if (deleted) {
+            positionIndex.remove(id);
+        }
+    }
+
+    /**
+     * Mark every position in {@code symbol} to a new price and move each holding portfolio's
+     * total value by the difference.
+     *
+     * @return the number of positions repriced
+     */
+    public int applyPriceTick(String symbol, double price) throws SQLException {
+        return applyPriceTicks(java.util.Collections.singletonMap(symbol, price));
+    }
+
+    /**
+     * Apply a set of quotes in one transaction. Holders are found through the in-memory
+     * symbol index and positions already at the quoted price are skipped, so the work is
+     * proportional to the positions whose price actually changed, not to all positions.
+     *
+     * @return the number of positions repriced
+     */
+    public int applyPriceTicks(java.util.Map<String, Double> prices) throws SQLException {
+        java.util.Map<String, List<Integer>> affected = new java.util.LinkedHashMap<>();
+        java.util.SortedSet<Integer> portfolioIds = new java.util.TreeSet<>();
+        for (java.util.Map.Entry<String, Double> tick : prices.entrySet()) {
+            List<Integer> holders = positionIndex.reprice(tick.getKey(), tick.getValue());
+            if (!holders.isEmpty()) {
+                affected.put(tick.getKey(), holders);
+                portfolioIds.addAll(holders);
+            }
+        }
+        if (affected.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            return inTransaction(conn -> {
+                Timestamp now = Timestamp.valueOf(java.time.LocalDateTime.now());
+                // Lock holders' portfolios in id order before touching their positions, as trades do
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM portfolios WHERE id = ? FOR UPDATE")) {
+                    for (int portfolioId : portfolioIds) {
+                        pstmt.setInt(1, portfolioId);
+                        pstmt.executeQuery().close();
+                    }
+                }
+
+                int repriced = 0;
+                try (PreparedStatement totals = conn.prepareStatement(
+                        "UPDATE portfolios SET total_value = total_value + ? * " +
+                        "(SELECT COALESCE(SUM(quantity * ? - total_value), 0) FROM positions WHERE portfolio_id = ? AND symbol = ?), " +
+                        "updated_at = ? WHERE id = ?");
+                     PreparedStatement marks = conn.prepareStatement(
+                        "UPDATE positions SET current_price = ?, total_value = quantity * ?, last_updated = ? " +
+                        "WHERE portfolio_id = ? AND symbol = ?")) {
+                    for (java.util.Map.Entry<String, List<Integer>> entry : affected.entrySet()) {
+                        String symbol = entry.getKey();
+                        double price = prices.get(symbol);
+                        double fx = fxFactor(symbol);
+                        for (int portfolioId : entry.getValue()) {
+                            totals.setDouble(1, fx);
+                            totals.setDouble(2, price);
+                            totals.setInt(3, portfolioId);
+                            totals.setString(4, symbol);
+                            totals.setTimestamp(5, now);
+                            totals.setInt(6, portfolioId);
+                            totals.addBatch();
+
+                            marks.setDouble(1, price);
+                            marks.setDouble(2, price);
+                            marks.setTimestamp(3, now);
+                            marks.setInt(4, portfolioId);
+                            marks.setString(5, symbol);
+                            marks.addBatch();
+                        }
+                    }
+                    // Totals first: the delta is computed from the positions' old values
+                    totals.executeBatch();
+                    for (int count : marks.executeBatch()) {
+                        repriced += Math.max(count, 0);
+                    }
+                }
+                return repriced;
+            });
+        } catch (SQLException | RuntimeException e) {
+            for (String symbol : affected.keySet()) {
+                positionIndex.invalidatePrices(symbol);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queue quotes for write-behind persistence. Returns immediately; the latest price per
+     * symbol is written by {@link #applyPriceTicks} within a couple of seconds, and any
+     * remainder on shutdown. Stored position and portfolio values lag by up to that interval.
+     */
+    public void queuePriceTicks(java.util.Map<String, Double> prices) {
+        priceWriteBehind.enqueue(prices);
+    }
+
+    /**
+     * Write all queued quotes now.
+     */
+    public int flushPriceTicks() throws SQLException {
+        return priceWriteBehind.flush();
+    }
+
+    // One valuation cycle: persist the marks, then snapshot every portfolio's new total
+    private int persistPriceTicks(java.util.Map<String, Double> prices) throws SQLException {
+        int repriced = applyPriceTicks(prices);
+        valueHistory.record(java.time.LocalDateTime.now());
+        return repriced;
+    }
+
+    /**
+     * Equity curve of a portfolio: value buckets between {@code from} and {@code to}, at
+     * minute resolution for the last two days, hourly for the last 90 days and daily
+     * beyond that.
+     */
+    public List<com.stockportfolio.model.PortfolioValueSnapshot> getPortfolioValueHistory(int portfolioId,
+            java.time.LocalDateTime from, java.time.LocalDateTime to) throws SQLException {
+        return valueHistory.range(portfolioId, from, to, java.time.LocalDateTime.now());
+    }
+
+    public List<com.stockportfolio.model.PortfolioValueSnapshot> getPortfolioValueSnapshots(int portfolioId) throws SQLException {
+        return valueHistory.all(portfolioId);
+    }
+
+    public void importPortfolioValueSnapshots(List<com.stockportfolio.model.PortfolioValueSnapshot> snapshots) throws SQLException {
+        valueHistory.restore(snapshots);
+    }
+
+    /**
+     * A portfolio's positions as they stood at {@code asOf}, rebuilt from the position ledger.
+     * Prices are those of the last trade or edit of each position, not market marks.
+     */
+    public List<Position> getPositionsAsOf(int portfolioId, java.time.LocalDateTime asOf) throws SQLException {
+        try (Connection conn = bulkDataSource.getConnection()) {
+            return ledger.positionsAsOf(conn, portfolioId, asOf);
+        }
+    }
+
+    /**
+     * Replace a portfolio's position rows with the ledger's current state, e.g. after a bad
+     * manual edit of the positions table, then recompute portfolio totals.
+     *
+     * @return the number of positions restored
+     */
+    public int rebuildPositionsFromLedger(int portfolioId) throws SQLException {
+        List<Integer> removedIds = new ArrayList<>();
+        java.util.Map<Integer, Long> versions = new java.util.HashMap<>();
+        List<Position> restored = inTransaction(conn -> {
+            lockPortfolio(conn, portfolioId);
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT id, version FROM positions WHERE portfolio_id = ? FOR UPDATE")) {
+                pstmt.setInt(1, portfolioId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    removedIds.add(rs.getInt(1));
+                    versions.put(rs.getInt(1), rs.getLong(2));
+                }
+            }
+            List<Position> positions = ledger.positionsAsOf(conn, portfolioId, java.time.LocalDateTime.now());
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM positions WHERE portfolio_id = ?")) {
+                pstmt.setInt(1, portfolioId);
+                pstmt.executeUpdate();
+            }
+            // Original ids are kept so the ledger's events still refer to the same rows; versions move
+            // past the replaced rows' so writers holding those fail their compare-and-set
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO positions (id, portfolio_id, symbol, " +
+                    "asset_type, quantity, average_cost, current_price, total_value, last_updated, version) " +
+                    "VALUES (?, ?, ?, 'stock', ?, ?, ?, ?, ?, ?)")) {
+                for (Position position : positions) {
+                    pstmt.setInt(1, position.getId());
+                    pstmt.setInt(2, portfolioId);
+                    pstmt.setString(3, position.getSymbol());
+                    pstmt.setDouble(4, position.getQuantity());
+                    pstmt.setDouble(5, position.getAverageCost());
+                    pstmt.setDouble(6, position.getCurrentPrice());
+                    pstmt.setDouble(7, position.getTotalValue());
+                    pstmt.setTimestamp(8, Timestamp.valueOf(position.getLastUpdated()));
+                    pstmt.setLong(9, versions.getOrDefault(position.getId(), -1L) + 1);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            return positions;
+        });
+        for (int id : removedIds) {
+            positionIndex.remove(id);
+        }
+        for (Position position : restored) {
+            positionIndex.put(position.getId(), portfolioId, position.getSymbol(), position.getQuantity(), position.getCurrentPrice());
+        }
+        rebuildPortfolioTotals(portfolioId);
+        return restored.size();
+    }
+
+    /**
+     * Replace a portfolio's positions with a replay of its completed trades, live and archived,
+     * oldest first, using the same fixed-point arithmetic as a trade. Positions that already
+     * exist keep their id and market price; new ones are priced at their last trade until
+     * the next price tick. Positions in symbols with no completed trades are left alone.
+     * Portfolio totals are recomputed once at the end.
+     *
+     * The ledger history of the replayed symbols is replaced too: their positions are removed
+     * as of the earliest time the ledger or the trades know of, and every trade is appended in
+     * replay order at its own timestamp, so {@link #getPositionsAsOf} sees imported history.
+     *
+     * @return the number of positions held after the replay
+     */
+    public int rebuildPositionsFromTransactions(int portfolioId) throws SQLException {
+        List<Integer> removedIds = new ArrayList<>();
+        int[] oversold = new int[1];
+        List<Position> held = inTransaction(conn -> {
+            lockPortfolio(conn, portfolioId);
+            // Quantity, cost basis and last price per symbol, in units
+            java.util.Map<String, long[]> replayed = new java.util.TreeMap<>();
+            java.util.Map<String, java.time.LocalDateTime> lastTraded = new java.util.HashMap<>();
+            List<ReplayedTrade> trades = new ArrayList<>();
+            // Live and archived trades are merged from two cursors ordered by the portfolio/time indexes
+            String where = " WHERE portfolio_id = ? AND status = 'COMPLETED' ORDER BY timestamp, id";
+            try (PreparedStatement live = conn.prepareStatement("SELECT timestamp, id, symbol, type, quantity_units, " +
+                    "price_units FROM transactions" + where, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 PreparedStatement archived = conn.prepareStatement("SELECT timestamp, id, symbol, type, quantity_units, " +
+                    "price_units FROM transactions_archive" + where, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                live.setInt(1, portfolioId);
+                live.setFetchSize(1000);
+                archived.setInt(1, portfolioId);
+                archived.setFetchSize(1000);
+                try (ResultSet liveRs = live.executeQuery(); ResultSet archivedRs = archived.executeQuery()) {
+                    boolean hasLive = liveRs.next();
+                    boolean hasArchived = archivedRs.next();
+                    while (hasLive || hasArchived) {
+                        boolean takeLive = !hasArchived || (hasLive && compareTrades(liveRs, archivedRs) <= 0);
+                        ResultSet rs = takeLive ? liveRs : archivedRs;
+                        String symbol = rs.getString(3);
+                        long priceUnits = rs.getLong(6);
+                        long signedUnits = "SELL".equals(rs.getString(4)) ? -rs.getLong(5) : rs.getLong(5);
+                        long[] state = replayed.computeIfAbsent(symbol, k -> new long[3]);
+                        if (state[0] + signedUnits <= 0) {
+                            if (state[0] + signedUnits < 0) {
+                                oversold[0]++;
+                            }
+                            state[0] = 0;
+                            state[1] = 0;
+                        } else {
+                            state[0] += signedUnits;
+                            state[1] += FixedPoint.multiply(signedUnits, priceUnits);
+                        }
+                        state[2] = priceUnits;
+                        java.time.LocalDateTime tradedAt = rs.getTimestamp(1).toLocalDateTime();
+                        lastTraded.put(symbol, tradedAt);
+                        trades.add(new ReplayedTrade(rs.getInt(2), symbol, tradedAt, signedUnits, priceUnits));
+                        if (takeLive) {
+                            hasLive = liveRs.next();
+                        } else {
+                            hasArchived = archivedRs.next();
+                        }
+                    }
+                }
+            }
+
+            java.util.Map<String, Integer> existingIds = new java.util.HashMap<>();
+            java.util.Map<String, Double> marks = new java.util.HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT id, symbol, current_price FROM positions WHERE portfolio_id = ? ORDER BY id FOR UPDATE")) {
+                pstmt.setInt(1, portfolioId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    // A symbol held twice keeps its oldest row
+                    if (existingIds.putIfAbsent(rs.getString(2), rs.getInt(1)) != null) {
+                        removedIds.add(rs.getInt(1));
+                    } else if (rs.getDouble(3) > 0) {
+                        marks.put(rs.getString(2), rs.getDouble(3));
+                    }
+                }
+            }
+
+            // Ledger position ids per replayed symbol, and the earliest time the ledger or the trades know of
+            java.util.Map<String, java.util.TreeSet<Integer>> ledgerIds = new java.util.HashMap<>();
+            java.time.LocalDateTime earliest = trades.isEmpty() ? null : trades.get(0).timestamp;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT symbol, position_id, MIN(occurred_at) " +
+                    "FROM position_events WHERE portfolio_id = ? GROUP BY symbol, position_id")) {
+                pstmt.setInt(1, portfolioId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    if (replayed.containsKey(rs.getString(1))) {
+                        ledgerIds.computeIfAbsent(rs.getString(1), k -> new java.util.TreeSet<>()).add(rs.getInt(2));
+                        java.time.LocalDateTime first = rs.getTimestamp(3).toLocalDateTime();
+                        earliest = earliest == null || first.isBefore(earliest) ? first : earliest;
+                    }
+                }
+            }
+
+            java.time.LocalDateTime now = java.time.LocalDateTime.now();
+            List<Position> positions = new ArrayList<>();
+            java.util.Map<String, Integer> closedIds = new java.util.HashMap<>();
+            for (java.util.Map.Entry<String, long[]> entry : replayed.entrySet()) {
+                long[] state = entry.getValue();
+                Integer existingId = existingIds.remove(entry.getKey());
+                if (state[0] <= 0) {
+                    if (existingId != null) {
+                        removedIds.add(existingId);
+                        closedIds.put(entry.getKey(), existingId);
+                    }
+                    continue;
+                }
+                double price = marks.getOrDefault(entry.getKey(), FixedPoint.toDouble(state[2]));
                 Position position = new Position();
-                position.setId(rs.getInt("id"));
-                position.setPortfolioId(rs.getInt("portfolio_id"));
-                position.setSymbol(rs.getString("symbol"));
-                position.setAssetType(rs.getString("asset_type"));
-                position.setQuantity(rs.getDouble("quantity"));
-                position.setAverageCost(rs.getDouble("average_cost"));
-                position.setCurrentPrice(rs.getDouble("current_price"));
-                position.setTotalValue(rs.getDouble("total_value"));
-                position.setLastUpdated(rs.getTimestamp("last_updated").toLocalDateTime());
-                return position;
+                position.setId(existingId != null ? existingId : 0);
+                position.setPortfolioId(portfolioId);
+                position.setSymbol(entry.getKey());
+                position.setAssetType("stock");
+                position.setQuantity(FixedPoint.toDouble(state[0]));
+                position.setAverageCost((double) state[1] / state[0]);
+                position.setCurrentPrice(price);
+                position.setTotalValue(FixedPoint.toDouble(FixedPoint.multiply(state[0], FixedPoint.toUnits(price))));
+                position.setLastUpdated(lastTraded.get(entry.getKey()));
+                positions.add(position);
+            }
+            try (PreparedStatement update = conn.prepareStatement("UPDATE positions SET quantity = ?, average_cost = ?, " +
+                    "current_price = ?, total_value = ?, last_updated = ?, version = version + 1 WHERE id = ?");
+                 PreparedStatement insert = conn.prepareStatement("INSERT INTO positions (portfolio_id, symbol, asset_type, " +
+                    "quantity, average_cost, current_price, total_value, last_updated) VALUES (?, ?, 'stock', ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (Position position : positions) {
+                    if (position.getId() != 0) {
+                        update.setDouble(1, position.getQuantity());
+                        update.setDouble(2, position.getAverageCost());
+                        update.setDouble(3, position.getCurrentPrice());
+                        update.setDouble(4, position.getTotalValue());
+                        update.setTimestamp(5, Timestamp.valueOf(position.getLastUpdated()));
+                        update.setInt(6, position.getId());
+                        update.addBatch();
+                    } else {
+                        insert.setInt(1, portfolioId);
+                        insert.setString(2, position.getSymbol());
+                        insert.setDouble(3, position.getQuantity());
+                        insert.setDouble(4, position.getAverageCost());
+                        insert.setDouble(5, position.getCurrentPrice());
+                        insert.setDouble(6, position.getTotalValue());
+                        insert.setTimestamp(7, Timestamp.valueOf(position.getLastUpdated()));
+                        insert.executeUpdate();
+                        ResultSet rs = insert.getGeneratedKeys();
+                        if (rs.next()) {
+                            position.setId(rs.getInt(1));
+                        }
+                    }
+                }
+                update.executeBatch();
+            }
+
+            // Replace the replayed symbols' ledger history with the trades, each at its own time
+            java.util.Map<String, Integer> positionIds = new java.util.HashMap<>(closedIds);
+            for (Position position : positions) {
+                positionIds.put(position.getSymbol(), position.getId());
+            }
+            for (java.util.Map.Entry<String, java.util.TreeSet<Integer>> entry : ledgerIds.entrySet()) {
+                for (int id : entry.getValue()) {
+                    ledger.appendRemove(conn, portfolioId, id, entry.getKey(), earliest);
+                }
+                // A symbol closed out with no row left keeps the ledger's id for its history
+                positionIds.putIfAbsent(entry.getKey(), entry.getValue().last());
+            }
+            for (ReplayedTrade trade : trades) {
+                Integer positionId = positionIds.get(trade.symbol);
+                if (positionId == null) {
+                    // Bought and sold out entirely before the rebuild: the history still needs an id
+                    positionId = reservePositionId(conn, portfolioId, trade.symbol, trade.timestamp);
+                    positionIds.put(trade.symbol, positionId);
+                }
+                ledger.appendTrade(conn, portfolioId, positionId, trade.symbol, FixedPoint.toDouble(trade.signedUnits),
+                        FixedPoint.toDouble(trade.priceUnits), trade.transactionId, trade.timestamp);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT symbol FROM positions WHERE id = ?");
+                 PreparedStatement delete = conn.prepareStatement("DELETE FROM positions WHERE id = ?")) {
+                for (int id : removedIds) {
+                    pstmt.setInt(1, id);
+                    ResultSet rs = pstmt.executeQuery();
+                    // Replayed symbols already end their history with the trades
+                    if (rs.next() && !replayed.containsKey(rs.getString(1))) {
+                        ledger.appendRemove(conn, portfolioId, id, rs.getString(1), now);
+                    }
+                    delete.setInt(1, id);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+            return positions;
+        });
+        for (int id : removedIds) {
+            positionIndex.remove(id);
+        }
+        for (Position position : held) {
+            positionIndex.put(position.getId(), portfolioId, position.getSymbol(), position.getQuantity(), position.getCurrentPrice());
+        }
+        if (oversold[0] > 0) {
+            System.err.println("Portfolio " + portfolioId + ": " + oversold[0] + " sells exceeded the holding and closed the position");
+        }
+        rebuildPortfolioTotals(portfolioId);
+        return held.size();
+    }
+
+    // Takes a position id from the table's sequence without leaving a row behind
+    private static int reservePositionId(Connection conn, int portfolioId, String symbol,
+                                         java.time.LocalDateTime at) throws SQLException {
+        try (PreparedStatement insert = conn.prepareStatement("INSERT INTO positions (portfolio_id, symbol, asset_type, " +
+                "quantity, average_cost, current_price, total_value, last_updated) VALUES (?, ?, 'stock', 0, 0, 0, 0, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM positions WHERE id = ?")) {
+            insert.setInt(1, portfolioId);
+            insert.setString(2, symbol);
+            insert.setTimestamp(3, Timestamp.valueOf(at));
+            insert.executeUpdate();
+            ResultSet rs = insert.getGeneratedKeys();
+            rs.next();
+            int id = rs.getInt(1);
+            delete.setInt(1, id);
+            delete.executeUpdate();
+            return id;
+        }
+    }
+
+    /**
+     * Recompute every portfolio's totals from its positions. Incremental maintenance keeps
+     * them current; this is for repairs, e.g. after bulk loads or an FX rate change.
+     */
+    public void rebuildPortfolioTotals() throws SQLException {
+        rebuildTotals(null);
+    }
+
+    /**
+     * Recompute one portfolio's totals from its positions, e.g. after its positions were
+     * rebuilt from trade history.
+     */
+    public void rebuildPortfolioTotals(int portfolioId) throws SQLException {
+        rebuildTotals(portfolioId);
+    }
+
+    private void rebuildTotals(Integer portfolioId) throws SQLException {
+        inTransaction(conn -> {
+            rebuildTotals(conn, portfolioId);
+            return null;
+        });
+    }
+
+    // All portfolios when portfolioId is null; runs in the caller's transaction
+    private void rebuildTotals(Connection conn, Integer portfolioId) throws SQLException {
+        String scope = portfolioId != null ? " WHERE p.portfolio_id = " + portfolioId : "";
+        // Exact unit sums per portfolio and currency, converted to the base currency once each
+        java.util.Map<Integer, java.util.Map<String, long[]>> units = new java.util.HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT p.portfolio_id, COALESCE(s.currency, 'USD'), p.total_value, p.cost_basis_units " +
+                "FROM positions p LEFT JOIN stocks s ON s.symbol = p.symbol" + scope)) {
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                String currency = rs.getString(2);
+                long[] sums = units.computeIfAbsent(rs.getInt(1), k -> new java.util.HashMap<>())
+                        .computeIfAbsent(currency, k -> new long[2]);
+                sums[0] += FixedPoint.toUnits(rs.getDouble(3));
+                sums[1] += rs.getLong(4);
             }
         }
-        return null;
+        java.util.Map<Integer, double[]> totals = new java.util.HashMap<>();
+        for (java.util.Map.Entry<Integer, java.util.Map<String, long[]>> portfolio : units.entrySet()) {
+            double[] sums = new double[2];
+            for (java.util.Map.Entry<String, long[]> byCurrency : portfolio.getValue().entrySet()) {
+                double fx = baseFactorByCurrency.applyAsDouble(byCurrency.getKey());
+                sums[0] += FixedPoint.toDouble(byCurrency.getValue()[0]) * fx;
+                sums[1] += FixedPoint.toDouble(byCurrency.getValue()[1]) * fx;
+            }
+            totals.put(portfolio.getKey(), sums);
+        }
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "UPDATE portfolios SET total_value = ?, total_cost_basis = ? WHERE id = ?")) {
+            stmt.executeUpdate("UPDATE portfolios SET total_value = 0, total_cost_basis = 0"
+                    + (portfolioId != null ? " WHERE id = " + portfolioId : ""));
+            for (java.util.Map.Entry<Integer, double[]> entry : totals.entrySet()) {
+                pstmt.setDouble(1, entry.getValue()[0]);
+                pstmt.setDouble(2, entry.getValue()[1]);
+                pstmt.setInt(3, entry.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
     }
 
-    public List<Position> getPositionsByPortfolioId(int portfolioId) throws SQLException {
-        List<Position> positions = new ArrayList<>();
-        String sql = "SELECT * FROM positions WHERE portfolio_id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * Converter from a currency code to its multiplier into the base currency, used to keep
+     * portfolio totals in the base currency. Defaults to 1.0 (no conversion). Stored totals,
+     * including those moved by trades replayed from the journal at startup, are rebuilt with
+     * it; call {@link #rebuildPortfolioTotals()} again whenever the rates behind it change.
+     */
+    public void setCurrencyConverter(java.util.function.ToDoubleFunction<String> baseFactorByCurrency) throws SQLException {
+        this.baseFactorByCurrency = baseFactorByCurrency;
+        rebuildPortfolioTotals();
+    }
+
+    private double fxFactor(String symbol) throws SQLException {
+        return baseFactorByCurrency.applyAsDouble(getStockCurrencies().getOrDefault(symbol, "USD"));
+    }
+
+    // Order of the current rows of two trade cursors selecting timestamp, id first
+    private static int compareTrades(ResultSet a, ResultSet b) throws SQLException {
+        int byTime = a.getTimestamp(1).compareTo(b.getTimestamp(1));
+        return byTime != 0 ? byTime : Integer.compare(a.getInt(2), b.getInt(2));
+    }
+
+    // One completed trade as a rebuild replays it, in units
+    private static final class ReplayedTrade {
+        final int transactionId;
+        final String symbol;
+        final java.time.LocalDateTime timestamp;
+        final long signedUnits;
+        final long priceUnits;
+
+        ReplayedTrade(int transactionId, String symbol, java.time.LocalDateTime timestamp, long signedUnits, long priceUnits) {
+            this.transactionId = transactionId;
+            this.symbol = symbol;
+            this.timestamp = timestamp;
+            this.signedUnits = signedUnits;
+            this.priceUnits = priceUnits;
+        }
+    }
+
+    private void lockPortfolio(Connection conn, int portfolioId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM portfolios WHERE id = ? FOR UPDATE")) {
             pstmt.setInt(1, portfolioId);
+            pstmt.executeQuery().close();
+        }
+    }
+
+    // {total_value, quantity * average_cost, current_price} of a position at the expected version, or null if it no longer exists
+    private double[] positionAmounts(Connection conn, int positionId, long expectedVersion) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT total_value, quantity * average_cost, current_price, version FROM positions WHERE id = ?")) {
+            pstmt.setInt(1, positionId);
             ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                Position position = new Position();
-                position.setId(rs.getInt("id"));
-                position.setPortfolioId(rs.getInt("portfolio_id"));
-                position.setSymbol(rs.getString("symbol"));
-                position.setAssetType(rs.getString("asset_type"));
-                position.setQuantity(rs.getDouble("quantity"));
-                position.setAverageCost(rs.getDouble("average_cost"));
-                position.setCurrentPrice(rs.getDouble("current_price"));
-                position.setTotalValue(rs.getDouble("total_value"));
-                position.setLastUpdated(rs.getTimestamp("last_updated").toLocalDateTime());
-                positions.add(position);
+            if (!rs.next()) {
+                return null;
+            }
+            if (rs.getLong(4) != expectedVersion) {
+                throw new com.stockportfolio.repository.StaleUpdateException("position", positionId, expectedVersion);
             }
+            return new double[] {rs.getDouble(1), rs.getDouble(2), rs.getDouble(3)};
         }
-        return positions;
     }
 
-    public void updatePosition(Position position) throws SQLException {
-        String sql = "UPDATE positions SET quantity = ?, average_cost = ?, current_price = ?, total_value = ?, last_updated = ? WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setDouble(1, position.getQuantity());
-            pstmt.setDouble(2, position.getAverageCost());
-            pstmt.setDouble(3, position.getCurrentPrice());
-            pstmt.setDouble(4, position.getTotalValue());
-            pstmt.setTimestamp(5, Timestamp.valueOf(position.getLastUpdated()));
-            pstmt.setInt(6, position.getId());
+    // {total_value, quantity * average_cost} of a locked position, or null if it no longer exists
+    private double[] lockPositionAmounts(Connection conn, int positionId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT total_value, quantity * average_cost FROM positions WHERE id = ? FOR UPDATE")) {
+            pstmt.setInt(1, positionId);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? new double[] {rs.getDouble(1), rs.getDouble(2)} : null;
+        }
+    }
+
+    private void applyPortfolioDelta(Connection conn, int portfolioId, double valueDelta, double costBasisDelta,
+                                     java.time.LocalDateTime now) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE portfolios SET total_value = ROUND(total_value + ?, 4), " +
+                "total_cost_basis = ROUND(total_cost_basis + ?, 4), updated_at = ? WHERE id = ?")) {
+            pstmt.setDouble(1, valueDelta);
+            pstmt.setDouble(2, costBasisDelta);
+            pstmt.setTimestamp(3, Timestamp.valueOf(now));
+            pstmt.setInt(4, portfolioId);
             pstmt.executeUpdate();
         }
     }
 
-    public void deletePosition(int id) throws SQLException {
-        String sql = "DELETE FROM positions WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
+    @FunctionalInterface
+    private interface TransactionWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    // Run work on one connection in a single transaction, rolling back on any failure
+    private <T> T inTransaction(TransactionWork<T> work) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                T result = work.run(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // Trade execution
+    /**
+     * Record a completed trade and apply it to the position and portfolio totals on a single
+     * connection in one transaction. The portfolio row and the (portfolio_id, symbol) position
+     * row are locked with SELECT ... FOR UPDATE, so concurrent trades on the same position
+     * serialize and a failure part-way leaves nothing behind.
+     *
+     * The trade is first made durable in the {@link TradeJournal}, whose group commit shares
+     * one fsync among concurrent trades; startup replays journaled trades the database lost.
+     *
+     * @param transaction BUY or SELL with a positive quantity; its id is set on success
+     * @param fxFactorBySymbol multiplier converting a symbol's position amounts into the base currency
+     * @throws SQLException if the portfolio does not belong to the user, a sell exceeds the held
+     *         quantity, or any statement fails (the transaction is rolled back)
+     */
+    public Transaction executeTradeTransaction(Transaction transaction,
+                                               java.util.function.ToDoubleFunction<String> fxFactorBySymbol) throws SQLException {
+        if (transaction.getTimestamp() == null) {
+            transaction.setTimestamp(java.time.LocalDateTime.now());
+        }
+        long journalSequence;
+        try {
+            journalSequence = tradeJournal.append(transaction).join();
+        } catch (java.util.concurrent.CompletionException e) {
+            throw new SQLException("Trade could not be journaled: " + e.getCause().getMessage(), e.getCause());
+        }
+        boolean committed = false;
+        try {
+            Runnable indexUpdate = inTransaction(conn -> applyTrade(conn, transaction, journalSequence, fxFactorBySymbol));
+            committed = true;
+            indexUpdate.run();
+        } finally {
+            if (!committed) {
+                // Whatever failed, SQL or not, recovery must not replay a trade the caller saw
+                // fail; made durable before the caller (and the next trade on this portfolio) proceeds
+                try {
+                    tradeJournal.reject(journalSequence).join();
+                } catch (java.util.concurrent.CompletionException journalError) {
+                    System.err.println("Error journaling rejected trade " + journalSequence + ": " + journalError.getCause().getMessage());
+                }
+            }
+            // Applied or rejected, the journal no longer needs to replay it
+            tradeJournal.resolve(journalSequence);
+        }
+        return transaction;
+    }
+
+    // Returns the symbol index update to run once the trade has committed
+    private Runnable applyTrade(Connection conn, Transaction transaction, long journalSequence,
+                                java.util.function.ToDoubleFunction<String> fxFactorBySymbol) throws SQLException {
+        int portfolioId = transaction.getPortfolioId();
+        String symbol = transaction.getSymbol();
+        double price = transaction.getPrice();
+        // Quantities and cost bases move in exact fixed-point units; see FixedPoint
+        long priceUnits = FixedPoint.toUnits(price);
+        long quantityUnits = FixedPoint.toUnits(transaction.getQuantity());
+        long signedUnits = "SELL".equals(transaction.getType()) ? -quantityUnits : quantityUnits;
+        java.time.LocalDateTime now = transaction.getTimestamp() != null ? transaction.getTimestamp() : java.time.LocalDateTime.now();
+
+        // Lock the portfolio row and check ownership
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT user_id FROM portfolios WHERE id = ? FOR UPDATE")) {
+            pstmt.setInt(1, portfolioId);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next() || rs.getInt(1) != transaction.getUserId()) {
+                throw new SQLException("Invalid portfolio or user access");
+            }
+        }
+
+        // Lock the position row for this symbol, if any
+        int positionId = 0;
+        long heldUnits = 0;
+        long heldCostUnits = 0;
+        long heldValueUnits = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id, quantity_units, cost_basis_units, total_value FROM positions WHERE portfolio_id = ? AND symbol = ? FOR UPDATE")) {
+            pstmt.setInt(1, portfolioId);
+            pstmt.setString(2, symbol);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                positionId = rs.getInt(1);
+                heldUnits = rs.getLong(2);
+                heldCostUnits = rs.getLong(3);
+                heldValueUnits = FixedPoint.toUnits(rs.getDouble(4));
+            }
+        }
+
+        if (signedUnits < 0 && -signedUnits > heldUnits) {
+            throw new SQLException("Insufficient position for sell order. Current: " + FixedPoint.format(heldUnits) +
+                    ", Requested: " + FixedPoint.format(-signedUnits));
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO transactions (user_id, portfolio_id, symbol, type, quantity, price, total_amount, order_type, timestamp, status, journal_seq) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, transaction.getUserId());
+            pstmt.setInt(2, portfolioId);
+            pstmt.setString(3, symbol);
+            pstmt.setString(4, transaction.getType());
+            pstmt.setDouble(5, transaction.getQuantity());
+            pstmt.setDouble(6, price);
+            pstmt.setDouble(7, transaction.getTotalAmount());
+            pstmt.setString(8, transaction.getOrderType());
+            pstmt.setTimestamp(9, Timestamp.valueOf(now));
+            pstmt.setString(10, transaction.getStatus());
+            pstmt.setLong(11, journalSequence);
             pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            if (rs.next()) {
+                transaction.setId(rs.getInt(1));
+            }
         }
+
+        long newUnits = heldUnits + signedUnits;
+        long newValueUnits = 0;
+        long newCostUnits = 0;
+        double newQuantity = FixedPoint.toDouble(newUnits);
+        Runnable indexUpdate = () -> {};
+        if (positionId == 0) {
+            if (signedUnits > 0) {
+                newValueUnits = FixedPoint.multiply(signedUnits, priceUnits);
+                newCostUnits = newValueUnits;
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO positions (portfolio_id, symbol, asset_type, quantity, average_cost, current_price, total_value, last_updated) VALUES (?, ?, 'stock', ?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setInt(1, portfolioId);
+                    pstmt.setString(2, symbol);
+                    pstmt.setDouble(3, newQuantity);
+                    pstmt.setDouble(4, price);
+                    pstmt.setDouble(5, price);
+                    pstmt.setDouble(6, FixedPoint.toDouble(newValueUnits));
+                    pstmt.setTimestamp(7, Timestamp.valueOf(now));
+                    pstmt.executeUpdate();
+                    ResultSet rs = pstmt.getGeneratedKeys();
+                    if (rs.next()) {
+                        int insertedId = rs.getInt(1);
+                        positionId = insertedId;
+                        indexUpdate = () -> positionIndex.put(insertedId, portfolioId, symbol, newQuantity, price);
+                    }
+                }
+            }
+        } else if (newUnits <= 0) {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM positions WHERE id = ?")) {
+                pstmt.setInt(1, positionId);
+                pstmt.executeUpdate();
+            }
+            int removedId = positionId;
+            indexUpdate = () -> positionIndex.remove(removedId);
+        } else {
+            newCostUnits = heldCostUnits + FixedPoint.multiply(signedUnits, priceUnits);
+            newValueUnits = FixedPoint.multiply(newUnits, priceUnits);
+            double newAverageCost = (double) newCostUnits / newUnits;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE positions SET quantity = ?, average_cost = ?, current_price = ?, total_value = ?, last_updated = ?, " +
+                    "version = version + 1 WHERE id = ?")) {
+                pstmt.setDouble(1, newQuantity);
+                pstmt.setDouble(2, newAverageCost);
+                pstmt.setDouble(3, price);
+                pstmt.setDouble(4, FixedPoint.toDouble(newValueUnits));
+                pstmt.setTimestamp(5, Timestamp.valueOf(now));
+                pstmt.setInt(6, positionId);
+                pstmt.executeUpdate();
+            }
+            int updatedId = positionId;
+            indexUpdate = () -> positionIndex.put(updatedId, portfolioId, symbol, newQuantity, price);
+        }
+
+        if (positionId != 0) {
+            ledger.appendTrade(conn, portfolioId, positionId, symbol, FixedPoint.toDouble(signedUnits), price, transaction.getId(), now);
+        }
+
+        // Move the (locked) portfolio's totals by this position's change
+        double fx = fxFactorBySymbol.applyAsDouble(symbol);
+        applyPortfolioDelta(conn, portfolioId,
+                FixedPoint.toDouble(newValueUnits - heldValueUnits) * fx,
+                FixedPoint.toDouble(newCostUnits - heldCostUnits) * fx,
+                now);
+        return indexUpdate;
     }
 
     // Transaction CRUD
@@ -674,78 +1682,230 @@ public class DatabaseManager {
         }
     }
 
-    public Transaction getTransactionById(int id) throws SQLException {
-        String sql = "SELECT * FROM transactions WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                Transaction transaction = new Transaction();
-                transaction.setId(rs.getInt("id"));
-                transaction.setUserId(rs.getInt("user_id"));
-                transaction.setPortfolioId(rs.getInt("portfolio_id"));
-                transaction.setStockSymbol(rs.getString("symbol"));
-                transaction.setType(rs.getString("type"));
-                transaction.setQuantity(rs.getDouble("quantity"));
-                transaction.setPrice(rs.getDouble("price"));
-                transaction.setTotalAmount(rs.getDouble("total_amount"));
-                transaction.setOrderType(rs.getString("order_type"));
-                transaction.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
-                transaction.setStatus(rs.getString("status"));
-                return transaction;
+    /**
+     * Insert validated trade history in JDBC batches of {@value #IMPORT_BATCH_SIZE}, in one
+     * database transaction. Ids are not read back; positions and totals are not touched.
+     * Rows whose import ref was already booked in their portfolio by another import batch,
+     * live or archived, are skipped.
+     */
+    public int importTransactions(List<Transaction> transactions, String importBatch) throws SQLException {
+        return inTransaction(conn -> {
+            String booked = " WHERE portfolio_id = ? AND import_ref = ? AND import_batch <> ?";
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO transactions (user_id, portfolio_id, " +
+                    "symbol, type, quantity, price, total_amount, order_type, timestamp, status, import_ref, import_batch) " +
+                    "SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM transactions" + booked +
+                    ") AND NOT EXISTS (SELECT 1 FROM transactions_archive" + booked + ")")) {
+                int batched = 0;
+                int inserted = 0;
+                for (Transaction transaction : transactions) {
+                    pstmt.setInt(1, transaction.getUserId());
+                    pstmt.setInt(2, transaction.getPortfolioId());
+                    pstmt.setString(3, transaction.getSymbol());
+                    pstmt.setString(4, transaction.getType());
+                    pstmt.setDouble(5, transaction.getQuantity());
+                    pstmt.setDouble(6, transaction.getPrice());
+                    pstmt.setDouble(7, transaction.getTotalAmount());
+                    pstmt.setString(8, transaction.getOrderType());
+                    pstmt.setTimestamp(9, Timestamp.valueOf(transaction.getTimestamp()));
+                    pstmt.setString(10, transaction.getStatus());
+                    pstmt.setString(11, transaction.getImportRef());
+                    pstmt.setString(12, importBatch);
+                    for (int table = 0; table < 2; table++) {
+                        pstmt.setInt(13 + table * 3, transaction.getPortfolioId());
+                        pstmt.setString(14 + table * 3, transaction.getImportRef());
+                        pstmt.setString(15 + table * 3, importBatch);
+                    }
+                    pstmt.addBatch();
+                    if (++batched % IMPORT_BATCH_SIZE == 0) {
+                        inserted += sum(pstmt.executeBatch());
+                    }
+                }
+                return inserted + sum(pstmt.executeBatch());
             }
+        });
+    }
+
+    private static int sum(int[] updateCounts) {
+        int total = 0;
+        for (int count : updateCounts) {
+            total += Math.max(0, count);
         }
-        return null;
+        return total;
+    }
+
+    // Transaction reads cover both the live table and transactions_archive. The archive is
+    // skipped while it is empty, and paged reads only touch it once they reach its horizon.
+    private static final java.util.Comparator<Transaction> TRANSACTION_ORDER =
+            java.util.Comparator.comparing(Transaction::getTimestamp).thenComparingInt(Transaction::getId);
+
+    public Transaction getTransactionById(int id) throws SQLException {
+        Transaction transaction = queryOne(RowMappers.TRANSACTION.selectFrom("transactions") + " WHERE id = ?", RowMappers.TRANSACTION.mapper(), id);
+        if (transaction == null && transactionArchiver.horizon() != null) {
+            transaction = queryOne(RowMappers.TRANSACTION.selectFrom("transactions_archive") + " WHERE id = ?", RowMappers.TRANSACTION.mapper(), id);
+        }
+        return transaction;
     }
 
     public List<Transaction> getTransactionsByUserId(int userId) throws SQLException {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT * FROM transactions WHERE user_id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                Transaction transaction = new Transaction();
-                transaction.setId(rs.getInt("id"));
-                transaction.setUserId(rs.getInt("user_id"));
-                transaction.setPortfolioId(rs.getInt("portfolio_id"));
-                transaction.setSymbol(rs.getString("symbol"));
-                transaction.setType(rs.getString("type"));
-                transaction.setQuantity(rs.getDouble("quantity"));
-                transaction.setPrice(rs.getDouble("price"));
-                transaction.setTotalAmount(rs.getDouble("total_amount"));
-                transaction.setOrderType(rs.getString("order_type"));
-                transaction.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
-                transaction.setStatus(rs.getString("status"));
-                transactions.add(transaction);
+        return getAllTransactions("user_id", userId);
+    }
+
+    public List<Transaction> getTransactionsByPortfolioId(int portfolioId) throws SQLException {
+        return getAllTransactions("portfolio_id", portfolioId);
+    }
+
+    private List<Transaction> getAllTransactions(String ownerColumn, int ownerId) throws SQLException {
+        // ownerColumn is one of two fixed column names, never user input
+        String sql = RowMappers.TRANSACTION.selectFrom("transactions") + " WHERE " + ownerColumn + " = ?";
+        String order = " ORDER BY timestamp DESC, id DESC";
+        if (transactionArchiver.horizon() == null) {
+            return queryList(sql + order, RowMappers.TRANSACTION.mapper(), ownerId);
+        }
+        return queryList(sql + " UNION ALL " + RowMappers.TRANSACTION.selectFrom("transactions_archive") +
+                " WHERE " + ownerColumn + " = ?" + order, RowMappers.TRANSACTION.mapper(), ownerId, ownerId);
+    }
+
+    /**
+     * One page of a user's transactions, newest first. Pass the last transaction of the
+     * previous page as {@code after} (or null for the first page); paging seeks on
+     * (timestamp, id) through idx_transactions_user_timestamp instead of using OFFSET.
+     */
+    public List<Transaction> getTransactionsPageByUserId(int userId, Transaction after, int pageSize) throws SQLException {
+        return getTransactionsPage("user_id", userId, after, pageSize);
+    }
+
+    /**
+     * One page of a portfolio's transactions, newest first, seeking on
+     * idx_transactions_portfolio_timestamp.
+     */
+    public List<Transaction> getTransactionsPageByPortfolioId(int portfolioId, Transaction after, int pageSize) throws SQLException {
+        return getTransactionsPage("portfolio_id", portfolioId, after, pageSize);
+    }
+
+    private List<Transaction> getTransactionsPage(String ownerColumn, int ownerId, Transaction after, int pageSize) throws SQLException {
+        List<Transaction> live = getTransactionsPage("transactions", ownerColumn, ownerId, after, pageSize);
+        java.time.LocalDateTime horizon = transactionArchiver.horizon();
+        if (horizon == null || (live.size() == pageSize && live.get(pageSize - 1).getTimestamp().isAfter(horizon))) {
+            return live;
+        }
+        List<Transaction> merged = new ArrayList<>(live);
+        merged.addAll(getTransactionsPage("transactions_archive", ownerColumn, ownerId, after, pageSize));
+        merged.sort(TRANSACTION_ORDER.reversed());
+        return merged.size() > pageSize ? new ArrayList<>(merged.subList(0, pageSize)) : merged;
+    }
+
+    private List<Transaction> getTransactionsPage(String table, String ownerColumn, int ownerId, Transaction after, int pageSize) throws SQLException {
+        // table and ownerColumn are fixed names, never user input
+        String sql = RowMappers.TRANSACTION.selectFrom(table) + " WHERE " + ownerColumn + " = ?" +
+                (after == null ? "" : " AND timestamp <= ? AND (timestamp < ? OR id < ?)") +
+                " ORDER BY timestamp DESC, id DESC LIMIT ?";
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setInt(i++, ownerId);
+            if (after != null) {
+                Timestamp ts = Timestamp.valueOf(after.getTimestamp());
+                pstmt.setTimestamp(i++, ts);
+                pstmt.setTimestamp(i++, ts);
+                pstmt.setInt(i++, after.getId());
+            }
+            pstmt.setInt(i, pageSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    transactions.add(RowMappers.TRANSACTION.mapper().mapRow(rs));
+                }
             }
         }
         return transactions;
     }
 
-    public List<Transaction> getTransactionsByPortfolioId(int portfolioId) throws SQLException {
-        List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT * FROM transactions WHERE portfolio_id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, portfolioId);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                Transaction transaction = new Transaction();
-                transaction.setId(rs.getInt("id"));
-                transaction.setUserId(rs.getInt("user_id"));
-                transaction.setPortfolioId(rs.getInt("portfolio_id"));
-                transaction.setSymbol(rs.getString("symbol"));
-                transaction.setType(rs.getString("type"));
-                transaction.setQuantity(rs.getDouble("quantity"));
-                transaction.setPrice(rs.getDouble("price"));
-                transaction.setTotalAmount(rs.getDouble("total_amount"));
-                transaction.setOrderType(rs.getString("order_type"));
-                transaction.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
-                transaction.setStatus(rs.getString("status"));
-                transactions.add(transaction);
+    /**
+     * Stream a user's transactions oldest first without materializing them, fetching
+     * {@code fetchSize} rows per round trip. Returns the number of rows handed to the consumer.
+     */
+    public int streamTransactionsByUserId(int userId, int fetchSize, java.util.function.Consumer<Transaction> consumer) throws SQLException {
+        String order = " WHERE user_id = ? ORDER BY timestamp, id";
+        RowMapper<Transaction> mapper = RowMappers.TRANSACTION.mapper();
+        boolean withArchive = transactionArchiver.horizon() != null;
+        int count = 0;
+        try (Connection conn = bulkDataSource.getConnection();
+             PreparedStatement live = conn.prepareStatement(RowMappers.TRANSACTION.selectFrom("transactions") + order,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             PreparedStatement archived = conn.prepareStatement(RowMappers.TRANSACTION.selectFrom("transactions_archive") + order,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            live.setInt(1, userId);
+            live.setFetchSize(fetchSize);
+            archived.setInt(1, userId);
+            archived.setFetchSize(fetchSize);
+            // Merge the two ordered cursors
+            try (ResultSet liveRs = live.executeQuery();
+                 ResultSet archivedRs = withArchive ? archived.executeQuery() : null) {
+                Transaction nextLive = liveRs.next() ? mapper.mapRow(liveRs) : null;
+                Transaction nextArchived = archivedRs != null && archivedRs.next() ? mapper.mapRow(archivedRs) : null;
+                while (nextLive != null || nextArchived != null) {
+                    if (nextArchived == null || (nextLive != null && TRANSACTION_ORDER.compare(nextLive, nextArchived) <= 0)) {
+                        consumer.accept(nextLive);
+                        nextLive = liveRs.next() ? mapper.mapRow(liveRs) : null;
+                    } else {
+                        consumer.accept(nextArchived);
+                        nextArchived = archivedRs.next() ? mapper.mapRow(archivedRs) : null;
+                    }
+                    count++;
+                }
             }
         }
-        return transactions;
+        return count;
+    }
+
+    /**
+     * Archive closed transactions older than the configured age now, rather than waiting
+     * for the daily job.
+     *
+     * @return the number of transactions moved
+     */
+    public int archiveTransactions() throws SQLException {
+        return transactionArchiver.archive(transactionArchiver.cutoff(java.time.LocalDate.now()));
+    }
+
+    /**
+     * Monthly per-symbol totals of a portfolio's archived trades, oldest first.
+     */
+    public List<com.stockportfolio.model.TransactionSummary> getTransactionSummariesByPortfolioId(int portfolioId) throws SQLException {
+        return queryList("SELECT user_id, portfolio_id, symbol, period_start, buy_count, buy_quantity, buy_amount, " +
+                "sell_count, sell_quantity, sell_amount FROM transaction_summaries WHERE portfolio_id = ? " +
+                "ORDER BY period_start, symbol", rs -> {
+                    com.stockportfolio.model.TransactionSummary summary = new com.stockportfolio.model.TransactionSummary();
+                    summary.setUserId(rs.getInt(1));
+                    summary.setPortfolioId(rs.getInt(2));
+                    summary.setSymbol(rs.getString(3));
+                    summary.setPeriodStart(rs.getDate(4).toLocalDate());
+                    summary.setBuyCount(rs.getInt(5));
+                    summary.setBuyQuantity(rs.getDouble(6));
+                    summary.setBuyAmount(rs.getDouble(7));
+                    summary.setSellCount(rs.getInt(8));
+                    summary.setSellQuantity(rs.getDouble(9));
+                    summary.setSellAmount(rs.getDouble(10));
+                    return summary;
+                }, portfolioId);
+    }
+
+    // STOCKPORTFOLIO_DB_URL points the manager elsewhere, e.g. jdbc:h2:mem:bench for benchmarks
+    private static String databaseUrl() {
+        String configured = System.getenv("STOCKPORTFOLIO_DB_URL");
+        return configured != null && !configured.trim().isEmpty() ? configured.trim() : DB_URL;
+    }
+
+    // Age in days after which closed transactions are archived; TRANSACTION_ARCHIVE_AGE_DAYS overrides it
+    private static int archiveAgeDays() {
+        String configured = System.getenv("TRANSACTION_ARCHIVE_AGE_DAYS");
+        if (configured != null) {
+            try {
+                return Integer.parseInt(configured.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid TRANSACTION_ARCHIVE_AGE_DAYS: " + configured);
+            }
+        }
+        return TransactionArchiver.DEFAULT_AGE_DAYS;
     }
 
     public void updateTransaction(Transaction transaction) throws SQLException {
@@ -753,16 +1913,40 @@ public class DatabaseManager {
         try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, transaction.getStatus());
             pstmt.setInt(2, transaction.getId());
-            pstmt.executeUpdate();
+            if (pstmt.executeUpdate() > 0) {
+                return;
+            }
         }
+        transactionArchiver.updateArchivedStatus(transaction.getId(), transaction.getStatus());
+    }
+
+    /**
+     * Delete every trade an import batch inserted, live and archived, in one transaction with
+     * one statement per table; archived ones leave their monthly summaries too. Positions and
+     * totals are left alone, as on import.
+     *
+     * @return the number of trades deleted
+     */
+    public int deleteImportBatch(String importBatch) throws SQLException {
+        return inTransaction(conn -> {
+            int deleted;
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM transactions WHERE import_batch = ?")) {
+                pstmt.setString(1, importBatch);
+                deleted = pstmt.executeUpdate();
+            }
+            return deleted + transactionArchiver.deleteArchivedBatch(conn, importBatch);
+        });
     }
 
     public void deleteTransaction(int id) throws SQLException {
         String sql = "DELETE FROM transactions WHERE id = ?";
         try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
-            pstmt.executeUpdate();
+            if (pstmt.executeUpdate() > 0) {
+                return;
+            }
         }
+        transactionArchiver.deleteArchived(id);
     }
 
     // Stock CRUD
@@ -789,53 +1973,11 @@ public class DatabaseManager {
     }
 
     public Stock getStockBySymbol(String symbol) throws SQLException {
-        String sql = "SELECT * FROM stocks WHERE symbol = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, symbol);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                Stock stock = new Stock();
-                stock.setId(rs.getInt("id"));
-                stock.setSymbol(rs.getString("symbol"));
-                stock.setName(rs.getString("name"));
-                stock.setExchange(rs.getString("exchange"));
-                stock.setSector(rs.getString("sector"));
-                stock.setCurrentPrice(rs.getDouble("current_price"));
-                stock.setPreviousClose(rs.getDouble("previous_close"));
-                stock.setChange(rs.getDouble("change_value"));
-                stock.setChangePercent(rs.getDouble("change_percent"));
-                stock.setVolume(rs.getLong("volume"));
-                stock.setMarketCap(rs.getLong("market_cap"));
-                stock.setLastUpdated(rs.getTimestamp("last_updated").toLocalDateTime());
-                return stock;
-            }
-        }
-        return null;
+        return queryOne(RowMappers.STOCK.selectFrom("stocks") + " WHERE symbol = ?", RowMappers.STOCK.mapper(), symbol);
     }
 
     public List<Stock> getAllStocks() throws SQLException {
-        List<Stock> stocks = new ArrayList<>();
-        String sql = "SELECT * FROM stocks";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                Stock stock = new Stock();
-                stock.setId(rs.getInt("id"));
-                stock.setSymbol(rs.getString("symbol"));
-                stock.setName(rs.getString("name"));
-                stock.setExchange(rs.getString("exchange"));
-                stock.setSector(rs.getString("sector"));
-                stock.setCurrentPrice(rs.getDouble("current_price"));
-                stock.setPreviousClose(rs.getDouble("previous_close"));
-                stock.setChange(rs.getDouble("change_value"));
-                stock.setChangePercent(rs.getDouble("change_percent"));
-                stock.setVolume(rs.getLong("volume"));
-                stock.setMarketCap(rs.getLong("market_cap"));
-                stock.setLastUpdated(rs.getTimestamp("last_updated").toLocalDateTime());
-                stocks.add(stock);
-            }
-        }
-        return stocks;
+        return queryList(RowMappers.STOCK.selectFrom("stocks"), RowMappers.STOCK.mapper());
     }
 
     public void updateStock(Stock stock) throws SQLException {
@@ -856,6 +1998,49 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Trading currency per symbol. The table is small and read on every valuation, so it is cached.
+     */
+    @SuppressWarnings("unchecked")
+    public java.util.Map<String, String> getStockCurrencies() throws SQLException {
+        Object cached = cache.getIfPresent("stock_currencies");
+        if (cached != null) {
+            return (java.util.Map<String, String>) cached;
+        }
+
+        java.util.Map<String, String> currencies = new java.util.HashMap<>();
+        String sql = "SELECT symbol, currency FROM stocks";
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                String currency = rs.getString(2);
+                currencies.put(rs.getString(1), currency != null ? currency : "USD");
+            }
+        }
+        java.util.Map<String, String> result = java.util.Collections.unmodifiableMap(currencies);
+        cache.put("stock_currencies", result);
+        return result;
+    }
+
+    /**
+     * Change a symbol's trading currency. Portfolio totals are rebuilt when it changes, since
+     * positions in the symbol were converted into the base currency at the old rate.
+     */
+    public void updateStockCurrency(String symbol, String currency) throws SQLException {
+        String sql = "UPDATE stocks SET currency = ? WHERE symbol = ? AND (currency IS NULL OR currency <> ?)";
+        int updated;
+        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, currency);
+            pstmt.setString(2, symbol);
+            pstmt.setString(3, currency);
+            updated = pstmt.executeUpdate();
+        }
+        cache.invalidate("stock_currencies");
+        if (updated > 0) {
+            rebuildPortfolioTotals();
+        }
+    }
+
     public void deleteStock(String symbol) throws SQLException {
         String sql = "DELETE FROM stocks WHERE symbol = ?";
         try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -865,232 +2050,267 @@ public class DatabaseManager {
     }
 
 
-
-    public void close() throws SQLException {
-        if (dataSource instanceof HikariDataSource) {
-            ((HikariDataSource) dataSource).close();
+    // Corporate action CRUD
+    public void saveCorporateAction(CorporateAction action) throws SQLException {
+        if (action.getPriceFactor() <= 0.0) {
+            action.setPriceFactor(computePriceFactor(action));
         }
-    }
-
-    // Additional CRUD methods can be added here
-
-    private void createDemoUser() {
-        try {
-            System.out.println("Creating demo data...");
-            // Populate stocks table with Fortune 500/blue-chip stocks first
-            populateFortune500Stocks();
-
-            // Check if demo user already exists
-            User existingUser = getUserByUsername("demo");
-            if (existingUser != null) {
-                System.out.println("Demo user already exists.");
-                return; // Demo user already exists
+        String sql = "INSERT INTO corporate_actions (symbol, action_type, ex_date, ratio, amount, price_factor) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, action.getSymbol());
+            pstmt.setString(2, action.getActionType());
+            pstmt.setDate(3, java.sql.Date.valueOf(action.getExDate()));
+            pstmt.setDouble(4, action.getRatio());
+            pstmt.setDouble(5, action.getAmount());
+            pstmt.setDouble(6, action.getPriceFactor());
+            pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            if (rs.next()) {
+                action.setId(rs.getInt(1));
             }
+        }
+        cache.invalidate("corporate_actions:" + action.getSymbol());
+    }
 
-            // Create demo user with username "demo" and password "demo123"
-            String salt = PasswordSecurity.generateSalt();
-            String hashedPassword = PasswordSecurity.hashPassword("demo123", salt);
-
-            User demoUser = new User();
-            demoUser.setUsername("demo");
-            demoUser.setEmail("demo@example.com");
-            demoUser.setSalt(salt);
-            demoUser.setHashedPassword(hashedPassword);
-            demoUser.setActive(true);
-            demoUser.setRole("basic");
-            demoUser.setExperiencePoints(0);
-            demoUser.setLevel(1);
-            demoUser.setTradingStreak(0);
-            demoUser.setTotalPnL(0.0);
-            demoUser.setTradesCount(0);
-            demoUser.setFailedLoginAttempts(0);
-            demoUser.setAccountLockedUntil(null);
-            demoUser.setCreatedAt(java.time.LocalDateTime.now());
-
-            saveUser(demoUser);
-            System.out.println("Demo user created with ID: " + demoUser.getId());
-
-            // Create demo portfolio for demo user
-            Portfolio demoPortfolio = new Portfolio();
-            demoPortfolio.setUserId(demoUser.getId());
-            demoPortfolio.setName("Demo Portfolio");
-            demoPortfolio.setDescription("This is a demo portfolio.");
-            demoPortfolio.setCreatedAt(java.time.LocalDateTime.now());
-            demoPortfolio.setUpdatedAt(java.time.LocalDateTime.now());
-            demoPortfolio.setTotalValue(0.0);
-            demoPortfolio.setTotalCostBasis(0.0);
-
-            savePortfolio(demoPortfolio);
-            System.out.println("Demo portfolio created with ID: " + demoPortfolio.getId());
-
-
-
-            System.out.println("Demo data creation completed.");
-
-            // Create sample competition data
-            createSampleCompetitionData();
+    @SuppressWarnings("unchecked")
+    public List<CorporateAction> getCorporateActionsBySymbol(String symbol) throws SQLException {
+        String cacheKey = "corporate_actions:" + symbol;
+        Object cached = cache.getIfPresent(cacheKey);
+        if (cached != null) {
+            return (List<CorporateAction>) cached;
+        }
 
-            // Create sample leaderboard data
-            createSampleLeaderboardData();
+        List<CorporateAction> actions = queryList(
+                RowMappers.CORPORATE_ACTION.selectFrom("corporate_actions") + " WHERE symbol = ? ORDER BY ex_date ASC",
+                RowMappers.CORPORATE_ACTION.mapper(), symbol);
+        List<CorporateAction> result = java.util.Collections.unmodifiableList(actions);
+        cache.put(cacheKey, result);
+        return result;
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error creating demo user: " + e.getMessage());
-            e.printStackTrace();
+    public void deleteCorporateAction(int id, String symbol) throws SQLException {
+        String sql = "DELETE FROM corporate_actions WHERE id = ?";
+        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, id);
+            pstmt.executeUpdate();
         }
+        cache.invalidate("corporate_actions:" + symbol);
     }
 
-    private void createSampleCompetitionData() {
-        try {
-            System.out.println("Creating sample competition data...");
+    /**
+     * Split factor is 1 / ratio. A dividend's factor depends on the close of the bar before its
+     * ex-date, which the stocks table does not keep, so dividends must arrive with it set
+     * (see PriceAdjustmentService.dividendFactor).
+     */
+    private double computePriceFactor(CorporateAction action) throws SQLException {
+        if (action.isSplit()) {
+            if (action.getRatio() <= 0.0) {
+                throw new SQLException("Split ratio must be positive for " + action.getSymbol());
+            }
+            return 1.0 / action.getRatio();
+        }
+        throw new SQLException("Dividend of " + action.getSymbol() + " on " + action.getExDate()
+                + " needs a price factor from the close before its ex-date");
+    }
 
-            // Check if sample competition already exists
-            Competition existingCompetition = getCompetitionByName("Monthly Trading Challenge");
-            if (existingCompetition != null) {
-                System.out.println("Sample competition already exists.");
+    /**
+     * Stop background work, persist what is queued and close the pools. The next
+     * {@link #getInstance} opens a new manager.
+     */
+    public void close() throws SQLException {
+        synchronized (DatabaseManager.class) {
+            if (closed) {
                 return;
             }
-
-            // Create sample competition
-            Competition competition = new Competition();
-            competition.setName("Monthly Trading Challenge");
-            competition.setDescription("Compete for the highest portfolio returns this month");
-            competition.setStartDate(java.time.LocalDateTime.of(2024, 1, 1, 0, 0));
-            competition.setEndDate(java.time.LocalDateTime.of(2024, 1, 31, 23, 59));
-            competition.setRules("No restrictions on trading. Winner gets bragging rights!");
-            competition.setStatus("ACTIVE");
-            competition.setMaxParticipants(100);
-            competition.setCreatedAt(java.time.LocalDateTime.now());
-
-            // Insert competition
-            String sql = "INSERT INTO competitions (name, description, start_date, end_date, rules, status, max_participants, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-            try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                pstmt.setString(1, competition.getName());
-                pstmt.setString(2, competition.getDescription());
-                pstmt.setTimestamp(3, Timestamp.valueOf(competition.getStartDate()));
-                pstmt.setTimestamp(4, Timestamp.valueOf(competition.getEndDate()));
-                pstmt.setString(5, competition.getRules());
-                pstmt.setString(6, competition.getStatus());
-                pstmt.setInt(7, competition.getMaxParticipants());
-                pstmt.setTimestamp(8, Timestamp.valueOf(competition.getCreatedAt()));
-                pstmt.executeUpdate();
-                ResultSet rs = pstmt.getGeneratedKeys();
-                if (rs.next()) {
-                    competition.setId(rs.getInt(1));
-                }
+            closed = true;
+            if (instance == this) {
+                instance = null;
             }
-
-            System.out.println("Sample competition created with ID: " + competition.getId());
-
-        } catch (Exception e) {
-            System.err.println("Error creating sample competition data: " + e.getMessage());
-            e.printStackTrace();
         }
+        transactionArchiver.stop();
+        tradeJournal.close();
+        // Persist queued marks and counter deltas before the pool goes away
+        priceWriteBehind.drain();
+        counters.drain();
+        pools.close();
     }
 
-    private void createSampleLeaderboardData() {
-        try {
-            System.out.println("Creating sample leaderboard data...");
+    // Additional CRUD methods can be added here
 
-            // Check if sample leaderboard entries already exist
-            List<LeaderboardEntry> existingEntries = getLeaderboardEntries("MONTHLY");
-            if (!existingEntries.isEmpty()) {
-                System.out.println("Sample leaderboard data already exists.");
-                return;
+    /**
+     * Seeds the demo user and sample data on the migration's connection, so a failure rolls
+     * the whole step back and it runs again on the next start.
+     */
+    private void createDemoUser(Connection conn) throws SQLException {
+        System.out.println("Creating demo data...");
+
+        // Check if demo user already exists
+        if (exists(conn, "SELECT 1 FROM users WHERE username = ?", "demo")) {
+            System.out.println("Demo user already exists.");
+            return; // Demo user already exists
+        }
+
+        // Create demo user with username "demo" and password "demo123"
+        String salt = PasswordSecurity.generateSalt();
+        String hashedPassword = PasswordSecurity.hashPassword("demo123", salt);
+
+        User demoUser = new User();
+        demoUser.setUsername("demo");
+        demoUser.setEmail("demo@example.com");
+        demoUser.setSalt(salt);
+        demoUser.setHashedPassword(hashedPassword);
+        demoUser.setActive(true);
+        demoUser.setRole("basic");
+        demoUser.setExperiencePoints(0);
+        demoUser.setLevel(1);
+        demoUser.setTradingStreak(0);
+        demoUser.setTotalPnL(0.0);
+        demoUser.setTradesCount(0);
+        demoUser.setFailedLoginAttempts(0);
+        demoUser.setAccountLockedUntil(null);
+        demoUser.setCreatedAt(java.time.LocalDateTime.now());
+
+        saveUser(conn, demoUser);
+        System.out.println("Demo user created with ID: " + demoUser.getId());
+
+        // Create demo portfolio for demo user
+        Portfolio demoPortfolio = new Portfolio();
+        demoPortfolio.setUserId(demoUser.getId());
+        demoPortfolio.setName("Demo Portfolio");
+        demoPortfolio.setDescription("This is a demo portfolio.");
+        demoPortfolio.setCreatedAt(java.time.LocalDateTime.now());
+        demoPortfolio.setUpdatedAt(java.time.LocalDateTime.now());
+        demoPortfolio.setTotalValue(0.0);
+        demoPortfolio.setTotalCostBasis(0.0);
+
+        savePortfolio(conn, demoPortfolio);
+        System.out.println("Demo portfolio created with ID: " + demoPortfolio.getId());
+
+
+
+        System.out.println("Demo data creation completed.");
+
+        // Create sample competition data
+        createSampleCompetitionData(conn);
+
+        // Create sample leaderboard data
+        createSampleLeaderboardData(conn, demoUser.getId());
+    }
+
+    private void createSampleCompetitionData(Connection conn) throws SQLException {
+        System.out.println("Creating sample competition data...");
+
+        // Check if sample competition already exists
+        if (exists(conn, "SELECT 1 FROM competitions WHERE name = ?", "Monthly Trading Challenge")) {
+            System.out.println("Sample competition already exists.");
+            return;
+        }
+
+        // Create sample competition
+        Competition competition = new Competition();
+        competition.setName("Monthly Trading Challenge");
+        competition.setDescription("Compete for the highest portfolio returns this month");
+        competition.setStartDate(java.time.LocalDateTime.of(2024, 1, 1, 0, 0));
+        competition.setEndDate(java.time.LocalDateTime.of(2024, 1, 31, 23, 59));
+        competition.setRules("No restrictions on trading. Winner gets bragging rights!");
+        competition.setStatus("ACTIVE");
+        competition.setMaxParticipants(100);
+        competition.setCreatedAt(java.time.LocalDateTime.now());
+
+        // Insert competition
+        String sql = "INSERT INTO competitions (name, description, start_date, end_date, rules, status, max_participants, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, competition.getName());
+            pstmt.setString(2, competition.getDescription());
+            pstmt.setTimestamp(3, Timestamp.valueOf(competition.getStartDate()));
+            pstmt.setTimestamp(4, Timestamp.valueOf(competition.getEndDate()));
+            pstmt.setString(5, competition.getRules());
+            pstmt.setString(6, competition.getStatus());
+            pstmt.setInt(7, competition.getMaxParticipants());
+            pstmt.setTimestamp(8, Timestamp.valueOf(competition.getCreatedAt()));
+            pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            if (rs.next()) {
+                competition.setId(rs.getInt(1));
             }
+        }
 
-            // Create sample leaderboard entries
-            LeaderboardEntry entry1 = new LeaderboardEntry();
-            entry1.setUserId(1); // Assuming demo user has ID 1
-            entry1.setUsername("trader1");
-            entry1.setTotalReturn(15.5);
-            entry1.setTotalValue(11550.0);
-            entry1.setRank(1);
-            entry1.setPeriod("MONTHLY");
-            entry1.setCalculatedAt(java.time.LocalDateTime.now());
-
-            LeaderboardEntry entry2 = new LeaderboardEntry();
-            entry2.setUserId(1); // Using same user for demo
-            entry2.setUsername("trader2");
-            entry2.setTotalReturn(12.3);
-            entry2.setTotalValue(11230.0);
-            entry2.setRank(2);
-            entry2.setPeriod("MONTHLY");
-            entry2.setCalculatedAt(java.time.LocalDateTime.now());
-
-            LeaderboardEntry entry3 = new LeaderboardEntry();
-            entry3.setUserId(1); // Using same user for demo
-            entry3.setUsername("trader3");
-            entry3.setTotalReturn(10.8);
-            entry3.setTotalValue(11080.0);
-            entry3.setRank(3);
-            entry3.setPeriod("MONTHLY");
-            entry3.setCalculatedAt(java.time.LocalDateTime.now());
-
-            // Insert leaderboard entries
-            String sql = "INSERT INTO leaderboard_entries (user_id, username, total_return, total_value, rank, period, calculated_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-            LeaderboardEntry[] entries = {entry1, entry2, entry3};
-
-            for (LeaderboardEntry entry : entries) {
-                try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                    pstmt.setInt(1, entry.getUserId());
-                    pstmt.setString(2, entry.getUsername());
-                    pstmt.setDouble(3, entry.getTotalReturn());
-                    pstmt.setDouble(4, entry.getTotalValue());
-                    pstmt.setInt(5, entry.getRank());
-                    pstmt.setString(6, entry.getPeriod());
-                    pstmt.setTimestamp(7, Timestamp.valueOf(entry.getCalculatedAt()));
-                    pstmt.executeUpdate();
-                    ResultSet rs = pstmt.getGeneratedKeys();
-                    if (rs.next()) {
-                        entry.setId(rs.getInt(1));
-                    }
+        System.out.println("Sample competition created with ID: " + competition.getId());
+    }
+
+    private void createSampleLeaderboardData(Connection conn, int userId) throws SQLException {
+        System.out.println("Creating sample leaderboard data...");
+
+        // Check if sample leaderboard entries already exist
+        if (exists(conn, "SELECT 1 FROM leaderboard_entries WHERE period = ?", "MONTHLY")) {
+            System.out.println("Sample leaderboard data already exists.");
+            return;
+        }
+
+        // Create sample leaderboard entries
+        LeaderboardEntry entry1 = new LeaderboardEntry();
+        entry1.setUserId(userId);
+        entry1.setUsername("trader1");
+        entry1.setTotalReturn(15.5);
+        entry1.setTotalValue(11550.0);
+        entry1.setRank(1);
+        entry1.setPeriod("MONTHLY");
+        entry1.setCalculatedAt(java.time.LocalDateTime.now());
+
+        LeaderboardEntry entry2 = new LeaderboardEntry();
+        entry2.setUserId(userId); // Using same user for demo
+        entry2.setUsername("trader2");
+        entry2.setTotalReturn(12.3);
+        entry2.setTotalValue(11230.0);
+        entry2.setRank(2);
+        entry2.setPeriod("MONTHLY");
+        entry2.setCalculatedAt(java.time.LocalDateTime.now());
+
+        LeaderboardEntry entry3 = new LeaderboardEntry();
+        entry3.setUserId(userId); // Using same user for demo
+        entry3.setUsername("trader3");
+        entry3.setTotalReturn(10.8);
+        entry3.setTotalValue(11080.0);
+        entry3.setRank(3);
+        entry3.setPeriod("MONTHLY");
+        entry3.setCalculatedAt(java.time.LocalDateTime.now());
+
+        // Insert leaderboard entries
+        String sql = "INSERT INTO leaderboard_entries (user_id, username, total_return, total_value, rank, period, calculated_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        LeaderboardEntry[] entries = {entry1, entry2, entry3};
+
+        for (LeaderboardEntry entry : entries) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, entry.getUserId());
+                pstmt.setString(2, entry.getUsername());
+                pstmt.setDouble(3, entry.getTotalReturn());
+                pstmt.setDouble(4, entry.getTotalValue());
+                pstmt.setInt(5, entry.getRank());
+                pstmt.setString(6, entry.getPeriod());
+                pstmt.setTimestamp(7, Timestamp.valueOf(entry.getCalculatedAt()));
+                pstmt.executeUpdate();
+                ResultSet rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    entry.setId(rs.getInt(1));
                 }
             }
+        }
 
-            System.out.println("Sample leaderboard entries created.");
+        System.out.println("Sample leaderboard entries created.");
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error creating sample leaderboard data: " + e.getMessage());
-            e.printStackTrace();
+    private static boolean exists(Connection conn, String sql, Object param) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setObject(1, param);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
         }
     }
 
     // Community methods
     public List<User> getAllUsers() throws SQLException {
-        List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM users";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                user.setHashedPassword(rs.getString("hashed_password"));
-                user.setSalt(rs.getString("salt"));
-                user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                if (rs.getTimestamp("last_login") != null) {
-                    user.setLastLogin(rs.getTimestamp("last_login").toLocalDateTime());
-                }
-                user.setActive(rs.getBoolean("is_active"));
-                user.setRole(rs.getString("role"));
-                user.setExperiencePoints(rs.getInt("experience_points"));
-                user.setLevel(rs.getInt("level"));
-                user.setTradingStreak(rs.getInt("trading_streak"));
-                user.setTotalPnL(rs.getDouble("total_pnl"));
-                user.setTradesCount(rs.getInt("trades_count"));
-                user.setFailedLoginAttempts(rs.getInt("failed_login_attempts"));
-                if (rs.getTimestamp("account_locked_until") != null) {
-                    user.setAccountLockedUntil(rs.getTimestamp("account_locked_until").toLocalDateTime());
-                }
-                user.setAvatarPath(rs.getString("avatar_path"));
-                user.setBio(rs.getString("bio"));
-                user.setLocation(rs.getString("location"));
-                user.setWebsite(rs.getString("website"));
-                users.add(user);
-            }
-        }
-        return users;
+        return queryList(RowMappers.USER.selectFrom("users"), RowMappers.USER.mapper());
     }
 
     public void followUser(int followerId, int followedId) throws SQLException {
@@ -1115,7 +2335,7 @@ public class DatabaseManager {
     public List<Competition> getActiveCompetitions() throws SQLException {
         List<Competition> competitions = new ArrayList<>();
         String sql = "SELECT * FROM competitions WHERE status = 'ACTIVE'";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 Competition competition = new Competition();
@@ -1136,7 +2356,7 @@ public class DatabaseManager {
 
     public Competition getCompetitionByName(String name) throws SQLException {
         String sql = "SELECT * FROM competitions WHERE name = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, name);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1166,7 +2386,7 @@ public class DatabaseManager {
         List<LeaderboardEntry> entries = new ArrayList<>();
         // This is a placeholder - actual implementation would depend on how leaderboard is calculated
         String sql = "SELECT * FROM leaderboard_entries WHERE period = 'competition' ORDER BY rank ASC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 LeaderboardEntry entry = new LeaderboardEntry();
@@ -1188,7 +2408,7 @@ public class DatabaseManager {
     public List<LeaderboardEntry> getLeaderboardEntries(String period) throws SQLException {
         List<LeaderboardEntry> entries = new ArrayList<>();
         String sql = "SELECT * FROM leaderboard_entries WHERE period = ? ORDER BY rank ASC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, period);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -1230,7 +2450,7 @@ public class DatabaseManager {
 
     public WatchlistItem getWatchlistItemById(int id) throws SQLException {
         String sql = "SELECT * FROM watchlist WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1250,7 +2470,7 @@ public class DatabaseManager {
     public List<WatchlistItem> getWatchlistByUserId(int userId) throws SQLException {
         List<WatchlistItem> items = new ArrayList<>();
         String sql = "SELECT * FROM watchlist WHERE user_id = ? ORDER BY added_at DESC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -1291,7 +2511,7 @@ public class DatabaseManager {
 
     public boolean isSymbolInWatchlist(int userId, String symbol) throws SQLException {
         String sql = "SELECT COUNT(*) FROM watchlist WHERE user_id = ? AND symbol = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
             pstmt.setString(2, symbol);
             ResultSet rs = pstmt.executeQuery();
@@ -1322,7 +2542,7 @@ public class DatabaseManager {
 
     public SharedPortfolio getSharedPortfolioById(int id) throws SQLException {
         String sql = "SELECT * FROM shared_portfolios WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1334,6 +2554,7 @@ public class DatabaseManager {
                 sharedPortfolio.setSharedAt(rs.getTimestamp("shared_at").toLocalDateTime());
                 sharedPortfolio.setViews(rs.getInt("views"));
                 sharedPortfolio.setLikes(rs.getInt("likes"));
+                addPendingCounts(sharedPortfolio);
                 return sharedPortfolio;
             }
         }
@@ -1343,7 +2564,7 @@ public class DatabaseManager {
     public List<SharedPortfolio> getPublicSharedPortfolios() throws SQLException {
         List<SharedPortfolio> sharedPortfolios = new ArrayList<>();
         String sql = "SELECT * FROM shared_portfolios WHERE is_public = true ORDER BY shared_at DESC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 SharedPortfolio sharedPortfolio = new SharedPortfolio();
@@ -1354,6 +2575,7 @@ public class DatabaseManager {
                 sharedPortfolio.setSharedAt(rs.getTimestamp("shared_at").toLocalDateTime());
                 sharedPortfolio.setViews(rs.getInt("views"));
                 sharedPortfolio.setLikes(rs.getInt("likes"));
+                addPendingCounts(sharedPortfolio);
                 sharedPortfolios.add(sharedPortfolio);
             }
         }
@@ -1363,7 +2585,7 @@ public class DatabaseManager {
     public List<SharedPortfolio> getSharedPortfoliosByUserId(int userId) throws SQLException {
         List<SharedPortfolio> sharedPortfolios = new ArrayList<>();
         String sql = "SELECT * FROM shared_portfolios WHERE user_id = ? ORDER BY shared_at DESC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -1375,6 +2597,7 @@ public class DatabaseManager {
                 sharedPortfolio.setSharedAt(rs.getTimestamp("shared_at").toLocalDateTime());
                 sharedPortfolio.setViews(rs.getInt("views"));
                 sharedPortfolio.setLikes(rs.getInt("likes"));
+                addPendingCounts(sharedPortfolio);
                 sharedPortfolios.add(sharedPortfolio);
             }
         }
@@ -1382,32 +2605,20 @@ public class DatabaseManager {
     }
 
     public void incrementPortfolioViews(int sharedPortfolioId) throws SQLException {
-        String sql = "UPDATE shared_portfolios SET views = views + 1 WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, sharedPortfolioId);
-            pstmt.executeUpdate();
-        }
+        counters.add(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, sharedPortfolioId, 1);
     }
 
     public void incrementPortfolioLikes(int sharedPortfolioId) throws SQLException {
-        String sql = "UPDATE shared_portfolios SET likes = likes + 1 WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, sharedPortfolioId);
-            pstmt.executeUpdate();
-        }
+        counters.add(CounterAggregator.Counter.SHARED_PORTFOLIO_LIKES, sharedPortfolioId, 1);
     }
 
     public void decrementPortfolioLikes(int sharedPortfolioId) throws SQLException {
-        String sql = "UPDATE shared_portfolios SET likes = GREATEST(likes - 1, 0) WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, sharedPortfolioId);
-            pstmt.executeUpdate();
-        }
+        counters.add(CounterAggregator.Counter.SHARED_PORTFOLIO_LIKES, sharedPortfolioId, -1);
     }
 
     public boolean isPortfolioShared(int portfolioId) throws SQLException {
         String sql = "SELECT COUNT(*) FROM shared_portfolios WHERE portfolio_id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, portfolioId);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1421,8 +2632,9 @@ public class DatabaseManager {
         String sql = "UPDATE shared_portfolios SET is_public = ?, views = ?, likes = ? WHERE id = ?";
         try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setBoolean(1, sharedPortfolio.isPublic());
-            pstmt.setInt(2, sharedPortfolio.getViews());
-            pstmt.setInt(3, sharedPortfolio.getLikes());
+            // The model carries pending deltas; leave them to the next counter flush
+            pstmt.setLong(2, sharedPortfolio.getViews() - counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, sharedPortfolio.getId()));
+            pstmt.setLong(3, sharedPortfolio.getLikes() - counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_LIKES, sharedPortfolio.getId()));
             pstmt.setInt(4, sharedPortfolio.getId());
             pstmt.executeUpdate();
         }
@@ -1462,7 +2674,7 @@ public class DatabaseManager {
 
     public boolean hasUserLikedPortfolio(int sharedPortfolioId, int userId) throws SQLException {
         String sql = "SELECT COUNT(*) FROM portfolio_likes WHERE shared_portfolio_id = ? AND user_id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, sharedPortfolioId);
             pstmt.setInt(2, userId);
             ResultSet rs = pstmt.executeQuery();
@@ -1476,7 +2688,7 @@ public class DatabaseManager {
     public List<PortfolioLike> getPortfolioLikes(int sharedPortfolioId) throws SQLException {
         List<PortfolioLike> likes = new ArrayList<>();
         String sql = "SELECT * FROM portfolio_likes WHERE shared_portfolio_id = ? ORDER BY liked_at DESC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, sharedPortfolioId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -1493,7 +2705,7 @@ public class DatabaseManager {
 
     public int getPortfolioLikeCount(int sharedPortfolioId) throws SQLException {
         String sql = "SELECT COUNT(*) FROM portfolio_likes WHERE shared_portfolio_id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, sharedPortfolioId);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1521,7 +2733,7 @@ public class DatabaseManager {
 
     public com.stockportfolio.model.ForumCategory getForumCategoryById(int id) throws SQLException {
         String sql = "SELECT * FROM forum_categories WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1540,7 +2752,7 @@ public class DatabaseManager {
     public List<com.stockportfolio.model.ForumCategory> getAllForumCategories() throws SQLException {
         List<com.stockportfolio.model.ForumCategory> categories = new ArrayList<>();
         String sql = "SELECT * FROM forum_categories ORDER BY name ASC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 com.stockportfolio.model.ForumCategory category = new com.stockportfolio.model.ForumCategory();
@@ -1599,7 +2811,7 @@ public class DatabaseManager {
 
     public com.stockportfolio.model.ForumPost getForumPostById(int id) throws SQLException {
         String sql = "SELECT * FROM forum_posts WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1614,6 +2826,7 @@ public class DatabaseManager {
                 post.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
                 post.setViewCount(rs.getInt("view_count"));
                 post.setCommentCount(rs.getInt("comment_count"));
+                addPendingCounts(post);
                 post.setPinned(rs.getBoolean("is_pinned"));
                 post.setLocked(rs.getBoolean("is_locked"));
                 return post;
@@ -1625,7 +2838,7 @@ public class DatabaseManager {
     public List<com.stockportfolio.model.ForumPost> getForumPostsByCategoryId(int categoryId) throws SQLException {
         List<com.stockportfolio.model.ForumPost> posts = new ArrayList<>();
         String sql = "SELECT * FROM forum_posts WHERE category_id = ? ORDER BY is_pinned DESC, created_at DESC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, categoryId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -1640,6 +2853,7 @@ public class DatabaseManager {
                 post.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
                 post.setViewCount(rs.getInt("view_count"));
                 post.setCommentCount(rs.getInt("comment_count"));
+                addPendingCounts(post);
                 post.setPinned(rs.getBoolean("is_pinned"));
                 post.setLocked(rs.getBoolean("is_locked"));
                 posts.add(post);
@@ -1651,7 +2865,7 @@ public class DatabaseManager {
     public List<com.stockportfolio.model.ForumPost> getForumPostsByUserId(int userId) throws SQLException {
         List<com.stockportfolio.model.ForumPost> posts = new ArrayList<>();
         String sql = "SELECT * FROM forum_posts WHERE user_id = ? ORDER BY created_at DESC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -1666,6 +2880,7 @@ public class DatabaseManager {
                 post.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
                 post.setViewCount(rs.getInt("view_count"));
                 post.setCommentCount(rs.getInt("comment_count"));
+                addPendingCounts(post);
                 post.setPinned(rs.getBoolean("is_pinned"));
                 post.setLocked(rs.getBoolean("is_locked"));
                 posts.add(post);
@@ -1680,7 +2895,8 @@ public class DatabaseManager {
             pstmt.setString(1, post.getTitle());
             pstmt.setString(2, post.getContent());
             pstmt.setTimestamp(3, Timestamp.valueOf(post.getUpdatedAt()));
-            pstmt.setInt(4, post.getCommentCount());
+            // The model carries pending deltas; leave them to the next counter flush
+            pstmt.setLong(4, post.getCommentCount() - counters.pending(CounterAggregator.Counter.FORUM_POST_COMMENTS, post.getId()));
             pstmt.setBoolean(5, post.isPinned());
             pstmt.setBoolean(6, post.isLocked());
             pstmt.setInt(7, post.getId());
@@ -1689,19 +2905,30 @@ public class DatabaseManager {
     }
 
     public void incrementForumPostViewCount(int postId) throws SQLException {
-        String sql = "UPDATE forum_posts SET view_count = view_count + 1 WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, postId);
-            pstmt.executeUpdate();
-        }
+        counters.add(CounterAggregator.Counter.FORUM_POST_VIEWS, postId, 1);
     }
 
     public void incrementForumPostCommentCount(int postId) throws SQLException {
-        String sql = "UPDATE forum_posts SET comment_count = comment_count + 1 WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, postId);
-            pstmt.executeUpdate();
-        }
+        counters.add(CounterAggregator.Counter.FORUM_POST_COMMENTS, postId, 1);
+    }
+
+    /**
+     * Write buffered view, like and comment count increments now.
+     */
+    public int flushCounters() throws SQLException {
+        return counters.flush();
+    }
+
+    private void addPendingCounts(SharedPortfolio sharedPortfolio) {
+        int id = sharedPortfolio.getId();
+        sharedPortfolio.setViews((int) (sharedPortfolio.getViews() + counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, id)));
+        sharedPortfolio.setLikes((int) Math.max(0, sharedPortfolio.getLikes() + counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_LIKES, id)));
+    }
+
+    private void addPendingCounts(com.stockportfolio.model.ForumPost post) {
+        int id = post.getId();
+        post.setViewCount((int) (post.getViewCount() + counters.pending(CounterAggregator.Counter.FORUM_POST_VIEWS, id)));
+        post.setCommentCount((int) (post.getCommentCount() + counters.pending(CounterAggregator.Counter.FORUM_POST_COMMENTS, id)));
     }
 
     public void deleteForumPost(int id) throws SQLException {
@@ -1737,7 +2964,7 @@ public class DatabaseManager {
 
     public com.stockportfolio.model.ForumComment getForumCommentById(int id) throws SQLException {
         String sql = "SELECT * FROM forum_comments WHERE id = ?";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -1762,7 +2989,7 @@ public class DatabaseManager {
     public List<com.stockportfolio.model.ForumComment> getForumCommentsByPostId(int postId) throws SQLException {
         List<com.stockportfolio.model.ForumComment> comments = new ArrayList<>();
         String sql = "SELECT * FROM forum_comments WHERE post_id = ? ORDER BY created_at ASC";
-        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = readDataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, postId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -1802,7 +3029,7 @@ public class DatabaseManager {
         }
     }
 
-    private void populateFortune500Stocks() throws SQLException {
+    private void populateFortune500Stocks(Connection conn) throws SQLException {
         // Top 50 Fortune 500/blue-chip stocks data
         String[][] fortune500Stocks = {
             {"AAPL", "Apple Inc.", "NASDAQ", "Technology"},
@@ -1857,40 +3084,33 @@ public class DatabaseManager {
             {"AMGN", "Amgen Inc.", "NASDAQ", "Health Care"}
         };
 
-        try (Connection conn = dataSource.getConnection()) {
-            String sql = "MERGE INTO stocks (symbol, name, exchange, sector, current_price, previous_close, change_value, change_percent, volume, market_cap, last_updated) KEY (symbol) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                for (String[] stock : fortune500Stocks) {
-                    // Check if stock already exists
-                    if (getStockBySymbol(stock[0]) != null) {
-                        continue; // Skip if already exists
-                    }
-
-                    pstmt.setString(1, stock[0]); // symbol
-                    pstmt.setString(2, stock[1]); // name
-                    pstmt.setString(3, stock[2]); // exchange
-                    pstmt.setString(4, stock[3]); // sector
-
-                    // Set default values for price data (will be updated by real-time API)
-                    double basePrice = 100.0 + Math.random() * 900.0; // Random price between 100-1000
-                    double change = (Math.random() - 0.5) * 20.0; // Random change between -10 and +10
-                    double changePercent = (change / basePrice) * 100.0;
-
-                    pstmt.setDouble(5, basePrice); // current_price
-                    pstmt.setDouble(6, basePrice - change); // previous_close
-                    pstmt.setDouble(7, change); // change_value
-                    pstmt.setDouble(8, changePercent); // change_percent
-                    pstmt.setLong(9, (long) (Math.random() * 10000000) + 1000000); // volume
-                    pstmt.setLong(10, (long) (basePrice * 1000000)); // market_cap (simplified)
-                    pstmt.setTimestamp(11, Timestamp.valueOf(java.time.LocalDateTime.now()));
-
-                    try {
-                        pstmt.executeUpdate();
-                    } catch (SQLException e) {
-                        // Handle potential duplicate key errors gracefully
-                        System.err.println("Error inserting stock " + stock[0] + ": " + e.getMessage());
-                    }
+        String sql = "MERGE INTO stocks (symbol, name, exchange, sector, current_price, previous_close, change_value, change_percent, volume, market_cap, last_updated) KEY (symbol) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (String[] stock : fortune500Stocks) {
+                // Check if stock already exists
+                if (exists(conn, "SELECT 1 FROM stocks WHERE symbol = ?", stock[0])) {
+                    continue; // Skip if already exists
                 }
+
+                pstmt.setString(1, stock[0]); // symbol
+                pstmt.setString(2, stock[1]); // name
+                pstmt.setString(3, stock[2]); // exchange
+                pstmt.setString(4, stock[3]); // sector
+
+                // Set default values for price data (will be updated by real-time API)
+                double basePrice = 100.0 + Math.random() * 900.0; // Random price between 100-1000
+                double change = (Math.random() - 0.5) * 20.0; // Random change between -10 and +10
+                double changePercent = (change / basePrice) * 100.0;
+
+                pstmt.setDouble(5, basePrice); // current_price
+                pstmt.setDouble(6, basePrice - change); // previous_close
+                pstmt.setDouble(7, change); // change_value
+                pstmt.setDouble(8, changePercent); // change_percent
+                pstmt.setLong(9, (long) (Math.random() * 10000000) + 1000000); // volume
+                pstmt.setLong(10, (long) (basePrice * 1000000)); // market_cap (simplified)
+                pstmt.setTimestamp(11, Timestamp.valueOf(java.time.LocalDateTime.now()));
+
+                pstmt.executeUpdate();
             }
         }
         System.out.println("Fortune 500 stocks populated successfully.");
@@ -0,0 +1,81 @@
+package com.stockportfolio.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point arithmetic on quantities, prices and amounts held as {@code long} counts of
+ * 1/{@value #SCALE} units, the representation behind the {@code *_units} BIGINT columns.
+ *
+ * Sums and differences of units are exact, so position quantities and cost bases no longer
+ * drift as trades accumulate. A {@code double} with at most four decimals converts to and
+ * from units without loss up to about 10^11, which covers any realistic share count or
+ * dollar amount; values written back as {@code double} are snapped to that grid.
+ */
+public final class FixedPoint {
+    public static final long SCALE = 10_000L;
+    private static final int DECIMALS = 4;
+
+    private FixedPoint() {}
+
+    public static long toUnits(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    public static double toDouble(long units) {
+        return (double) units / SCALE;
+    }
+
+    /** The value rounded to four decimals, as stored in the DOUBLE columns. */
+    public static double snap(double value) {
+        return toDouble(toUnits(value));
+    }
+
+    /**
+     * Product of two unit values (e.g. quantity × price), rounded half up to units.
+     * Falls back to BigDecimal only if the intermediate product overflows.
+     */
+    public static long multiply(long a, long b) {
+        long product;
+        try {
+            product = Math.multiplyExact(a, b);
+        } catch (ArithmeticException overflow) {
+            return BigDecimal.valueOf(a).multiply(BigDecimal.valueOf(b))
+                    .divide(BigDecimal.valueOf(SCALE), 0, RoundingMode.HALF_UP).longValueExact();
+        }
+        long half = product >= 0 ? SCALE / 2 : -SCALE / 2;
+        return (product + half) / SCALE;
+    }
+
+    /**
+     * Cost basis in units of a position stored as quantity and average cost, multiplied in
+     * units like a trade's amount rather than in {@code double}.
+     */
+    public static long costBasisUnits(double quantity, double averageCost) {
+        return multiply(toUnits(quantity), toUnits(averageCost));
+    }
+
+    /** Plain decimal form of a unit value without trailing zeros, e.g. 12.5 or 3. */
+    public static String format(long units) {
+        StringBuilder text = new StringBuilder(24);
+        if (units < 0) {
+            text.append('-');
+        }
+        long magnitude = Math.abs(units);
+        text.append(magnitude / SCALE);
+        long fraction = magnitude % SCALE;
+        if (fraction != 0) {
+            int digits = DECIMALS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            text.append('.');
+            for (int i = String.valueOf(fraction).length(); i < digits; i++) {
+                text.append('0');
+            }
+            text.append(fraction);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package com.stockportfolio.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency counts in power-of-two microsecond buckets: bucket 0 counts durations
+ * under 1 µs, bucket i durations in [2^(i-1), 2^i) µs, and the last bucket everything longer.
+ */
+final class LatencyHistogram {
+    static final int BUCKETS = 26;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    void record(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+    }
+
+    long[] snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    static long count(long[] counts) {
+        long total = 0;
+        for (long bucket : counts) {
+            total += bucket;
+        }
+        return total;
+    }
+
+    /** Upper bound in microseconds of the bucket holding the given percentile (0-100). */
+    static long percentileMicros(long[] counts, double percentile) {
+        long total = count(counts);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(total * percentile / 100.0), 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (counts.length - 1);
+    }
+}
@@ -0,0 +1,54 @@
+package com.stockportfolio.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped per-portfolio locks for writers that read-modify-write positions.
+ *
+ * Trades on the same portfolio are applied one at a time in arrival order (fair locks);
+ * trades on portfolios that map to different stripes run in parallel.
+ *
+ * Hold a stripe only around the database work. Prompts, message dialogs and quote
+ * fetches belong before or after it: a modal dialog shown under the lock keeps every
+ * trade on the stripe waiting, and with it the event thread if a trade is placed there.
+ */
+public class PortfolioLocks {
+    private static final int STRIPES = 64; // power of two
+    private static PortfolioLocks instance;
+
+    private final ReentrantLock[] locks;
+
+    private PortfolioLocks() {
+        this.locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock(true);
+        }
+    }
+
+    public static synchronized PortfolioLocks getInstance() {
+        if (instance == null) {
+            instance = new PortfolioLocks();
+        }
+        return instance;
+    }
+
+    public ReentrantLock lockFor(int portfolioId) {
+        int h = portfolioId * 0x9E3779B9;
+        return locks[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Run an action while holding the portfolio's lock. The action must not block on the
+     * user or the network.
+     */
+    public <T> T withLock(int portfolioId, Callable<T> action) throws Exception {
+        ReentrantLock lock = lockFor(portfolioId);
+        lock.lock();
+        try {
+            return action.call();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.stockportfolio.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import com.stockportfolio.model.PortfolioValueSnapshot;
+
+/**
+ * Time series of portfolio values in three tiers: minute, hourly and daily OHLC buckets.
+ *
+ * Each valuation cycle folds every portfolio's current total into its minute bucket.
+ * Completed hours and days are rolled up from the tier below, and fine-grained rows are
+ * dropped once they age past their tier's retention. Range reads go through the
+ * (portfolio_id, resolution, bucket_start) primary key.
+ */
+class PortfolioValueHistory {
+
+    enum Tier {
+        MINUTE(ChronoUnit.MINUTES, Duration.ofDays(2)),
+        HOUR(ChronoUnit.HOURS, Duration.ofDays(90)),
+        DAY(ChronoUnit.DAYS, null);
+
+        final ChronoUnit unit;
+        // How long rows are kept; null keeps them forever
+        final Duration retention;
+
+        Tier(ChronoUnit unit, Duration retention) {
+            this.unit = unit;
+            this.retention = retention;
+        }
+
+        LocalDateTime bucketOf(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+    }
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS portfolio_value_snapshots (" +
+            "portfolio_id INT NOT NULL," +
+            "resolution VARCHAR(6) NOT NULL," +
+            "bucket_start TIMESTAMP NOT NULL," +
+            "open_value DOUBLE NOT NULL," +
+            "high_value DOUBLE NOT NULL," +
+            "low_value DOUBLE NOT NULL," +
+            "close_value DOUBLE NOT NULL," +
+            "cost_basis DOUBLE NOT NULL," +
+            "samples INT NOT NULL," +
+            "PRIMARY KEY (portfolio_id, resolution, bucket_start)," +
+            "FOREIGN KEY (portfolio_id) REFERENCES portfolios(id) ON DELETE CASCADE" +
+            ")";
+
+    static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_value_snapshots_resolution ON portfolio_value_snapshots(resolution, bucket_start)";
+
+    private static final String RECORD_SQL = "MERGE INTO portfolio_value_snapshots t " +
+            "USING (SELECT id, total_value, total_cost_basis FROM portfolios) s " +
+            "ON t.portfolio_id = s.id AND t.resolution = 'MINUTE' AND t.bucket_start = ? " +
+            "WHEN MATCHED THEN UPDATE SET high_value = GREATEST(t.high_value, s.total_value), " +
+            "low_value = LEAST(t.low_value, s.total_value), close_value = s.total_value, " +
+            "cost_basis = s.total_cost_basis, samples = t.samples + 1 " +
+            "WHEN NOT MATCHED THEN INSERT (portfolio_id, resolution, bucket_start, open_value, high_value, low_value, " +
+            "close_value, cost_basis, samples) VALUES (s.id, 'MINUTE', ?, s.total_value, s.total_value, s.total_value, " +
+            "s.total_value, s.total_cost_basis, 1)";
+
+    private final DataSource dataSource;
+    private LocalDateTime lastCompactedHour;
+
+    PortfolioValueHistory(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Fold every portfolio's current value into its minute bucket, compacting older tiers
+     * the first time a new hour is seen.
+     */
+    synchronized void record(LocalDateTime now) throws SQLException {
+        Timestamp bucket = Timestamp.valueOf(Tier.MINUTE.bucketOf(now));
+        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(RECORD_SQL)) {
+            pstmt.setTimestamp(1, bucket);
+            pstmt.setTimestamp(2, bucket);
+            pstmt.executeUpdate();
+        }
+        LocalDateTime hour = Tier.HOUR.bucketOf(now);
+        if (!hour.equals(lastCompactedHour)) {
+            compact(now);
+            lastCompactedHour = hour;
+        }
+    }
+
+    /**
+     * Roll completed minute buckets into hours and completed hours into days, then drop
+     * rows past their tier's retention.
+     */
+    synchronized void compact(LocalDateTime now) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                rollUp(conn, Tier.MINUTE, Tier.HOUR, Tier.HOUR.bucketOf(now));
+                rollUp(conn, Tier.HOUR, Tier.DAY, Tier.DAY.bucketOf(now));
+                for (Tier tier : Tier.values()) {
+                    if (tier.retention != null) {
+                        try (PreparedStatement pstmt = conn.prepareStatement(
+                                "DELETE FROM portfolio_value_snapshots WHERE resolution = ? AND bucket_start < ?")) {
+                            pstmt.setString(1, tier.name());
+                            pstmt.setTimestamp(2, Timestamp.valueOf(now.minus(tier.retention)));
+                            pstmt.executeUpdate();
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Build the target buckets after the latest one already rolled up, up to {@code end}
+     * (exclusive). Only completed buckets are rolled up, so they never need rebuilding.
+     */
+    private void rollUp(Connection conn, Tier source, Tier target, LocalDateTime end) throws SQLException {
+        LocalDateTime start = null;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT MAX(bucket_start) FROM portfolio_value_snapshots WHERE resolution = ?")) {
+            pstmt.setString(1, target.name());
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next() && rs.getTimestamp(1) != null) {
+                start = rs.getTimestamp(1).toLocalDateTime().plus(1, target.unit);
+            }
+        }
+
+        String sql = RowMappers.PORTFOLIO_VALUE_SNAPSHOT.selectFrom("portfolio_value_snapshots") +
+                " WHERE resolution = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY portfolio_id, bucket_start";
+        Map<String, PortfolioValueSnapshot> buckets = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, source.name());
+            pstmt.setTimestamp(2, Timestamp.valueOf(start != null ? start : LocalDateTime.of(1970, 1, 1, 0, 0)));
+            pstmt.setTimestamp(3, Timestamp.valueOf(end));
+            ResultSet rs = pstmt.executeQuery();
+            RowMapper<PortfolioValueSnapshot> mapper = RowMappers.PORTFOLIO_VALUE_SNAPSHOT.mapper();
+            while (rs.next()) {
+                PortfolioValueSnapshot row = mapper.mapRow(rs);
+                LocalDateTime bucketStart = target.bucketOf(row.getBucketStart());
+                PortfolioValueSnapshot bucket = buckets.get(row.getPortfolioId() + "@" + bucketStart);
+                if (bucket == null) {
+                    row.setResolution(target.name());
+                    row.setBucketStart(bucketStart);
+                    buckets.put(row.getPortfolioId() + "@" + bucketStart, row);
+                } else {
+                    // Rows arrive in time order, so the last one seen closes the bucket
+                    bucket.setHighValue(Math.max(bucket.getHighValue(), row.getHighValue()));
+                    bucket.setLowValue(Math.min(bucket.getLowValue(), row.getLowValue()));
+                    bucket.setCloseValue(row.getCloseValue());
+                    bucket.setCostBasis(row.getCostBasis());
+                    bucket.setSamples(bucket.getSamples() + row.getSamples());
+                }
+            }
+        }
+        if (buckets.isEmpty()) {
+            return;
+        }
+        merge(conn, buckets.values());
+    }
+
+    private static void merge(Connection conn, Collection<PortfolioValueSnapshot> buckets) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "MERGE INTO portfolio_value_snapshots (portfolio_id, resolution, bucket_start, open_value, high_value, " +
+                "low_value, close_value, cost_basis, samples) KEY (portfolio_id, resolution, bucket_start) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (PortfolioValueSnapshot bucket : buckets) {
+                pstmt.setInt(1, bucket.getPortfolioId());
+                pstmt.setString(2, bucket.getResolution());
+                pstmt.setTimestamp(3, Timestamp.valueOf(bucket.getBucketStart()));
+                pstmt.setDouble(4, bucket.getOpenValue());
+                pstmt.setDouble(5, bucket.getHighValue());
+                pstmt.setDouble(6, bucket.getLowValue());
+                pstmt.setDouble(7, bucket.getCloseValue());
+                pstmt.setDouble(8, bucket.getCostBasis());
+                pstmt.setInt(9, bucket.getSamples());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /** Every bucket of one portfolio in all tiers, as stored, for backups. */
+    List<PortfolioValueSnapshot> all(int portfolioId) throws SQLException {
+        String sql = RowMappers.PORTFOLIO_VALUE_SNAPSHOT.selectFrom("portfolio_value_snapshots") +
+                " WHERE portfolio_id = ? ORDER BY resolution, bucket_start";
+        List<PortfolioValueSnapshot> buckets = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, portfolioId);
+            ResultSet rs = pstmt.executeQuery();
+            RowMapper<PortfolioValueSnapshot> mapper = RowMappers.PORTFOLIO_VALUE_SNAPSHOT.mapper();
+            while (rs.next()) {
+                buckets.add(mapper.mapRow(rs));
+            }
+        }
+        return buckets;
+    }
+
+    /** Write restored buckets as they are, in one transaction. */
+    synchronized void restore(Collection<PortfolioValueSnapshot> buckets) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                merge(conn, buckets);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Value history of one portfolio between {@code from} and {@code to}, in the finest tier
+     * still retained at {@code from}. The tail that has not been rolled up yet is filled
+     * from finer tiers, so the series runs up to the latest valuation.
+     */
+    List<PortfolioValueSnapshot> range(int portfolioId, LocalDateTime from, LocalDateTime to, LocalDateTime now)
+            throws SQLException {
+        Tier coarsest = Tier.MINUTE;
+        for (Tier tier : Tier.values()) {
+            coarsest = tier;
+            if (tier.retention == null || !from.isBefore(now.minus(tier.retention))) {
+                break;
+            }
+        }
+
+        String sql = RowMappers.PORTFOLIO_VALUE_SNAPSHOT.selectFrom("portfolio_value_snapshots") +
+                " WHERE portfolio_id = ? AND resolution = ? AND bucket_start >= ? AND bucket_start <= ? ORDER BY bucket_start";
+        List<PortfolioValueSnapshot> series = new ArrayList<>();
+        LocalDateTime cursor = from;
+        try (Connection conn = dataSource.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = coarsest.ordinal(); i >= 0; i--) {
+                Tier tier = Tier.values()[i];
+                pstmt.setInt(1, portfolioId);
+                pstmt.setString(2, tier.name());
+                pstmt.setTimestamp(3, Timestamp.valueOf(cursor));
+                pstmt.setTimestamp(4, Timestamp.valueOf(to));
+                ResultSet rs = pstmt.executeQuery();
+                PortfolioValueSnapshot last = null;
+                while (rs.next()) {
+                    last = RowMappers.PORTFOLIO_VALUE_SNAPSHOT.mapper().mapRow(rs);
+                    series.add(last);
+                }
+                if (last != null) {
+                    cursor = last.getBucketStart().plus(1, tier.unit);
+                }
+            }
+        }
+        return series;
+    }
+
+    static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_TABLE);
+            stmt.execute(CREATE_INDEX);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.stockportfolio.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory reverse index from symbol to the positions that hold it.
+ *
+ * DatabaseManager loads it once from the positions table and updates it after every
+ * committed position write, so a price tick can find and reprice exactly the holders of
+ * a symbol without scanning positions.
+ */
+class PositionIndex {
+
+    static final class PositionHandle {
+        final int positionId;
+        final int portfolioId;
+        final String symbol;
+        double quantity;
+        double price;
+
+        PositionHandle(int positionId, int portfolioId, String symbol, double quantity, double price) {
+            this.positionId = positionId;
+            this.portfolioId = portfolioId;
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+
+    private final Map<String, Map<Integer, PositionHandle>> bySymbol = new HashMap<>();
+    private final Map<Integer, PositionHandle> byId = new HashMap<>();
+
+    synchronized void put(int positionId, int portfolioId, String symbol, double quantity, double price) {
+        PositionHandle existing = byId.get(positionId);
+        if (existing != null && !existing.symbol.equals(symbol)) {
+            remove(positionId);
+            existing = null;
+        }
+        if (existing == null) {
+            PositionHandle handle = new PositionHandle(positionId, portfolioId, symbol, quantity, price);
+            byId.put(positionId, handle);
+            bySymbol.computeIfAbsent(symbol, k -> new HashMap<>()).put(positionId, handle);
+        } else {
+            existing.quantity = quantity;
+            existing.price = price;
+        }
+    }
+
+    synchronized void remove(int positionId) {
+        PositionHandle handle = byId.remove(positionId);
+        if (handle == null) {
+            return;
+        }
+        Map<Integer, PositionHandle> holders = bySymbol.get(handle.symbol);
+        if (holders != null) {
+            holders.remove(positionId);
+            if (holders.isEmpty()) {
+                bySymbol.remove(handle.symbol);
+            }
+        }
+    }
+
+    /**
+     * Mark every holder of the symbol to the new price and return the ids of the portfolios
+     * whose positions actually changed. Holders already at this price are skipped.
+     */
+    synchronized List<Integer> reprice(String symbol, double price) {
+        Map<Integer, PositionHandle> holders = bySymbol.get(symbol);
+        if (holders == null) {
+            return new ArrayList<>();
+        }
+        Set<Integer> portfolioIds = new LinkedHashSet<>();
+        for (PositionHandle handle : holders.values()) {
+            if (handle.price != price) {
+                handle.price = price;
+                portfolioIds.add(handle.portfolioId);
+            }
+        }
+        return new ArrayList<>(portfolioIds);
+    }
+
+    /**
+     * Forget the marks of a symbol's holders, e.g. after a failed write, so the next
+     * tick writes them again.
+     */
+    synchronized void invalidatePrices(String symbol) {
+        Map<Integer, PositionHandle> holders = bySymbol.get(symbol);
+        if (holders != null) {
+            for (PositionHandle handle : holders.values()) {
+                handle.price = Double.NaN;
+            }
+        }
+    }
+
+    synchronized int holderCount(String symbol) {
+        Map<Integer, PositionHandle> holders = bySymbol.get(symbol);
+        return holders == null ? 0 : holders.size();
+    }
+
+    synchronized int size() {
+        return byId.size();
+    }
+}
@@ -0,0 +1,363 @@
+package com.stockportfolio.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.stockportfolio.model.Position;
+
+/**
+ * Append-only ledger of position changes, the record that positions can be rebuilt from.
+ *
+ * Every write to the positions table appends an event in the same database transaction:
+ * TRADE (a signed quantity at a price), SET (a manual edit to absolute values) or REMOVE.
+ * Every {@value #SNAPSHOT_INTERVAL} events a portfolio's replayed state is stored as a
+ * snapshot, so its positions at any time are the nearest earlier snapshot plus a short replay.
+ *
+ * Events carry the caller's time (a trade's timestamp, an edit's last-updated), so one may be
+ * recorded after a snapshot yet dated before it. A snapshot therefore covers events by id, and
+ * its as_of is the latest time of any event it covers; what follows it is found by id alone.
+ *
+ * A head row per portfolio counts the events since its last snapshot and is updated with each
+ * append, so deciding whether to snapshot costs one row however long the history is.
+ */
+class PositionLedger {
+    static final int SNAPSHOT_INTERVAL = 50;
+
+    static final String TRADE = "TRADE";
+    static final String SET = "SET";
+    static final String REMOVE = "REMOVE";
+
+    // Replayed state of one position
+    static final class PositionState {
+        final int positionId;
+        final String symbol;
+        double quantity;
+        double averageCost;
+        double price;
+        LocalDateTime lastUpdated;
+
+        PositionState(int positionId, String symbol) {
+            this.positionId = positionId;
+            this.symbol = symbol;
+        }
+
+        Position toPosition(int portfolioId) {
+            Position position = new Position();
+            position.setId(positionId);
+            position.setPortfolioId(portfolioId);
+            position.setSymbol(symbol);
+            position.setQuantity(quantity);
+            position.setAverageCost(averageCost);
+            position.setCurrentPrice(price);
+            position.setTotalValue(FixedPoint.toDouble(FixedPoint.multiply(FixedPoint.toUnits(quantity), FixedPoint.toUnits(price))));
+            position.setLastUpdated(lastUpdated);
+            return position;
+        }
+    }
+
+    static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS position_events (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                    "portfolio_id INT NOT NULL," +
+                    "position_id INT NOT NULL," +
+                    "symbol VARCHAR(10) NOT NULL," +
+                    "event_type VARCHAR(10) NOT NULL," +
+                    "quantity DOUBLE NOT NULL," +
+                    "average_cost DOUBLE NOT NULL," +
+                    "price DOUBLE NOT NULL," +
+                    "transaction_id INT," +
+                    "occurred_at TIMESTAMP NOT NULL" +
+                    ")");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_position_events_portfolio_time ON position_events(portfolio_id, occurred_at)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS position_snapshots (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                    "portfolio_id INT NOT NULL," +
+                    "last_event_id BIGINT NOT NULL," +
+                    "as_of TIMESTAMP NOT NULL" +
+                    ")");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_position_snapshots_portfolio_as_of ON position_snapshots(portfolio_id, as_of)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS position_snapshot_rows (" +
+                    "snapshot_id BIGINT NOT NULL," +
+                    "position_id INT NOT NULL," +
+                    "symbol VARCHAR(10) NOT NULL," +
+                    "quantity DOUBLE NOT NULL," +
+                    "average_cost DOUBLE NOT NULL," +
+                    "price DOUBLE NOT NULL," +
+                    "last_updated TIMESTAMP NOT NULL," +
+                    "PRIMARY KEY (snapshot_id, position_id)" +
+                    ")");
+
+            // The ledger starts from today's positions; earlier history was never recorded
+            stmt.execute("INSERT INTO position_events (portfolio_id, position_id, symbol, event_type, quantity, " +
+                    "average_cost, price, occurred_at) SELECT portfolio_id, id, symbol, '" + SET + "', quantity, " +
+                    "average_cost, COALESCE(current_price, average_cost), CURRENT_TIMESTAMP FROM positions ORDER BY id");
+        }
+    }
+
+    void appendTrade(Connection conn, int portfolioId, int positionId, String symbol, double signedQuantity,
+                     double price, int transactionId, LocalDateTime at) throws SQLException {
+        append(conn, portfolioId, positionId, symbol, TRADE, signedQuantity, 0.0, price, transactionId, at);
+    }
+
+    void appendSet(Connection conn, Position position, LocalDateTime at) throws SQLException {
+        append(conn, position.getPortfolioId(), position.getId(), position.getSymbol(), SET,
+                position.getQuantity(), position.getAverageCost(), position.getCurrentPrice(), 0, at);
+    }
+
+    /** Snapshot bookkeeping per portfolio and the indexes that find events and snapshots by id. */
+    static void createHeads(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS position_ledger_heads (" +
+                    "portfolio_id INT PRIMARY KEY," +
+                    "last_snapshot_event BIGINT NOT NULL," +
+                    "pending_events INT NOT NULL," +
+                    "latest_at TIMESTAMP" +
+                    ")");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_position_events_portfolio_id ON position_events(portfolio_id, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_position_snapshots_portfolio_event ON position_snapshots(portfolio_id, last_event_id)");
+        }
+    }
+
+    void appendRemove(Connection conn, int portfolioId, int positionId, String symbol, LocalDateTime at) throws SQLException {
+        append(conn, portfolioId, positionId, symbol, REMOVE, 0.0, 0.0, 0.0, 0, at);
+    }
+
+    private void append(Connection conn, int portfolioId, int positionId, String symbol, String type, double quantity,
+                        double averageCost, double price, int transactionId, LocalDateTime at) throws SQLException {
+        long eventId;
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO position_events (portfolio_id, position_id, " +
+                "symbol, event_type, quantity, average_cost, price, transaction_id, occurred_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, portfolioId);
+            pstmt.setInt(2, positionId);
+            pstmt.setString(3, symbol);
+            pstmt.setString(4, type);
+            pstmt.setDouble(5, quantity);
+            pstmt.setDouble(6, averageCost);
+            pstmt.setDouble(7, price);
+            if (transactionId > 0) {
+                pstmt.setInt(8, transactionId);
+            } else {
+                pstmt.setNull(8, java.sql.Types.INTEGER);
+            }
+            pstmt.setTimestamp(9, Timestamp.valueOf(at));
+            pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            rs.next();
+            eventId = rs.getLong(1);
+        }
+        maybeSnapshot(conn, portfolioId, eventId, at);
+    }
+
+    /**
+     * Positions of a portfolio as of {@code asOf}: the latest snapshot at or before it, plus
+     * the events recorded after that snapshot and dated up to {@code asOf}.
+     */
+    Map<Integer, PositionState> stateAsOf(Connection conn, int portfolioId, LocalDateTime asOf) throws SQLException {
+        Map<Integer, PositionState> state = new LinkedHashMap<>();
+        long lastEventId = 0;
+        long snapshotId = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id, last_event_id, as_of FROM position_snapshots " +
+                "WHERE portfolio_id = ? AND as_of <= ? ORDER BY as_of DESC, id DESC LIMIT 1")) {
+            pstmt.setInt(1, portfolioId);
+            pstmt.setTimestamp(2, Timestamp.valueOf(asOf));
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                snapshotId = rs.getLong(1);
+                lastEventId = rs.getLong(2);
+            }
+        }
+        if (snapshotId > 0) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT position_id, symbol, quantity, average_cost, " +
+                    "price, last_updated FROM position_snapshot_rows WHERE snapshot_id = ? ORDER BY position_id")) {
+                pstmt.setLong(1, snapshotId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    PositionState position = new PositionState(rs.getInt(1), rs.getString(2));
+                    position.quantity = rs.getDouble(3);
+                    position.averageCost = rs.getDouble(4);
+                    position.price = rs.getDouble(5);
+                    position.lastUpdated = rs.getTimestamp(6).toLocalDateTime();
+                    state.put(position.positionId, position);
+                }
+            }
+        }
+
+        // Everything recorded after the snapshot, however it is dated; id orders the replay
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT position_id, symbol, event_type, quantity, " +
+                "average_cost, price, occurred_at FROM position_events WHERE portfolio_id = ? AND id > ? " +
+                "AND occurred_at <= ? ORDER BY id")) {
+            pstmt.setInt(1, portfolioId);
+            pstmt.setLong(2, lastEventId);
+            pstmt.setTimestamp(3, Timestamp.valueOf(asOf));
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                apply(state, rs.getInt(1), rs.getString(2), rs.getString(3), rs.getDouble(4), rs.getDouble(5),
+                        rs.getDouble(6), rs.getTimestamp(7).toLocalDateTime());
+            }
+        }
+        return state;
+    }
+
+    // Same arithmetic as DatabaseManager.applyTrade, so a replay reproduces the positions table
+    private static void apply(Map<Integer, PositionState> state, int positionId, String symbol, String type,
+                              double quantity, double averageCost, double price, LocalDateTime at) {
+        PositionState position = state.get(positionId);
+        if (REMOVE.equals(type)) {
+            state.remove(positionId);
+            return;
+        }
+        if (SET.equals(type)) {
+            if (position == null) {
+                position = new PositionState(positionId, symbol);
+                state.put(positionId, position);
+            }
+            position.quantity = quantity;
+            position.averageCost = averageCost;
+            position.price = price;
+            position.lastUpdated = at;
+            return;
+        }
+        if (position == null) {
+            if (quantity > 0) {
+                position = new PositionState(positionId, symbol);
+                position.quantity = quantity;
+                position.averageCost = price;
+                position.price = price;
+                position.lastUpdated = at;
+                state.put(positionId, position);
+            }
+            return;
+        }
+        long heldUnits = FixedPoint.toUnits(position.quantity);
+        long newUnits = heldUnits + FixedPoint.toUnits(quantity);
+        if (newUnits <= 0) {
+            state.remove(positionId);
+            return;
+        }
+        long newCostUnits = FixedPoint.costBasisUnits(position.quantity, position.averageCost)
+                + FixedPoint.multiply(FixedPoint.toUnits(quantity), FixedPoint.toUnits(price));
+        position.averageCost = (double) newCostUnits / newUnits;
+        position.quantity = FixedPoint.toDouble(newUnits);
+        position.price = price;
+        position.lastUpdated = at;
+    }
+
+    // Count the event just appended and store a snapshot once enough have accumulated since the last one
+    private void maybeSnapshot(Connection conn, int portfolioId, long eventId, LocalDateTime at) throws SQLException {
+        int pending;
+        // as_of only grows, so every event a snapshot covers is dated at or before it
+        LocalDateTime asOf;
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE position_ledger_heads SET pending_events = " +
+                "pending_events + 1, latest_at = GREATEST(COALESCE(latest_at, ?), ?) WHERE portfolio_id = ?")) {
+            pstmt.setTimestamp(1, Timestamp.valueOf(at));
+            pstmt.setTimestamp(2, Timestamp.valueOf(at));
+            pstmt.setInt(3, portfolioId);
+            if (pstmt.executeUpdate() == 0) {
+                insertHead(conn, portfolioId);
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT pending_events, latest_at FROM position_ledger_heads WHERE portfolio_id = ?")) {
+            pstmt.setInt(1, portfolioId);
+            ResultSet rs = pstmt.executeQuery();
+            rs.next();
+            pending = rs.getInt(1);
+            asOf = rs.getTimestamp(2).toLocalDateTime();
+        }
+        if (pending < SNAPSHOT_INTERVAL) {
+            return;
+        }
+        long lastEventId = eventId;
+
+        Map<Integer, PositionState> state = stateAsOf(conn, portfolioId, asOf);
+        long snapshotId;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO position_snapshots (portfolio_id, last_event_id, as_of) VALUES (?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, portfolioId);
+            pstmt.setLong(2, lastEventId);
+            pstmt.setTimestamp(3, Timestamp.valueOf(asOf));
+            pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            rs.next();
+            snapshotId = rs.getLong(1);
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO position_snapshot_rows (snapshot_id, " +
+                "position_id, symbol, quantity, average_cost, price, last_updated) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (PositionState position : state.values()) {
+                pstmt.setLong(1, snapshotId);
+                pstmt.setInt(2, position.positionId);
+                pstmt.setString(3, position.symbol);
+                pstmt.setDouble(4, position.quantity);
+                pstmt.setDouble(5, position.averageCost);
+                pstmt.setDouble(6, position.price);
+                pstmt.setTimestamp(7, Timestamp.valueOf(position.lastUpdated));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE position_ledger_heads SET last_snapshot_event = ?, " +
+                "pending_events = 0 WHERE portfolio_id = ?")) {
+            pstmt.setLong(1, lastEventId);
+            pstmt.setInt(2, portfolioId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // First append for a portfolio since the heads were introduced: count what follows its last snapshot once
+    private static void insertHead(Connection conn, int portfolioId) throws SQLException {
+        long lastSnapshotEvent = 0;
+        LocalDateTime latest = null;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT MAX(last_event_id), MAX(as_of) FROM position_snapshots WHERE portfolio_id = ?")) {
+            pstmt.setInt(1, portfolioId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                lastSnapshotEvent = rs.getLong(1);
+                Timestamp lastAsOf = rs.getTimestamp(2);
+                latest = lastAsOf != null ? lastAsOf.toLocalDateTime() : null;
+            }
+        }
+        int pending = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*), MAX(occurred_at) FROM position_events " +
+                "WHERE portfolio_id = ? AND id > ?")) {
+            pstmt.setInt(1, portfolioId);
+            pstmt.setLong(2, lastSnapshotEvent);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                pending = rs.getInt(1);
+                Timestamp occurredAt = rs.getTimestamp(2);
+                if (occurredAt != null && (latest == null || occurredAt.toLocalDateTime().isAfter(latest))) {
+                    latest = occurredAt.toLocalDateTime();
+                }
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO position_ledger_heads (portfolio_id, " +
+                "last_snapshot_event, pending_events, latest_at) VALUES (?, ?, ?, ?)")) {
+            pstmt.setInt(1, portfolioId);
+            pstmt.setLong(2, lastSnapshotEvent);
+            pstmt.setInt(3, pending);
+            pstmt.setTimestamp(4, latest != null ? Timestamp.valueOf(latest) : null);
+            pstmt.executeUpdate();
+        }
+    }
+
+    List<Position> positionsAsOf(Connection conn, int portfolioId, LocalDateTime asOf) throws SQLException {
+        List<Position> positions = new ArrayList<>();
+        for (PositionState state : stateAsOf(conn, portfolioId, asOf).values()) {
+            positions.add(state.toPosition(portfolioId));
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,94 @@
+package com.stockportfolio.utils;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for mark-to-market prices.
+ *
+ * Quotes are merged per symbol (only the latest price is kept) and persisted in one batch
+ * on a timer, or sooner once enough symbols are pending. Callers never wait for the disk.
+ * Trades do not go through here; they are written synchronously.
+ */
+class PriceWriteBehind {
+    interface Sink {
+        int write(Map<String, Double> prices) throws SQLException;
+    }
+
+    private static final long FLUSH_INTERVAL_MS = 2000;
+    private static final int FLUSH_THRESHOLD = 256;
+
+    private final Sink sink;
+    private final Map<String, Double> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+
+    PriceWriteBehind(Sink sink) {
+        this.sink = sink;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "price-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void enqueue(Map<String, Double> prices) {
+        pending.putAll(prices);
+        if (pending.size() >= FLUSH_THRESHOLD) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Persist everything pending now. Prices that arrive during the write stay queued.
+     *
+     * @return the number of positions repriced
+     */
+    int flush() throws SQLException {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            Map<String, Double> batch = new HashMap<>(pending);
+            int repriced = sink.write(batch);
+            // Drop only what was written; a newer price for the same symbol stays pending
+            for (Map.Entry<String, Double> entry : batch.entrySet()) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+            return repriced;
+        }
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stop the timer and write whatever is still pending.
+     */
+    void drain() {
+        // No interrupts: an interrupted H2 write can close the database file
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // Pending prices are kept and retried on the next flush
+            System.err.println("Error flushing queued prices: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.stockportfolio.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+/**
+ * JDBC wrappers that time every statement without touching the code issuing it.
+ *
+ * Statements are grouped by shape: the SQL with literals replaced by {@code ?}, placeholder
+ * lists collapsed and whitespace normalized, so {@code IN (?, ?, ?)} built for different
+ * batch sizes counts as one statement. Per shape it keeps executions, errors, rows read or
+ * updated, a latency histogram and a sample of the call sites issuing it, which is what
+ * exposes N+1 loops. Per pool it keeps how long connections are held between borrow and
+ * close. Statements slower than the threshold are logged with their bind value types only;
+ * values never leave the driver.
+ */
+final class QueryInstrumentation {
+    static final long DEFAULT_SLOW_QUERY_MS = 200;
+
+    // Statements built with inline literals could otherwise grow the map without bound
+    private static final int MAX_SHAPES = 2000;
+    private static final String OTHER_SHAPE = "(other statements)";
+    // Every Nth execution of a shape records its caller; stack walks are not free
+    static final int CALL_SITE_SAMPLE = 16;
+    private static final int CALL_SITE_DEPTH = 3;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String[] INFRASTRUCTURE_PREFIXES = {
+            QueryInstrumentation.class.getName(), "com.sun.proxy.", "jdk.proxy", "java.", "javax.", "sun.", "jdk.",
+            "com.zaxxer.", "org.h2."};
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final Map<String, String> shapes = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> holdTimes = new ConcurrentHashMap<>();
+    private final LongAdder slowQueries = new LongAdder();
+    private volatile long slowQueryThresholdMs = DEFAULT_SLOW_QUERY_MS;
+
+    DataSource wrap(DataSource target, String poolName) {
+        LatencyHistogram holdTime = holdTimes.computeIfAbsent(poolName, k -> new LatencyHistogram());
+        return proxy(DataSource.class, target, (proxy, method, args) -> {
+            Object result = invoke(target, method, args);
+            if (result instanceof Connection) {
+                return proxy(Connection.class, result, new ConnectionHandler((Connection) result, poolName, holdTime));
+            }
+            return result;
+        });
+    }
+
+    long getSlowQueryThresholdMs() {
+        return slowQueryThresholdMs;
+    }
+
+    void setSlowQueryThresholdMs(long thresholdMs) {
+        this.slowQueryThresholdMs = thresholdMs;
+    }
+
+    long getStatementCount() {
+        long count = 0;
+        for (StatementStats stats : statements.values()) {
+            count += stats.executions.sum();
+        }
+        return count;
+    }
+
+    long getSlowQueryCount() {
+        return slowQueries.sum();
+    }
+
+    void reset() {
+        statements.clear();
+        slowQueries.reset();
+        for (LatencyHistogram histogram : holdTimes.values()) {
+            histogram.reset();
+        }
+    }
+
+    /** One line per shape, highest total time first. */
+    List<String> topStatements(int limit) {
+        List<String> lines = new ArrayList<>();
+        for (StatementStats stats : byTotalTime(limit)) {
+            lines.add(stats.summary());
+        }
+        return lines;
+    }
+
+    private List<StatementStats> byTotalTime(int limit) {
+        List<StatementStats> sorted = new ArrayList<>(statements.values());
+        sorted.sort(Comparator.comparingLong((StatementStats s) -> s.totalNanos.sum()).reversed());
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    void appendReport(StringBuilder report, int limit) {
+        report.append("Connection hold times\n");
+        for (Map.Entry<String, LatencyHistogram> pool : holdTimes.entrySet()) {
+            long[] counts = pool.getValue().snapshot();
+            report.append(String.format("  %s: borrows=%d p50<=%dus p99<=%dus%n", pool.getKey(),
+                    LatencyHistogram.count(counts), LatencyHistogram.percentileMicros(counts, 50),
+                    LatencyHistogram.percentileMicros(counts, 99)));
+        }
+        report.append(String.format("Statements by total time (executions=%d, slow=%d over %d ms, call sites 1 in %d sampled)%n",
+                getStatementCount(), getSlowQueryCount(), slowQueryThresholdMs, CALL_SITE_SAMPLE));
+        for (StatementStats stats : byTotalTime(limit)) {
+            report.append("  ").append(stats.summary()).append('\n');
+            List<Map.Entry<String, LongAdder>> sites = new ArrayList<>(stats.callSites.entrySet());
+            sites.sort(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed());
+            for (Map.Entry<String, LongAdder> site : sites.subList(0, Math.min(3, sites.size()))) {
+                report.append(String.format("      %6d  %s%n", site.getValue().sum(), site.getKey()));
+            }
+        }
+    }
+
+    static String shape(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = PLACEHOLDER_LIST.matcher(shape).replaceAll("(?, ...)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    private StatementStats statsFor(String sql) {
+        String shape = shapes.get(sql);
+        if (shape == null) {
+            shape = shape(sql);
+            if (shapes.size() < MAX_SHAPES * 4) {
+                shapes.put(sql, shape);
+            }
+        }
+        StatementStats stats = statements.get(shape);
+        if (stats == null) {
+            String key = statements.size() < MAX_SHAPES ? shape : OTHER_SHAPE;
+            stats = statements.computeIfAbsent(key, StatementStats::new);
+        }
+        return stats;
+    }
+
+    private void recordExecution(StatementStats stats, String poolName, long elapsedNanos, long rows, boolean failed, String[] binds) {
+        stats.executions.increment();
+        stats.totalNanos.add(elapsedNanos);
+        stats.maxNanos.accumulate(elapsedNanos);
+        stats.latency.record(elapsedNanos);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        if (failed) {
+            stats.errors.increment();
+        }
+        boolean slow = elapsedNanos >= slowQueryThresholdMs * 1_000_000L;
+        String callSite = null;
+        if (slow || stats.ticks.getAndIncrement() % CALL_SITE_SAMPLE == 0) {
+            callSite = callSite();
+            stats.callSites.computeIfAbsent(callSite, k -> new LongAdder()).increment();
+        }
+        if (slow) {
+            slowQueries.increment();
+            Logger.warn(String.format("Slow query %d ms on %s: %s binds=%s at %s", elapsedNanos / 1_000_000, poolName,
+                    stats.shape, binds == null ? "[]" : Arrays.toString(binds), callSite));
+        }
+    }
+
+    private static String callSite() {
+        StringBuilder site = new StringBuilder();
+        int depth = 0;
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            if (isInfrastructure(frame.getClassName())) {
+                continue;
+            }
+            if (depth > 0) {
+                site.append(" < ");
+            }
+            String className = frame.getClassName();
+            site.append(className.substring(className.lastIndexOf('.') + 1)).append('.').append(frame.getMethodName())
+                    .append(':').append(frame.getLineNumber());
+            if (++depth == CALL_SITE_DEPTH) {
+                break;
+            }
+        }
+        return depth == 0 ? "(unknown)" : site.toString();
+    }
+
+    private static boolean isInfrastructure(String className) {
+        for (String prefix : INFRASTRUCTURE_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(QueryInstrumentation.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final String poolName;
+        private final LatencyHistogram holdTime;
+        private final long borrowedAt = System.nanoTime();
+        private boolean closed;
+
+        ConnectionHandler(Connection target, String poolName, LatencyHistogram holdTime) {
+            this.target = target;
+            this.poolName = poolName;
+            this.holdTime = holdTime;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && !closed) {
+                closed = true;
+                holdTime.record(System.nanoTime() - borrowedAt);
+            }
+            Object result = QueryInstrumentation.invoke(target, method, args);
+            if (result instanceof Statement && ("prepareStatement".equals(name) || "createStatement".equals(name))) {
+                StatementStats stats = "prepareStatement".equals(name) ? statsFor((String) args[0]) : null;
+                return proxy(method.getReturnType(), result, new StatementHandler((Statement) result, poolName, stats));
+            }
+            return result;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String poolName;
+        // Null for plain statements, whose SQL arrives with each execute call
+        private final StatementStats preparedStats;
+        private String[] binds;
+
+        StatementHandler(Statement target, String poolName, StatementStats preparedStats) {
+            this.target = target;
+            this.poolName = poolName;
+            this.preparedStats = preparedStats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                recordBind((Integer) args[0], "setNull".equals(name) || args[1] == null ? "null" : args[1].getClass().getSimpleName());
+            } else if ("clearParameters".equals(name)) {
+                binds = null;
+            }
+            Object result = QueryInstrumentation.invoke(target, method, args);
+            if ("getResultSet".equals(name) && result instanceof ResultSet && preparedStats != null) {
+                return countingResultSet((ResultSet) result, preparedStats);
+            }
+            return result;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            StatementStats stats = preparedStats;
+            if (stats == null && args != null && args.length > 0 && args[0] instanceof String) {
+                stats = statsFor((String) args[0]);
+            }
+            if (stats == null) {
+                return QueryInstrumentation.invoke(target, method, args);
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = QueryInstrumentation.invoke(target, method, args);
+            } catch (Throwable t) {
+                recordExecution(stats, poolName, System.nanoTime() - start, 0, true, binds);
+                throw t;
+            }
+            recordExecution(stats, poolName, System.nanoTime() - start, updatedRows(result), false, binds);
+            return result instanceof ResultSet ? countingResultSet((ResultSet) result, stats) : result;
+        }
+
+        // Only the type of each bind value is kept, for the slow-query log
+        private void recordBind(int index, String type) {
+            if (index < 1 || index > 1024) {
+                return;
+            }
+            if (binds == null || binds.length < index) {
+                binds = binds == null ? new String[index] : Arrays.copyOf(binds, index);
+            }
+            binds[index - 1] = type;
+        }
+    }
+
+    private static long updatedRows(Object result) {
+        if (result instanceof Integer) {
+            return Math.max((Integer) result, 0);
+        }
+        if (result instanceof Long) {
+            return Math.max((Long) result, 0);
+        }
+        if (result instanceof int[]) {
+            long rows = 0;
+            for (int count : (int[]) result) {
+                rows += Math.max(count, 0);
+            }
+            return rows;
+        }
+        if (result instanceof long[]) {
+            long rows = 0;
+            for (long count : (long[]) result) {
+                rows += Math.max(count, 0);
+            }
+            return rows;
+        }
+        return 0;
+    }
+
+    // Rows are counted as they are read, so result sets left to the connection to close still count
+    private static ResultSet countingResultSet(ResultSet target, StatementStats stats) {
+        return proxy(ResultSet.class, target, (proxy, method, args) -> {
+            Object result = invoke(target, method, args);
+            if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                stats.rows.increment();
+            }
+            return result;
+        });
+    }
+
+    private static final class StatementStats {
+        final String shape;
+        final LongAdder executions = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicInteger ticks = new AtomicInteger();
+        final Map<String, LongAdder> callSites = new ConcurrentHashMap<>();
+
+        StatementStats(String shape) {
+            this.shape = shape;
+        }
+
+        String summary() {
+            long count = executions.sum();
+            long[] histogram = latency.snapshot();
+            return String.format("count=%d total=%.1fms mean=%dus p50<=%dus p99<=%dus max=%dus rows=%d errors=%d  %s",
+                    count, totalNanos.sum() / 1e6, count == 0 ? 0 : totalNanos.sum() / count / 1000,
+                    LatencyHistogram.percentileMicros(histogram, 50), LatencyHistogram.percentileMicros(histogram, 99),
+                    maxNanos.get() / 1000, rows.sum(), errors.sum(), shape);
+        }
+    }
+}
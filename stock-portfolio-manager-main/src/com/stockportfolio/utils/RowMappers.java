@@ -0,0 +1,185 @@
+package com.stockportfolio.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import com.stockportfolio.model.CorporateAction;
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.PortfolioValueSnapshot;
+import com.stockportfolio.model.Position;
+import com.stockportfolio.model.Stock;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.model.User;
+
+/**
+ * Column projections and the row mappers that read them.
+ *
+ * Each projection names its columns explicitly, so a query built from it always returns
+ * the same shape and the mapper reads by fixed column index: no SELECT *, no per-row
+ * column-name lookups and no columns the caller does not use.
+ */
+public final class RowMappers {
+
+    public static final class Projection<T> {
+        private final String columns;
+        private final RowMapper<T> mapper;
+
+        Projection(String columns, RowMapper<T> mapper) {
+            this.columns = columns;
+            this.mapper = mapper;
+        }
+
+        public String columns() { return columns; }
+        public RowMapper<T> mapper() { return mapper; }
+
+        public String selectFrom(String table) {
+            return "SELECT " + columns + " FROM " + table;
+        }
+    }
+
+    // Login and account fields only; profile text (bio, website, ...) is loaded by USER_PROFILE
+    public static final Projection<User> USER = new Projection<>(
+            "id, username, email, hashed_password, salt, created_at, last_login, is_active, role, " +
+            "experience_points, level, trading_streak, total_pnl, trades_count, failed_login_attempts, account_locked_until",
+            rs -> readUser(rs, new User()));
+
+    public static final Projection<User> USER_PROFILE = new Projection<>(
+            USER.columns() + ", avatar_path, bio, location, website",
+            rs -> {
+                User user = readUser(rs, new User());
+                user.setAvatarPath(rs.getString(17));
+                user.setBio(rs.getString(18));
+                user.setLocation(rs.getString(19));
+                user.setWebsite(rs.getString(20));
+                return user;
+            });
+
+    public static final Projection<Portfolio> PORTFOLIO = new Projection<>(
+            "id, user_id, name, description, created_at, updated_at, total_value, total_cost_basis, version",
+            rs -> {
+                Portfolio portfolio = new Portfolio();
+                portfolio.setId(rs.getInt(1));
+                portfolio.setUserId(rs.getInt(2));
+                portfolio.setName(rs.getString(3));
+                portfolio.setDescription(rs.getString(4));
+                portfolio.setCreatedAt(rs.getTimestamp(5).toLocalDateTime());
+                portfolio.setUpdatedAt(rs.getTimestamp(6).toLocalDateTime());
+                portfolio.setTotalValue(rs.getDouble(7));
+                portfolio.setTotalCostBasis(rs.getDouble(8));
+                portfolio.setVersion(rs.getLong(9));
+                return portfolio;
+            });
+
+    public static final Projection<Position> POSITION = new Projection<>(
+            "id, portfolio_id, symbol, asset_type, quantity, average_cost, current_price, total_value, last_updated, version",
+            rs -> {
+                Position position = new Position();
+                position.setId(rs.getInt(1));
+                position.setPortfolioId(rs.getInt(2));
+                position.setSymbol(rs.getString(3));
+                position.setAssetType(rs.getString(4));
+                position.setQuantity(rs.getDouble(5));
+                position.setAverageCost(rs.getDouble(6));
+                position.setCurrentPrice(rs.getDouble(7));
+                position.setTotalValue(rs.getDouble(8));
+                position.setLastUpdated(rs.getTimestamp(9).toLocalDateTime());
+                position.setVersion(rs.getLong(10));
+                return position;
+            });
+
+    public static final Projection<Transaction> TRANSACTION = new Projection<>(
+            "id, user_id, portfolio_id, symbol, type, quantity, price, total_amount, order_type, timestamp, status",
+            rs -> {
+                Transaction transaction = new Transaction();
+                transaction.setId(rs.getInt(1));
+                transaction.setUserId(rs.getInt(2));
+                transaction.setPortfolioId(rs.getInt(3));
+                transaction.setSymbol(rs.getString(4));
+                transaction.setType(rs.getString(5));
+                transaction.setQuantity(rs.getDouble(6));
+                transaction.setPrice(rs.getDouble(7));
+                transaction.setTotalAmount(rs.getDouble(8));
+                transaction.setOrderType(rs.getString(9));
+                transaction.setTimestamp(rs.getTimestamp(10).toLocalDateTime());
+                transaction.setStatus(rs.getString(11));
+                return transaction;
+            });
+
+    public static final Projection<Stock> STOCK = new Projection<>(
+            "id, symbol, name, exchange, sector, current_price, previous_close, change_value, change_percent, " +
+            "volume, market_cap, last_updated",
+            rs -> {
+                Stock stock = new Stock();
+                stock.setId(rs.getInt(1));
+                stock.setSymbol(rs.getString(2));
+                stock.setName(rs.getString(3));
+                stock.setExchange(rs.getString(4));
+                stock.setSector(rs.getString(5));
+                stock.setCurrentPrice(rs.getDouble(6));
+                stock.setPreviousClose(rs.getDouble(7));
+                stock.setChange(rs.getDouble(8));
+                stock.setChangePercent(rs.getDouble(9));
+                stock.setVolume(rs.getLong(10));
+                stock.setMarketCap(rs.getLong(11));
+                stock.setLastUpdated(rs.getTimestamp(12).toLocalDateTime());
+                return stock;
+            });
+
+    public static final Projection<CorporateAction> CORPORATE_ACTION = new Projection<>(
+            "id, symbol, action_type, ex_date, ratio, amount, price_factor",
+            rs -> {
+                CorporateAction action = new CorporateAction();
+                action.setId(rs.getInt(1));
+                action.setSymbol(rs.getString(2));
+                action.setActionType(rs.getString(3));
+                action.setExDate(rs.getDate(4).toLocalDate());
+                action.setRatio(rs.getDouble(5));
+                action.setAmount(rs.getDouble(6));
+                action.setPriceFactor(rs.getDouble(7));
+                return action;
+            });
+
+    private RowMappers() {}
+
+    private static User readUser(ResultSet rs, User user) throws SQLException {
+        user.setId(rs.getInt(1));
+        user.setUsername(rs.getString(2));
+        user.setEmail(rs.getString(3));
+        user.setHashedPassword(rs.getString(4));
+        user.setSalt(rs.getString(5));
+        user.setCreatedAt(rs.getTimestamp(6).toLocalDateTime());
+        user.setLastLogin(toLocalDateTime(rs.getTimestamp(7)));
+        user.setActive(rs.getBoolean(8));
+        user.setRole(rs.getString(9));
+        user.setExperiencePoints(rs.getInt(10));
+        user.setLevel(rs.getInt(11));
+        user.setTradingStreak(rs.getInt(12));
+        user.setTotalPnL(rs.getDouble(13));
+        user.setTradesCount(rs.getInt(14));
+        user.setFailedLoginAttempts(rs.getInt(15));
+        user.setAccountLockedUntil(toLocalDateTime(rs.getTimestamp(16)));
+        return user;
+    }
+
+    public static final Projection<PortfolioValueSnapshot> PORTFOLIO_VALUE_SNAPSHOT = new Projection<>(
+            "portfolio_id, resolution, bucket_start, open_value, high_value, low_value, close_value, cost_basis, samples",
+            rs -> {
+                PortfolioValueSnapshot snapshot = new PortfolioValueSnapshot();
+                snapshot.setPortfolioId(rs.getInt(1));
+                snapshot.setResolution(rs.getString(2));
+                snapshot.setBucketStart(rs.getTimestamp(3).toLocalDateTime());
+                snapshot.setOpenValue(rs.getDouble(4));
+                snapshot.setHighValue(rs.getDouble(5));
+                snapshot.setLowValue(rs.getDouble(6));
+                snapshot.setCloseValue(rs.getDouble(7));
+                snapshot.setCostBasis(rs.getDouble(8));
+                snapshot.setSamples(rs.getInt(9));
+                return snapshot;
+            });
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
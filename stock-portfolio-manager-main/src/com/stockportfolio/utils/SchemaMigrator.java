@@ -0,0 +1,140 @@
+package com.stockportfolio.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Ordered schema migrations tracked in a schema_version table.
+ *
+ * Each migration runs once, in version order, and is recorded with its duration. When the
+ * database is already at the latest version, startup costs a single query.
+ */
+public class SchemaMigrator {
+
+    @FunctionalInterface
+    public interface MigrationStep {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    public static class Migration {
+        private final int version;
+        private final String description;
+        private final MigrationStep step;
+
+        public Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+
+        public int getVersion() { return version; }
+        public String getDescription() { return description; }
+    }
+
+    private final DataSource dataSource;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(DataSource dataSource, List<Migration> migrations) {
+        this.dataSource = dataSource;
+        List<Migration> sorted = new ArrayList<>(migrations);
+        sorted.sort(Comparator.comparingInt(Migration::getVersion));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).version == sorted.get(i - 1).version) {
+                throw new IllegalArgumentException("Duplicate migration version " + sorted.get(i).version);
+            }
+        }
+        this.migrations = Collections.unmodifiableList(sorted);
+    }
+
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+    }
+
+    /**
+     * Apply every migration newer than the recorded version.
+     *
+     * @return the number of migrations applied
+     */
+    public int migrate() throws SQLException {
+        long start = System.nanoTime();
+        int current;
+        try (Connection conn = dataSource.getConnection()) {
+            current = currentVersion(conn);
+        }
+
+        int applied = 0;
+        for (Migration migration : migrations) {
+            if (migration.version <= current) {
+                continue;
+            }
+            applyMigration(migration);
+            applied++;
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        if (applied == 0) {
+            System.out.println("Schema is current at version " + current + " (checked in " + elapsedMs + " ms)");
+        } else {
+            System.out.println("Applied " + applied + " schema migration(s) up to version " + getLatestVersion() +
+                    " in " + elapsedMs + " ms");
+        }
+        return applied;
+    }
+
+    public int currentVersion() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            return currentVersion(conn);
+        }
+    }
+
+    private int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INT PRIMARY KEY," +
+                    "description VARCHAR(200) NOT NULL," +
+                    "applied_at TIMESTAMP NOT NULL," +
+                    "duration_ms BIGINT NOT NULL" +
+                    ")");
+            try (ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void applyMigration(Migration migration) throws SQLException {
+        System.out.println("Applying schema migration " + migration.version + ": " + migration.description);
+        long start = System.nanoTime();
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                migration.step.apply(conn);
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at, duration_ms) VALUES (?, ?, ?, ?)")) {
+                    pstmt.setInt(1, migration.version);
+                    pstmt.setString(2, migration.description);
+                    pstmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+                    pstmt.setLong(4, (System.nanoTime() - start) / 1_000_000);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw new SQLException("Schema migration " + migration.version + " failed: " + e.getMessage(), e);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+}
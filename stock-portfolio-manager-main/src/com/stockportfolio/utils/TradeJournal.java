@@ -0,0 +1,427 @@
+package com.stockportfolio.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.stockportfolio.model.Transaction;
+
+/**
+ * Append-only, checksummed journal that makes trades durable before they reach H2.
+ *
+ * Callers append a trade and wait on the returned future. A single writer thread takes
+ * everything queued (under load, waiting up to {@value #GROUP_WINDOW_MICROS} µs for stragglers), writes
+ * it in one go and forces it to disk once, so concurrent trades share one fsync. Records are
+ * framed as length, CRC32 and payload; a torn tail from a crash fails its checksum and is
+ * cut off on recovery.
+ *
+ * A trade the database rejects gets a rejection record, so recovery does not replay it
+ * against positions that have since changed.
+ *
+ * The journal is split into segments. A segment is deleted once every trade in it has
+ * been applied to the database (or rejected) and the database has been checkpointed.
+ */
+public class TradeJournal {
+    private static final long GROUP_WINDOW_MICROS = 200;
+    private static final long SEGMENT_BYTES = 16L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "trades-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte KIND_TRADE = 0;
+    private static final byte KIND_REJECTED = 1;
+
+    /** Flushes the database so journal segments covering applied trades can be dropped. */
+    @FunctionalInterface
+    public interface Checkpoint {
+        void run() throws Exception;
+    }
+
+    public static final class JournalRecord {
+        private final long sequence;
+        private final Transaction transaction;
+
+        JournalRecord(long sequence, Transaction transaction) {
+            this.sequence = sequence;
+            this.transaction = transaction;
+        }
+
+        public long getSequence() { return sequence; }
+        public Transaction getTransaction() { return transaction; }
+    }
+
+    private static final class Pending {
+        final long sequence;
+        final boolean trade;
+        final byte[] frame;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Pending(long sequence, boolean trade, byte[] frame) {
+            this.sequence = sequence;
+            this.trade = trade;
+            this.frame = frame;
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final AtomicInteger unresolved = new AtomicInteger();
+        volatile boolean sealed;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+    }
+
+    private static final Pending STOP = new Pending(-1, false, new byte[0]);
+
+    private final Path directory;
+    private final Checkpoint checkpoint;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong nextSequence = new AtomicLong(1);
+    private final Map<Long, Segment> segments = new TreeMap<>();
+    private final Map<Long, Segment> unresolved = new ConcurrentHashMap<>();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private Segment current;
+    private FileChannel channel;
+    private Thread writer;
+    private volatile boolean running;
+
+    public TradeJournal(Path directory, Checkpoint checkpoint) {
+        this.directory = directory;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Read every intact record left by a previous run, oldest first. Call before
+     * {@link #start}; the records must be applied or rejected before starting.
+     */
+    public List<JournalRecord> recover() throws IOException {
+        Files.createDirectories(directory);
+        Map<Long, JournalRecord> recovered = new TreeMap<>();
+        for (Path path : segmentFiles().values()) {
+            long validBytes = 0;
+            try (InputStream in = Files.newInputStream(path);
+                 DataInputStream data = new DataInputStream(new java.io.BufferedInputStream(in))) {
+                while (true) {
+                    byte[] payload;
+                    try {
+                        int length = data.readInt();
+                        long checksum = data.readLong();
+                        if (length <= 0 || length > 1 << 20) {
+                            break;
+                        }
+                        payload = new byte[length];
+                        data.readFully(payload);
+                        if (crc(payload) != checksum) {
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    JournalRecord record = decode(payload);
+                    if (record.transaction != null) {
+                        recovered.put(record.sequence, record);
+                        nextSequence.set(Math.max(nextSequence.get(), record.sequence + 1));
+                    } else {
+                        recovered.remove(record.sequence);
+                    }
+                    validBytes += 12 + payload.length;
+                }
+            }
+            if (validBytes < Files.size(path)) {
+                System.err.println("Trade journal " + path.getFileName() + ": discarding " +
+                        (Files.size(path) - validBytes) + " bytes after the last intact record");
+            }
+        }
+        return new ArrayList<>(recovered.values());
+    }
+
+    /**
+     * Drop the recovered segments and start the writer. Sequences continue above both the
+     * journal's and {@code minNextSequence}.
+     */
+    public synchronized void start(long minNextSequence) throws IOException {
+        Files.createDirectories(directory);
+        for (Path path : segmentFiles().values()) {
+            Files.delete(path);
+        }
+        nextSequence.set(Math.max(nextSequence.get(), minNextSequence));
+        openSegment(nextSequence.get());
+        running = true;
+        writer = new Thread(this::writeLoop, "trade-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a trade; the future completes with its sequence number once it is on disk.
+     */
+    public CompletableFuture<Long> append(Transaction transaction) {
+        if (!running) {
+            return notRunning();
+        }
+        long sequence = nextSequence.getAndIncrement();
+        return enqueue(sequence, true, encode(sequence, transaction));
+    }
+
+    /**
+     * Record that the database rejected a journaled trade; the future completes once the
+     * record is on disk. The trade still needs {@link #resolve}.
+     */
+    public CompletableFuture<Long> reject(long sequence) {
+        if (!running) {
+            return notRunning();
+        }
+        return enqueue(sequence, false, encode(sequence, null));
+    }
+
+    private CompletableFuture<Long> enqueue(long sequence, boolean trade, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(12 + payload.length);
+        frame.putInt(payload.length).putLong(crc(payload)).put(payload);
+        Pending pending = new Pending(sequence, trade, frame.array());
+        queue.add(pending);
+        return pending.done;
+    }
+
+    private static CompletableFuture<Long> notRunning() {
+        CompletableFuture<Long> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Trade journal is not running"));
+        return failed;
+    }
+
+    /**
+     * Mark a journaled trade as applied to the database, or rejected by it.
+     */
+    public void resolve(long sequence) {
+        Segment segment = unresolved.remove(sequence);
+        if (segment != null) {
+            segment.unresolved.decrementAndGet();
+        }
+    }
+
+    public long getSyncCount() { return syncs.get(); }
+    public long getRecordCount() { return records.get(); }
+
+    /**
+     * Write what is queued, stop the writer and close the current segment.
+     */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Wake the writer with a marker rather than an interrupt, which would close the channel mid-sync
+        queue.add(STOP);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending late;
+        while ((late = queue.poll()) != null) {
+            late.done.completeExceptionally(new IllegalStateException("Trade journal is closed"));
+        }
+        try {
+            channel.close();
+            if (unresolved.isEmpty()) {
+                // Everything journaled reached the database; nothing is left to replay
+                checkpoint.run();
+                for (Segment segment : segments.values()) {
+                    Files.deleteIfExists(segment.path);
+                }
+                segments.clear();
+            }
+        } catch (Exception e) {
+            System.err.println("Error closing trade journal: " + e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stopping = false;
+        int lastBatchSize = 0;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                // Under concurrent load, give trades submitted a moment later the chance to share
+                // this sync; a lone submitter is not made to wait
+                if (lastBatchSize > 1) {
+                    Pending straggler = queue.poll(GROUP_WINDOW_MICROS, TimeUnit.MICROSECONDS);
+                    if (straggler != null) {
+                        batch.add(straggler);
+                        queue.drainTo(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+            }
+            stopping = batch.remove(STOP);
+            lastBatchSize = batch.size();
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        try {
+            int size = 0;
+            for (Pending pending : batch) {
+                size += pending.frame.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (Pending pending : batch) {
+                buffer.put(pending.frame);
+                if (pending.trade) {
+                    unresolved.put(pending.sequence, current);
+                    current.unresolved.incrementAndGet();
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            syncs.incrementAndGet();
+            records.addAndGet(batch.size());
+            for (Pending pending : batch) {
+                pending.done.complete(pending.sequence);
+            }
+            if (channel.size() >= SEGMENT_BYTES) {
+                rollSegment();
+            }
+        } catch (IOException e) {
+            for (Pending pending : batch) {
+                if (pending.trade) {
+                    resolve(pending.sequence);
+                }
+                pending.done.completeExceptionally(new UncheckedIOException("Trade journal write failed", e));
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        current.sealed = true;
+        channel.close();
+        openSegment(nextSequence.get());
+
+        boolean checkpointed = false;
+        Iterator<Segment> it = segments.values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            // Oldest first: a later segment may hold rejections of trades in an earlier one
+            if (!segment.sealed || segment.unresolved.get() > 0) {
+                break;
+            }
+            if (!checkpointed) {
+                try {
+                    checkpoint.run();
+                } catch (Exception e) {
+                    System.err.println("Trade journal checkpoint failed; keeping old segments: " + e.getMessage());
+                    return;
+                }
+                checkpointed = true;
+            }
+            Files.deleteIfExists(segment.path);
+            it.remove();
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%019d", firstSequence) + SEGMENT_SUFFIX);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        current = new Segment(path);
+        segments.put(firstSequence, current);
+    }
+
+    private Map<Long, Path> segmentFiles() throws IOException {
+        Map<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                files.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), path);
+            }
+        }
+        return files;
+    }
+
+    private static byte[] encode(long sequence, Transaction transaction) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(sequence);
+            out.writeByte(transaction != null ? KIND_TRADE : KIND_REJECTED);
+            if (transaction == null) {
+                return bytes.toByteArray();
+            }
+            out.writeInt(transaction.getUserId());
+            out.writeInt(transaction.getPortfolioId());
+            out.writeUTF(transaction.getSymbol());
+            out.writeUTF(transaction.getType());
+            out.writeDouble(transaction.getQuantity());
+            out.writeDouble(transaction.getPrice());
+            out.writeDouble(transaction.getTotalAmount());
+            out.writeUTF(transaction.getOrderType() != null ? transaction.getOrderType() : "MARKET");
+            LocalDateTime timestamp = transaction.getTimestamp() != null ? transaction.getTimestamp() : LocalDateTime.now();
+            out.writeLong(timestamp.toInstant(ZoneOffset.UTC).toEpochMilli());
+            out.writeUTF(transaction.getStatus() != null ? transaction.getStatus() : "COMPLETED");
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JournalRecord decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(payload));
+        long sequence = in.readLong();
+        if (in.readByte() == KIND_REJECTED) {
+            return new JournalRecord(sequence, null);
+        }
+        Transaction transaction = new Transaction();
+        transaction.setUserId(in.readInt());
+        transaction.setPortfolioId(in.readInt());
+        transaction.setSymbol(in.readUTF());
+        transaction.setType(in.readUTF());
+        transaction.setQuantity(in.readDouble());
+        transaction.setPrice(in.readDouble());
+        transaction.setTotalAmount(in.readDouble());
+        transaction.setOrderType(in.readUTF());
+        transaction.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneOffset.UTC));
+        transaction.setStatus(in.readUTF());
+        return new JournalRecord(sequence, transaction);
+    }
+
+    private static long crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,409 @@
+package com.stockportfolio.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import com.stockportfolio.model.Transaction;
+
+/**
+ * Moves closed transactions out of the live table into transactions_archive.
+ *
+ * Only whole calendar months older than the configured age are archived, and only
+ * trades that are no longer pending. Each archived month leaves one summary row per
+ * portfolio and symbol. The live table, and its indexes, then only hold recent history,
+ * so trading writes cost the same however much history accumulates.
+ */
+class TransactionArchiver {
+    static final int DEFAULT_AGE_DAYS = 365;
+    private static final int BATCH_SIZE = 1000;
+    private static final long INITIAL_DELAY_MINUTES = 1;
+    private static final long PERIOD_HOURS = 24;
+
+    // Stored columns of a transaction, starting with those RowMappers.TRANSACTION reads
+    static final String COLUMNS =
+            "id, user_id, portfolio_id, symbol, type, quantity, price, total_amount, order_type, timestamp, status, " +
+            "journal_seq, import_ref, import_batch";
+
+    private final DataSource dataSource;
+    private final int ageDays;
+    private final ScheduledExecutorService scheduler;
+    // Newest archived timestamp; null while the archive is empty
+    private volatile LocalDateTime horizon;
+
+    TransactionArchiver(DataSource dataSource, int ageDays) {
+        this.dataSource = dataSource;
+        this.ageDays = ageDays;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transaction-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Same columns as transactions; ids are kept, so there is no identity column
+            stmt.execute("CREATE TABLE IF NOT EXISTS transactions_archive (" +
+                    "id INT PRIMARY KEY," +
+                    "user_id INT NOT NULL," +
+                    "portfolio_id INT NOT NULL," +
+                    "symbol VARCHAR(10) NOT NULL," +
+                    "type VARCHAR(10) NOT NULL," +
+                    "quantity DOUBLE NOT NULL," +
+                    "price DOUBLE NOT NULL," +
+                    "total_amount DOUBLE NOT NULL," +
+                    "order_type VARCHAR(20)," +
+                    "timestamp TIMESTAMP NOT NULL," +
+                    "status VARCHAR(20)" +
+                    ")");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_archive_user ON transactions_archive(user_id, timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_archive_portfolio ON transactions_archive(portfolio_id, timestamp)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS transaction_summaries (" +
+                    "portfolio_id INT NOT NULL," +
+                    "symbol VARCHAR(10) NOT NULL," +
+                    "period_start DATE NOT NULL," +
+                    "user_id INT NOT NULL," +
+                    "buy_count INT NOT NULL," +
+                    "buy_quantity DOUBLE NOT NULL," +
+                    "buy_amount DOUBLE NOT NULL," +
+                    "sell_count INT NOT NULL," +
+                    "sell_quantity DOUBLE NOT NULL," +
+                    "sell_amount DOUBLE NOT NULL," +
+                    "PRIMARY KEY (portfolio_id, symbol, period_start)" +
+                    ")");
+        }
+    }
+
+    /**
+     * Fixed-point unit columns for the archive (derived, as on transactions) and exact
+     * BIGINT summary sums, from which the DOUBLE summary columns are now derived.
+     */
+    static void addUnitColumns(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String column : new String[] {"quantity", "price", "total_amount"}) {
+                stmt.execute("ALTER TABLE transactions_archive ADD COLUMN IF NOT EXISTS " + column + "_units BIGINT " +
+                        "GENERATED ALWAYS AS (CAST(ROUND(" + column + " * " + FixedPoint.SCALE + ") AS BIGINT))");
+            }
+            // H2 commits each ALTER on its own, so every step checks what an interrupted run already did
+            for (String column : new String[] {"buy_quantity", "buy_amount", "sell_quantity", "sell_amount"}) {
+                String generated = summaryColumnGenerated(conn, column.toUpperCase());
+                if ("ALWAYS".equals(generated)) {
+                    continue;
+                }
+                stmt.execute("ALTER TABLE transaction_summaries ADD COLUMN IF NOT EXISTS " + column + "_units BIGINT NOT NULL DEFAULT 0");
+                if (generated != null) {
+                    stmt.execute("UPDATE transaction_summaries SET " + column + "_units = CAST(ROUND(" + column + " * " +
+                            FixedPoint.SCALE + ") AS BIGINT)");
+                    stmt.execute("ALTER TABLE transaction_summaries DROP COLUMN IF EXISTS " + column);
+                }
+                stmt.execute("ALTER TABLE transaction_summaries ADD COLUMN IF NOT EXISTS " + column + " DOUBLE " +
+                        "GENERATED ALWAYS AS (CAST(" + column + "_units AS DOUBLE) / " + FixedPoint.SCALE + ")");
+            }
+        }
+    }
+
+    // IS_GENERATED of a transaction_summaries column ("ALWAYS" or "NEVER"), or null if it is missing
+    private static String summaryColumnGenerated(Connection conn, String column) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT IS_GENERATED FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = 'TRANSACTION_SUMMARIES' AND COLUMN_NAME = ?")) {
+            pstmt.setString(1, column);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * Load the archive horizon and schedule the archiving job.
+     */
+    void start() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(timestamp) FROM transactions_archive")) {
+            if (rs.next() && rs.getTimestamp(1) != null) {
+                horizon = rs.getTimestamp(1).toLocalDateTime();
+            }
+        }
+        scheduler.scheduleWithFixedDelay(this::archiveQuietly, INITIAL_DELAY_MINUTES * 60, PERIOD_HOURS * 3600, TimeUnit.SECONDS);
+    }
+
+    void stop() {
+        scheduler.shutdown();
+    }
+
+    LocalDateTime horizon() {
+        return horizon;
+    }
+
+    /**
+     * Start of the first month that is still live: everything before it is a closed period.
+     */
+    LocalDateTime cutoff(LocalDate today) {
+        return today.minusDays(ageDays).withDayOfMonth(1).atStartOfDay();
+    }
+
+    /**
+     * Archive closed transactions dated before {@code cutoff}, in batches of
+     * {@value #BATCH_SIZE} rows per database transaction.
+     *
+     * @return the number of transactions moved
+     */
+    int archive(LocalDateTime cutoff) throws SQLException {
+        int moved = 0;
+        int batch;
+        do {
+            batch = archiveBatch(cutoff);
+            moved += batch;
+        } while (batch == BATCH_SIZE);
+        return moved;
+    }
+
+    private int archiveBatch(LocalDateTime cutoff) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<Transaction> rows = new ArrayList<>();
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT " + COLUMNS + " FROM transactions " +
+                        "WHERE timestamp < ? AND status <> 'PENDING' ORDER BY id LIMIT ? FOR UPDATE")) {
+                    pstmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+                    pstmt.setInt(2, BATCH_SIZE);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        RowMapper<Transaction> mapper = RowMappers.TRANSACTION.mapper();
+                        while (rs.next()) {
+                            rows.add(mapper.mapRow(rs));
+                        }
+                    }
+                }
+                if (rows.isEmpty()) {
+                    conn.commit();
+                    return 0;
+                }
+
+                // Copied row for row inside the database, so every stored column moves with it
+                try (PreparedStatement insert = conn.prepareStatement(
+                        "INSERT INTO transactions_archive (" + COLUMNS + ") SELECT " + COLUMNS + " FROM transactions WHERE id = ?");
+                     PreparedStatement delete = conn.prepareStatement("DELETE FROM transactions WHERE id = ?")) {
+                    for (Transaction row : rows) {
+                        insert.setInt(1, row.getId());
+                        insert.addBatch();
+                        delete.setInt(1, row.getId());
+                        delete.addBatch();
+                    }
+                    insert.executeBatch();
+                    delete.executeBatch();
+                }
+                addToSummaries(conn, rows, 1);
+                conn.commit();
+
+                for (Transaction row : rows) {
+                    if (horizon == null || row.getTimestamp().isAfter(horizon)) {
+                        horizon = row.getTimestamp();
+                    }
+                }
+                return rows.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Change the status of an archived transaction, keeping its month's summary in step.
+     */
+    boolean updateArchivedStatus(int id, String status) throws SQLException {
+        return changeArchived(id, status);
+    }
+
+    /**
+     * Remove an archived transaction and its contribution to the month's summary.
+     */
+    boolean deleteArchived(int id) throws SQLException {
+        return changeArchived(id, null);
+    }
+
+    /**
+     * Remove the archived trades of an import batch and their contribution to the monthly
+     * summaries, on the caller's transaction.
+     *
+     * @return the number of trades removed
+     */
+    int deleteArchivedBatch(Connection conn, String importBatch) throws SQLException {
+        List<Transaction> rows = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT " + COLUMNS + " FROM transactions_archive WHERE import_batch = ? FOR UPDATE")) {
+            pstmt.setString(1, importBatch);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                RowMapper<Transaction> mapper = RowMappers.TRANSACTION.mapper();
+                while (rs.next()) {
+                    rows.add(mapper.mapRow(rs));
+                }
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        addToSummaries(conn, rows, -1);
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM transactions_archive WHERE import_batch = ?")) {
+            pstmt.setString(1, importBatch);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // A null status deletes the row
+    private boolean changeArchived(int id, String status) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Transaction row = null;
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT " + COLUMNS + " FROM transactions_archive WHERE id = ? FOR UPDATE")) {
+                    pstmt.setInt(1, id);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            row = RowMappers.TRANSACTION.mapper().mapRow(rs);
+                        }
+                    }
+                }
+                if (row == null) {
+                    conn.commit();
+                    return false;
+                }
+
+                List<Transaction> rows = new ArrayList<>();
+                rows.add(row);
+                addToSummaries(conn, rows, -1);
+                if (status == null) {
+                    try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM transactions_archive WHERE id = ?")) {
+                        pstmt.setInt(1, id);
+                        pstmt.executeUpdate();
+                    }
+                } else {
+                    try (PreparedStatement pstmt = conn.prepareStatement("UPDATE transactions_archive SET status = ? WHERE id = ?")) {
+                        pstmt.setString(1, status);
+                        pstmt.setInt(2, id);
+                        pstmt.executeUpdate();
+                    }
+                    row.setStatus(status);
+                    addToSummaries(conn, rows, 1);
+                }
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // One month's change to a summary row, in exact fixed-point units
+    private static final class SummaryDelta {
+        final int userId;
+        final int portfolioId;
+        final String symbol;
+        final LocalDate periodStart;
+        int buyCount;
+        long buyQuantity;
+        long buyAmount;
+        int sellCount;
+        long sellQuantity;
+        long sellAmount;
+
+        SummaryDelta(int userId, int portfolioId, String symbol, LocalDate periodStart) {
+            this.userId = userId;
+            this.portfolioId = portfolioId;
+            this.symbol = symbol;
+            this.periodStart = periodStart;
+        }
+    }
+
+    // Fold completed trades into their month's summary rows; sign -1 takes them out again
+    private void addToSummaries(Connection conn, List<Transaction> rows, int sign) throws SQLException {
+        Map<String, SummaryDelta> deltas = new LinkedHashMap<>();
+        for (Transaction row : rows) {
+            if (!"COMPLETED".equals(row.getStatus())) {
+                continue;
+            }
+            LocalDate period = row.getTimestamp().toLocalDate().withDayOfMonth(1);
+            String key = row.getPortfolioId() + "|" + row.getSymbol() + "|" + period;
+            SummaryDelta summary = deltas.computeIfAbsent(key,
+                    k -> new SummaryDelta(row.getUserId(), row.getPortfolioId(), row.getSymbol(), period));
+            long quantity = sign * FixedPoint.toUnits(row.getQuantity());
+            long amount = sign * FixedPoint.toUnits(row.getTotalAmount());
+            if ("SELL".equals(row.getType())) {
+                summary.sellCount += sign;
+                summary.sellQuantity += quantity;
+                summary.sellAmount += amount;
+            } else {
+                summary.buyCount += sign;
+                summary.buyQuantity += quantity;
+                summary.buyAmount += amount;
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement("MERGE INTO transaction_summaries t " +
+                "USING (VALUES (CAST(? AS INT), CAST(? AS VARCHAR(10)), CAST(? AS DATE), CAST(? AS INT), CAST(? AS INT), " +
+                "CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS INT), CAST(? AS BIGINT), CAST(? AS BIGINT))) " +
+                "s(portfolio_id, symbol, period_start, user_id, buy_count, buy_quantity_units, buy_amount_units, sell_count, " +
+                "sell_quantity_units, sell_amount_units) " +
+                "ON t.portfolio_id = s.portfolio_id AND t.symbol = s.symbol AND t.period_start = s.period_start " +
+                "WHEN MATCHED THEN UPDATE SET buy_count = t.buy_count + s.buy_count, " +
+                "buy_quantity_units = t.buy_quantity_units + s.buy_quantity_units, " +
+                "buy_amount_units = t.buy_amount_units + s.buy_amount_units, " +
+                "sell_count = t.sell_count + s.sell_count, " +
+                "sell_quantity_units = t.sell_quantity_units + s.sell_quantity_units, " +
+                "sell_amount_units = t.sell_amount_units + s.sell_amount_units " +
+                "WHEN NOT MATCHED THEN INSERT (portfolio_id, symbol, period_start, user_id, buy_count, buy_quantity_units, " +
+                "buy_amount_units, sell_count, sell_quantity_units, sell_amount_units) VALUES (s.portfolio_id, s.symbol, " +
+                "s.period_start, s.user_id, s.buy_count, s.buy_quantity_units, s.buy_amount_units, s.sell_count, " +
+                "s.sell_quantity_units, s.sell_amount_units)")) {
+            for (SummaryDelta summary : deltas.values()) {
+                pstmt.setInt(1, summary.portfolioId);
+                pstmt.setString(2, summary.symbol);
+                pstmt.setDate(3, java.sql.Date.valueOf(summary.periodStart));
+                pstmt.setInt(4, summary.userId);
+                pstmt.setInt(5, summary.buyCount);
+                pstmt.setLong(6, summary.buyQuantity);
+                pstmt.setLong(7, summary.buyAmount);
+                pstmt.setInt(8, summary.sellCount);
+                pstmt.setLong(9, summary.sellQuantity);
+                pstmt.setLong(10, summary.sellAmount);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void archiveQuietly() {
+        try {
+            long start = System.nanoTime();
+            int moved = archive(cutoff(LocalDate.now()));
+            if (moved > 0) {
+                System.out.println("Archived " + moved + " transactions in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        } catch (Exception e) {
+            System.err.println("Error archiving transactions: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.stockportfolio.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Position;
+import com.stockportfolio.model.User;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.repository.DataStores;
+import com.stockportfolio.services.ExportService;
+
+/**
+ * Wall-clock time of the analytics report for one user with many portfolios. Each
+ * portfolio's optimization takes about a second, so the time tracks portfolios divided by
+ * the analysis concurrency. The portfolio count is the first argument:
+ *
+ * STOCKPORTFOLIO_STORAGE=memory mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.AnalyticsExportBenchmark -Dexec.args=50
+ */
+public class AnalyticsExportBenchmark {
+    private static final String[] SYMBOLS = {"AAPL", "MSFT", "GOOGL", "AMZN", "NVDA"};
+
+    public static void main(String[] args) throws Exception {
+        int portfolios = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        DataStore store = DataStores.open();
+        Path file = Files.createTempFile("analytics", ".csv");
+        try {
+            User user = new User("bench-" + System.nanoTime(), "bench-" + System.nanoTime() + "@example.com", "x", "x");
+            store.saveUser(user);
+            for (int i = 0; i < portfolios; i++) {
+                Portfolio portfolio = new Portfolio(0, user.getId(), "analytics bench " + i);
+                store.savePortfolio(portfolio);
+                for (int j = 0; j < 3; j++) {
+                    store.savePosition(new Position(0, portfolio.getId(), SYMBOLS[(i + j) % SYMBOLS.length], 10 + j, 100 + i));
+                }
+            }
+
+            long began = System.nanoTime();
+            long rows = new ExportService(store).writeAnalyticsReport(user.getId(), file, null);
+            System.out.printf("%s: %d portfolios, %d rows in %.2f s on %d cores%n", store.getClass().getSimpleName(),
+                    portfolios, rows, (System.nanoTime() - began) / 1e9, Runtime.getRuntime().availableProcessors());
+        } finally {
+            Files.delete(file);
+            store.close();
+        }
+    }
+}
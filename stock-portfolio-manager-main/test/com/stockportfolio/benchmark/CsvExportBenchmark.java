@@ -0,0 +1,112 @@
+package com.stockportfolio.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.services.CsvWriter;
+import com.stockportfolio.utils.FixedPoint;
+
+/**
+ * Trade history rows per second through the previous String.format line writer and through
+ * {@link CsvWriter}, into a discarding sink and into a gzip file, from one reused transaction
+ * so only formatting and output are measured. The row count is the first argument:
+ *
+ * mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.CsvExportBenchmark -Dexec.args=10000000
+ */
+public class CsvExportBenchmark {
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Transaction transaction = new Transaction();
+        transaction.setSymbol("AAPL");
+        transaction.setType("BUY");
+        transaction.setPortfolioId(42);
+        transaction.setStatus("COMPLETED");
+        LocalDateTime start = LocalDateTime.of(2015, 1, 2, 9, 30);
+
+        for (int round = 0; round < 2; round++) {
+            long began = System.nanoTime();
+            try (BufferedWriter writer = new BufferedWriter(new DiscardingWriter())) {
+                for (int i = 0; i < rows; i++) {
+                    fill(transaction, start, i);
+                    writer.write(String.format("%s,%s,%s,%s,%.2f,%.2f,%d,%s\n",
+                        transaction.getTimestamp().toString(), transaction.getSymbol(), transaction.getType(),
+                        FixedPoint.format(FixedPoint.toUnits(transaction.getQuantity())), transaction.getPrice(),
+                        transaction.getTotalAmount(), transaction.getPortfolioId(), transaction.getStatus()));
+                }
+            }
+            report("String.format", rows, began);
+
+            began = System.nanoTime();
+            try (CsvWriter csv = new CsvWriter(new DiscardingWriter())) {
+                for (int i = 0; i < rows; i++) {
+                    fill(transaction, start, i);
+                    write(csv, transaction);
+                }
+            }
+            report("CsvWriter", rows, began);
+        }
+
+        Path file = Files.createTempFile("trade-history", ".csv.gz");
+        try {
+            long began = System.nanoTime();
+            try (CsvWriter csv = CsvWriter.open(file)) {
+                for (int i = 0; i < rows; i++) {
+                    fill(transaction, start, i);
+                    write(csv, transaction);
+                }
+            }
+            report("CsvWriter gzip", rows, began);
+            System.out.printf("gzip file %,d KB%n", Files.size(file) / 1024);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void fill(Transaction transaction, LocalDateTime start, int i) {
+        transaction.setTimestamp(start.plusMinutes(i));
+        transaction.setQuantity(1 + i % 50 + (i % 4) * 0.25);
+        transaction.setPrice(50 + (i % 10_000) / 100.0);
+        transaction.setTotalAmount(transaction.getQuantity() * transaction.getPrice());
+    }
+
+    private static void write(CsvWriter csv, Transaction transaction) throws IOException {
+        csv.timestamp(transaction.getTimestamp())
+           .text(transaction.getSymbol())
+           .text(transaction.getType())
+           .units(FixedPoint.toUnits(transaction.getQuantity()))
+           .decimal(transaction.getPrice(), 2)
+           .decimal(transaction.getTotalAmount(), 2)
+           .number(transaction.getPortfolioId())
+           .text(transaction.getStatus())
+           .endRow();
+    }
+
+    private static void report(String name, int rows, long began) {
+        double seconds = (System.nanoTime() - began) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%-16s %12.0f rows/s   heap in use %,d KB%n", name, rows / seconds,
+                (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+    }
+
+    private static final class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            // Discarded
+        }
+
+        @Override
+        public void flush() {
+            // Nothing buffered
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.stockportfolio.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.model.User;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.repository.DataStores;
+
+/**
+ * Trade-and-read operations per second against the store chosen by {@link DataStores#open()},
+ * one portfolio per thread. Run once per storage to separate service cost from storage cost:
+ *
+ * STOCKPORTFOLIO_STORAGE=memory mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.DataStoreBenchmark
+ * STOCKPORTFOLIO_DB_URL=jdbc:h2:mem:bench mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.DataStoreBenchmark
+ */
+public class DataStoreBenchmark {
+    private static final int OPS_PER_THREAD = 2_000;
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+    private static final String[] SYMBOLS = {"AAPL", "MSFT", "GOOGL", "AMZN", "NVDA"};
+
+    public static void main(String[] args) throws Exception {
+        DataStore store = DataStores.open();
+        try {
+            User user = new User("bench-" + System.nanoTime(), "bench@example.com", "x", "x");
+            store.saveUser(user);
+            run(store, user.getId(), 4);
+
+            System.out.printf("%s%n%-8s %12s%n", store.getClass().getSimpleName(), "threads", "ops/s");
+            for (int threads : THREAD_COUNTS) {
+                System.out.printf("%-8d %12.0f%n", threads, run(store, user.getId(), threads));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    // Each op is a buy or sell followed by reading the portfolio's positions back
+    private static double run(DataStore store, int userId, int threads) throws Exception {
+        List<Integer> portfolioIds = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Portfolio portfolio = new Portfolio(0, userId, "bench");
+            store.savePortfolio(portfolio);
+            portfolioIds.add(portfolio.getId());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> done = new ArrayList<>();
+            for (int portfolioId : portfolioIds) {
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        String symbol = SYMBOLS[i % SYMBOLS.length];
+                        boolean buy = (i / SYMBOLS.length) % 2 == 0;
+                        store.executeTradeTransaction(trade(userId, portfolioId, symbol, buy), s -> 1.0);
+                        store.getPositionsByPortfolioId(portfolioId);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+            return threads * OPS_PER_THREAD / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Transaction trade(int userId, int portfolioId, String symbol, boolean buy) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(userId);
+        transaction.setPortfolioId(portfolioId);
+        transaction.setSymbol(symbol);
+        transaction.setType(buy ? "BUY" : "SELL");
+        transaction.setQuantity(10);
+        transaction.setPrice(187.5);
+        transaction.setTotalAmount(1875.0);
+        transaction.setOrderType("MARKET");
+        transaction.setStatus("COMPLETED");
+        transaction.setTimestamp(LocalDateTime.now());
+        return transaction;
+    }
+}
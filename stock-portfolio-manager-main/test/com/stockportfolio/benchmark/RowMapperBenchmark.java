@@ -0,0 +1,218 @@
+package com.stockportfolio.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.stockportfolio.model.Position;
+import com.stockportfolio.model.User;
+import com.stockportfolio.utils.RowMapper;
+import com.stockportfolio.utils.RowMappers;
+
+/**
+ * Micro-benchmark of the old SELECT * / by-name mapping against the projected,
+ * index-based row mappers, on an in-memory H2 database with the application's schema.
+ *
+ * Run with: mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.RowMapperBenchmark
+ */
+public class RowMapperBenchmark {
+    private static final int PORTFOLIOS = 100;
+    private static final int POSITIONS_PER_PORTFOLIO = 200;
+    private static final int USERS = 2000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:rowmapper_bench;DB_CLOSE_DELAY=-1", "sa", "")) {
+            seed(conn);
+
+            RowMapper<Position> legacyPosition = RowMapperBenchmark::legacyPosition;
+            RowMapper<User> legacyUser = RowMapperBenchmark::legacyUser;
+
+            report("positions by portfolio", PORTFOLIOS * POSITIONS_PER_PORTFOLIO,
+                    () -> scanPositions(conn, "SELECT * FROM positions WHERE portfolio_id = ?", legacyPosition),
+                    () -> scanPositions(conn, RowMappers.POSITION.selectFrom("positions") + " WHERE portfolio_id = ?",
+                            RowMappers.POSITION.mapper()));
+
+            report("user by username", USERS,
+                    () -> scanUsers(conn, "SELECT * FROM users WHERE username = ?", legacyUser),
+                    () -> scanUsers(conn, RowMappers.USER.selectFrom("users") + " WHERE username = ?",
+                            RowMappers.USER.mapper()));
+        }
+    }
+
+    private interface Workload {
+        long run() throws SQLException;
+    }
+
+    private static void report(String name, int rowsPerRound, Workload legacy, Workload mapped) throws SQLException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            legacy.run();
+            mapped.run();
+        }
+        double[] legacyResult = measure(legacy);
+        double[] mappedResult = measure(mapped);
+        long rows = (long) rowsPerRound * MEASURED_ROUNDS;
+        System.out.println(name + ":");
+        System.out.printf("  SELECT * by name   %8.0f ns/row %8.0f B/row%n", legacyResult[0] / rows, legacyResult[1] / rows);
+        System.out.printf("  projected by index %8.0f ns/row %8.0f B/row%n", mappedResult[0] / rows, mappedResult[1] / rows);
+    }
+
+    // {elapsed nanos, allocated bytes} over the measured rounds
+    private static double[] measure(Workload workload) throws SQLException {
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            checksum += workload.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        if (checksum == 42) {
+            System.out.println(); // keep the results live
+        }
+        return new double[] {elapsed, bytes};
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long scanPositions(Connection conn, String sql, RowMapper<Position> mapper) throws SQLException {
+        long checksum = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int portfolioId = 1; portfolioId <= PORTFOLIOS; portfolioId++) {
+                pstmt.setInt(1, portfolioId);
+                List<Position> positions = new ArrayList<>();
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        positions.add(mapper.mapRow(rs));
+                    }
+                }
+                checksum += positions.size();
+            }
+        }
+        return checksum;
+    }
+
+    private static long scanUsers(Connection conn, String sql, RowMapper<User> mapper) throws SQLException {
+        long checksum = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < USERS; i++) {
+                pstmt.setString(1, "user" + i);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        checksum += mapper.mapRow(rs).getId();
+                    }
+                }
+            }
+        }
+        return checksum;
+    }
+
+    // The mapping code DatabaseManager used before the row mappers
+    private static Position legacyPosition(ResultSet rs) throws SQLException {
+        Position position = new Position();
+        position.setId(rs.getInt("id"));
+        position.setPortfolioId(rs.getInt("portfolio_id"));
+        position.setSymbol(rs.getString("symbol"));
+        position.setAssetType(rs.getString("asset_type"));
+        position.setQuantity(rs.getDouble("quantity"));
+        position.setAverageCost(rs.getDouble("average_cost"));
+        position.setCurrentPrice(rs.getDouble("current_price"));
+        position.setTotalValue(rs.getDouble("total_value"));
+        position.setLastUpdated(rs.getTimestamp("last_updated").toLocalDateTime());
+        return position;
+    }
+
+    private static User legacyUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getInt("id"));
+        user.setUsername(rs.getString("username"));
+        user.setEmail(rs.getString("email"));
+        user.setHashedPassword(rs.getString("hashed_password"));
+        user.setSalt(rs.getString("salt"));
+        user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        if (rs.getTimestamp("last_login") != null) {
+            user.setLastLogin(rs.getTimestamp("last_login").toLocalDateTime());
+        }
+        user.setActive(rs.getBoolean("is_active"));
+        user.setRole(rs.getString("role"));
+        user.setExperiencePoints(rs.getInt("experience_points"));
+        user.setLevel(rs.getInt("level"));
+        user.setTradingStreak(rs.getInt("trading_streak"));
+        user.setTotalPnL(rs.getDouble("total_pnl"));
+        user.setTradesCount(rs.getInt("trades_count"));
+        user.setFailedLoginAttempts(rs.getInt("failed_login_attempts"));
+        if (rs.getTimestamp("account_locked_until") != null) {
+            user.setAccountLockedUntil(rs.getTimestamp("account_locked_until").toLocalDateTime());
+        }
+        return user;
+    }
+
+    private static void seed(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(50) UNIQUE NOT NULL, " +
+                    "email VARCHAR(100) UNIQUE NOT NULL, hashed_password VARCHAR(256) NOT NULL, salt VARCHAR(64) NOT NULL, " +
+                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, last_login TIMESTAMP, is_active BOOLEAN DEFAULT TRUE, " +
+                    "role VARCHAR(20) DEFAULT 'basic', experience_points INT DEFAULT 0, level INT DEFAULT 1, " +
+                    "trading_streak INT DEFAULT 0, total_pnl DOUBLE DEFAULT 0.0, trades_count INT DEFAULT 0, " +
+                    "failed_login_attempts INT DEFAULT 0, account_locked_until TIMESTAMP, avatar_path VARCHAR(255), " +
+                    "bio TEXT, location VARCHAR(100), website VARCHAR(255))");
+            stmt.execute("CREATE TABLE positions (id INT AUTO_INCREMENT PRIMARY KEY, portfolio_id INT NOT NULL, " +
+                    "symbol VARCHAR(10) NOT NULL, asset_type VARCHAR(20) DEFAULT 'stock', quantity DOUBLE NOT NULL, " +
+                    "average_cost DOUBLE NOT NULL, current_price DOUBLE, total_value DOUBLE, " +
+                    "last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP, version BIGINT DEFAULT 0 NOT NULL)");
+            stmt.execute("CREATE INDEX idx_positions_portfolio_id ON positions(portfolio_id)");
+        }
+
+        StringBuilder bio = new StringBuilder();
+        while (bio.length() < 2000) {
+            bio.append("Long-term investor, mostly index funds and dividend growth. ");
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO users (username, email, hashed_password, salt, bio, website) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < USERS; i++) {
+                pstmt.setString(1, "user" + i);
+                pstmt.setString(2, "user" + i + "@example.com");
+                pstmt.setString(3, "5e884898da28047151d0e56f8dc6292773603d0d6aabbdd62a11ef721d1542d8");
+                pstmt.setString(4, "c2FsdHNhbHRzYWx0");
+                pstmt.setString(5, bio.toString());
+                pstmt.setString(6, "https://example.com/user" + i);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO positions (portfolio_id, symbol, quantity, average_cost, current_price, total_value, last_updated) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int portfolioId = 1; portfolioId <= PORTFOLIOS; portfolioId++) {
+                for (int i = 0; i < POSITIONS_PER_PORTFOLIO; i++) {
+                    pstmt.setInt(1, portfolioId);
+                    pstmt.setString(2, "SYM" + i);
+                    pstmt.setDouble(3, 10 + i);
+                    pstmt.setDouble(4, 100.0);
+                    pstmt.setDouble(5, 101.5);
+                    pstmt.setDouble(6, (10 + i) * 101.5);
+                    pstmt.setTimestamp(7, now);
+                    pstmt.addBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.stockportfolio.benchmark;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.model.User;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.repository.DataStores;
+import com.stockportfolio.services.ExportService;
+import com.stockportfolio.services.SnapshotImporter;
+import com.stockportfolio.services.StatementImporter;
+
+/**
+ * Size and speed of a columnar snapshot against the trade history CSV for the same book,
+ * both ways: export from the store and import into a fresh account. Each export runs a few
+ * times so the later rounds show steady state. The trade count is the first argument:
+ *
+ * STOCKPORTFOLIO_STORAGE=memory mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.SnapshotBenchmark -Dexec.args=1000000
+ */
+public class SnapshotBenchmark {
+    private static final String[] SYMBOLS = {"AAPL", "MSFT", "GOOGL", "AMZN", "NVDA", "META", "JPM", "XOM", "BRK.B", "V"};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int trades = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        DataStore store = DataStores.open();
+        Path csv = Files.createTempFile("trade-history", ".csv");
+        Path snapshot = Files.createTempFile("portfolio", ".spsnap");
+        try {
+            User user = newUser(store);
+            Portfolio portfolio = new Portfolio(0, user.getId(), "snapshot bench");
+            store.savePortfolio(portfolio);
+            LocalDateTime start = LocalDateTime.now().minusYears(10);
+            List<Transaction> chunk = new ArrayList<>();
+            for (int i = 0; i < trades; i++) {
+                Transaction transaction = new Transaction();
+                transaction.setUserId(user.getId());
+                transaction.setPortfolioId(portfolio.getId());
+                transaction.setSymbol(SYMBOLS[i % SYMBOLS.length]);
+                transaction.setType((i / SYMBOLS.length) % 3 == 2 ? "SELL" : "BUY");
+                transaction.setOrderType("MARKET");
+                transaction.setStatus("COMPLETED");
+                transaction.setQuantity(1 + i % 7);
+                transaction.setPrice(50 + (i % 1000) / 10.0);
+                transaction.setTotalAmount(transaction.getQuantity() * transaction.getPrice());
+                transaction.setTimestamp(start.plusMinutes(i));
+                chunk.add(transaction);
+                if (chunk.size() == 5_000 || i == trades - 1) {
+                    store.importTransactions(chunk, null);
+                    chunk.clear();
+                }
+            }
+            store.rebuildPositionsFromTransactions(portfolio.getId());
+
+            ExportService exports = new ExportService(store);
+            for (int round = 1; round <= ROUNDS; round++) {
+                long began = System.nanoTime();
+                exports.writeTradeHistory(user.getId(), csv, null);
+                double csvSeconds = (System.nanoTime() - began) / 1e9;
+                began = System.nanoTime();
+                exports.writeSnapshot(user.getId(), snapshot, null);
+                double snapshotSeconds = (System.nanoTime() - began) / 1e9;
+                System.out.printf("export round %d: CSV %.2f s, snapshot %.2f s%n", round, csvSeconds, snapshotSeconds);
+            }
+            System.out.printf("size: CSV %,d KB, snapshot %,d KB (%.1fx smaller)%n", Files.size(csv) / 1024,
+                    Files.size(snapshot) / 1024, (double) Files.size(csv) / Files.size(snapshot));
+
+            User csvUser = newUser(store);
+            Portfolio csvPortfolio = new Portfolio(0, csvUser.getId(), "csv import");
+            store.savePortfolio(csvPortfolio);
+            long began = System.nanoTime();
+            try (Reader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                new StatementImporter(store).importCsv(reader, csvUser.getId(), csvPortfolio.getId(), null);
+            }
+            double csvSeconds = (System.nanoTime() - began) / 1e9;
+            began = System.nanoTime();
+            SnapshotImporter.ImportResult result = new SnapshotImporter(store).importSnapshot(snapshot, newUser(store).getId(), null);
+            double snapshotSeconds = (System.nanoTime() - began) / 1e9;
+            System.out.printf("import: CSV %.2f s, snapshot %.2f s%n%s%n", csvSeconds, snapshotSeconds, result);
+        } finally {
+            Files.delete(csv);
+            Files.delete(snapshot);
+            store.close();
+        }
+    }
+
+    private static User newUser(DataStore store) throws Exception {
+        User user = new User("bench-" + System.nanoTime(), "bench-" + System.nanoTime() + "@example.com", "x", "x");
+        store.saveUser(user);
+        return user;
+    }
+}
@@ -0,0 +1,98 @@
+package com.stockportfolio.benchmark;
+
+import java.io.Reader;
+import java.time.LocalDateTime;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.User;
+import com.stockportfolio.repository.DataStore;
+import com.stockportfolio.repository.DataStores;
+import com.stockportfolio.services.StatementImporter;
+
+/**
+ * Rows per second of {@link StatementImporter} on a synthetic broker statement, generated
+ * as it is read so the file itself takes no memory. The row count is the first argument:
+ *
+ * STOCKPORTFOLIO_DB_URL=jdbc:h2:mem:bench mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.StatementImportBenchmark -Dexec.args=1000000
+ */
+public class StatementImportBenchmark {
+    private static final String[] SYMBOLS = {"AAPL", "MSFT", "GOOGL", "AMZN", "NVDA", "META", "JPM", "XOM", "BRK.B", "V"};
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        DataStore store = DataStores.open();
+        try {
+            User user = new User("bench-" + System.nanoTime(), "bench-" + System.nanoTime() + "@example.com", "x", "x");
+            store.saveUser(user);
+            Portfolio portfolio = new Portfolio(0, user.getId(), "import bench");
+            store.savePortfolio(portfolio);
+
+            long usedBefore = usedHeap();
+            StatementImporter.ImportResult result = new StatementImporter(store).importCsv(
+                    new StatementReader(rows), user.getId(), portfolio.getId(), progress -> {
+                        if (progress.getRowsImported() % 100_000 == 0) {
+                            System.out.printf("  %,d rows, %.0f rows/s%n", progress.getRowsRead(), progress.getRowsPerSecond());
+                        }
+                        return true;
+                    });
+            System.out.printf("%s%n%s%nheap growth %,d KB%n", store.getClass().getSimpleName(), result,
+                    (usedHeap() - usedBefore) / 1024);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Buys twice as often as it sells, oldest row first, with the odd dividend row
+    private static final class StatementReader extends Reader {
+        private final int rows;
+        private final LocalDateTime start = LocalDateTime.now().minusYears(10);
+        private final StringBuilder line = new StringBuilder("Trade Date,Symbol,Action,Quantity,Price,Amount\n");
+        private int row;
+        private int offset;
+
+        StatementReader(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            int copied = 0;
+            while (copied < len) {
+                if (offset == line.length()) {
+                    if (row == rows) {
+                        break;
+                    }
+                    nextLine();
+                }
+                int n = Math.min(len - copied, line.length() - offset);
+                line.getChars(offset, offset + n, buffer, off + copied);
+                offset += n;
+                copied += n;
+            }
+            return copied == 0 ? -1 : copied;
+        }
+
+        private void nextLine() {
+            line.setLength(0);
+            offset = 0;
+            String symbol = SYMBOLS[row % SYMBOLS.length];
+            String action = row % 97 == 0 ? "DIVIDEND" : (row / SYMBOLS.length) % 3 == 2 ? "SELL" : "BUY";
+            int quantity = 1 + row % 7;
+            double price = 50 + (row % 1000) / 10.0;
+            line.append(start.plusMinutes(row).toString().replace('T', ' ')).append(',')
+                    .append(symbol).append(',').append(action).append(',').append(quantity).append(',')
+                    .append(price).append(",\"").append(String.format("%,.2f", quantity * price)).append("\"\n");
+            row++;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
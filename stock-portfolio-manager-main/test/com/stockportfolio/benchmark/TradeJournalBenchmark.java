@@ -0,0 +1,108 @@
+package com.stockportfolio.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.utils.TradeJournal;
+
+/**
+ * Durable trades per second at increasing concurrency: the group-committing trade journal
+ * against forcing the file once per trade.
+ *
+ * Run with: mvn -q -Pbenchmarks test-compile exec:java -Dexec.mainClass=com.stockportfolio.benchmark.TradeJournalBenchmark
+ */
+public class TradeJournalBenchmark {
+    private static final int TRADES_PER_THREAD = 200;
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        // Warm both paths up so the first row is not dominated by class loading and JIT
+        syncPerTrade(4);
+        groupCommit(4);
+
+        System.out.printf("%-8s %16s %16s %14s%n", "threads", "fsync/trade t/s", "group t/s", "trades/sync");
+        for (int threads : THREAD_COUNTS) {
+            double perTrade = syncPerTrade(threads);
+            double[] grouped = groupCommit(threads);
+            System.out.printf("%-8d %16.0f %16.0f %14.1f%n", threads, perTrade, grouped[0], grouped[1]);
+        }
+    }
+
+    // {trades per second, trades per sync}
+    private static double[] groupCommit(int threads) throws Exception {
+        Path dir = Files.createTempDirectory("journal-bench");
+        TradeJournal journal = new TradeJournal(dir, () -> {});
+        journal.recover();
+        journal.start(1);
+        double rate = run(threads, () -> {
+            journal.resolve(journal.append(sampleTrade()).join());
+            return null;
+        });
+        journal.close();
+        Files.deleteIfExists(dir);
+        return new double[] {rate, (double) journal.getRecordCount() / journal.getSyncCount()};
+    }
+
+    private static double syncPerTrade(int threads) throws Exception {
+        Path file = Files.createTempFile("journal-bench", ".log");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            byte[] record = new byte[96];
+            return run(threads, () -> {
+                synchronized (channel) {
+                    channel.write(ByteBuffer.wrap(record));
+                    channel.force(false);
+                }
+                return null;
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static double run(int threads, java.util.concurrent.Callable<?> trade) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                        trade.call();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+            return threads * TRADES_PER_THREAD / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Transaction sampleTrade() {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(1);
+        transaction.setPortfolioId(1);
+        transaction.setSymbol("AAPL");
+        transaction.setType("BUY");
+        transaction.setQuantity(10);
+        transaction.setPrice(187.5);
+        transaction.setTotalAmount(1875.0);
+        transaction.setOrderType("MARKET");
+        transaction.setStatus("COMPLETED");
+        transaction.setTimestamp(LocalDateTime.now());
+        return transaction;
+    }
+}
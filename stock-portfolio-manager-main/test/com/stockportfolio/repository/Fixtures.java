@@ -0,0 +1,64 @@
+package com.stockportfolio.repository;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.model.User;
+
+/**
+ * Users, portfolios and trades the tests start from, saved through any {@link DataStore}.
+ */
+public final class Fixtures {
+    /** A saved user with one empty portfolio. */
+    public static final class Account {
+        public final int userId;
+        public final int portfolioId;
+
+        Account(int userId, int portfolioId) {
+            this.userId = userId;
+            this.portfolioId = portfolioId;
+        }
+
+        /** A completed market trade in this account's portfolio. */
+        public Transaction trade(String symbol, String type, double quantity, double price, LocalDateTime timestamp) {
+            return Fixtures.trade(userId, portfolioId, symbol, type, quantity, price, timestamp);
+        }
+    }
+
+    private Fixtures() {}
+
+    public static Account account(DataStore store, String username, String portfolioName) throws SQLException {
+        User user = user(store, username);
+        return new Account(user.getId(), portfolio(store, user.getId(), portfolioName).getId());
+    }
+
+    public static User user(DataStore store, String username) throws SQLException {
+        User user = new User(username, username + "@example.com", "hash", "salt");
+        store.saveUser(user);
+        return user;
+    }
+
+    public static Portfolio portfolio(DataStore store, int userId, String name) throws SQLException {
+        Portfolio portfolio = new Portfolio(0, userId, name);
+        store.savePortfolio(portfolio);
+        return portfolio;
+    }
+
+    public static Transaction trade(int userId, int portfolioId, String symbol, String type, double quantity,
+                                    double price, LocalDateTime timestamp) {
+        Transaction transaction = new Transaction();
+        transaction.setUserId(userId);
+        transaction.setPortfolioId(portfolioId);
+        transaction.setSymbol(symbol);
+        transaction.setType(type);
+        transaction.setQuantity(quantity);
+        transaction.setPrice(price);
+        transaction.setTotalAmount(quantity * price);
+        transaction.setOrderType("MARKET");
+        transaction.setStatus("COMPLETED");
+        transaction.setTimestamp(timestamp);
+        return transaction;
+    }
+}
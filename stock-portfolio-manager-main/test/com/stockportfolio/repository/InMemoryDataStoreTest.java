@@ -0,0 +1,173 @@
+package com.stockportfolio.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Position;
+import com.stockportfolio.model.Transaction;
+
+class InMemoryDataStoreTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 2, 10, 0);
+
+    private InMemoryDataStore store;
+    private int userId;
+    private int portfolioId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        store = new InMemoryDataStore();
+        Fixtures.Account account = Fixtures.account(store, "trader", "Growth");
+        userId = account.userId;
+        portfolioId = account.portfolioId;
+    }
+
+    @Test
+    void tradesMoveThePositionAndTotals() throws SQLException {
+        store.executeTradeTransaction(trade("BUY", 10, 100, START), s -> 1.0);
+        store.executeTradeTransaction(trade("SELL", 4, 110, START.plusDays(1)), s -> 1.0);
+
+        List<Position> positions = store.getPositionsByPortfolioId(portfolioId);
+        assertEquals(1, positions.size());
+        Position position = positions.get(0);
+        assertEquals(6, position.getQuantity(), 1e-9);
+        Portfolio portfolio = store.getPortfolioById(portfolioId);
+        assertEquals(position.getQuantity() * position.getAverageCost(), portfolio.getTotalCostBasis(), 1e-6);
+        assertEquals(position.getTotalValue(), portfolio.getTotalValue(), 1e-6);
+    }
+
+    @Test
+    void sellingMoreThanIsHeldIsRejected() throws SQLException {
+        store.executeTradeTransaction(trade("BUY", 5, 100, START), s -> 1.0);
+
+        assertThrows(SQLException.class,
+                () -> store.executeTradeTransaction(trade("SELL", 6, 100, START.plusDays(1)), s -> 1.0));
+        assertEquals(1, store.getTransactionsByPortfolioId(portfolioId).size());
+        assertEquals(5, store.getPositionsByPortfolioId(portfolioId).get(0).getQuantity(), 1e-9);
+    }
+
+    @Test
+    void staleUpdatesAreRejectedAndRetried() throws SQLException {
+        Portfolio first = store.getPortfolioById(portfolioId);
+        Portfolio second = store.getPortfolioById(portfolioId);
+        first.setName("Renamed");
+        store.updatePortfolio(first);
+
+        second.setDescription("Edited concurrently");
+        assertThrows(StaleUpdateException.class, () -> store.updatePortfolio(second));
+
+        store.updatePortfolioWithRetry(portfolioId, portfolio -> portfolio.setDescription("Edited concurrently"));
+        Portfolio stored = store.getPortfolioById(portfolioId);
+        assertEquals("Renamed", stored.getName());
+        assertEquals("Edited concurrently", stored.getDescription());
+    }
+
+    @Test
+    void reimportedTradesAreBookedOnce() throws SQLException {
+        List<Transaction> statement = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Transaction transaction = trade("BUY", 1, 50 + i, START.plusDays(i));
+            transaction.setImportRef("ref-" + i);
+            statement.add(transaction);
+        }
+
+        assertEquals(3, store.importTransactions(statement, "first"));
+        assertEquals(0, store.importTransactions(statement, "second"));
+        store.rebuildPositionsFromTransactions(portfolioId);
+
+        assertEquals(3, store.getTransactionsByPortfolioId(portfolioId).size());
+        assertEquals(3, store.getPositionsByPortfolioId(portfolioId).get(0).getQuantity(), 1e-9);
+    }
+
+    @Test
+    void historyComesBackNewestFirst() throws SQLException {
+        List<Transaction> trades = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            trades.add(trade("BUY", 1, 10, START.plusHours(i)));
+        }
+        Collections.shuffle(trades);
+        store.importTransactions(trades, null);
+
+        List<Transaction> history = store.getTransactionsByUserId(userId);
+        assertEquals(5, history.size());
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue(history.get(i - 1).getTimestamp().isAfter(history.get(i).getTimestamp()));
+        }
+    }
+
+    @Test
+    void priceTicksRevalueHoldings() throws SQLException {
+        store.executeTradeTransaction(trade("BUY", 10, 100, START), s -> 1.0);
+
+        store.queuePriceTicks(Collections.singletonMap("AAPL", 120.0));
+
+        Position position = store.getPositionsByPortfolioId(portfolioId).get(0);
+        assertEquals(120, position.getCurrentPrice(), 1e-9);
+        assertEquals(1200, position.getTotalValue(), 1e-9);
+        assertEquals(1200, store.getPortfolioById(portfolioId).getTotalValue(), 1e-9);
+    }
+
+    @Test
+    void priceTicksDoNotMakeEditsStale() throws SQLException {
+        store.executeTradeTransaction(trade("BUY", 10, 100, START), s -> 1.0);
+        Portfolio portfolio = store.getPortfolioById(portfolioId);
+        Position position = store.getPositionsByPortfolioId(portfolioId).get(0);
+
+        store.queuePriceTicks(Collections.singletonMap("AAPL", 120.0));
+
+        portfolio.setName("Renamed");
+        store.updatePortfolio(portfolio);
+        position.setQuantity(12);
+        store.updatePosition(position);
+        Position stored = store.getPositionById(position.getId());
+        assertEquals(120, stored.getCurrentPrice(), 1e-9);
+        assertEquals(1440, stored.getTotalValue(), 1e-9);
+        assertEquals(1440, store.getPortfolioById(portfolioId).getTotalValue(), 1e-9);
+    }
+
+    @Test
+    void aPositionRefilledSinceItWasReadIsNotDeleted() throws SQLException {
+        store.executeTradeTransaction(trade("BUY", 10, 100, START), s -> 1.0);
+        Position position = store.getPositionsByPortfolioId(portfolioId).get(0);
+        position.setQuantity(0);
+        store.updatePosition(position);
+
+        store.executeTradeTransaction(trade("BUY", 5, 100, START.plusDays(1)), s -> 1.0);
+        assertThrows(StaleUpdateException.class, () -> store.deletePosition(position.getId(), position.getVersion()));
+        store.deleteEmptyPositionWithRetry(position.getId());
+        assertEquals(5, store.getPositionById(position.getId()).getQuantity(), 1e-9);
+
+        Position refilled = store.getPositionById(position.getId());
+        refilled.setQuantity(0);
+        store.updatePosition(refilled);
+        store.deleteEmptyPositionWithRetry(position.getId());
+        assertTrue(store.getPositionsByPortfolioId(portfolioId).isEmpty());
+    }
+
+    @Test
+    void retryNeedsAtLeastOneAttempt() {
+        assertThrows(IllegalArgumentException.class, () -> OptimisticUpdates.retry(0,
+                () -> store.getPortfolioById(portfolioId), portfolio -> { }, store::updatePortfolio));
+    }
+
+    @Test
+    void deletingAPortfolioWithTradesIsRefused() throws SQLException {
+        store.executeTradeTransaction(trade("BUY", 1, 100, START), s -> 1.0);
+
+        assertThrows(SQLException.class, () -> store.deletePortfolio(portfolioId));
+    }
+
+    private Transaction trade(String type, double quantity, double price, LocalDateTime timestamp) {
+        return Fixtures.trade(userId, portfolioId, "AAPL", type, quantity, price, timestamp);
+    }
+}
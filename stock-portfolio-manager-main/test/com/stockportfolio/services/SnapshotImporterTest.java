@@ -0,0 +1,122 @@
+package com.stockportfolio.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.model.User;
+import com.stockportfolio.repository.Fixtures;
+import com.stockportfolio.repository.InMemoryDataStore;
+
+class SnapshotImporterTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 6, 1, 9, 30);
+
+    @TempDir
+    Path tempDir;
+
+    private InMemoryDataStore source;
+    private int userId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        source = new InMemoryDataStore();
+        userId = Fixtures.user(source, "exporter").getId();
+        for (String name : new String[] {"Income", "Growth"}) {
+            Portfolio portfolio = Fixtures.portfolio(source, userId, name);
+            List<Transaction> trades = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                trades.add(Fixtures.trade(userId, portfolio.getId(), i % 2 == 0 ? "KO" : "PEP", "BUY",
+                        1 + i % 3, 60.125 + i / 8.0, START.plusMinutes(i)));
+            }
+            source.importTransactions(trades, null);
+            source.rebuildPositionsFromTransactions(portfolio.getId());
+        }
+    }
+
+    @Test
+    void snapshotRoundTripsIntoAnotherStore() throws Exception {
+        Path file = tempDir.resolve("portfolios." + ColumnarFormat.FILE_EXTENSION);
+        new ExportService(source).writeSnapshot(userId, file, null);
+
+        InMemoryDataStore target = new InMemoryDataStore();
+        User user = Fixtures.user(target, "restorer");
+        SnapshotImporter.ImportResult result = new SnapshotImporter(target).importSnapshot(file, user.getId(), null);
+
+        assertEquals(2, result.getPortfolios());
+        assertEquals(500, result.getTransactions());
+        assertEquals(0, result.getRowsSkipped());
+        List<Portfolio> restored = target.getPortfoliosByUserId(user.getId());
+        assertEquals(2, restored.size());
+        for (Portfolio portfolio : restored) {
+            Portfolio original = source.getPortfoliosByUserId(userId).stream()
+                    .filter(p -> p.getName().equals(portfolio.getName())).findFirst().get();
+            assertEquals(original.getTotalCostBasis(), portfolio.getTotalCostBasis(), 1e-6);
+            assertEquals(250, target.getTransactionsByPortfolioId(portfolio.getId()).size());
+        }
+    }
+
+    @Test
+    void stoppingEarlyReportsACancelledImport() throws Exception {
+        Path file = tempDir.resolve("portfolios." + ColumnarFormat.FILE_EXTENSION);
+        new ExportService(source).writeSnapshot(userId, file, null);
+
+        InMemoryDataStore target = new InMemoryDataStore();
+        User user = Fixtures.user(target, "restorer");
+        // Stop once portfolios and positions are in, before the trades
+        AtomicInteger reports = new AtomicInteger();
+        SnapshotImporter.ImportResult result = new SnapshotImporter(target)
+                .importSnapshot(file, user.getId(), (imported, total) -> reports.incrementAndGet() < 2);
+
+        assertTrue(result.isCancelled());
+        assertTrue(target.getPortfoliosByUserId(user.getId()).isEmpty());
+    }
+
+    @Test
+    void stoppingAfterTheTradesRemovesThemToo() throws Exception {
+        Path file = tempDir.resolve("portfolios." + ColumnarFormat.FILE_EXTENSION);
+        new ExportService(source).writeSnapshot(userId, file, null);
+
+        InMemoryDataStore target = new InMemoryDataStore();
+        User user = Fixtures.user(target, "restorer");
+        // Portfolios, positions, then the one chunk of trades
+        AtomicInteger reports = new AtomicInteger();
+        SnapshotImporter.ImportResult result = new SnapshotImporter(target)
+                .importSnapshot(file, user.getId(), (imported, total) -> reports.incrementAndGet() < 3);
+
+        assertTrue(result.isCancelled());
+        assertEquals(500, result.getTransactions());
+        assertTrue(target.getPortfoliosByUserId(user.getId()).isEmpty());
+        assertTrue(target.getTransactionsByUserId(user.getId()).isEmpty());
+    }
+
+    @Test
+    void aFailedImportLeavesNothingBehind() throws Exception {
+        Path file = tempDir.resolve("portfolios." + ColumnarFormat.FILE_EXTENSION);
+        new ExportService(source).writeSnapshot(userId, file, null);
+
+        InMemoryDataStore target = new InMemoryDataStore() {
+            @Override
+            public int importTransactions(List<Transaction> batch, String importBatch) {
+                throw new IllegalStateException("disk full");
+            }
+        };
+        User user = Fixtures.user(target, "restorer");
+
+        assertThrows(IllegalStateException.class,
+                () -> new SnapshotImporter(target).importSnapshot(file, user.getId(), null));
+        assertTrue(target.getPortfoliosByUserId(user.getId()).isEmpty());
+    }
+}
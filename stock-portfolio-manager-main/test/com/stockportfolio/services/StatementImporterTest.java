@@ -0,0 +1,75 @@
+package com.stockportfolio.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.stockportfolio.model.Position;
+import com.stockportfolio.repository.Fixtures;
+import com.stockportfolio.repository.InMemoryDataStore;
+
+class StatementImporterTest {
+    private static final String STATEMENT =
+            "Trade Date,Ticker,Action,Qty,Price,Amount\n" +
+            "2024-01-02,AAPL,BOUGHT,10,150.00,\"1,500.00\"\n" +
+            "2024-01-03,MSFT,B,5,300.00,1500.00\n" +
+            "2024-01-04,AAPL,DIVIDEND,0,0,12.00\n" +
+            "2024-01-05,AAPL,S,4,160.00,640.00\n" +
+            "01/08/2024,MSFT,BUY,not-a-number,310.00,\n";
+
+    private InMemoryDataStore store;
+    private StatementImporter importer;
+    private int userId;
+    private int portfolioId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        store = new InMemoryDataStore();
+        Fixtures.Account account = Fixtures.account(store, "importer", "Broker");
+        userId = account.userId;
+        portfolioId = account.portfolioId;
+        importer = new StatementImporter(store);
+    }
+
+    @Test
+    void importsTradesAndRebuildsPositions() throws Exception {
+        StatementImporter.ImportResult result = importer.importCsv(new StringReader(STATEMENT), userId, portfolioId, null);
+
+        assertEquals(5, result.getRowsRead());
+        assertEquals(3, result.getRowsImported());
+        assertEquals(1, result.getRowsSkipped());
+        assertEquals(1, result.getRowsInvalid());
+        assertEquals(2, result.getPositions());
+
+        List<Position> positions = store.getPositionsByPortfolioId(portfolioId);
+        double aapl = 0;
+        for (Position position : positions) {
+            if ("AAPL".equals(position.getSymbol())) {
+                aapl = position.getQuantity();
+            }
+        }
+        assertEquals(6, aapl, 1e-9);
+    }
+
+    @Test
+    void importingTheSameStatementAgainBooksNothing() throws Exception {
+        importer.importCsv(new StringReader(STATEMENT), userId, portfolioId, null);
+        StatementImporter.ImportResult again = importer.importCsv(new StringReader(STATEMENT), userId, portfolioId, null);
+
+        assertEquals(0, again.getRowsImported());
+        assertEquals(3, again.getRowsDuplicate());
+        assertEquals(3, store.getTransactionsByPortfolioId(portfolioId).size());
+    }
+
+    @Test
+    void anotherUsersPortfolioIsRefused() {
+        assertThrows(SQLException.class,
+                () -> importer.importCsv(new StringReader(STATEMENT), userId + 1, portfolioId, null));
+    }
+}
@@ -0,0 +1,53 @@
+package com.stockportfolio.services.analytics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.stockportfolio.model.PortfolioValueSnapshot;
+
+class AIAnalyticsTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 16, 0);
+    private static final double[] DAILY_CLOSES = {1000, 1010, 995, 1020, 1005, 1030, 1040, 1025};
+
+    private final AIAnalytics analytics = new AIAnalytics();
+
+    @Test
+    void volatilityIgnoresIntradayBuckets() {
+        List<PortfolioValueSnapshot> daily = new ArrayList<>();
+        for (int i = 0; i < DAILY_CLOSES.length; i++) {
+            daily.add(snapshot("DAY", START.plusDays(i), DAILY_CLOSES[i]));
+        }
+
+        // Same closes, but the last two days arrive as hour and minute buckets as range() returns them
+        List<PortfolioValueSnapshot> mixed = new ArrayList<>(daily.subList(0, DAILY_CLOSES.length - 2));
+        LocalDateTime hourDay = START.plusDays(DAILY_CLOSES.length - 2).withHour(10);
+        for (int h = 0; h <= 6; h++) {
+            double value = h == 6 ? DAILY_CLOSES[DAILY_CLOSES.length - 2] : 990 + h * 7;
+            mixed.add(snapshot("HOUR", hourDay.plusHours(h), value));
+        }
+        LocalDateTime minuteDay = START.plusDays(DAILY_CLOSES.length - 1).withHour(15);
+        for (int m = 0; m <= 60; m++) {
+            double value = m == 60 ? DAILY_CLOSES[DAILY_CLOSES.length - 1] : 1030 + (m % 2 == 0 ? 3 : -3);
+            mixed.add(snapshot("MINUTE", minuteDay.plusMinutes(m), value));
+        }
+
+        double expected = analytics.analyzePerformance(daily).getVolatility();
+        assertEquals(expected, analytics.analyzePerformance(mixed).getVolatility(), 1e-12);
+        assertEquals(analytics.analyzePerformance(daily).getTotalReturn(),
+                analytics.analyzePerformance(mixed).getTotalReturn(), 1e-12);
+    }
+
+    private static PortfolioValueSnapshot snapshot(String resolution, LocalDateTime bucketStart, double close) {
+        PortfolioValueSnapshot snapshot = new PortfolioValueSnapshot();
+        snapshot.setResolution(resolution);
+        snapshot.setBucketStart(bucketStart);
+        snapshot.setCloseValue(close);
+        snapshot.setCostBasis(1000);
+        return snapshot;
+    }
+}
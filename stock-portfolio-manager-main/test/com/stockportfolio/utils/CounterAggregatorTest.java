@@ -0,0 +1,85 @@
+package com.stockportfolio.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CounterAggregatorTest {
+    private DataSource dataSource;
+    private CounterAggregator counters;
+    // What readers would add to the stored views while a flush holds its connection
+    private volatile long pendingDuringWrite = -1;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:counters;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, method, args) -> {
+                    if (counters != null && "getConnection".equals(method.getName())) {
+                        pendingDuringWrite = counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, 1);
+                    }
+                    return method.invoke(h2, args);
+                });
+        execute("CREATE TABLE shared_portfolios (id INT PRIMARY KEY, views INT NOT NULL, likes INT NOT NULL)");
+        execute("INSERT INTO shared_portfolios VALUES (1, 10, 0)");
+        counters = new CounterAggregator(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        counters.drain();
+        execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void aDeltaBeingWrittenIsNoLongerPending() throws SQLException {
+        counters.add(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, 1, 5);
+        counters.flush();
+
+        assertEquals(0, pendingDuringWrite);
+        assertEquals(0, counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, 1));
+        assertEquals(15, views());
+    }
+
+    @Test
+    void aFailedFlushPutsItsDeltasBack() throws SQLException {
+        execute("ALTER TABLE shared_portfolios RENAME TO shared_portfolios_moved");
+        counters.add(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, 1, 3);
+
+        assertThrows(SQLException.class, () -> counters.flush());
+        assertEquals(3, counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, 1));
+
+        execute("ALTER TABLE shared_portfolios_moved RENAME TO shared_portfolios");
+        counters.flush();
+        assertEquals(0, counters.pending(CounterAggregator.Counter.SHARED_PORTFOLIO_VIEWS, 1));
+        assertEquals(13, views());
+    }
+
+    private long views() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT views FROM shared_portfolios WHERE id = 1")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.stockportfolio.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.stockportfolio.model.Portfolio;
+import com.stockportfolio.model.Position;
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.model.TransactionSummary;
+import com.stockportfolio.repository.Fixtures;
+import com.stockportfolio.repository.StaleUpdateException;
+
+/**
+ * DatabaseManager over JDBC, against the in-memory H2 database the build points
+ * STOCKPORTFOLIO_DB_URL at. The database outlives a manager, so a test can restart one.
+ */
+class DatabaseManagerTest {
+    private static final Path JOURNAL = Paths.get("data", "journal");
+    private static final AtomicInteger ACCOUNTS = new AtomicInteger();
+
+    private static DatabaseManager db;
+    private Fixtures.Account account;
+
+    @BeforeAll
+    static void open() throws Exception {
+        // Segments left by an earlier run would be replayed into this run's fresh database
+        if (Files.exists(JOURNAL)) {
+            try (Stream<Path> files = Files.walk(JOURNAL)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+        db = DatabaseManager.getInstance();
+    }
+
+    @AfterAll
+    static void close() throws SQLException {
+        db.close();
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        account = Fixtures.account(db, "jdbc-" + ACCOUNTS.incrementAndGet(), "Ledger");
+    }
+
+    @Test
+    void journaledTradesThatNeverCommittedAreReplayedOnce() throws Exception {
+        LocalDateTime at = LocalDateTime.now().minusHours(1);
+        db.executeTradeTransaction(account.trade("AAPL", "BUY", 10, 100, at), symbol -> 1.0);
+        assertThrows(SQLException.class,
+                () -> db.executeTradeTransaction(account.trade("AAPL", "SELL", 50, 100, at.plusMinutes(1)), symbol -> 1.0));
+        db.close();
+
+        // A crash after the journal write but before the commit
+        TradeJournal journal = new TradeJournal(JOURNAL, () -> { });
+        journal.recover();
+        journal.start(1_000_000);
+        journal.append(account.trade("AAPL", "BUY", 5, 110, at.plusMinutes(2))).join();
+        journal.close();
+
+        db = DatabaseManager.getInstance();
+        assertEquals(15, onlyPosition(account.portfolioId).getQuantity(), 1e-9);
+        assertEquals(2, db.getTransactionsByPortfolioId(account.portfolioId).size());
+
+        db.close();
+        db = DatabaseManager.getInstance();
+        assertEquals(15, onlyPosition(account.portfolioId).getQuantity(), 1e-9);
+        assertEquals(2, db.getTransactionsByPortfolioId(account.portfolioId).size());
+    }
+
+    @Test
+    void archivedAndLiveTradesPageAsOneHistory() throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        List<Transaction> trades = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            trades.add(account.trade("MSFT", "BUY", 1, 300, now.minusYears(3).plusDays(i * 10)));
+            trades.add(account.trade("MSFT", "BUY", 1, 310, now.minusDays(20 - i)));
+        }
+        db.importTransactions(trades, null);
+
+        assertTrue(db.archiveTransactions() >= 20);
+        assertEquals(20, count("SELECT COUNT(*) FROM transactions_archive WHERE portfolio_id = ?", account.portfolioId));
+
+        List<Integer> paged = new ArrayList<>();
+        Transaction after = null;
+        List<Transaction> page;
+        do {
+            page = db.getTransactionsPageByPortfolioId(account.portfolioId, after, 7);
+            for (Transaction transaction : page) {
+                paged.add(transaction.getId());
+            }
+            after = page.isEmpty() ? null : page.get(page.size() - 1);
+        } while (page.size() == 7);
+
+        List<Integer> all = new ArrayList<>();
+        for (Transaction transaction : db.getTransactionsByPortfolioId(account.portfolioId)) {
+            all.add(transaction.getId());
+        }
+        assertEquals(40, all.size());
+        assertEquals(all, paged);
+    }
+
+    @Test
+    void anImportBatchIsDeletedLiveAndArchived() throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        List<Transaction> trades = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            trades.add(account.trade("KO", "BUY", 1, 60, now.minusYears(2).plusDays(i)));
+            trades.add(account.trade("KO", "BUY", 1, 62, now.minusDays(10 - i)));
+        }
+        db.importTransactions(trades, "batch-" + account.portfolioId);
+        db.executeTradeTransaction(account.trade("KO", "BUY", 3, 65, now), symbol -> 1.0);
+        db.archiveTransactions();
+
+        assertEquals(20, db.deleteImportBatch("batch-" + account.portfolioId));
+        List<Transaction> left = db.getTransactionsByPortfolioId(account.portfolioId);
+        assertEquals(1, left.size());
+        assertEquals(3, left.get(0).getQuantity(), 1e-9);
+        int archivedBuys = 0;
+        for (TransactionSummary summary : db.getTransactionSummariesByPortfolioId(account.portfolioId)) {
+            archivedBuys += summary.getBuyCount();
+        }
+        assertEquals(0, archivedBuys);
+    }
+
+    @Test
+    void ledgerSnapshotsAgreeWithTheTradesAtEveryDate() throws SQLException {
+        LocalDateTime first = LocalDateTime.now().minusYears(3);
+        List<Transaction> trades = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            String symbol = i % 2 == 0 ? "AAPL" : "MSFT";
+            trades.add(account.trade(symbol, i % 5 == 4 ? "SELL" : "BUY", i % 5 == 4 ? 1 : 2, 100 + i, first.plusDays(i * 7)));
+        }
+        db.importTransactions(trades, null);
+        db.rebuildPositionsFromTransactions(account.portfolioId);
+
+        assertTrue(count("SELECT COUNT(*) FROM position_snapshots WHERE portfolio_id = ?", account.portfolioId) >= 2);
+        for (int days : new int[] {10, 200, 500, 830}) {
+            LocalDateTime asOf = first.plusDays(days);
+            Map<String, Double> expected = new HashMap<>();
+            for (Transaction trade : trades) {
+                if (!trade.getTimestamp().isAfter(asOf)) {
+                    double signed = "SELL".equals(trade.getType()) ? -trade.getQuantity() : trade.getQuantity();
+                    expected.merge(trade.getSymbol(), signed, Double::sum);
+                }
+            }
+            assertEquals(expected, quantities(db.getPositionsAsOf(account.portfolioId, asOf)), "as of " + asOf);
+        }
+        assertEquals(quantities(db.getPositionsByPortfolioId(account.portfolioId)),
+                quantities(db.getPositionsAsOf(account.portfolioId, LocalDateTime.now())));
+    }
+
+    @Test
+    void staleWritesAreRejectedButPriceMarksAreNot() throws SQLException {
+        db.executeTradeTransaction(account.trade("IBM", "BUY", 10, 100, LocalDateTime.now()), symbol -> 1.0);
+        Position edited = onlyPosition(account.portfolioId);
+        Position stale = onlyPosition(account.portfolioId);
+
+        db.applyPriceTick("IBM", 120);
+        edited.setQuantity(12);
+        db.updatePosition(edited);
+
+        stale.setQuantity(0);
+        assertThrows(StaleUpdateException.class, () -> db.updatePosition(stale));
+        assertThrows(StaleUpdateException.class, () -> db.deletePosition(stale.getId(), stale.getVersion()));
+        Position stored = onlyPosition(account.portfolioId);
+        assertEquals(12, stored.getQuantity(), 1e-9);
+        assertEquals(1440, stored.getTotalValue(), 1e-9);
+        assertEquals(1440, db.getPortfolioById(account.portfolioId).getTotalValue(), 1e-6);
+
+        Portfolio renamed = db.getPortfolioById(account.portfolioId);
+        Portfolio described = db.getPortfolioById(account.portfolioId);
+        renamed.setName("Renamed");
+        db.updatePortfolio(renamed);
+        described.setDescription("Edited concurrently");
+        assertThrows(StaleUpdateException.class, () -> db.updatePortfolio(described));
+    }
+
+    @Test
+    void migrationsRunOnceAndMigrationEightResumes() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:migrations-" + ACCOUNTS.get() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        List<SchemaMigrator.Migration> migrations = db.migrations();
+        SchemaMigrator migrator = new SchemaMigrator(dataSource, migrations);
+
+        assertEquals(migrations.size(), migrator.migrate());
+        assertEquals(0, new SchemaMigrator(dataSource, migrations).migrate());
+        assertEquals(migrator.getLatestVersion(), migrator.currentVersion());
+
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO transaction_summaries (portfolio_id, symbol, period_start, user_id, buy_count, " +
+                    "buy_quantity_units, buy_amount_units, sell_count, sell_quantity_units, sell_amount_units) " +
+                    "VALUES (1, 'AAPL', DATE '2024-01-01', 1, 1, 15000, 1502500, 0, 0, 0)");
+            // Interrupted between dropping a sum and adding it back as a derived column
+            stmt.execute("ALTER TABLE transaction_summaries DROP COLUMN buy_amount");
+            TransactionArchiver.addUnitColumns(conn);
+            TransactionArchiver.addUnitColumns(conn);
+            try (ResultSet rs = stmt.executeQuery("SELECT buy_quantity, buy_amount FROM transaction_summaries")) {
+                assertTrue(rs.next());
+                assertEquals(1.5, rs.getDouble(1), 1e-9);
+                assertEquals(150.25, rs.getDouble(2), 1e-9);
+            }
+            stmt.execute("DROP ALL OBJECTS");
+        }
+    }
+
+    private static Position onlyPosition(int portfolioId) throws SQLException {
+        List<Position> positions = db.getPositionsByPortfolioId(portfolioId);
+        assertEquals(1, positions.size());
+        return positions.get(0);
+    }
+
+    private static Map<String, Double> quantities(List<Position> positions) {
+        Map<String, Double> quantities = new HashMap<>();
+        for (Position position : positions) {
+            quantities.put(position.getSymbol(), position.getQuantity());
+        }
+        return quantities;
+    }
+
+    private static int count(String sql, int portfolioId) throws SQLException {
+        try (Connection conn = db.getDataSource().getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, portfolioId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
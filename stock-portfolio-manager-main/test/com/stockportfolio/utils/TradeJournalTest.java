@@ -0,0 +1,85 @@
+package com.stockportfolio.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.stockportfolio.model.Transaction;
+import com.stockportfolio.repository.Fixtures;
+
+class TradeJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void unresolvedTradesAreRecovered() throws Exception {
+        TradeJournal journal = started();
+        long sequence = journal.append(trade("AAPL", 10)).join();
+        journal.close();
+
+        List<TradeJournal.JournalRecord> recovered = new TradeJournal(directory, () -> { }).recover();
+        assertEquals(1, recovered.size());
+        assertEquals(sequence, recovered.get(0).getSequence());
+        assertEquals("AAPL", recovered.get(0).getTransaction().getSymbol());
+        assertEquals(10, recovered.get(0).getTransaction().getQuantity(), 1e-9);
+    }
+
+    @Test
+    void rejectedTradesAreDropped() throws Exception {
+        TradeJournal journal = started();
+        long rejected = journal.append(trade("AAPL", 10)).join();
+        long kept = journal.append(trade("MSFT", 5)).join();
+        journal.reject(rejected).join();
+        journal.resolve(rejected);
+        journal.close();
+
+        List<TradeJournal.JournalRecord> recovered = new TradeJournal(directory, () -> { }).recover();
+        assertEquals(1, recovered.size());
+        assertEquals(kept, recovered.get(0).getSequence());
+    }
+
+    @Test
+    void aTornLastRecordIsIgnored() throws Exception {
+        TradeJournal journal = started();
+        long intact = journal.append(trade("AAPL", 10)).join();
+        journal.append(trade("MSFT", 5)).join();
+        journal.close();
+
+        // A crash mid-write leaves the last frame short
+        Path segment = onlySegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 7);
+        }
+
+        List<TradeJournal.JournalRecord> recovered = new TradeJournal(directory, () -> { }).recover();
+        assertEquals(1, recovered.size());
+        assertEquals(intact, recovered.get(0).getSequence());
+    }
+
+    private TradeJournal started() throws IOException {
+        TradeJournal journal = new TradeJournal(directory, () -> { });
+        journal.recover();
+        journal.start(1);
+        return journal;
+    }
+
+    private Path onlySegment() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+            return stream.iterator().next();
+        }
+    }
+
+    private static Transaction trade(String symbol, double quantity) {
+        return Fixtures.trade(1, 1, symbol, "BUY", quantity, 100, LocalDateTime.of(2024, 1, 2, 10, 0));
+    }
+}